@@ -8,6 +8,8 @@
 package com.blackrook.rookscript;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +18,7 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import com.blackrook.rookscript.lang.ScriptCommand;
+import com.blackrook.rookscript.lang.ScriptCommandType;
 import com.blackrook.rookscript.resolvers.ScriptHostFunctionResolver;
 import com.blackrook.rookscript.resolvers.ScriptScopeResolver;
 import com.blackrook.rookscript.struct.CountMap;
@@ -23,6 +26,8 @@ import com.blackrook.rookscript.struct.HashDequeMap;
 
 /**
  * A compiled script.
+ * <p>A script is not thread-safe while it is being built or changed. Once it is {@link #freeze() frozen}, 
+ * it cannot be changed, and can be shared by instances on many threads.
  * @author Matthew Tropiano
  */
 public class Script
@@ -50,9 +55,21 @@ public class Script
 	/** Reverse lookup map (index to labels - for debug). Transient. */
 	private HashDequeMap<Integer, String> indexMap;
 	
+	/** Local variable name map (frame starting index to local variable names, by slot). */
+	private HashMap<Integer, String[]> localNameMap;
+
 	/** Label generator sequencer for generated labels. */
 	private CountMap<String> labelGeneratorCounter;
 	
+	/** If true, this script's command label operands were resolved to command indices. */
+	private boolean linked;
+	/** The host function resolver that this script's host calls are bound with (null if unbound). */
+	private ScriptHostFunctionResolver boundHostFunctionResolver;
+	/** The packed, executable form of this script's commands (null if not created or out of date). */
+	private ScriptProgram program;
+	/** If true, this script cannot be changed. */
+	private volatile boolean frozen;
+	
 	/**
 	 * Creates a new empty script.
 	 */
@@ -65,17 +82,28 @@ public class Script
 		this.scriptEntryMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 		this.labelMap = new HashMap<>();
 		this.indexMap = null;
+		this.localNameMap = new HashMap<>();
 		this.labelGeneratorCounter = null;
+		this.linked = false;
+		this.boundHostFunctionResolver = null;
+		this.program = null;
+		this.frozen = false;
 	}
 	
 	/**
 	 * Sets this script's host function resolver.  
+	 * If this script's host function calls were bound to a different resolver, they are unbound.
 	 * @param hostFunctionResolver the function resolver.
 	 * @throws NullPointerException if hostFunctionResolver is null.
+	 * @throws IllegalStateException if this script is frozen.
+	 * @see #bindHostFunctions()
 	 */
 	public void setHostFunctionResolver(ScriptHostFunctionResolver hostFunctionResolver)
 	{
 		Objects.requireNonNull(hostFunctionResolver);
+		checkNotFrozen();
+		if (boundHostFunctionResolver != null && boundHostFunctionResolver != hostFunctionResolver)
+			unbindHostFunctions();
 		this.hostFunctionResolver = hostFunctionResolver;
 	}
 	
@@ -83,22 +111,29 @@ public class Script
 	 * Sets this script's scope resolver.
 	 * @param scopeResolver the scope resolver.
 	 * @throws NullPointerException if scopeResolver is null.
+	 * @throws IllegalStateException if this script is frozen.
 	 */
 	public void setScopeResolver(ScriptScopeResolver scopeResolver) 
 	{
 		Objects.requireNonNull(scopeResolver);
+		checkNotFrozen();
 		this.scopeResolver = scopeResolver;
 	}
 	
 	/**
 	 * Sets the commands to use in the script, replacing them entirely.
 	 * @param commands the new command set.
+	 * @throws IllegalStateException if this script is frozen.
 	 */
 	public void setCommands(ScriptCommand[] commands)
 	{
+		checkNotFrozen();
 		this.commands = new ArrayList<>(commands.length);
 		for (ScriptCommand command : commands)
 			this.commands.add(command);
+		this.linked = false;
+		this.boundHostFunctionResolver = null;
+		this.program = null;
 	}
 
 	/**
@@ -110,9 +145,11 @@ public class Script
 	 * @param parameterCount the amount of parameters that this takes.
 	 * @param index the corresponding index.
 	 * @return the entry created as a result of the set.
+	 * @throws IllegalStateException if this script is frozen.
 	 */
 	public Entry createFunctionEntry(String name, int parameterCount, int index)
 	{
+		checkNotFrozen();
 		Entry out = new Entry(parameterCount, index);
 		functionLabelMap.put(name, out);
 		setIndex(LABEL_FUNCTION_PREFIX + name.toLowerCase(), index);
@@ -138,10 +175,12 @@ public class Script
 	 * @param name the name.
 	 * @param parameterCount the amount of parameters that this takes.
 	 * @param index the corresponding index.
+	 * @throws IllegalStateException if this script is frozen.
 	 * @see #setIndex(String, int)
 	 */
 	public void setScriptEntry(String name, int parameterCount, int index)
 	{
+		checkNotFrozen();
 		scriptEntryMap.put(name, new Entry(parameterCount, index));
 		setIndex(LABEL_ENTRY_PREFIX + name.toLowerCase(), index);
 	}
@@ -157,6 +196,32 @@ public class Script
 		return scriptEntryMap.get(name);
 	}
 
+	/**
+	 * Gets a resolved handle for a subscript entry, for calling the same entry repeatedly
+	 * without looking it up each time (see {@link ScriptInstance#initialize(EntryHandle)}).
+	 * The handle keeps the entry's index at the time this is called, so it should be 
+	 * fetched after this script is done being built or changed.
+	 * Entry names are case-insensitive.
+	 * @param name the name to look up.
+	 * @return the corresponding entry handle or null if not found.
+	 * @since [NOW]
+	 */
+	public EntryHandle getEntryHandle(String name)
+	{
+		Entry entry = scriptEntryMap.get(name);
+		return entry != null ? new EntryHandle(this, name, entry) : null;
+	}
+
+	/**
+	 * @return an array of this script's function names.
+	 * @since [NOW]
+	 */
+	public String[] getFunctionEntryNames()
+	{
+		Set<String> nameSet = functionLabelMap.keySet();
+		return nameSet.toArray(new String[nameSet.size()]);
+	}
+	
 	/**
 	 * @return an array of this script's entry point names.
 	 * @since 1.13.0
@@ -172,12 +237,19 @@ public class Script
 	 * The label is used case-sensitively! Use caution when setting it!
 	 * @param label the label name.
 	 * @param index the corresponding index.
+	 * @throws IllegalStateException if this script is frozen.
 	 */
 	public void setIndex(String label, int index)
 	{
-		if (indexMap != null && labelMap.containsKey(label))
-			indexMap.removeValue(labelMap.get(label), label);
+		checkNotFrozen();
+		Integer previous = labelMap.get(label);
+		if (indexMap != null && previous != null)
+			indexMap.removeValue(previous, label);
+		// moving a label invalidates resolved indices.
+		if (linked && previous != null && previous != index)
+			unlink();
 		labelMap.put(label, index);
+		program = null;
 		if (indexMap != null)
 			indexMap.add(index, label);
 	}
@@ -196,6 +268,54 @@ public class Script
 			return out;
 	}
 	
+	/**
+	 * Sets the local variable names for a set of commands that start at a command index (a function, entry, or scriptlet).
+	 * Each name's position in the array is the local variable slot that holds its value.
+	 * @param index the starting command index.
+	 * @param names the local variable names, by slot. If null, the names at the index are removed.
+	 * @throws IllegalStateException if this script is frozen.
+	 * @since [NOW]
+	 */
+	public void setLocalNames(int index, String[] names)
+	{
+		checkNotFrozen();
+		if (names == null)
+			localNameMap.remove(index);
+		else
+			localNameMap.put(index, names);
+	}
+	
+	/**
+	 * Gets the local variable names for a set of commands that start at a command index (a function, entry, or scriptlet).
+	 * Each name's position in the array is the local variable slot that holds its value.
+	 * @param index the starting command index.
+	 * @return the local variable names, by slot, or null if no names are set for the index.
+	 * @since [NOW]
+	 */
+	public String[] getLocalNames(int index)
+	{
+		return localNameMap.get(index);
+	}
+	
+	/**
+	 * Gets the local variable slot for a variable name, for a set of commands that start at a command index.
+	 * Variable names are case-insensitive.
+	 * @param index the starting command index.
+	 * @param name the variable name.
+	 * @return the corresponding slot or -1 if not found.
+	 * @since [NOW]
+	 */
+	public int getLocalSlot(int index, String name)
+	{
+		String[] names;
+		if ((names = localNameMap.get(index)) == null)
+			return -1;
+		for (int i = 0; i < names.length; i++)
+			if (names[i].equalsIgnoreCase(name))
+				return i;
+		return -1;
+	}
+	
 	/**
 	 * Returns this script's host function resolver.
 	 * @return the function resolver.
@@ -237,10 +357,221 @@ public class Script
 	 * Adds a command directive to the script.
 	 * Be very careful with this!
 	 * @param command the command to add.
+	 * @throws IllegalStateException if this script is frozen.
 	 */
 	public void addCommand(ScriptCommand command)
 	{
+		checkNotFrozen();
 		commands.add(command);
+		program = null;
+	}
+	
+	/**
+	 * Gets the packed, executable form of this script's commands, creating it if it does not exist
+	 * or if this script was changed since it was created.
+	 * @return the program for this script.
+	 * @since [NOW]
+	 */
+	public ScriptProgram getProgram()
+	{
+		ScriptProgram out;
+		if ((out = program) == null)
+			program = out = ScriptProgram.create(this);
+		return out;
+	}
+	
+	/**
+	 * Links this script.
+	 * Every command that takes labels as operands is replaced with a copy that has those labels 
+	 * resolved to command indices, so that executing it does not require a label lookup.
+	 * Labels that could not be resolved are left as-is and are looked up at execution time.
+	 * <p>The label table is kept intact for disassembly and debugging.
+	 * <p>If a label is moved to a different index after linking, this script is unlinked,
+	 * and this must be called again.
+	 * @throws IllegalStateException if this script is frozen.
+	 * @since [NOW]
+	 * @see ScriptCommand#link(int, int)
+	 */
+	public void link()
+	{
+		checkNotFrozen();
+		for (int i = 0; i < commands.size(); i++)
+		{
+			ScriptCommand command = commands.get(i);
+			ScriptCommandType type = command.getType();
+			if (type.hasLabelOperand(1) || type.hasLabelOperand(2))
+			{
+				int index1 = type.hasLabelOperand(1) ? getIndex(String.valueOf(command.getOperand1())) : ScriptCommand.UNRESOLVED_INDEX;
+				int index2 = type.hasLabelOperand(2) ? getIndex(String.valueOf(command.getOperand2())) : ScriptCommand.UNRESOLVED_INDEX;
+				commands.set(i, command.link(index1, index2));
+			}
+		}
+		linked = true;
+		program = null;
+	}
+
+	/**
+	 * Unlinks this script, removing all resolved label indices from its commands.
+	 * @throws IllegalStateException if this script is frozen.
+	 * @since [NOW]
+	 * @see #link()
+	 */
+	public void unlink()
+	{
+		checkNotFrozen();
+		for (int i = 0; i < commands.size(); i++)
+			commands.set(i, commands.get(i).unlink());
+		linked = false;
+		program = null;
+	}
+	
+	/**
+	 * Checks if this script was linked, and it is still valid.
+	 * @return true if so, false if not.
+	 * @since [NOW]
+	 * @see #link()
+	 */
+	public boolean isLinked()
+	{
+		return linked;
+	}
+	
+	/**
+	 * Binds this script's host function calls to the functions resolved by this script's 
+	 * current host function resolver. Every host function call command is replaced with a copy
+	 * that holds its resolved function, so that executing it does not require a resolver lookup.
+	 * Functions that cannot be resolved are left unbound and are looked up at execution time.
+	 * <p>If this script is already bound to its current host function resolver, this does nothing.
+	 * This is called when this script is {@link #freeze() frozen}, which {@link ScriptInstanceFactory} does to a copy of an unfrozen script on creation.
+	 * Instances do not bind the script that they run, since it may be shared.
+	 * <p>If the contents of the resolver are changed after binding, call {@link #unbindHostFunctions()}
+	 * before creating new instances.
+	 * @throws IllegalStateException if this script is frozen and not already bound.
+	 * @since [NOW]
+	 * @see ScriptCommand#bind(com.blackrook.rookscript.lang.ScriptFunctionType)
+	 */
+	public void bindHostFunctions()
+	{
+		ScriptHostFunctionResolver resolver = hostFunctionResolver;
+		if (boundHostFunctionResolver == resolver)
+			return;
+		checkNotFrozen();
+		
+		for (int i = 0; i < commands.size(); i++)
+		{
+			ScriptCommand command = commands.get(i);
+			if (command.getType() == ScriptCommandType.CALL_HOST)
+				commands.set(i, command.bind(resolver.getNamespacedFunction(null, String.valueOf(command.getOperand1()))));
+			else if (command.getType() == ScriptCommandType.CALL_HOST_NAMESPACE)
+				commands.set(i, command.bind(resolver.getNamespacedFunction(String.valueOf(command.getOperand1()), String.valueOf(command.getOperand2()))));
+		}
+		boundHostFunctionResolver = resolver;
+		program = null;
+	}
+	
+	/**
+	 * Unbinds this script's host function calls, removing their bound functions.
+	 * @throws IllegalStateException if this script is frozen.
+	 * @since [NOW]
+	 * @see #bindHostFunctions()
+	 */
+	public void unbindHostFunctions()
+	{
+		checkNotFrozen();
+		for (int i = 0; i < commands.size(); i++)
+		{
+			ScriptCommand command = commands.get(i);
+			if (command.getType().isHostFunctionCall())
+				commands.set(i, command.bind(null));
+		}
+		boundHostFunctionResolver = null;
+		program = null;
+	}
+	
+	/**
+	 * Creates a copy of this script that uses different resolvers.
+	 * The copy has the same commands, labels, entries, and local names as this one, and is linked if this one is.
+	 * If this script's host function calls were bound to a different resolver than the provided one, 
+	 * the copy's calls are unbound. The copy is not frozen.
+	 * <p>This is cheaper than reading the script again, but the copy is only correct if the provided 
+	 * resolvers resolve the same host functions and scopes that this script was compiled with.
+	 * @param hostFunctionResolver the host function resolver for the copy.
+	 * @param scopeResolver the scope resolver for the copy.
+	 * @return a new script.
+	 * @throws NullPointerException if a resolver is null.
+	 * @since [NOW]
+	 */
+	public Script copy(ScriptHostFunctionResolver hostFunctionResolver, ScriptScopeResolver scopeResolver)
+	{
+		Objects.requireNonNull(hostFunctionResolver);
+		Objects.requireNonNull(scopeResolver);
+		Script out = new Script();
+		out.hostFunctionResolver = hostFunctionResolver;
+		out.scopeResolver = scopeResolver;
+		out.commands = new ArrayList<>(commands);
+		out.functionLabelMap.putAll(functionLabelMap);
+		out.scriptEntryMap.putAll(scriptEntryMap);
+		out.labelMap.putAll(labelMap);
+		out.localNameMap.putAll(localNameMap);
+		if (labelGeneratorCounter != null)
+		{
+			out.labelGeneratorCounter = new CountMap<>();
+			out.labelGeneratorCounter.putAll(labelGeneratorCounter);
+		}
+		out.linked = linked;
+		if (boundHostFunctionResolver == hostFunctionResolver)
+			out.boundHostFunctionResolver = hostFunctionResolver;
+		else if (boundHostFunctionResolver != null)
+			out.unbindHostFunctions();
+		return out;
+	}
+	
+	/**
+	 * Freezes this script, so that it cannot be changed anymore, and can be safely shared by 
+	 * instances on many threads.
+	 * This script is linked (if it isn't already), its host function calls are bound to its current
+	 * host function resolver, and its program and label lookups are created up front, so that nothing
+	 * is lazily created afterward. Its commands are then kept in a fixed array.
+	 * <p>Any method that changes this script will throw an {@link IllegalStateException} after this is called.
+	 * Freezing a script that is already frozen does nothing.
+	 * <p>The frozen script should still be published to other threads safely (for example, by a 
+	 * final field, a concurrent collection, or before the threads are started).
+	 * @return itself, for chaining.
+	 * @since [NOW]
+	 */
+	public Script freeze()
+	{
+		if (frozen)
+			return this;
+		if (!linked)
+			link();
+		bindHostFunctions();
+		createReverseIndexLookup();
+		commands = Collections.unmodifiableList(Arrays.asList(commands.toArray(new ScriptCommand[commands.size()])));
+		program = ScriptProgram.create(this);
+		frozen = true;
+		return this;
+	}
+	
+	/**
+	 * Checks if this script is frozen, and cannot be changed.
+	 * @return true if so, false if not.
+	 * @since [NOW]
+	 * @see #freeze()
+	 */
+	public boolean isFrozen()
+	{
+		return frozen;
+	}
+	
+	/**
+	 * Throws an exception if this script is frozen.
+	 * @throws IllegalStateException if this script is frozen.
+	 */
+	private void checkNotFrozen()
+	{
+		if (frozen)
+			throw new IllegalStateException("Script is frozen and cannot be changed.");
 	}
 	
 	/**
@@ -262,9 +593,11 @@ public class Script
 	 * Generates the next label for a specific label prefix.
 	 * @param prefix the label prefix.
 	 * @return a new label to use.
+	 * @throws IllegalStateException if this script is frozen.
 	 */
 	public String getNextGeneratedLabel(String prefix)
 	{
+		checkNotFrozen();
 		if (labelGeneratorCounter == null)
 			labelGeneratorCounter = new CountMap<>();
 		
@@ -286,6 +619,22 @@ public class Script
 			return labelGeneratorCounter.amount(prefix);
 	}
 	
+	/**
+	 * @return the map that contains the labels (label to index).
+	 */
+	Map<String, Integer> getLabelMap()
+	{
+		return labelMap;
+	}
+
+	/**
+	 * @return the map that contains the local variable names (starting index to names, by slot).
+	 */
+	Map<Integer, String[]> getLocalNameMap()
+	{
+		return localNameMap;
+	}
+
 	/**
 	 * @return the map that contains the generated label counters.
 	 */
@@ -301,6 +650,7 @@ public class Script
 	 */
 	void setNextGeneratedLabelNumber(String prefix, int count)
 	{
+		checkNotFrozen();
 		if (labelGeneratorCounter == null)
 			labelGeneratorCounter = new CountMap<>();
 		
@@ -351,4 +701,64 @@ public class Script
 		
 	}
 	
+	/**
+	 * A resolved script entry, bound to the script it came from.
+	 * @since [NOW]
+	 * @see Script#getEntryHandle(String)
+	 */
+	public static class EntryHandle
+	{
+		private Script script;
+		private String name;
+		private int parameterCount;
+		private int index;
+		
+		private EntryHandle(Script script, String name, Entry entry)
+		{
+			this.script = script;
+			this.name = name;
+			this.parameterCount = entry.parameterCount;
+			this.index = entry.index;
+		}
+
+		/**
+		 * @return the script that this entry is in.
+		 */
+		public Script getScript()
+		{
+			return script;
+		}
+		
+		/**
+		 * @return the entry name.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+		
+		/**
+		 * @return how many parameters this takes.
+		 */
+		public int getParameterCount()
+		{
+			return parameterCount;
+		}
+		
+		/**
+		 * @return the command index at the start of this entry.
+		 */
+		public int getIndex()
+		{
+			return index;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return name + "(" + parameterCount + ") @" + index;
+		}
+		
+	}
+	
 }
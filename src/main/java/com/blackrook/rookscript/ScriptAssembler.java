@@ -63,10 +63,25 @@ public final class ScriptAssembler
 
 	/**
 	 * Optimizes a script.
+	 * After literal reduction, common command sequences are fused into single commands (see {@link #fuse(Script)}).
+	 * The returned script is also linked (see {@link Script#link()}).
 	 * @param script the input script.
 	 * @return the new script after optimization.
 	 */
 	public static Script optimize(Script script)
+	{
+		return optimize(script, true);
+	}
+	
+	/**
+	 * Optimizes a script, with or without fusing command sequences.
+	 * The returned script is also linked (see {@link Script#link()}).
+	 * @param script the input script.
+	 * @param fuse if true, common command sequences are fused into single commands (see {@link #fuse(Script)}).
+	 * @return the new script after optimization.
+	 * @since [NOW]
+	 */
+	public static Script optimize(Script script, boolean fuse)
 	{
 		Deque<ScriptCommand> reduceStack = new LinkedList<>();
 		Deque<ScriptCommand> backwardsStack = new LinkedList<>();
@@ -105,7 +120,7 @@ public final class ScriptAssembler
 						outCommands.add(command);
 						state = STATE_RETURN;
 					}
-					else if (command.getType() == ScriptCommandType.PUSH_VARIABLE)
+					else if (command.getType() == ScriptCommandType.PUSH_VARIABLE || command.getType() == ScriptCommandType.PUSH_LOCAL)
 					{
 						reduceStack.push(command);
 						state = STATE_PUSH_VAR_1;
@@ -126,7 +141,7 @@ public final class ScriptAssembler
 	
 				case STATE_PUSH_VAR_1:
 				{
-					if (command.getType() == ScriptCommandType.POP_VARIABLE)
+					if (command.getType() == ScriptCommandType.POP_VARIABLE && reduceStack.peek().getType() == ScriptCommandType.PUSH_VARIABLE)
 					{
 						ScriptCommand popped = reduceStack.pop();
 						ScriptCommand newCommand = ScriptCommand.create(ScriptCommandType.SET_VARIABLE, command.getOperand1().toString(), popped.getOperand1().toString());
@@ -134,6 +149,14 @@ public final class ScriptAssembler
 						outCommands.add(newCommand);
 						state = STATE_INIT;
 					}
+					else if (command.getType() == ScriptCommandType.POP_LOCAL && reduceStack.peek().getType() == ScriptCommandType.PUSH_LOCAL)
+					{
+						ScriptCommand popped = reduceStack.pop();
+						ScriptCommand newCommand = ScriptCommand.create(ScriptCommandType.SET_LOCAL_VARIABLE, popped.getOperand2(), ((Number)command.getOperand2()).longValue());
+						optimizeEmitAll(reduceStack, backwardsStack, outCommands);
+						outCommands.add(newCommand);
+						state = STATE_INIT;
+					}
 					else
 					{
 						optimizeEmitAll(reduceStack, backwardsStack, outCommands);
@@ -155,7 +178,7 @@ public final class ScriptAssembler
 						reduceStack.push(command);
 						state = STATE_PUSH_LITERAL_2;
 					}
-					else if (command.getType() == ScriptCommandType.PUSH_VARIABLE)
+					else if (command.getType() == ScriptCommandType.PUSH_VARIABLE || command.getType() == ScriptCommandType.PUSH_LOCAL)
 					{
 						optimizeEmitAll(reduceStack, backwardsStack, outCommands);
 						reduceStack.push(command);
@@ -169,6 +192,14 @@ public final class ScriptAssembler
 						outCommands.add(newCommand);
 						state = STATE_INIT;
 					}
+					else if (command.getType() == ScriptCommandType.POP_LOCAL)
+					{
+						ScriptCommand popped = reduceStack.pop();
+						ScriptCommand newCommand = ScriptCommand.create(ScriptCommandType.SET_LOCAL, popped.getOperand1(), ((Number)command.getOperand2()).longValue());
+						optimizeEmitAll(reduceStack, backwardsStack, outCommands);
+						outCommands.add(newCommand);
+						state = STATE_INIT;
+					}
 					else
 					{
 						optimizeEmitAll(reduceStack, backwardsStack, outCommands);
@@ -216,6 +247,46 @@ public final class ScriptAssembler
 			}
 		}
 	
+		optimizeFinish(script, optimizedScript, outCommands);
+		if (fuse)
+			optimizedScript = fuse(optimizedScript);
+		optimizedScript.link();
+		return optimizedScript;
+	}
+
+	/**
+	 * Fuses common command sequences in a script into single commands ("superinstructions"),
+	 * so that they take one dispatch instead of several. Sequences are not fused across labels.
+	 * <ul>
+	 * <li>PUSH_NULL, RETURN becomes RETURN_NULL.</li>
+	 * <li>CALL, RETURN becomes TAIL_CALL.</li>
+	 * <li>PUSH_LOCAL x, PUSH, ADD, POP_LOCAL x becomes ADD_LOCAL.</li>
+	 * <li>LESS/LESS_OR_EQUAL/GREATER/GREATER_OR_EQUAL, JUMP_FALSE becomes JUMP_NOT_LESS/JUMP_NOT_LESS_OR_EQUAL/JUMP_NOT_GREATER/JUMP_NOT_GREATER_OR_EQUAL.</li>
+	 * <li>LESS/LESS_OR_EQUAL/GREATER/GREATER_OR_EQUAL, JUMP_BRANCH becomes BRANCH_LESS/BRANCH_LESS_OR_EQUAL/BRANCH_GREATER/BRANCH_GREATER_OR_EQUAL.</li>
+	 * </ul>
+	 * @param script the input script.
+	 * @return the new script after fusion.
+	 * @since [NOW]
+	 */
+	public static Script fuse(Script script)
+	{
+		Queue<ScriptCommand> outCommands = new LinkedList<>();
+		Script fusedScript = new Script();
+
+		int index = 0;
+		while (index < script.getCommandCount())
+		{
+			optimizeEmitLabels(script, fusedScript, index, outCommands.size());
+			index += fuseCommands(script, index, outCommands);
+		}
+		
+		optimizeFinish(script, fusedScript, outCommands);
+		return fusedScript;
+	}
+
+	// Sets the commands and environment of an optimized script. 
+	private static void optimizeFinish(Script script, Script optimizedScript, Queue<ScriptCommand> outCommands)
+	{
 		ScriptCommand[] optimizedCommands = new ScriptCommand[outCommands.size()];
 		outCommands.toArray(optimizedCommands);
 		optimizedScript.setCommands(optimizedCommands);
@@ -223,7 +294,129 @@ public final class ScriptAssembler
 		optimizedScript.setScopeResolver(script.getScopeResolver());
 		if (script.getLabelGeneratorCounter() != null) for (Map.Entry<String, Integer> count : script.getLabelGeneratorCounter().entrySet())
 			optimizedScript.setNextGeneratedLabelNumber(count.getKey(), count.getValue());
-		return optimizedScript;
+	}
+
+	// Checks if a set of commands can be fused (they exist and no labels are on any command but the first).
+	private static boolean fuseCandidate(Script script, int index, int length)
+	{
+		if (index + length > script.getCommandCount())
+			return false;
+		for (int i = index + 1; i < index + length; i++)
+			if (optimizeHasLabels(script, i))
+				return false;
+		return true;
+	}
+	
+	// Checks if a command is a certain type.
+	private static boolean fuseType(Script script, int index, ScriptCommandType type)
+	{
+		return script.getCommand(index).getType() == type;
+	}
+	
+	// Fuses (or not) the commands at an index and emits the result. Returns the amount of source commands consumed.
+	private static int fuseCommands(Script script, int index, Queue<ScriptCommand> outCommands)
+	{
+		ScriptCommand command = script.getCommand(index);
+		switch (command.getType())
+		{
+			case PUSH_NULL:
+			{
+				if (fuseCandidate(script, index, 2) && fuseType(script, index + 1, ScriptCommandType.RETURN))
+				{
+					outCommands.add(ScriptCommand.create(ScriptCommandType.RETURN_NULL));
+					return 2;
+				}
+				break;
+			}
+			
+			case CALL:
+			{
+				if (fuseCandidate(script, index, 2) && fuseType(script, index + 1, ScriptCommandType.RETURN))
+				{
+					outCommands.add(ScriptCommand.create(ScriptCommandType.TAIL_CALL, command.getOperand1().toString()));
+					return 2;
+				}
+				break;
+			}
+			
+			case PUSH_LOCAL:
+			{
+				if (fuseCandidate(script, index, 4) 
+					&& fuseType(script, index + 1, ScriptCommandType.PUSH) 
+					&& fuseType(script, index + 2, ScriptCommandType.ADD) 
+					&& fuseType(script, index + 3, ScriptCommandType.POP_LOCAL) 
+					&& command.getOperand2().equals(script.getCommand(index + 3).getOperand2())
+				){
+					outCommands.add(ScriptCommand.create(ScriptCommandType.ADD_LOCAL, script.getCommand(index + 1).getOperand1(), ((Number)command.getOperand2()).longValue()));
+					return 4;
+				}
+				break;
+			}
+			
+			case LESS:
+			case LESS_OR_EQUAL:
+			case GREATER:
+			case GREATER_OR_EQUAL:
+			{
+				if (!fuseCandidate(script, index, 2))
+					break;
+				
+				ScriptCommand next = script.getCommand(index + 1);
+				if (next.getType() == ScriptCommandType.JUMP_FALSE)
+				{
+					outCommands.add(ScriptCommand.create(fuseJumpNotType(command.getType()), next.getOperand1().toString()));
+					return 2;
+				}
+				else if (next.getType() == ScriptCommandType.JUMP_BRANCH)
+				{
+					outCommands.add(ScriptCommand.create(fuseBranchType(command.getType()), next.getOperand1().toString(), next.getOperand2().toString()));
+					return 2;
+				}
+				break;
+			}
+			
+			default:
+				break;
+		}
+		
+		outCommands.add(command);
+		return 1;
+	}
+
+	// Gets the fused "jump if not" type for a comparison.
+	private static ScriptCommandType fuseJumpNotType(ScriptCommandType type)
+	{
+		switch (type)
+		{
+			case LESS:
+				return ScriptCommandType.JUMP_NOT_LESS;
+			case LESS_OR_EQUAL:
+				return ScriptCommandType.JUMP_NOT_LESS_OR_EQUAL;
+			case GREATER:
+				return ScriptCommandType.JUMP_NOT_GREATER;
+			case GREATER_OR_EQUAL:
+				return ScriptCommandType.JUMP_NOT_GREATER_OR_EQUAL;
+			default:
+				throw new IllegalArgumentException("Not a comparison type: " + type);
+		}
+	}
+	
+	// Gets the fused branch type for a comparison.
+	private static ScriptCommandType fuseBranchType(ScriptCommandType type)
+	{
+		switch (type)
+		{
+			case LESS:
+				return ScriptCommandType.BRANCH_LESS;
+			case LESS_OR_EQUAL:
+				return ScriptCommandType.BRANCH_LESS_OR_EQUAL;
+			case GREATER:
+				return ScriptCommandType.BRANCH_GREATER;
+			case GREATER_OR_EQUAL:
+				return ScriptCommandType.BRANCH_GREATER_OR_EQUAL;
+			default:
+				throw new IllegalArgumentException("Not a comparison type: " + type);
+		}
 	}
 
 
@@ -240,6 +433,9 @@ public final class ScriptAssembler
 		Iterable<String> labelIterable;
 		if ((labelIterable = script.getLabelsAtIndex(srcIndex)) != null)
 		{
+			String[] localNames;
+			if ((localNames = script.getLocalNames(srcIndex)) != null)
+				optimizedScript.setLocalNames(targetIndex, localNames);
 			for (String label : labelIterable)
 			{
 				optimizedScript.setIndex(label, targetIndex);
@@ -0,0 +1,454 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.blackrook.rookscript.Script.Entry;
+import com.blackrook.rookscript.lang.ScriptCommand;
+import com.blackrook.rookscript.lang.ScriptCommandType;
+import com.blackrook.rookscript.resolvers.ScriptHostFunctionResolver;
+import com.blackrook.rookscript.resolvers.ScriptScopeResolver;
+
+/**
+ * Writes and reads compiled scripts in a precompiled binary form, so that they do not
+ * need to be lexed, parsed, and optimized again on each load.
+ * <p>The binary form holds the script's commands, its constants (as a shared string table), 
+ * its labels, its function and entry tables, its local variable names, and its generated label counters.
+ * Host function bindings and resolvers are not stored - they are supplied when the script is read.
+ * <p>All values are big-endian. The format is versioned, and command types are stored by name, 
+ * so a binary written by a different version of this library is either read correctly or rejected.
+ * @author Matthew Tropiano
+ * @since [NOW]
+ */
+public final class ScriptBinary
+{
+	/** Magic number at the start of each binary script ("RSCB"). */
+	public static final int MAGIC = 0x52534342;
+	/** Current binary format version. */
+	public static final int VERSION = 1;
+
+	private static final byte OPERAND_NULL = 0;
+	private static final byte OPERAND_FALSE = 1;
+	private static final byte OPERAND_TRUE = 2;
+	private static final byte OPERAND_LONG = 3;
+	private static final byte OPERAND_DOUBLE = 4;
+	private static final byte OPERAND_STRING = 5;
+	
+	private static final ScriptCommandType[] COMMAND_TYPES = ScriptCommandType.values();
+	
+	private ScriptBinary() {}
+	
+	/**
+	 * Writes a script in binary form.
+	 * @param script the script to write.
+	 * @param out the output stream to write to.
+	 * @throws IOException if the stream can't be written to.
+	 * @throws NotSerializableException if a command has an operand that cannot be written.
+	 * @throws NullPointerException if script or out is null.
+	 */
+	public static void write(Script script, OutputStream out) throws IOException
+	{
+		StringTable strings = new StringTable();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(script.getCommandCount() * 8 + 1024);
+		DataOutputStream body = new DataOutputStream(bos);
+
+		// commands
+		int commandCount = script.getCommandCount();
+		body.writeBoolean(script.isLinked());
+		body.writeInt(commandCount);
+		for (int i = 0; i < commandCount; i++)
+		{
+			ScriptCommand command = script.getCommand(i);
+			body.writeShort(command.getType().ordinal());
+			writeOperand(body, strings, command.getOperand1());
+			writeOperand(body, strings, command.getOperand2());
+		}
+		
+		// labels
+		Map<String, Integer> labelMap = script.getLabelMap();
+		body.writeInt(labelMap.size());
+		for (Map.Entry<String, Integer> label : labelMap.entrySet())
+		{
+			body.writeInt(strings.index(label.getKey()));
+			body.writeInt(label.getValue());
+		}
+		
+		// functions
+		String[] functionNames = script.getFunctionEntryNames();
+		body.writeInt(functionNames.length);
+		for (String name : functionNames)
+			writeEntry(body, strings, name, script.getFunctionEntry(name));
+
+		// entries
+		String[] entryNames = script.getScriptEntryNames();
+		body.writeInt(entryNames.length);
+		for (String name : entryNames)
+			writeEntry(body, strings, name, script.getScriptEntry(name));
+		
+		// local names
+		Map<Integer, String[]> localNameMap = script.getLocalNameMap();
+		body.writeInt(localNameMap.size());
+		for (Map.Entry<Integer, String[]> locals : localNameMap.entrySet())
+		{
+			String[] names = locals.getValue();
+			body.writeInt(locals.getKey());
+			body.writeInt(names.length);
+			for (String name : names)
+				body.writeInt(strings.index(name));
+		}
+		
+		// generated label counters
+		Map<String, Integer> counterMap = script.getLabelGeneratorCounter();
+		body.writeInt(counterMap != null ? counterMap.size() : 0);
+		if (counterMap != null) for (Map.Entry<String, Integer> count : counterMap.entrySet())
+		{
+			body.writeInt(strings.index(count.getKey()));
+			body.writeInt(count.getValue());
+		}
+		body.flush();
+
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+
+		// command type table (by name, so that reordering types does not break old binaries).
+		dos.writeShort(COMMAND_TYPES.length);
+		for (ScriptCommandType type : COMMAND_TYPES)
+			writeString(dos, type.name());
+		
+		// string table
+		dos.writeInt(strings.list.size());
+		for (String s : strings.list)
+			writeString(dos, s);
+		
+		bos.writeTo(dos);
+		dos.flush();
+	}
+	
+	/**
+	 * Checks if a file starts with the binary script magic number.
+	 * @param file the file to inspect.
+	 * @return true if so, false if not, or the file is not readable.
+	 * @throws SecurityException if a read error happens due to OS permissioning.
+	 */
+	public static boolean isBinary(File file)
+	{
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Reads a binary script from a file.
+	 * The file is memory-mapped, and read directly.
+	 * @param file the file to read.
+	 * @param functionResolver the host function resolver to use.
+	 * @param scopeResolver the scope resolver to use.
+	 * @return the script read.
+	 * @throws IOException if the file can't be read, or is not a binary script.
+	 * @throws SecurityException if a read error happens due to OS permissioning.
+	 * @throws NullPointerException if file or a resolver is null.
+	 */
+	public static Script read(File file, ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), functionResolver, scopeResolver);
+		}
+	}
+	
+	/**
+	 * Reads a binary script from an input stream.
+	 * The stream is read to its end, and is not closed.
+	 * @param in the input stream to read.
+	 * @param functionResolver the host function resolver to use.
+	 * @param scopeResolver the scope resolver to use.
+	 * @return the script read.
+	 * @throws IOException if the stream can't be read, or does not contain a binary script.
+	 * @throws NullPointerException if in or a resolver is null.
+	 */
+	public static Script read(InputStream in, ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(8192);
+		byte[] buffer = new byte[8192];
+		int buf;
+		while ((buf = in.read(buffer)) > 0)
+			bos.write(buffer, 0, buf);
+		return read(ByteBuffer.wrap(bos.toByteArray()), functionResolver, scopeResolver);
+	}
+	
+	/**
+	 * Reads a binary script from a buffer, starting at its current position.
+	 * The buffer's position is not changed.
+	 * @param buffer the buffer to read (can be memory-mapped).
+	 * @param functionResolver the host function resolver to use.
+	 * @param scopeResolver the scope resolver to use.
+	 * @return the script read.
+	 * @throws IOException if the buffer does not contain a binary script, or the script is from an unsupported version.
+	 * @throws StreamCorruptedException if the binary data is malformed or truncated.
+	 * @throws NullPointerException if buffer or a resolver is null.
+	 */
+	public static Script read(ByteBuffer buffer, ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver) throws IOException
+	{
+		ByteBuffer in = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		try {
+			return readScript(in, functionResolver, scopeResolver);
+		} catch (BufferUnderflowException e) {
+			throw new StreamCorruptedException("Binary script data is truncated.");
+		}
+	}
+	
+	private static Script readScript(ByteBuffer in, ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver) throws IOException
+	{
+		if (in.getInt() != MAGIC)
+			throw new IOException("Data is not a binary script.");
+		int version;
+		if ((version = in.getInt()) != VERSION)
+			throw new IOException("Unsupported binary script version: " + version);
+		
+		ScriptCommandType[] types = new ScriptCommandType[in.getShort() & 0x0ffff];
+		for (int i = 0; i < types.length; i++)
+		{
+			String name = readString(in);
+			try {
+				types[i] = ScriptCommandType.valueOf(name);
+			} catch (IllegalArgumentException e) {
+				types[i] = null; // only a problem if used.
+			}
+		}
+		
+		String[] strings = new String[checkCount(in, in.getInt())];
+		for (int i = 0; i < strings.length; i++)
+			strings[i] = readString(in);
+		
+		Script script = new Script();
+		script.setHostFunctionResolver(functionResolver);
+		script.setScopeResolver(scopeResolver);
+		
+		boolean linked = in.get() != 0;
+		ScriptCommand[] commands = new ScriptCommand[checkCount(in, in.getInt())];
+		for (int i = 0; i < commands.length; i++)
+		{
+			int t = in.getShort() & 0x0ffff;
+			if (t >= types.length)
+				throw new StreamCorruptedException("Bad command type index: " + t);
+			if (types[t] == null)
+				throw new IOException("Binary script uses a command type not supported by this version.");
+			Object operand1 = readOperand(in, strings);
+			Object operand2 = readOperand(in, strings);
+			commands[i] = createCommand(types[t], operand1, operand2);
+		}
+		script.setCommands(commands);
+
+		int labelCount = checkCount(in, in.getInt());
+		for (int i = 0; i < labelCount; i++)
+		{
+			String label = readStringRef(in, strings);
+			script.setIndex(label, checkIndex(in.getInt(), commands.length));
+		}
+
+		int functionCount = checkCount(in, in.getInt());
+		for (int i = 0; i < functionCount; i++)
+		{
+			String name = readStringRef(in, strings);
+			int parameterCount = checkParameterCount(in.getInt());
+			script.createFunctionEntry(name, parameterCount, checkIndex(in.getInt(), commands.length));
+		}
+
+		int entryCount = checkCount(in, in.getInt());
+		for (int i = 0; i < entryCount; i++)
+		{
+			String name = readStringRef(in, strings);
+			int parameterCount = checkParameterCount(in.getInt());
+			script.setScriptEntry(name, parameterCount, checkIndex(in.getInt(), commands.length));
+		}
+
+		int localCount = checkCount(in, in.getInt());
+		for (int i = 0; i < localCount; i++)
+		{
+			int index = checkIndex(in.getInt(), commands.length);
+			String[] names = new String[checkCount(in, in.getInt())];
+			for (int n = 0; n < names.length; n++)
+				names[n] = readStringRef(in, strings);
+			script.setLocalNames(index, names);
+		}
+
+		int counterCount = checkCount(in, in.getInt());
+		for (int i = 0; i < counterCount; i++)
+		{
+			String prefix = readStringRef(in, strings);
+			script.setNextGeneratedLabelNumber(prefix, in.getInt());
+		}
+		
+		if (linked)
+			script.link();
+		return script;
+	}
+
+	private static void writeEntry(DataOutputStream out, StringTable strings, String name, Entry entry) throws IOException
+	{
+		out.writeInt(strings.index(name));
+		out.writeInt(entry.getParameterCount());
+		out.writeInt(entry.getIndex());
+	}
+	
+	private static void writeOperand(DataOutputStream out, StringTable strings, Object operand) throws IOException
+	{
+		if (operand == null)
+			out.writeByte(OPERAND_NULL);
+		else if (operand instanceof Boolean)
+			out.writeByte((Boolean)operand ? OPERAND_TRUE : OPERAND_FALSE);
+		else if (operand instanceof Long || operand instanceof Integer)
+		{
+			out.writeByte(OPERAND_LONG);
+			out.writeLong(((Number)operand).longValue());
+		}
+		else if (operand instanceof Double)
+		{
+			out.writeByte(OPERAND_DOUBLE);
+			out.writeDouble((Double)operand);
+		}
+		else if (operand instanceof String)
+		{
+			out.writeByte(OPERAND_STRING);
+			out.writeInt(strings.index((String)operand));
+		}
+		else
+			throw new NotSerializableException("Command operand cannot be written: " + operand.getClass().getName());
+	}
+
+	private static Object readOperand(ByteBuffer in, String[] strings) throws IOException
+	{
+		byte tag;
+		switch (tag = in.get())
+		{
+			case OPERAND_NULL:
+				return null;
+			case OPERAND_FALSE:
+				return false;
+			case OPERAND_TRUE:
+				return true;
+			case OPERAND_LONG:
+				return in.getLong();
+			case OPERAND_DOUBLE:
+				return in.getDouble();
+			case OPERAND_STRING:
+				return readStringRef(in, strings);
+			default:
+				throw new StreamCorruptedException("Bad operand tag: " + tag);
+		}
+	}
+	
+	private static ScriptCommand createCommand(ScriptCommandType type, Object operand1, Object operand2) throws IOException
+	{
+		if (operand2 == null)
+			return operand1 == null ? ScriptCommand.create(type) : ScriptCommand.create(type, operand1);
+		else if (operand2 instanceof Long)
+			return ScriptCommand.create(type, operand1, (long)(Long)operand2);
+		else if (operand1 instanceof String)
+			return ScriptCommand.create(type, (String)operand1, operand2);
+		else if (operand1 instanceof Long && operand2 instanceof Boolean)
+			return ScriptCommand.create(type, (Long)operand1, (boolean)(Boolean)operand2);
+		else
+			throw new StreamCorruptedException("Bad operand types for " + type.name() + "."); 
+	}
+	
+	private static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+	
+	private static String readString(ByteBuffer in) throws IOException
+	{
+		byte[] b = new byte[checkCount(in, in.getInt())];
+		in.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	private static String readStringRef(ByteBuffer in, String[] strings) throws IOException
+	{
+		int index = in.getInt();
+		if (index < 0 || index >= strings.length)
+			throw new StreamCorruptedException("Bad string index: " + index);
+		return strings[index];
+	}
+	
+	// Rejects command indices outside of the script (an index can point just past the last command).
+	private static int checkIndex(int index, int commandCount) throws IOException
+	{
+		if (index < 0 || index > commandCount)
+			throw new StreamCorruptedException("Bad command index: " + index);
+		return index;
+	}
+	
+	// Rejects negative parameter counts.
+	private static int checkParameterCount(int parameterCount) throws IOException
+	{
+		if (parameterCount < 0)
+			throw new StreamCorruptedException("Bad parameter count: " + parameterCount);
+		return parameterCount;
+	}
+	
+	// Rejects counts that could not possibly fit in the rest of the data.
+	private static int checkCount(ByteBuffer in, int count) throws IOException
+	{
+		if (count < 0 || count > in.remaining())
+			throw new StreamCorruptedException("Bad count: " + count);
+		return count;
+	}
+	
+	/**
+	 * A table of unique strings, in order of first use.
+	 */
+	private static class StringTable
+	{
+		private Map<String, Integer> indexMap;
+		private List<String> list;
+		
+		private StringTable()
+		{
+			this.indexMap = new HashMap<>();
+			this.list = new ArrayList<>();
+		}
+		
+		private int index(String s)
+		{
+			Integer out;
+			if ((out = indexMap.get(s)) == null)
+			{
+				indexMap.put(s, out = list.size());
+				list.add(s);
+			}
+			return out;
+		}
+	}
+	
+}
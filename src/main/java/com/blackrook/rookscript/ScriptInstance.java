@@ -7,11 +7,24 @@
  ******************************************************************************/
 package com.blackrook.rookscript;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 import com.blackrook.rookscript.Script.Entry;
+import com.blackrook.rookscript.Script.EntryHandle;
 import com.blackrook.rookscript.exception.ScriptExecutionException;
+import com.blackrook.rookscript.exception.ScriptQuotaException;
 import com.blackrook.rookscript.exception.ScriptStackException;
 import com.blackrook.rookscript.lang.ScriptCommand;
 import com.blackrook.rookscript.resolvers.ScriptHostFunctionResolver;
@@ -25,9 +38,18 @@ import com.blackrook.rookscript.struct.Utils;
  */
 public class ScriptInstance
 {
-	private static final ThreadLocal<ScriptValue> CACHEVALUE = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	
 	public static final int DEFAULT_RUNAWAY_LIMIT = 1024 * 1024;
+	/**
+	 * Amount of scratch registers available to host functions.
+	 * @see #getRegister(int)
+	 * @since [NOW]
+	 */
+	public static final int REGISTER_COUNT = 8;
+	/** Amount of scratch registers reserved for commands. */
+	private static final int COMMAND_REGISTER_COUNT = 4;
+
+	/** Leading bytes of written instance states ("RSIS"). */
+	private static final int STATE_MAGIC = 0x52534953;
 
 	/**
 	 * Enumeration of script states.
@@ -48,6 +70,13 @@ public class ScriptInstance
 		ENDED;
 	}
 	
+	private static final State[] STATES = State.values();
+	
+	/** Amount of back-edges between deadline checks. */
+	private static final int DEADLINE_CHECK_INTERVAL = 256;
+	/** The instance with a memory quota that is running on the current thread, if any. */
+	private static final ThreadLocal<ScriptInstance> METERED_INSTANCE = new ThreadLocal<>();
+	
 	// ======================================================================
 	// Environment
 	// ======================================================================
@@ -77,6 +106,16 @@ public class ScriptInstance
 	private Object waitParameter;
 	/** Commands executed per slice. */
 	private int commandsExecuted;
+	/** If true, there is a deadline. */
+	private boolean deadlineSet;
+	/** Deadline, in {@link System#nanoTime()} time. */
+	private long deadline;
+	/** Back-edges left until the next deadline check. */
+	private int deadlineCountdown;
+	/** Memory quota in bytes (0 or less is no quota). */
+	private long memoryQuota;
+	/** Approximate bytes allocated since the last initialization. */
+	private long allocatedBytes;
 
 	// ======================================================================
 	// Resources
@@ -84,6 +123,8 @@ public class ScriptInstance
 	
 	/** All registered, presumably unclosed resources. */
 	private Set<AutoCloseable> closeables;
+	/** Scratch registers (command registers first, then host function registers). */
+	private final ScriptValue[] registers;
 	
 	/**
 	 * Creates a new script instance, no wait handler, default runaway limit.
@@ -129,6 +170,9 @@ public class ScriptInstance
 		this.scriptInstanceStack = scriptInstanceStack;
 		this.waitHandler = waitHandler;
 		this.commandRunawayLimit = runawayLimit;
+		this.registers = new ScriptValue[COMMAND_REGISTER_COUNT + REGISTER_COUNT];
+		for (int i = 0; i < registers.length; i++)
+			registers[i] = ScriptValue.create(null);
 
 		reset();
 	}
@@ -153,7 +197,9 @@ public class ScriptInstance
 		waitType = null;
 		waitParameter = null;
 		commandsExecuted = 0;
+		allocatedBytes = 0L;
 		closeables = null;
+		clearDeadline();
 	}
 
 	/**
@@ -210,6 +256,36 @@ public class ScriptInstance
 		return script.getScopeResolver();
 	}
 
+	/**
+	 * Gets a scratch register for host functions.
+	 * Registers are temporary values owned by this instance, for use in place of thread-local
+	 * or newly-allocated temporary values: they are only safe to use by one host function at a time, 
+	 * should be set to null after use, and must not be held across calls that can run other host functions.
+	 * @param index the register index, from 0 to {@link #REGISTER_COUNT} - 1.
+	 * @return the register value.
+	 * @throws ArrayIndexOutOfBoundsException if the index is out of range.
+	 * @since [NOW]
+	 */
+	public ScriptValue getRegister(int index)
+	{
+		if (index < 0)
+			throw new ArrayIndexOutOfBoundsException(index);
+		return registers[COMMAND_REGISTER_COUNT + index];
+	}
+
+	/**
+	 * Gets a scratch register reserved for script commands.
+	 * These are separate from the host function registers, since a command can hold one 
+	 * while it calls a host function. Host functions should use {@link #getRegister(int)}.
+	 * @param index the register index, from 0 to 3.
+	 * @return the register value.
+	 * @since [NOW]
+	 */
+	public ScriptValue getCommandRegister(int index)
+	{
+		return registers[index];
+	}
+
 	/**
 	 * Gets the instance stack on this instance.
 	 * @return the instance stack.
@@ -241,6 +317,163 @@ public class ScriptInstance
 		return commandRunawayLimit;
 	}
 	
+	/**
+	 * Sets a deadline for this instance's execution.
+	 * Once it has passed, executing this instance throws a {@link ScriptQuotaException}.
+	 * The deadline is checked when this instance is updated, after host function calls, and every few 
+	 * script function calls and loop iterations, so a single long host function call is not interrupted.
+	 * The deadline stays set until it is cleared or this instance is reset.
+	 * @param nanoTime the deadline, in {@link System#nanoTime()} time.
+	 * @see #clearDeadline()
+	 * @see #setTimeLimit(long, TimeUnit)
+	 * @since [NOW]
+	 */
+	public void setDeadline(long nanoTime)
+	{
+		this.deadlineSet = true;
+		this.deadline = nanoTime;
+		this.deadlineCountdown = DEADLINE_CHECK_INTERVAL;
+	}
+
+	/**
+	 * Sets a deadline for this instance's execution, an amount of time from now.
+	 * @param time the amount of time.
+	 * @param unit the time unit.
+	 * @see #setDeadline(long)
+	 * @since [NOW]
+	 */
+	public void setTimeLimit(long time, TimeUnit unit)
+	{
+		setDeadline(System.nanoTime() + unit.toNanos(time));
+	}
+
+	/**
+	 * Clears this instance's deadline, if set.
+	 * @since [NOW]
+	 */
+	public void clearDeadline()
+	{
+		this.deadlineSet = false;
+		this.deadline = 0L;
+	}
+
+	/**
+	 * @return true if this instance has a deadline, false if not.
+	 * @since [NOW]
+	 */
+	public boolean hasDeadline()
+	{
+		return deadlineSet;
+	}
+
+	/**
+	 * @return this instance's deadline in {@link System#nanoTime()} time, if it has one (see {@link #hasDeadline()}).
+	 * @since [NOW]
+	 */
+	public long getDeadline()
+	{
+		return deadline;
+	}
+
+	/**
+	 * Checks this instance's deadline, if it has one.
+	 * Script commands call this after host function calls, and long-running host functions may call this 
+	 * to stop early for an instance that is out of time.
+	 * @throws ScriptQuotaException if the deadline has passed.
+	 * @since [NOW]
+	 */
+	public void checkDeadline()
+	{
+		if (deadlineSet && System.nanoTime() - deadline > 0)
+			throw new ScriptQuotaException("Script deadline exceeded.");
+	}
+
+	// Checks the deadline every few calls (on loop back-edges and script function calls).
+	void checkBackEdge()
+	{
+		if (deadlineSet && --deadlineCountdown <= 0)
+		{
+			deadlineCountdown = DEADLINE_CHECK_INTERVAL;
+			checkDeadline();
+		}
+	}
+
+	/**
+	 * Sets this instance's memory quota.
+	 * While this instance is updated, the approximate amount of memory allocated for new or growing 
+	 * lists, maps, and buffers (by the script or the host functions it calls) is counted against this quota, 
+	 * and an allocation that would exceed it throws a {@link ScriptQuotaException} instead.
+	 * The count starts over when this instance is initialized. Memory that is freed is not subtracted.
+	 * @param memoryQuota the quota in bytes. 0 or less is no quota (and no counting).
+	 * @see #getAllocatedBytes()
+	 * @since [NOW]
+	 */
+	public void setMemoryQuota(long memoryQuota)
+	{
+		this.memoryQuota = memoryQuota;
+	}
+
+	/**
+	 * @return this instance's memory quota in bytes. 0 or less is no quota.
+	 * @see #setMemoryQuota(long)
+	 * @since [NOW]
+	 */
+	public long getMemoryQuota()
+	{
+		return memoryQuota;
+	}
+
+	/**
+	 * @return the approximate amount of bytes allocated for lists, maps, and buffers since this instance was initialized, 
+	 * 		if this instance has a memory quota.
+	 * @see #setMemoryQuota(long)
+	 * @since [NOW]
+	 */
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	/**
+	 * Counts an allocation against the memory quota of the instance that is running on the current thread, if any.
+	 * @param bytes the approximate amount of bytes allocated.
+	 * @throws ScriptQuotaException if the allocation would exceed the quota. 
+	 */
+	static void allocate(long bytes)
+	{
+		ScriptInstance instance;
+		if (bytes <= 0 || (instance = METERED_INSTANCE.get()) == null)
+			return;
+		long total = instance.allocatedBytes + bytes;
+		if (total > instance.memoryQuota)
+			throw new ScriptQuotaException("Script memory quota exceeded. Allocating "+bytes+" bytes with "+instance.allocatedBytes+" of "+instance.memoryQuota+" bytes used.");
+		instance.allocatedBytes = total;
+	}
+
+	// Makes this instance the one that allocations on this thread are counted against: itself if it has a quota, 
+	// or none if it does not (so that an instance called from a metered instance's host function is not counted against it).
+	// Returns the previous instance to restore afterward, or this instance if nothing needs to be restored.
+	private ScriptInstance startMetering()
+	{
+		ScriptInstance previous = METERED_INSTANCE.get();
+		if (memoryQuota > 0)
+		{
+			METERED_INSTANCE.set(this);
+			return previous;
+		}
+		if (previous == null)
+			return this;
+		METERED_INSTANCE.set(null);
+		return previous;
+	}
+
+	// Restores the instance that allocations on this thread are counted against.
+	private void stopMetering(ScriptInstance previous)
+	{
+		if (previous != this)
+			METERED_INSTANCE.set(previous);
+	}
+	
 	/**
 	 * Initializes the script with an entry point and parameters and calls {@link #update()} to execute it.
 	 * The return value for the entry point should still be on the stack.
@@ -276,7 +509,7 @@ public class ScriptInstance
 	public <T> T callAndReturnAs(Class<T> returnType, String entryName, Object ... parameters)
 	{
 		call(entryName, parameters);
-		ScriptValue sv = CACHEVALUE.get();
+		ScriptValue sv = getCommandRegister(0);
 		popStackValue(sv);
 		T out = sv.createForType(returnType);
 		sv.setNull();
@@ -298,6 +531,7 @@ public class ScriptInstance
 		this.waitType = null;
 		this.waitParameter = null;
 		this.scriptInstanceStack.reset();
+		this.allocatedBytes = 0L;
 		
 		Entry entry = script.getScriptEntry(entryName);
 		if (entry == null)
@@ -318,6 +552,145 @@ public class ScriptInstance
 			pushStackValue(null);
 	}
 
+	/**
+	 * Initializes the script with a resolved entry point, without parameters.
+	 * The parameters are then pushed onto the stack in order (for example, with {@link #pushLong(long)} 
+	 * or {@link #pushValue(ScriptValue)}), and the method {@link #update()} can be called afterward.
+	 * Exactly {@link EntryHandle#getParameterCount()} values should be pushed.
+	 * <p>Unlike {@link #initialize(String, Object...)}, this does not look up the entry or convert 
+	 * any parameters, so it is meant for calling the same entry repeatedly.
+	 * @param entry the entry handle.
+	 * @throws ScriptExecutionException if the entry handle is not from this instance's script.
+	 * @see Script#getEntryHandle(String)
+	 * @since [NOW]
+	 */
+	public void initialize(EntryHandle entry)
+	{
+		if (entry.getScript() != script)
+			throw new ScriptExecutionException("Entry point \""+entry.getName()+"\" is not from this instance's script.");
+
+		this.state = State.INIT;
+		this.waitType = null;
+		this.waitParameter = null;
+		this.scriptInstanceStack.reset();
+		this.allocatedBytes = 0L;
+		this.entryName = entry.getName();
+		pushFrame(entry.getIndex());
+	}
+
+	/**
+	 * Calls an entry point once per row of columnar parameters, and writes each call's return value to an output array.
+	 * For each row, the entry is initialized (see {@link #initialize(EntryHandle)}), each column's value for that row
+	 * is pushed as a parameter, in column order, and the script is run with {@link #update()}.
+	 * If there are fewer columns than parameters, nulls are pushed for the rest.
+	 * <p>Columns can be <code>boolean[]</code>, <code>int[]</code>, <code>long[]</code>, <code>double[]</code>, 
+	 * {@link ScriptValue}<code>[]</code>, or <code>Object[]</code> (values are converted as in {@link #pushStackValue(Object)}).
+	 * The output can be <code>boolean[]</code>, <code>long[]</code>, <code>double[]</code>, {@link ScriptValue}<code>[]</code>, 
+	 * or <code>Object[]</code> (values are converted as in {@link ScriptValue#asObject()}).
+	 * @param entry the entry handle.
+	 * @param start the first row (inclusive).
+	 * @param end the last row (exclusive).
+	 * @param results the output array for the return values, indexed by row.
+	 * @param columns the parameter columns, indexed by row.
+	 * @throws IllegalArgumentException if the row range is invalid, a column or the output is not a supported 
+	 * 		array type or is too short, or there are more columns than entry parameters.
+	 * @throws ScriptExecutionException if the entry handle is not from this instance's script, 
+	 * 		or a call waits or is suspended instead of ending.
+	 * @see Script#getEntryHandle(String)
+	 * @see ScriptInstanceFactory#callBatch(EntryHandle, int, Object, Object...)
+	 * @since [NOW]
+	 */
+	public void callBatch(EntryHandle entry, int start, int end, Object results, Object ... columns)
+	{
+		if (start < 0 || start > end)
+			throw new IllegalArgumentException("Bad row range: " + start + " to " + end);
+		if (columns.length > entry.getParameterCount())
+			throw new IllegalArgumentException("Too many columns for entry \""+entry.getName()+"\". Requires "+entry.getParameterCount()+", saw "+columns.length);
+		checkBatchArray(results, end, false);
+		for (int i = 0; i < columns.length; i++)
+			checkBatchArray(columns[i], end, true);
+		
+		ScriptValue value = getCommandRegister(0);
+		try
+		{
+			for (int row = start; row < end; row++)
+			{
+				initialize(entry);
+				for (int i = 0; i < columns.length; i++)
+					pushBatchValue(columns[i], row);
+				for (int i = columns.length; i < entry.getParameterCount(); i++)
+					scriptInstanceStack.pushStackReference();
+				update();
+				if (state != State.ENDED)
+					throw new ScriptExecutionException("Entry point \""+entry.getName()+"\" did not end in a batch call (state is "+state+").");
+				popStackValue(value);
+				setBatchResult(results, row, value);
+			}
+		}
+		finally
+		{
+			value.setNull();
+		}
+	}
+
+	// Checks if an object is a usable batch array of at least a length.
+	private static void checkBatchArray(Object array, int length, boolean column)
+	{
+		int arrayLength;
+		if (array instanceof boolean[])
+			arrayLength = ((boolean[])array).length;
+		else if (array instanceof int[] && column)
+			arrayLength = ((int[])array).length;
+		else if (array instanceof long[])
+			arrayLength = ((long[])array).length;
+		else if (array instanceof double[])
+			arrayLength = ((double[])array).length;
+		else if (array instanceof Object[])
+			arrayLength = ((Object[])array).length;
+		else
+			throw new IllegalArgumentException((column ? "Column" : "Output") + " is not a supported array type: " + (array != null ? array.getClass().getSimpleName() : "null"));
+		if (arrayLength < length)
+			throw new IllegalArgumentException((column ? "Column" : "Output") + " is too short. Needs "+length+", length is "+arrayLength);
+	}
+	
+	// Pushes a value from a batch column.
+	private void pushBatchValue(Object column, int row)
+	{
+		if (column instanceof double[])
+			pushDouble(((double[])column)[row]);
+		else if (column instanceof long[])
+			pushLong(((long[])column)[row]);
+		else if (column instanceof int[])
+			pushLong(((int[])column)[row]);
+		else if (column instanceof boolean[])
+			pushBoolean(((boolean[])column)[row]);
+		else if (column instanceof ScriptValue[])
+			pushValue(((ScriptValue[])column)[row]);
+		else
+			pushStackValue(((Object[])column)[row]);
+	}
+	
+	// Sets a value in a batch output.
+	private static void setBatchResult(Object results, int row, ScriptValue value)
+	{
+		if (results instanceof double[])
+			((double[])results)[row] = value.asDouble();
+		else if (results instanceof long[])
+			((long[])results)[row] = value.asLong();
+		else if (results instanceof boolean[])
+			((boolean[])results)[row] = value.asBoolean();
+		else if (results instanceof ScriptValue[])
+		{
+			ScriptValue[] out = (ScriptValue[])results;
+			if (out[row] == null)
+				out[row] = ScriptValue.create(value);
+			else
+				out[row].set(value);
+		}
+		else
+			((Object[])results)[row] = value.asObject();
+	}
+
 	/**
 	 * Initializes the script at an arbitrary label.
 	 * Use with caution - this is assuming manual setup of a script instance.
@@ -347,6 +720,7 @@ public class ScriptInstance
 		this.waitType = null;
 		this.waitParameter = null;
 		this.scriptInstanceStack.reset();
+		this.allocatedBytes = 0L;
 
 		if (index < 0 || index >= script.getCommandCount())
 			throw new ScriptExecutionException("Script index \""+index+"\" is out of bounds.");
@@ -357,44 +731,36 @@ public class ScriptInstance
 	/**
 	 * Makes a single command step in the script.
 	 * @return false if the script should halt, true to continue.
+	 * @since [NOW], this executes the script's packed program (see {@link Script#getProgram()}).
 	 */
 	public boolean step()
 	{
-		int index = getCurrentCommandIndex();
-		ScriptCommand command = script.getCommand(index);
-		setCurrentCommandIndex(index + 1);
-		if (command == null)
-		{
-			terminate();
-			return false;
-		}
-		else
-			return command.execute(this);
+		return script.getProgram().step(this, scriptInstanceStack);
 	}
 
 	/**
 	 * Executes the script.
 	 * Note that the script may stop, but not terminate.
 	 * @throws ScriptExecutionException if this instance is in {@link State#CREATED} state (init methods not called).
+	 * @since [NOW], this executes commands in batches through the script's program, rather than one {@link #step()} at a time.
 	 */
 	public void update()
 	{
-		switch (state)
+		switch (startUpdate())
 		{
-			case CREATED:
-				throw new ScriptExecutionException("Script not initialized.");
-			case INIT:
-				state = State.RUNNING;
-				// fall through.
 			case RUNNING:
 			{
 				// reset counter.
 				commandsExecuted = 0;
-				while (step())
+				checkDeadline();
+				ScriptInstance previous = startMetering();
+				try
+				{
+					updateBatched(script.getProgram());
+				}
+				finally
 				{
-					commandsExecuted++;
-					if (commandRunawayLimit > 0 && commandsExecuted > commandRunawayLimit)
-						throw new ScriptExecutionException("Script runaway triggered. Possible infinite loop. "+commandsExecuted+" commands executed.");
+					stopMetering(previous);
 				}
 				break;
 			}
@@ -402,18 +768,122 @@ public class ScriptInstance
 			case SUSPENDED:
 				break;
 			case WAITING:
-			{
-				if (waitHandler == null)
-					break;
-				if (!waitHandler.waitingScriptCanContinue(this, waitType, waitParameter))
-					waitHandler.waitingScriptUpdate(this, waitType, waitParameter);
+				updateWaiting();
 				break;
-			}
 			
 		}
 		
 	}
 	
+	/**
+	 * Executes the script for, at most, an amount of commands.
+	 * If the budget runs out before the script halts, the script is left in the {@link State#RUNNING} state, 
+	 * and the next call to this method (or {@link #update()}) resumes where it left off.
+	 * The runaway limit does not apply to budgeted updates, so this never throws an exception for 
+	 * a long-running script - that is the caller's responsibility.
+	 * <p>Apart from that, this behaves like {@link #update()}: suspended or ended scripts do nothing, 
+	 * and waiting scripts are handled by the wait handler.
+	 * @param maxCommands the maximum amount of commands to execute. 0 or less executes nothing.
+	 * @return the amount of commands executed in this update (not including a command that halted the script).
+	 * 		If this is equal to maxCommands, the budget ran out.
+	 * @throws ScriptExecutionException if this instance is in {@link State#CREATED} state (init methods not called).
+	 * @since [NOW]
+	 */
+	public int update(int maxCommands)
+	{
+		switch (startUpdate())
+		{
+			case RUNNING:
+			{
+				commandsExecuted = 0;
+				if (maxCommands <= 0)
+					break;
+				checkDeadline();
+				ScriptInstance previous = startMetering();
+				try
+				{
+					commandsExecuted = script.getProgram().run(this, scriptInstanceStack, maxCommands);
+				}
+				finally
+				{
+					stopMetering(previous);
+				}
+				return commandsExecuted;
+			}
+			case ENDED:
+			case SUSPENDED:
+				break;
+			case WAITING:
+				updateWaiting();
+				break;
+		}
+		return 0;
+	}
+	
+	// Checks the state before an update, starts an initialized script, and returns the state to update.
+	private State startUpdate()
+	{
+		if (state == State.CREATED)
+			throw new ScriptExecutionException("Script not initialized.");
+		if (state == State.INIT)
+			state = State.RUNNING;
+		return state;
+	}
+	
+	// Updates the waiting state.
+	private void updateWaiting()
+	{
+		if (resumeFuture())
+			return;
+		if (waitHandler == null)
+			return;
+		if (!waitHandler.waitingScriptCanContinue(this, waitType, waitParameter))
+			waitHandler.waitingScriptUpdate(this, waitType, waitParameter);
+	}
+	
+	// Executes the script in batches of commands, checking the runaway limit between batches.
+	private void updateBatched(ScriptProgram program)
+	{
+		if (commandRunawayLimit > 0 && commandRunawayLimit < Integer.MAX_VALUE)
+		{
+			commandsExecuted = program.run(this, scriptInstanceStack, commandRunawayLimit + 1);
+			if (commandsExecuted > commandRunawayLimit)
+				throw new ScriptExecutionException("Script runaway triggered. Possible infinite loop. "+commandsExecuted+" commands executed.");
+		}
+		else
+		{
+			// with no limit, a script can run more than Integer.MAX_VALUE commands, so the count saturates.
+			long total = commandsExecuted;
+			int executed;
+			do {
+				total += (executed = program.run(this, scriptInstanceStack, Integer.MAX_VALUE));
+			} while (executed == Integer.MAX_VALUE);
+			commandsExecuted = (int)Math.min(total, Integer.MAX_VALUE);
+		}
+	}
+	
+	/**
+	 * Gets the current wait type, if this instance is waiting.
+	 * @return the wait type, or null if not waiting.
+	 * @see #wait(Object, Object)
+	 * @since [NOW]
+	 */
+	public Object getWaitType()
+	{
+		return waitType;
+	}
+
+	/**
+	 * Gets the current wait parameter, if this instance is waiting.
+	 * @return the wait parameter, or null if not waiting.
+	 * @see #wait(Object, Object)
+	 * @since [NOW]
+	 */
+	public Object getWaitParameter()
+	{
+		return waitParameter;
+	}
+
 	/**
 	 * Sets the RUNNING state.
 	 * This clears a wait state, if currently waiting.
@@ -427,6 +897,68 @@ public class ScriptInstance
 		this.waitParameter = null;
 	}
 
+	/**
+	 * Sets the RUNNING state, and replaces the value on the top of the stack with a value.
+	 * If waiting was started by a host function, that value is the host function's return value.
+	 * If the stack is empty, the value is pushed.
+	 * This clears a wait state, if currently waiting.
+	 * Does not actually run anything - this just sets the script's state as "enabled" for a future call to {@link #update()}.
+	 * @param returnValue the value to set.
+	 * @see #update()
+	 * @since [NOW]
+	 */
+	public void resume(Object returnValue)
+	{
+		if (scriptInstanceStack.getCurrentValueStackDepth() >= 0)
+			scriptInstanceStack.popStackValue();
+		scriptInstanceStack.pushStackValue(returnValue);
+		resume();
+	}
+
+	/**
+	 * Sets the WAITING state, waiting on a future.
+	 * The future is the wait type, and there is no wait parameter.
+	 * <p>This is meant to be called from a host function that then halts the script:
+	 * when the future completes, the host function's return value is replaced with the future's result
+	 * (or an error, if it completed exceptionally), and the script is resumed.
+	 * Instances in a {@link ScriptScheduler} are resumed as soon as the future completes, and
+	 * other instances are resumed on the first {@link #update()} after the future completes,
+	 * before any wait handler is called.
+	 * @param future the future to wait on.
+	 * @throws NullPointerException if future is null.
+	 * @since [NOW]
+	 */
+	public void waitFor(CompletableFuture<?> future)
+	{
+		if (future == null)
+			throw new NullPointerException("future is null");
+		wait(future, null);
+	}
+
+	/**
+	 * Resumes this instance, if it is waiting on a future (see {@link #waitFor(CompletableFuture)}) that has completed.
+	 * @return true if resumed, false if not.
+	 */
+	boolean resumeFuture()
+	{
+		if (state != State.WAITING || !(waitType instanceof CompletableFuture))
+			return false;
+		CompletableFuture<?> future = (CompletableFuture<?>)waitType;
+		if (!future.isDone())
+			return false;
+		
+		Object value;
+		try {
+			value = future.join();
+		} catch (CompletionException e) {
+			value = e.getCause() != null ? e.getCause() : e;
+		} catch (CancellationException e) {
+			value = e;
+		}
+		resume(value);
+		return true;
+	}
+
 	/**
 	 * Sets the WAITING state and waiting parameters.
 	 * A future call to {@link #update()} afterward will attempt to re-check and update the waiting state.
@@ -440,6 +972,130 @@ public class ScriptInstance
 		this.waitParameter = waitParameter;
 	}
 
+	/**
+	 * Creates a copy of this instance, with a copy of its execution state, 
+	 * so that both can continue from the same point independently.
+	 * The new instance shares this instance's script, environment, wait handler, and settings, and gets
+	 * a new stack with the same depths and segmentation as this one's (see {@link ScriptInstanceStack#createEmptyCopy()}).
+	 * @return the new instance.
+	 * @see #fork(ScriptInstanceStack)
+	 * @since [NOW]
+	 */
+	public ScriptInstance fork()
+	{
+		return fork(scriptInstanceStack.createEmptyCopy());
+	}
+
+	/**
+	 * Creates a copy of this instance, with a copy of its execution state, 
+	 * so that both can continue from the same point independently.
+	 * The new instance shares this instance's script, environment, wait handler, and settings.
+	 * <p>Only the used parts of the stack are copied. Lists, maps, and buffers are copied, and values 
+	 * that shared a reference share the copied reference. Object references (and wait types and parameters) 
+	 * are shared, not copied, and registered closeables are not carried over - they stay with this instance.
+	 * @param stack the stack for the new instance (it is reset).
+	 * @return the new instance.
+	 * @throws IllegalArgumentException if stack is null or this instance's stack.
+	 * @throws ScriptStackException if this instance's state does not fit in the provided stack.
+	 * @since [NOW]
+	 */
+	public ScriptInstance fork(ScriptInstanceStack stack)
+	{
+		if (stack == scriptInstanceStack)
+			throw new IllegalArgumentException("stack is this instance's stack");
+		
+		ScriptInstance out = new ScriptInstance(script, stack, waitHandler, environment, commandRunawayLimit);
+		out.memoryQuota = memoryQuota;
+		out.allocatedBytes = allocatedBytes;
+		if (deadlineSet)
+			out.setDeadline(deadline);
+		stack.copyState(scriptInstanceStack, new ScriptValue.StateCopier());
+		out.state = state;
+		out.entryName = entryName;
+		out.waitType = waitType;
+		out.waitParameter = waitParameter;
+		return out;
+	}
+
+	/**
+	 * Writes this instance's execution state to an output stream, so that it can be restored later, 
+	 * possibly into a different instance, with {@link #restoreState(InputStream)}.
+	 * The state is the instance's script state, entry name, wait type and parameter, and its stack 
+	 * (activation frames, scopes, local variables, and values). The script, environment, and settings 
+	 * are not written, so the state must be restored into an instance of the same script.
+	 * <p>Lists, maps, and buffers are written by value, and values that shared a reference share 
+	 * a (new) reference when restored. Object references cannot be written, which includes iterators of 
+	 * <code>each</code> loops in progress and instances waiting on futures (see {@link #waitFor(CompletableFuture)}).
+	 * <p>This is meant for hibernating idle instances: once written, the instance can be reset or released, 
+	 * and its state read back in when it is needed again.
+	 * @param out the output stream to write to. It is not closed.
+	 * @throws IOException if a write error occurs.
+	 * @throws NotSerializableException if the state contains an object reference, or this instance has registered closeables.
+	 * @throws ScriptExecutionException if this instance is in {@link State#CREATED} state (init methods not called).
+	 * @since [NOW]
+	 */
+	public void saveState(OutputStream out) throws IOException
+	{
+		if (state == State.CREATED)
+			throw new ScriptExecutionException("Script not initialized.");
+		if (closeables != null && !closeables.isEmpty())
+			throw new NotSerializableException("Script instance has registered closeables.");
+		
+		DataOutputStream dataOut = new DataOutputStream(out);
+		ScriptValue.StateWriter writer = new ScriptValue.StateWriter(dataOut);
+		ScriptValue value = ScriptValue.create(null);
+		dataOut.writeInt(STATE_MAGIC);
+		dataOut.writeInt(script.getCommandCount());
+		dataOut.writeByte(state.ordinal());
+		writer.writeString(entryName);
+		value.set(waitType);
+		writer.write(value);
+		value.set(waitParameter);
+		writer.write(value);
+		scriptInstanceStack.writeState(writer, dataOut);
+		dataOut.flush();
+	}
+	
+	/**
+	 * Reads this instance's execution state from an input stream written by {@link #saveState(OutputStream)}.
+	 * This replaces this instance's current state and stack contents. Registered closeables are not closed.
+	 * <p>Wait types and parameters are restored as the objects their script values convert to 
+	 * (see {@link ScriptValue#asObject()}), so integers become longs, and so on.
+	 * @param in the input stream to read from. It is not closed.
+	 * @throws StreamCorruptedException if the state data is malformed, or does not fit in this instance's stack.
+	 * @throws IOException if a read error occurs.
+	 * @throws ScriptExecutionException if the state was not written by an instance of a script with the same amount of commands.
+	 * @since [NOW]
+	 */
+	public void restoreState(InputStream in) throws IOException
+	{
+		DataInputStream dataIn = new DataInputStream(in);
+		ScriptValue.StateReader reader = new ScriptValue.StateReader(dataIn);
+		ScriptValue value = ScriptValue.create(null);
+		if (dataIn.readInt() != STATE_MAGIC)
+			throw new StreamCorruptedException("Not a script instance state.");
+		int commandCount = dataIn.readInt();
+		if (commandCount != script.getCommandCount())
+			throw new ScriptExecutionException("Script instance state does not match this instance's script.");
+		int stateIndex = dataIn.readByte();
+		if (stateIndex < 0 || stateIndex >= STATES.length || STATES[stateIndex] == State.CREATED)
+			throw new StreamCorruptedException("Bad script state: " + stateIndex);
+
+		State state = STATES[stateIndex];
+		String entryName = reader.readString();
+		reader.read(value);
+		Object waitType = value.asObject();
+		reader.read(value);
+		Object waitParameter = value.asObject();
+		scriptInstanceStack.readState(reader, dataIn, commandCount);
+
+		this.state = state;
+		this.entryName = entryName;
+		this.waitType = waitType;
+		this.waitParameter = waitParameter;
+		this.commandsExecuted = 0;
+	}
+
 	/**
 	 * Sets the SUSPENDED state.
 	 * This clears a wait state, if currently waiting.
@@ -489,26 +1145,96 @@ public class ScriptInstance
 	/**
 	 * Gets a corresponding script value by name.
 	 * Only looks at the topmost stack scope.
+	 * If the name is a local variable of the current frame's function, entry, or scriptlet, its slot is read.
 	 * Changing the returned value does not change the value, unless it is a reference type
 	 * like a map or list.
 	 * @param name the variable name.
 	 * @param out the destination variable for the value.
 	 * @return true if a corresponding value was fetched into out, false if not. If false, out is set to the null value.
+	 * @since [NOW], this also looks up local variable slots by name.
+	 * @see Script#getLocalSlot(int, String)
 	 */
 	public boolean getValue(String name, ScriptValue out)
 	{
+		int slot;
+		if ((slot = getLocalSlot(name)) >= 0)
+			return scriptInstanceStack.getLocalValue(slot, out);
 		return scriptInstanceStack.getValue(name, out);
 	}
 
 	/**
 	 * Sets a corresponding script value by name.
+	 * If the name is a local variable of the current frame's function, entry, or scriptlet, its slot is set.
 	 * If the value does not exist, it is set on the topmost stack scope in the stack.
 	 * @param name the name of the variable.
 	 * @param value the value to set.
+	 * @since [NOW], this also looks up local variable slots by name.
+	 * @see Script#getLocalSlot(int, String)
 	 */
 	public void setValue(String name, ScriptValue value)
 	{
-		scriptInstanceStack.setValue(name, value);
+		int slot;
+		if ((slot = getLocalSlot(name)) >= 0)
+			scriptInstanceStack.setLocalValue(slot, value);
+		else
+			scriptInstanceStack.setValue(name, value);
+	}
+
+	/**
+	 * Gets a local variable value by its slot in the current activation frame.
+	 * Changing the returned value does not change the value, unless it is a reference type
+	 * like a map or list.
+	 * @param slot the local variable slot.
+	 * @param out the destination variable for the value.
+	 * @return true if a corresponding value was fetched into out, false if not. If false, out is set to the null value.
+	 * @since [NOW]
+	 */
+	public boolean getLocalValue(int slot, ScriptValue out)
+	{
+		return scriptInstanceStack.getLocalValue(slot, out);
+	}
+
+	/**
+	 * Sets a local variable value by its slot in the current activation frame.
+	 * @param <T> the value type.
+	 * @param slot the local variable slot.
+	 * @param value the value to set.
+	 * @since [NOW]
+	 */
+	public <T> void setLocalValue(int slot, T value)
+	{
+		scriptInstanceStack.setLocalValue(slot, value);
+	}
+
+	/**
+	 * Pushes a local variable value in the current activation frame onto the value stack.
+	 * @param slot the local variable slot.
+	 * @throws ScriptStackException if this call would breach the stack capacity. 
+	 * @since [NOW]
+	 */
+	public void pushLocalValue(int slot)
+	{
+		scriptInstanceStack.pushLocalValue(slot);
+	}
+
+	/**
+	 * Pops a value off the value stack into a local variable slot in the current activation frame.
+	 * @param slot the local variable slot.
+	 * @throws ScriptStackException if there's nothing on the stack when this is called. 
+	 * @since [NOW]
+	 */
+	public void popLocalValue(int slot)
+	{
+		scriptInstanceStack.popLocalValue(slot);
+	}
+
+	// Gets the local variable slot for a name in the current frame, or -1 if not a local variable.
+	private int getLocalSlot(String name)
+	{
+		int index;
+		if ((index = scriptInstanceStack.getFrameStartIndex()) < 0)
+			return -1;
+		return script.getLocalSlot(index, name);
 	}
 
 	/**
@@ -548,6 +1274,18 @@ public class ScriptInstance
 		scriptInstanceStack.pushFrame(nextCommandIndex);
 	}
 	
+	/**
+	 * Replaces the current activation frame (local scope and command index) with a new one, for tail calls.
+	 * @param nextCommandIndex the next command index.
+	 * @throws ScriptStackException if there is no current frame and this call would breach the stack capacity. 
+	 * @since [NOW]
+	 * @see ScriptInstanceStack#replaceFrame(int)
+	 */
+	public void replaceFrame(int nextCommandIndex)
+	{
+		scriptInstanceStack.replaceFrame(nextCommandIndex);
+	}
+	
 	/**
 	 * Pops an activation frame (local scope and command index).
 	 * @throws ScriptStackException if there's nothing on the stack when this is called. 
@@ -578,6 +1316,51 @@ public class ScriptInstance
 		scriptInstanceStack.pushStackValue(value);
 	}
 
+	/**
+	 * Pushes a boolean value onto the stack.
+	 * @param value the value to push.
+	 * @throws ScriptStackException if this call would breach the stack capacity. 
+	 * @since [NOW]
+	 */
+	public void pushBoolean(boolean value)
+	{
+		scriptInstanceStack.pushStackReference().set(value);
+	}
+
+	/**
+	 * Pushes an integer value onto the stack.
+	 * @param value the value to push.
+	 * @throws ScriptStackException if this call would breach the stack capacity. 
+	 * @since [NOW]
+	 */
+	public void pushLong(long value)
+	{
+		scriptInstanceStack.pushStackReference().set(value);
+	}
+
+	/**
+	 * Pushes a floating-point value onto the stack.
+	 * @param value the value to push.
+	 * @throws ScriptStackException if this call would breach the stack capacity. 
+	 * @since [NOW]
+	 */
+	public void pushDouble(double value)
+	{
+		scriptInstanceStack.pushStackReference().set(value);
+	}
+
+	/**
+	 * Pushes a copy of a script value onto the stack.
+	 * Reference types, like lists and maps, are not copied.
+	 * @param value the value to push.
+	 * @throws ScriptStackException if this call would breach the stack capacity. 
+	 * @since [NOW]
+	 */
+	public void pushValue(ScriptValue value)
+	{
+		scriptInstanceStack.pushStackReference().set(value);
+	}
+
 	/**
 	 * Pops a value off the stack.
 	 * @param out the output value.
@@ -11,6 +11,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
@@ -18,6 +19,7 @@ import java.util.Queue;
 
 import com.blackrook.rookscript.ScriptInstance.State;
 import com.blackrook.rookscript.compiler.ScriptReader;
+import com.blackrook.rookscript.compiler.ScriptReaderCache;
 import com.blackrook.rookscript.compiler.ScriptReaderIncluder;
 import com.blackrook.rookscript.compiler.ScriptReaderOptions;
 import com.blackrook.rookscript.exception.ScriptExecutionException;
@@ -52,6 +54,8 @@ public final class ScriptInstanceBuilder
 	private ScriptReaderIncluder readerIncluder;
 	/** The optional reader options. */
 	private ScriptReaderOptions readerOptions;
+	/** The optional compiled script cache. */
+	private ScriptReaderCache readerCache;
 	/** The script stack to use. */
 	private ScriptInstanceStackProvider stackProvider;
 	/** Resolvers in the global namespace. */
@@ -66,6 +70,8 @@ public final class ScriptInstanceBuilder
 	private ScriptEnvironment environment;
 	/** The script runaway limit. */
 	private int runawayLimit;
+	/** The memory quota in bytes. */
+	private long memoryQuota;
 
 	// Can't instantiate via new.
 	ScriptInstanceBuilder()
@@ -73,6 +79,7 @@ public final class ScriptInstanceBuilder
 		this.scriptProvider = null;
 		this.readerIncluder = null;
 		this.readerOptions = null;
+		this.readerCache = null;
 		this.stackProvider = null;
 		this.globalResolvers = new LinkedList<>();
 		this.namedResolvers = new HashMap<>();
@@ -80,6 +87,7 @@ public final class ScriptInstanceBuilder
 		this.waitHandler = null;
 		this.environment = null;
 		this.runawayLimit = ScriptInstance.DEFAULT_RUNAWAY_LIMIT;
+		this.memoryQuota = 0L;
 	}
 	
 	/**
@@ -91,6 +99,8 @@ public final class ScriptInstanceBuilder
 	public ScriptInstanceBuilder withSource(final String sourceData)
 	{
 		scriptProvider = (functionResolver, scopeResolver, includer, options)->{
+			if (readerCache != null)
+				return readerCache.read(ScriptReader.STREAMNAME_TEXT, sourceData, functionResolver, scopeResolver, includer, options);
 			return ScriptReader.read(sourceData, functionResolver, scopeResolver, includer, options);
 		};
 		return this;
@@ -106,6 +116,8 @@ public final class ScriptInstanceBuilder
 	public ScriptInstanceBuilder withSource(final String sourcePath, final String sourceData)
 	{
 		scriptProvider = (functionResolver, scopeResolver, includer, options)->{
+			if (readerCache != null)
+				return readerCache.read(sourcePath, sourceData, functionResolver, scopeResolver, includer, options);
 			return ScriptReader.read(sourcePath, sourceData, functionResolver, scopeResolver, includer, options);
 		};
 		return this;
@@ -120,6 +132,8 @@ public final class ScriptInstanceBuilder
 	public ScriptInstanceBuilder withSource(final File sourceFile)
 	{
 		scriptProvider = (functionResolver, scopeResolver, includer, options)->{
+			if (readerCache != null)
+				return readerCache.read(sourceFile, functionResolver, scopeResolver, includer, options);
 			return ScriptReader.read(sourceFile, functionResolver, scopeResolver, includer, options);
 		};
 		return this;
@@ -135,6 +149,8 @@ public final class ScriptInstanceBuilder
 	public ScriptInstanceBuilder withSource(final String streamPath, final InputStream sourceStream)
 	{
 		scriptProvider = (functionResolver, scopeResolver, includer, options)->{
+			if (readerCache != null)
+				return readerCache.read(streamPath, sourceStream, functionResolver, scopeResolver, includer, options);
 			return ScriptReader.read(streamPath, sourceStream, functionResolver, scopeResolver, includer, options);
 		};
 		return this;
@@ -150,11 +166,44 @@ public final class ScriptInstanceBuilder
 	public ScriptInstanceBuilder withSource(final String streamPath, final Reader sourceReader)
 	{
 		scriptProvider = (functionResolver, scopeResolver, includer, options)->{
+			if (readerCache != null)
+				return readerCache.read(streamPath, sourceReader, functionResolver, scopeResolver, includer, options);
 			return ScriptReader.read(streamPath, sourceReader, functionResolver, scopeResolver, includer, options);
 		};
 		return this;
 	}
 	
+	/**
+	 * Attaches a precompiled binary script to read on instantiation (see {@link ScriptBinary}). 
+	 * The file is memory-mapped and read directly, and is not compiled.
+	 * Replaces an existing script source, if set before.
+	 * @param binaryFile the binary script file.
+	 * @return the builder, for chained calls.
+	 * @since [NOW]
+	 */
+	public ScriptInstanceBuilder withBinarySource(final File binaryFile)
+	{
+		scriptProvider = (functionResolver, scopeResolver, includer, options)->{
+			return ScriptBinary.read(binaryFile, functionResolver, scopeResolver);
+		};
+		return this;
+	}
+	
+	/**
+	 * Attaches a precompiled binary script to read on instantiation (see {@link ScriptBinary}). 
+	 * Replaces an existing script source, if set before.
+	 * @param binaryData the binary script data (can be memory-mapped).
+	 * @return the builder, for chained calls.
+	 * @since [NOW]
+	 */
+	public ScriptInstanceBuilder withBinarySource(final ByteBuffer binaryData)
+	{
+		scriptProvider = (functionResolver, scopeResolver, includer, options)->{
+			return ScriptBinary.read(binaryData, functionResolver, scopeResolver);
+		};
+		return this;
+	}
+	
 	/**
 	 * Adds the optional reader includer to use for compiling code. 
 	 * @param includer the reader includer to use.
@@ -177,6 +226,19 @@ public final class ScriptInstanceBuilder
 		return this;
 	}
 	
+	/**
+	 * Adds the optional compiled script cache to use for compiling code from a source.
+	 * Scripts read through a cache are {@link Script#freeze() frozen}.
+	 * @param cache the cache to use, or null for no cache.
+	 * @return the builder, for chained calls.
+	 * @since [NOW]
+	 */
+	public ScriptInstanceBuilder usingReaderCache(ScriptReaderCache cache)
+	{
+		this.readerCache = cache;
+		return this;
+	}
+	
 	/**
 	 * Attaches the script used for this instance. 
 	 * Removes an existing script source, if set before.
@@ -206,6 +268,25 @@ public final class ScriptInstanceBuilder
 		return this;
 	}
 	
+	/**
+	 * Attaches a new segmented script instance stack used for this instance, which starts small and grows as needed.
+	 * Each instance created will create a new stack instance.
+	 * @param activationDepth the maximum activation stack depth.
+	 * @param valueStackDepth the maximum value stack depth.
+	 * @param segmentSize the amount of entries that the stacks grow by. 0 or less allocates everything up front.
+	 * @param shrinkOnReset if true, the stacks shrink back down to one segment when reset.
+	 * @return the builder, for chained calls.
+	 * @see ScriptInstanceStack#ScriptInstanceStack(int, int, int, boolean)
+	 * @since [NOW]
+	 */
+	public ScriptInstanceBuilder withScriptStack(final int activationDepth, final int valueStackDepth, final int segmentSize, final boolean shrinkOnReset)
+	{
+		this.stackProvider = ()->{
+			return new ScriptInstanceStack(activationDepth, valueStackDepth, segmentSize, shrinkOnReset);
+		};
+		return this;
+	}
+	
 	/**
 	 * Attaches a script instance stack for this instance. 
 	 * Each instance created will reuse the provided stack instance.
@@ -339,6 +420,20 @@ public final class ScriptInstanceBuilder
 		return this;
 	}
 	
+	/**
+	 * Sets the memory quota for the instance.
+	 * Each instance created will use this quota.
+	 * @param memoryQuota the quota in bytes. 0 or less is no quota.
+	 * @return the builder, for chained calls.
+	 * @see ScriptInstance#setMemoryQuota(long)
+	 * @since [NOW]
+	 */
+	public ScriptInstanceBuilder withMemoryQuota(long memoryQuota)
+	{
+		this.memoryQuota = memoryQuota;
+		return this;
+	}
+	
 	private void buildCheckProviders()
 	{
 		if (scriptProvider == null)
@@ -385,17 +480,23 @@ public final class ScriptInstanceBuilder
 		buildCheckProviders();
 		CompoundHostFunctionResolver resolver = buildHostFuctionResolver();
 		Script script = buildScript(resolver, scopeResolver);
+		script.bindHostFunctions();
 
 		ScriptInstanceStack stack = stackProvider.getStack();
-		return new ScriptInstance(script, stack, waitHandler, environment != null ? environment : ScriptEnvironment.create(), runawayLimit);
+		ScriptInstance out = new ScriptInstance(script, stack, waitHandler, environment != null ? environment : ScriptEnvironment.create(), runawayLimit);
+		out.setMemoryQuota(memoryQuota);
+		return out;
 	}
 
 	/**
 	 * Gets the instance built from the set components.
 	 * The script is compiled through this call. Any parsing errors are thrown as
 	 * ScriptBuilderException with the parser error as the cause.
-	 * @return a new ScriptInstance created from the characteristics set.
+	 * <p>The factory's instances share a {@link Script#freeze() frozen} script (see {@link ScriptInstanceFactory}).
+	 * A script set by {@link #withScript(Script)} is not changed.
+	 * @return a new ScriptInstanceFactory created from the characteristics set.
 	 * @throws BuilderException if the instance can't be built.
+	 * @since [NOW], the script is frozen or copied.
 	 */
 	public ScriptInstanceFactory createFactory() 
 	{
@@ -404,7 +505,10 @@ public final class ScriptInstanceBuilder
 		Script script = buildScript(resolver, scopeResolver);
 
 		ScriptInstanceStack stack = stackProvider.getStack();
-		return new ScriptInstanceFactory(script, stack.getActivationStackDepth(), stack.getValueStackDepth(), waitHandler, environment != null ? environment : ScriptEnvironment.create(), runawayLimit);
+		ScriptInstanceFactory out = new ScriptInstanceFactory(script, stack.getActivationStackDepth(), stack.getValueStackDepth(), waitHandler, environment != null ? environment : ScriptEnvironment.create(), runawayLimit);
+		out.setMemoryQuota(memoryQuota);
+		out.setStackSegmentation(stack.getSegmentSize(), stack.isShrinkOnReset());
+		return out;
 	}
 	
 	/**
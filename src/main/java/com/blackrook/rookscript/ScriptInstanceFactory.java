@@ -7,13 +7,27 @@
  ******************************************************************************/
 package com.blackrook.rookscript;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.blackrook.rookscript.Script.EntryHandle;
 
 /**
  * Factory class for assembling script instances.
  * This factory pools {@link ScriptInstanceStack}s, since creating and destroying them could be costly on the GC.
+ * <p>The pool is lock-free, and can be bounded (see {@link #setMaxPoolSize(int)}), pre-warmed (see {@link #prewarm(int)}),
+ * and can evict stacks that were idle for too long (see {@link #setIdleTimeout(long, TimeUnit)}).
+ * The most recently released stacks are reused first.
+ * <p>The factory's instances share its script and may be created on many threads, so the factory uses a 
+ * {@link Script#freeze() frozen} script: the provided script if it is already frozen, or a frozen copy of it if not 
+ * (the provided script is not changed, and changes made to it afterward do not affect the factory).
  * @author Matthew Tropiano
+ * @since [NOW], the stack pool is lock-free and bounded, and the script is frozen or copied.
  */
 public class ScriptInstanceFactory
 {
@@ -21,21 +35,47 @@ public class ScriptInstanceFactory
 	public static final int DEFAULT_STACK_DEPTH = 512;
 	public static final int DEFAULT_RUNAWAY_LIMIT = 1024 * 1024;
 	
+	/** Smallest amount of rows in a parallel batch partition. */
+	private static final int MIN_BATCH_GRANULARITY = 64;
+	/** Amount of parallel batch partitions per pool worker (for balancing). */
+	private static final int BATCH_PARTITIONS_PER_WORKER = 4;
+	
 	/** The script to use for each instance. */
 	private Script script;
 	/** New instance activation depth. */
 	private int activationDepth;
 	/** New instance Stack depth. */
 	private int stackDepth;
+	/** New instance stack segment size (0 or less is not segmented). */
+	private int segmentSize;
+	/** New instance stack shrink-on-reset. */
+	private boolean shrinkOnReset;
 	/** Wait handler to use with each instance. */
 	private ScriptWaitHandler waitHandler;
 	/** The script environment to use for each instance. */
 	private ScriptEnvironment environment;
 	/** The script runaway limit. */
 	private int runawayLimit;
+	/** The memory quota in bytes. */
+	private long memoryQuota;
 
-	/** Queue of available stacks. */
-	private final Queue<ScriptInstanceStack> availableStacks;
+	/** Available stacks, most recently released first. */
+	private final Deque<PooledStack> availableStacks;
+	/** Amount of available stacks. */
+	private final AtomicInteger availableCount;
+	/** Maximum amount of available stacks (0 or less is no limit). */
+	private volatile int maxPoolSize;
+	/** Idle timeout in nanoseconds (0 or less is no timeout). */
+	private volatile long idleTimeoutNanos;
+
+	/** Amount of stacks acquired from the pool. */
+	private final LongAdder hits;
+	/** Amount of stacks acquired that were not in the pool. */
+	private final LongAdder misses;
+	/** Amount of stacks created. */
+	private final LongAdder creations;
+	/** Amount of stacks evicted or discarded. */
+	private final LongAdder evictions;
 
 	/**
 	 * Creates a new instance factory, default depths.
@@ -95,32 +135,168 @@ public class ScriptInstanceFactory
 	 * @param waitHandler the wait handler to use for each instance.
 	 * @param environment the script environment to use for each instance.
 	 * @param runawayLimit the amount of commands to run before the endless loop protection triggers.
+	 * @since [NOW], a frozen copy of the script is used if it is not already frozen.
 	 */
 	public ScriptInstanceFactory(Script script, int activationDepth, int stackDepth, ScriptWaitHandler waitHandler, ScriptEnvironment environment, int runawayLimit)
 	{
-		this.script = script;
+		this.script = script.isFrozen() ? script : script.copy(script.getHostFunctionResolver(), script.getScopeResolver()).freeze();
 		this.activationDepth = activationDepth;
 		this.stackDepth = stackDepth;
+		this.segmentSize = 0;
+		this.shrinkOnReset = false;
 		this.waitHandler = waitHandler;
 		this.environment = environment;
 		this.runawayLimit = runawayLimit;
+		this.memoryQuota = 0L;
 		
-		this.availableStacks = new LinkedList<>();
+		this.availableStacks = new ConcurrentLinkedDeque<>();
+		this.availableCount = new AtomicInteger(0);
+		this.maxPoolSize = 0;
+		this.idleTimeoutNanos = 0L;
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.creations = new LongAdder();
+		this.evictions = new LongAdder();
+	}
+	
+	// Creates a new stack.
+	private ScriptInstanceStack createStack()
+	{
+		creations.increment();
+		return new ScriptInstanceStack(activationDepth, stackDepth, segmentSize, shrinkOnReset);
 	}
 	
 	// Creates or fetches an existing stack.
 	private ScriptInstanceStack acquireStack()
 	{
-		if (!availableStacks.isEmpty())
+		PooledStack pooled;
+		if ((pooled = availableStacks.pollFirst()) != null)
+		{
+			availableCount.decrementAndGet();
+			hits.increment();
+			return pooled.stack;
+		}
+		misses.increment();
+		return createStack();
+	}
+	
+	// Adds a stack to the pool, if there's room.
+	private boolean offerStack(ScriptInstanceStack stack)
+	{
+		int max = maxPoolSize;
+		if (max > 0 && availableCount.incrementAndGet() > max)
+		{
+			availableCount.decrementAndGet();
+			evictions.increment();
+			return false;
+		}
+		else if (max <= 0)
+		{
+			availableCount.incrementAndGet();
+		}
+		availableStacks.offerFirst(new PooledStack(stack, System.nanoTime()));
+		return true;
+	}
+	
+	/**
+	 * Sets whether new stacks are segmented, starting small and growing as needed, up to this factory's depths.
+	 * This does not affect stacks that were already created.
+	 * @param segmentSize the amount of entries that the stacks grow by. 0 or less allocates everything up front.
+	 * @param shrinkOnReset if true, the stacks shrink back down to one segment when reset (and released).
+	 * @see ScriptInstanceStack#ScriptInstanceStack(int, int, int, boolean)
+	 * @since [NOW]
+	 */
+	public void setStackSegmentation(int segmentSize, boolean shrinkOnReset)
+	{
+		this.segmentSize = segmentSize;
+		this.shrinkOnReset = shrinkOnReset;
+	}
+	
+	/**
+	 * Sets the maximum amount of unused stacks kept in the pool.
+	 * Released stacks past this amount are discarded.
+	 * By default, there is no limit.
+	 * @param maxPoolSize the maximum pool size. 0 or less is no limit.
+	 * @since [NOW]
+	 */
+	public void setMaxPoolSize(int maxPoolSize)
+	{
+		this.maxPoolSize = maxPoolSize;
+	}
+	
+	/**
+	 * @return the maximum amount of unused stacks kept in the pool. 0 or less is no limit.
+	 * @since [NOW]
+	 */
+	public int getMaxPoolSize()
+	{
+		return maxPoolSize;
+	}
+	
+	/**
+	 * Sets how long an unused stack can stay in the pool before it is evicted.
+	 * Idle stacks are evicted on release, or on a call to {@link #evictIdleStacks()}.
+	 * By default, there is no timeout.
+	 * @param timeout the timeout. 0 or less is no timeout.
+	 * @param unit the timeout unit.
+	 * @since [NOW]
+	 */
+	public void setIdleTimeout(long timeout, TimeUnit unit)
+	{
+		this.idleTimeoutNanos = unit.toNanos(timeout);
+	}
+	
+	/**
+	 * Fills the pool with new stacks, up to an amount of unused stacks (and the maximum pool size).
+	 * @param count the amount of unused stacks to have in the pool.
+	 * @return the amount of stacks created.
+	 * @since [NOW]
+	 */
+	public int prewarm(int count)
+	{
+		int out = 0;
+		while (availableCount.get() < count && offerStack(createStack()))
+			out++;
+		return out;
+	}
+	
+	/**
+	 * Evicts the stacks that have been unused for longer than the idle timeout.
+	 * Does nothing if there is no idle timeout.
+	 * @return the amount of stacks evicted.
+	 * @see #setIdleTimeout(long, TimeUnit)
+	 * @since [NOW]
+	 */
+	public int evictIdleStacks()
+	{
+		long timeout = idleTimeoutNanos;
+		if (timeout <= 0L)
+			return 0;
+		
+		int out = 0;
+		long now = System.nanoTime();
+		PooledStack pooled;
+		while ((pooled = availableStacks.peekLast()) != null && now - pooled.releaseNanos > timeout)
 		{
-			synchronized (availableStacks)
+			if (availableStacks.removeLastOccurrence(pooled))
 			{
-				if (!availableStacks.isEmpty())
-					return availableStacks.poll();
+				availableCount.decrementAndGet();
+				evictions.increment();
+				out++;
 			}
 		}
-		
-		return new ScriptInstanceStack(activationDepth, stackDepth);
+		return out;
+	}
+	
+	/**
+	 * Sets the memory quota for each new instance.
+	 * @param memoryQuota the quota in bytes. 0 or less is no quota.
+	 * @see ScriptInstance#setMemoryQuota(long)
+	 * @since [NOW]
+	 */
+	public void setMemoryQuota(long memoryQuota)
+	{
+		this.memoryQuota = memoryQuota;
 	}
 	
 	/**
@@ -129,7 +305,7 @@ public class ScriptInstanceFactory
 	 */
 	public ScriptInstance create()
 	{
-		return new ScriptInstance(script, acquireStack(), waitHandler, environment, runawayLimit);
+		return create(environment);
 	}
 	
 	/**
@@ -139,7 +315,70 @@ public class ScriptInstanceFactory
 	 */
 	public ScriptInstance create(ScriptEnvironment environment)
 	{
-		return new ScriptInstance(script, acquireStack(), waitHandler, environment, runawayLimit);
+		ScriptInstance out = new ScriptInstance(script, acquireStack(), waitHandler, environment, runawayLimit);
+		out.setMemoryQuota(memoryQuota);
+		return out;
+	}
+	
+	/**
+	 * Calls an entry point once per row of columnar parameters with one instance from this factory, 
+	 * and writes each call's return value to an output array.
+	 * @param entry the entry handle (from this factory's script).
+	 * @param count the amount of rows.
+	 * @param results the output array for the return values, indexed by row.
+	 * @param columns the parameter columns, indexed by row.
+	 * @see ScriptInstance#callBatch(EntryHandle, int, int, Object, Object...)
+	 * @since [NOW]
+	 */
+	public void callBatch(EntryHandle entry, int count, Object results, Object ... columns)
+	{
+		ScriptInstance instance = create();
+		try {
+			instance.callBatch(entry, 0, count, results, columns);
+		} finally {
+			release(instance);
+		}
+	}
+	
+	/**
+	 * Calls an entry point once per row of columnar parameters, partitioned across a fork-join pool,
+	 * and writes each call's return value to an output array.
+	 * Each partition of rows is run by one instance from this factory, so the outputs for different rows 
+	 * are written from different threads, and host functions called by the entry must be thread-safe.
+	 * This returns when all of the rows are done.
+	 * @param pool the pool to run the partitions on.
+	 * @param entry the entry handle (from this factory's script).
+	 * @param count the amount of rows.
+	 * @param results the output array for the return values, indexed by row.
+	 * @param columns the parameter columns, indexed by row.
+	 * @see ScriptInstance#callBatch(EntryHandle, int, int, Object, Object...)
+	 * @since [NOW]
+	 */
+	public void callBatch(ForkJoinPool pool, EntryHandle entry, int count, Object results, Object ... columns)
+	{
+		int granularity = Math.max(MIN_BATCH_GRANULARITY, count / (pool.getParallelism() * BATCH_PARTITIONS_PER_WORKER));
+		pool.invoke(new BatchTask(entry, 0, count, granularity, results, columns));
+	}
+	
+	/**
+	 * Creates a copy of an instance, with a copy of its execution state, using a pooled stack.
+	 * The instance should have been created by this factory (or use the same script).
+	 * @param instance the script instance to copy.
+	 * @return a new instance that continues from the same point as the provided one.
+	 * @throws com.blackrook.rookscript.exception.ScriptStackException if the instance's state does not fit in this factory's stacks.
+	 * @see ScriptInstance#fork(ScriptInstanceStack)
+	 * @since [NOW]
+	 */
+	public ScriptInstance fork(ScriptInstance instance)
+	{
+		ScriptInstanceStack stack = acquireStack();
+		try {
+			return instance.fork(stack);
+		} catch (RuntimeException e) {
+			stack.reset();
+			offerStack(stack);
+			throw e;
+		}
 	}
 	
 	/**
@@ -150,10 +389,8 @@ public class ScriptInstanceFactory
 	{
 		ScriptInstanceStack stack = instance.getScriptInstanceStack();
 		stack.reset();
-		synchronized (availableStacks)
-		{
-			availableStacks.add(stack);
-		}
+		offerStack(stack);
+		evictIdleStacks();
 	}
 	
 	/**
@@ -162,7 +399,102 @@ public class ScriptInstanceFactory
 	 */
 	public int getFreeStackCount()
 	{
-		return availableStacks.size();
+		return availableCount.get();
+	}
+	
+	/**
+	 * @return the amount of stacks acquired from the pool.
+	 * @since [NOW]
+	 */
+	public long getHitCount()
+	{
+		return hits.sum();
+	}
+	
+	/**
+	 * @return the amount of stacks acquired when the pool was empty.
+	 * @since [NOW]
+	 */
+	public long getMissCount()
+	{
+		return misses.sum();
+	}
+	
+	/**
+	 * @return the amount of stacks created (including pre-warmed stacks).
+	 * @since [NOW]
+	 */
+	public long getCreatedCount()
+	{
+		return creations.sum();
+	}
+	
+	/**
+	 * @return the amount of stacks evicted by the idle timeout, or discarded because the pool was full.
+	 * @since [NOW]
+	 */
+	public long getEvictedCount()
+	{
+		return evictions.sum();
+	}
+	
+	/**
+	 * A stack in the pool.
+	 */
+	private static class PooledStack
+	{
+		private final ScriptInstanceStack stack;
+		private final long releaseNanos;
+		
+		private PooledStack(ScriptInstanceStack stack, long releaseNanos)
+		{
+			this.stack = stack;
+			this.releaseNanos = releaseNanos;
+		}
+	}
+	
+	/**
+	 * A partition of a parallel batch call.
+	 */
+	private class BatchTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 5172964306541270184L;
+		
+		private final EntryHandle entry;
+		private final int start;
+		private final int end;
+		private final int granularity;
+		private final Object results;
+		private final Object[] columns;
+		
+		private BatchTask(EntryHandle entry, int start, int end, int granularity, Object results, Object[] columns)
+		{
+			this.entry = entry;
+			this.start = start;
+			this.end = end;
+			this.granularity = granularity;
+			this.results = results;
+			this.columns = columns;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (end - start > granularity)
+			{
+				int mid = (start + end) >>> 1;
+				invokeAll(new BatchTask(entry, start, mid, granularity, results, columns), new BatchTask(entry, mid, end, granularity, results, columns));
+			}
+			else
+			{
+				ScriptInstance instance = create();
+				try {
+					instance.callBatch(entry, start, end, results, columns);
+				} finally {
+					release(instance);
+				}
+			}
+		}
 	}
 	
 }
@@ -7,15 +7,38 @@
  ******************************************************************************/
 package com.blackrook.rookscript;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
 import com.blackrook.rookscript.exception.ScriptStackException;
-import com.blackrook.rookscript.resolvers.variable.DefaultVariableResolver;
+import com.blackrook.rookscript.resolvers.variable.AbstractVariableResolver;
+import com.blackrook.rookscript.resolvers.variable.LocalVariableResolver;
 
 /**
  * The combined stack for a script instance.
+ * <p>A stack can either allocate all of its values and scopes up front, or start small and grow in segments up 
+ * to its maximum depths as the script uses it (and optionally shrink back down on {@link #reset()}), which 
+ * keeps the memory used by many mostly-idle instances small.
+ * <p>Local variable slots are script values, so they are limited by the value stack depth.
  * @author Matthew Tropiano
+ * @since [NOW], stacks can grow in segments.
  */
 public class ScriptInstanceStack
 {
+	/** Default segment size for segmented stacks. */
+	public static final int DEFAULT_SEGMENT_SIZE = 16;
+
+	/** Maximum activation depth. */
+	private final int activationDepth;
+	/** Maximum value stack depth. */
+	private final int valueStackDepth;
+	/** Segment size (0 or less is not segmented). */
+	private final int segmentSize;
+	/** If true, shrink segmented stacks on reset. */
+	private final boolean shrinkOnReset;
+
 	/** Script value stack. */
 	private ScriptValue[] scriptValueStack;
 	/** Script value stack top. */
@@ -27,44 +50,122 @@ public class ScriptInstanceStack
 	private int activationStackTop;
 	
 	/** The local scope stack. */
-	private DefaultVariableResolver[] scopeStack;
+	private LocalVariableResolver[] scopeStack;
 	/** The local scope stack top. */
 	private int scopeStackTop;
 
+	/** The local variable slot stack. */
+	private ScriptValue[] localStack;
+	/** The local variable slot stack top (one past the highest slot used by the current frame). */
+	private int localStackTop;
+	/** The local variable slot base, per activation frame. */
+	private int[] localBaseStack;
+	/** The starting command index, per activation frame. */
+	private int[] frameIndexStack;
+
 	/**
-	 * Creates a new instance stack.
+	 * Creates a new instance stack that allocates everything up front.
 	 * @param activationDepth the activation depth to use (function calls).
 	 * @param valueStackDepth the stack depth to use (script values).
 	 */
 	public ScriptInstanceStack(int activationDepth, int valueStackDepth)
 	{
-		expandScopeStack(activationDepth);
-		expandActivationStack(activationDepth);
-		expandValueStack(valueStackDepth);
+		this(activationDepth, valueStackDepth, 0, false);
+	}
+	
+	/**
+	 * Creates a new instance stack.
+	 * If segmented, the activation, scope, and value stacks start at one segment, and grow a segment at 
+	 * a time as needed, up to the provided depths.
+	 * @param activationDepth the maximum activation depth to use (function calls).
+	 * @param valueStackDepth the maximum stack depth to use (script values).
+	 * @param segmentSize the segment size. 0 or less allocates everything up front.
+	 * @param shrinkOnReset if true, and segmented, the stacks are shrunk back down to one segment on {@link #reset()}.
+	 * @since [NOW]
+	 */
+	public ScriptInstanceStack(int activationDepth, int valueStackDepth, int segmentSize, boolean shrinkOnReset)
+	{
+		this.activationDepth = activationDepth;
+		this.valueStackDepth = valueStackDepth;
+		this.segmentSize = segmentSize;
+		this.shrinkOnReset = segmentSize > 0 && shrinkOnReset;
+		initStacks();
 		scriptValueStackTop = -1;
 		activationStackTop = -1;
 		scopeStackTop = -1;
+		localStackTop = 0;
 		reset();
 	}
 	
 	/**
 	 * Resets the stack.
+	 * @since [NOW], segmented stacks may shrink back down to one segment.
 	 */
 	public void reset()
 	{
 		clearLocalScopes();
+		clearLocalValues(0);
 		clearStackValues();
 		activationStackTop = -1;
+		if (shrinkOnReset && (scriptValueStack.length > segmentSize || activationStack.length > segmentSize || localStack.length > segmentSize))
+			initStacks();
+	}
+	
+	// Allocates the initial stacks.
+	private void initStacks()
+	{
+		scopeStack = null;
+		activationStack = null;
+		localBaseStack = null;
+		frameIndexStack = null;
+		scriptValueStack = null;
+		localStack = null;
+		if (segmentSize > 0)
+		{
+			expandScopeStack(Math.min(segmentSize, activationDepth));
+			expandActivationStack(Math.min(segmentSize, activationDepth));
+			expandValueStack(Math.min(segmentSize, valueStackDepth));
+			expandLocalStack(Math.min(segmentSize, valueStackDepth));
+		}
+		else
+		{
+			expandScopeStack(activationDepth);
+			expandActivationStack(activationDepth);
+			expandValueStack(valueStackDepth);
+			expandLocalStack(Math.min(activationDepth, valueStackDepth));
+		}
+	}
+	
+	// Gets the next capacity for a stack, or throws an overflow exception if it is at its maximum.
+	private int nextCapacity(int length, int maxDepth, String stackName)
+	{
+		if (segmentSize <= 0 || length >= maxDepth)
+			throw new ScriptStackException(stackName + " stack overflow");
+		return Math.min(length + segmentSize, maxDepth);
+	}
+	
+	// Gets the next capacity for the local slot stack so that it fits an index, or throws an overflow exception if it cannot.
+	// Unsegmented local slot stacks double in size instead.
+	private int nextLocalCapacity(int index)
+	{
+		if (index >= valueStackDepth)
+			throw new ScriptStackException("local stack overflow");
+		int step = segmentSize > 0 ? segmentSize : Math.max(localStack.length, 1);
+		return Math.min(Math.max(index + 1, localStack.length + step), valueStackDepth);
 	}
 	
 	// Expands the scope stack.
+	// Segmented stacks create the scopes as they are pushed.
 	private void expandScopeStack(int capacity)
 	{
-		DefaultVariableResolver[] newStack = new DefaultVariableResolver[capacity];
+		LocalVariableResolver[] newStack = new LocalVariableResolver[capacity];
 		if (scopeStack != null)
 			System.arraycopy(scopeStack, 0, newStack, 0, scopeStack.length);
-		for (int i = scriptValueStack != null ? scriptValueStack.length : 0; i < newStack.length; i++)
-			newStack[i] = new DefaultVariableResolver();
+		if (segmentSize <= 0)
+		{
+			for (int i = scopeStack != null ? scopeStack.length : 0; i < newStack.length; i++)
+				newStack[i] = new LocalVariableResolver();
+		}
 		scopeStack = newStack;
 	}
 	
@@ -77,6 +178,16 @@ public class ScriptInstanceStack
 		for (int i = activationStack != null ? activationStack.length : 0; i < newStack.length; i++)
 			newStack[i] = 0;
 		activationStack = newStack;
+		
+		int[] newBaseStack = new int[capacity];
+		if (localBaseStack != null)
+			System.arraycopy(localBaseStack, 0, newBaseStack, 0, localBaseStack.length);
+		localBaseStack = newBaseStack;
+
+		int[] newIndexStack = new int[capacity];
+		if (frameIndexStack != null)
+			System.arraycopy(frameIndexStack, 0, newIndexStack, 0, frameIndexStack.length);
+		frameIndexStack = newIndexStack;
 	}
 	
 	// Expands the value stack.
@@ -90,6 +201,36 @@ public class ScriptInstanceStack
 		scriptValueStack = newStack;
 	}
 	
+	// Expands the local variable slot stack.
+	private void expandLocalStack(int capacity)
+	{
+		ScriptValue[] newStack = new ScriptValue[capacity];
+		if (localStack != null)
+			System.arraycopy(localStack, 0, newStack, 0, localStack.length);
+		for (int i = localStack != null ? localStack.length : 0; i < newStack.length; i++)
+			newStack[i] = ScriptValue.create(null);
+		localStack = newStack;
+	}
+	
+	// Nullifies local variable slots from an index to the current top, and sets the top to that index.
+	private void clearLocalValues(int index)
+	{
+		for (int i = index; i < localStackTop; i++)
+			localStack[i].setNull();
+		localStackTop = index;
+	}
+	
+	// Gets the absolute local stack position of a slot in the current frame, expanding if necessary.
+	private int touchLocal(int slot)
+	{
+		int i = localBaseStack[activationStackTop] + slot;
+		if (i >= localStack.length)
+			expandLocalStack(nextLocalCapacity(i));
+		if (i >= localStackTop)
+			localStackTop = i + 1;
+		return i;
+	}
+	
 	/**
 	 * Clears the local scopes.
 	 */
@@ -107,8 +248,9 @@ public class ScriptInstanceStack
 	private void pushLocalScope()
 	{
 		if (scopeStackTop + 1 >= scopeStack.length)
-			throw new ScriptStackException("scope stack overflow");
-		scopeStackTop++;
+			expandScopeStack(nextCapacity(scopeStack.length, activationDepth, "scope"));
+		if (scopeStack[++scopeStackTop] == null)
+			scopeStack[scopeStackTop] = new LocalVariableResolver();
 	}
 
 	/**
@@ -131,7 +273,7 @@ public class ScriptInstanceStack
 	private void pushCommandIndex(int index)
 	{
 		if (activationStackTop + 1 >= activationStack.length)
-			throw new ScriptStackException("activation stack overflow");
+			expandActivationStack(nextCapacity(activationStack.length, activationDepth, "activation"));
 		activationStackTop++;
 		setCommandIndex(index);
 	}
@@ -162,7 +304,7 @@ public class ScriptInstanceStack
 	 */
 	public int getActivationStackDepth()
 	{
-		return activationStack.length;
+		return activationDepth;
 	}
 
 	/**
@@ -177,10 +319,46 @@ public class ScriptInstanceStack
 	 * @return the maximum depth of the value stack.
 	 */
 	public int getValueStackDepth()
+	{
+		return valueStackDepth;
+	}
+
+	/**
+	 * @return the segment size, or 0 or less if this stack is not segmented.
+	 * @since [NOW]
+	 */
+	public int getSegmentSize()
+	{
+		return segmentSize;
+	}
+
+	/**
+	 * @return true if this stack shrinks back down to one segment on {@link #reset()}.
+	 * @since [NOW]
+	 */
+	public boolean isShrinkOnReset()
+	{
+		return shrinkOnReset;
+	}
+
+	/**
+	 * @return the current capacity of the value stack (equal to {@link #getValueStackDepth()} if not segmented).
+	 * @since [NOW]
+	 */
+	public int getValueStackCapacity()
 	{
 		return scriptValueStack.length;
 	}
 
+	/**
+	 * @return the current capacity of the local variable slot stack.
+	 * @since [NOW]
+	 */
+	public int getLocalStackCapacity()
+	{
+		return localStack.length;
+	}
+
 	/**
 	 * Gets a corresponding script value by name.
 	 * Only looks at the topmost scope.
@@ -205,6 +383,103 @@ public class ScriptInstanceStack
 		scopeStack[scopeStackTop].setValue(name, value);
 	}
 
+	/**
+	 * Gets a local variable value by its slot in the current activation frame.
+	 * Changing the returned value reference does not change the slot value, unless the referenced object type like a map or list.
+	 * @param slot the local variable slot.
+	 * @param out the destination variable for the value.
+	 * @return true if the slot was ever set in the current frame, false if not. If false, out is set to the null value.
+	 * @since [NOW]
+	 */
+	public boolean getLocalValue(int slot, ScriptValue out)
+	{
+		int i = localBaseStack[activationStackTop] + slot;
+		if (i >= localStackTop)
+		{
+			out.setNull();
+			return false;
+		}
+		out.set(localStack[i]);
+		return true;
+	}
+
+	/**
+	 * Sets a local variable value by its slot in the current activation frame.
+	 * @param <T> the value type.
+	 * @param slot the local variable slot.
+	 * @param value the value to set.
+	 * @throws ScriptStackException if the slot would breach the local stack capacity. 
+	 * @since [NOW]
+	 */
+	public <T> void setLocalValue(int slot, T value)
+	{
+		int i = touchLocal(slot);
+		localStack[i].set(value);
+	}
+
+	/**
+	 * Pushes a local variable value in the current activation frame onto the value stack.
+	 * @param slot the local variable slot.
+	 * @throws ScriptStackException if this call would breach the stack capacity. 
+	 * @since [NOW]
+	 */
+	public void pushLocalValue(int slot)
+	{
+		if (scriptValueStackTop + 1 >= scriptValueStack.length)
+			expandValueStack(nextCapacity(scriptValueStack.length, valueStackDepth, "value"));
+		int i = localBaseStack[activationStackTop] + slot;
+		if (i < localStackTop)
+			scriptValueStack[++scriptValueStackTop].set(localStack[i]);
+		else
+			scriptValueStack[++scriptValueStackTop].setNull();
+	}
+
+	/**
+	 * Pops a value off the value stack into a local variable slot in the current activation frame.
+	 * @param slot the local variable slot.
+	 * @throws ScriptStackException if there's nothing on the stack when this is called, or the slot would breach the local stack capacity. 
+	 * @since [NOW]
+	 */
+	public void popLocalValue(int slot)
+	{
+		if (scriptValueStackTop < 0)
+			throw new ScriptStackException("value stack underflow");
+		int i = touchLocal(slot);
+		localStack[i].set(scriptValueStack[scriptValueStackTop]);
+		scriptValueStack[scriptValueStackTop--].setNull();
+	}
+
+	// Gets a local variable slot's value in the current activation frame, for setting.
+	ScriptValue getLocalReference(int slot)
+	{
+		int i = touchLocal(slot);
+		return localStack[i];
+	}
+
+	// Copies a local variable slot's value to another slot in the current activation frame.
+	void copyLocalValue(int sourceSlot, int slot)
+	{
+		int i = localBaseStack[activationStackTop] + sourceSlot;
+		boolean set = i < localStackTop;
+		int d = touchLocal(slot);
+		if (set)
+			localStack[d].set(localStack[i]);
+		else
+			localStack[d].setNull();
+	}
+
+	/**
+	 * Gets the command index that the current activation frame was started at.
+	 * This is the index passed to {@link #pushFrame(int)}, and is the key for the frame's local variable names.
+	 * @return the starting index, or -1 if there is no current frame.
+	 * @since [NOW]
+	 * @see Script#getLocalNames(int)
+	 */
+	public int getFrameStartIndex()
+	{
+		return activationStackTop >= 0 ? frameIndexStack[activationStackTop] : -1;
+	}
+
 	/**
 	 * @return the current command index.
 	 */
@@ -232,7 +507,8 @@ public class ScriptInstanceStack
 	}
 
 	/**
-	 * Pushes a new activation frame (local scope and command index).
+	 * Pushes a new activation frame (local scope, local variable slots, and command index).
+	 * The new frame's local variable slots start after the slots used by the previous frame.
 	 * @param nextCommandIndex the next command index.
 	 * @throws ScriptStackException if this call would breach the stack capacity. 
 	 */
@@ -240,18 +516,179 @@ public class ScriptInstanceStack
 	{
 		pushCommandIndex(nextCommandIndex);
 		pushLocalScope();
+		localBaseStack[activationStackTop] = localStackTop;
+		frameIndexStack[activationStackTop] = nextCommandIndex;
 	}
 	
 	/**
-	 * Pops an activation frame (local scope and command index).
+	 * Pops an activation frame (local scope, local variable slots, and command index).
 	 * @throws ScriptStackException if there's nothing on the stack when this is called. 
 	 */
 	public void popFrame()
 	{
+		if (activationStackTop >= 0)
+			clearLocalValues(localBaseStack[activationStackTop]);
 		popCommandIndex();
 		popLocalScope();
 	}
 	
+	/**
+	 * Replaces the current activation frame with a new one, for a call that is the last thing a frame does (tail call).
+	 * The current frame's local variable slots and local scope are cleared and reused, 
+	 * and the command index is set to the new index, so the activation stack does not grow.
+	 * If there is no current frame, this is the same as {@link #pushFrame(int)}.
+	 * @param nextCommandIndex the next command index.
+	 * @throws ScriptStackException if there is no current frame and this call would breach the stack capacity. 
+	 * @since [NOW]
+	 */
+	public void replaceFrame(int nextCommandIndex)
+	{
+		if (activationStackTop < 0)
+		{
+			pushFrame(nextCommandIndex);
+			return;
+		}
+		clearLocalValues(localBaseStack[activationStackTop]);
+		scopeStack[scopeStackTop].clear();
+		activationStack[activationStackTop] = nextCommandIndex;
+		frameIndexStack[activationStackTop] = nextCommandIndex;
+	}
+	
+	/**
+	 * Writes the contents of this stack (activation frames, scopes, local variables, and values).
+	 * @param writer the state writer, for values.
+	 * @param out the output to write to.
+	 * @throws IOException if a write error occurs, or a value cannot be written.
+	 * @see ScriptInstance#saveState(java.io.OutputStream)
+	 */
+	void writeState(ScriptValue.StateWriter writer, DataOutput out) throws IOException
+	{
+		out.writeInt(activationStackTop + 1);
+		for (int i = 0; i <= activationStackTop; i++)
+		{
+			out.writeInt(activationStack[i]);
+			out.writeInt(frameIndexStack[i]);
+			out.writeInt(localBaseStack[i]);
+			LocalVariableResolver scope = scopeStack[i];
+			out.writeInt(scope.size());
+			for (int s = 0; s < scope.size(); s++)
+			{
+				AbstractVariableResolver.Entry entry = scope.getEntry(s);
+				writer.writeString(entry.getName());
+				writer.write(entry.getValue());
+			}
+		}
+		out.writeInt(localStackTop);
+		for (int i = 0; i < localStackTop; i++)
+			writer.write(localStack[i]);
+		out.writeInt(scriptValueStackTop + 1);
+		for (int i = 0; i <= scriptValueStackTop; i++)
+			writer.write(scriptValueStack[i]);
+	}
+	
+	/**
+	 * Resets this stack and reads its contents from data written by {@link #writeState(ScriptValue.StateWriter, DataOutput)}.
+	 * @param reader the state reader, for values.
+	 * @param in the input to read from.
+	 * @param commandCount the amount of commands in the script (for checking command indices).
+	 * @throws StreamCorruptedException if the data is malformed, or its contents do not fit in this stack.
+	 * @throws IOException if a read error occurs.
+	 * @see ScriptInstance#restoreState(java.io.InputStream)
+	 */
+	void readState(ScriptValue.StateReader reader, DataInput in, int commandCount) throws IOException
+	{
+		reset();
+		ScriptValue value = ScriptValue.create(null);
+		int frames = in.readInt();
+		if (frames < 0 || frames > activationDepth)
+			throw new StreamCorruptedException("Bad activation frame count: " + frames);
+		int lastBase = 0;
+		for (int i = 0; i < frames; i++)
+		{
+			int commandIndex = in.readInt();
+			int frameIndex = in.readInt();
+			int localBase = in.readInt();
+			// each frame's local slots start at or after the previous frame's.
+			if (commandIndex < 0 || commandIndex > commandCount || frameIndex < 0 || frameIndex >= commandCount || localBase < lastBase || localBase > valueStackDepth)
+				throw new StreamCorruptedException("Bad activation frame.");
+			lastBase = localBase;
+			pushFrame(frameIndex);
+			setCommandIndex(commandIndex);
+			localBaseStack[activationStackTop] = localBase;
+			int scopeSize = in.readInt();
+			for (int s = 0; s < scopeSize; s++)
+			{
+				String name = reader.readString();
+				reader.read(value);
+				scopeStack[scopeStackTop].setValue(name, value);
+			}
+		}
+		value.setNull();
+		
+		int locals = in.readInt();
+		if (locals < lastBase || locals > valueStackDepth)
+			throw new StreamCorruptedException("Bad local variable count: " + locals);
+		if (locals > localStack.length)
+			expandLocalStack(locals);
+		for (int i = 0; i < locals; i++)
+			reader.read(localStack[i]);
+		localStackTop = locals;
+		
+		int values = in.readInt();
+		if (values < 0 || values > valueStackDepth)
+			throw new StreamCorruptedException("Bad value count: " + values);
+		for (int i = 0; i < values; i++)
+			reader.read(pushStackReference());
+	}
+	
+	/**
+	 * Creates a new, empty stack with the same depths and segmentation as this one.
+	 * @return a new stack.
+	 * @since [NOW]
+	 */
+	public ScriptInstanceStack createEmptyCopy()
+	{
+		return new ScriptInstanceStack(activationDepth, valueStackDepth, segmentSize, shrinkOnReset);
+	}
+	
+	/**
+	 * Resets this stack and copies the contents of another stack into it.
+	 * @param source the source stack.
+	 * @param copier the state copier, for values.
+	 * @throws ScriptStackException if the contents do not fit in this stack.
+	 * @see ScriptInstance#fork()
+	 */
+	void copyState(ScriptInstanceStack source, ScriptValue.StateCopier copier)
+	{
+		reset();
+		ScriptValue value = ScriptValue.create(null);
+		for (int i = 0; i <= source.activationStackTop; i++)
+		{
+			pushFrame(source.frameIndexStack[i]);
+			setCommandIndex(source.activationStack[i]);
+			localBaseStack[activationStackTop] = source.localBaseStack[i];
+			LocalVariableResolver scope = source.scopeStack[i];
+			for (int s = 0; s < scope.size(); s++)
+			{
+				AbstractVariableResolver.Entry entry = scope.getEntry(s);
+				copier.copy(entry.getValue(), value);
+				scopeStack[scopeStackTop].setValue(entry.getName(), value);
+			}
+		}
+		value.setNull();
+		
+		if (source.localStackTop > valueStackDepth)
+			throw new ScriptStackException("local stack overflow");
+		if (source.localStackTop > localStack.length)
+			expandLocalStack(source.localStackTop);
+		for (int i = 0; i < source.localStackTop; i++)
+			copier.copy(source.localStack[i], localStack[i]);
+		localStackTop = source.localStackTop;
+		
+		for (int i = 0; i <= source.scriptValueStackTop; i++)
+			copier.copy(source.scriptValueStack[i], pushStackReference());
+	}
+	
 	/**
 	 * Pushes a value onto the stack.
 	 * @param <T> the value type.
@@ -261,7 +698,7 @@ public class ScriptInstanceStack
 	public <T> void pushStackValue(T value)
 	{
 		if (scriptValueStackTop + 1 >= scriptValueStack.length)
-			throw new ScriptStackException("value stack overflow");
+			expandValueStack(nextCapacity(scriptValueStack.length, valueStackDepth, "value"));
 		scriptValueStack[++scriptValueStackTop].set(value);
 	}
 
@@ -278,6 +715,47 @@ public class ScriptInstanceStack
 		scriptValueStack[scriptValueStackTop--].setNull();
 	}
 
+	// Pushes a null value onto the stack and returns it, for setting.
+	ScriptValue pushStackReference()
+	{
+		if (scriptValueStackTop + 1 >= scriptValueStack.length)
+			expandValueStack(nextCapacity(scriptValueStack.length, valueStackDepth, "value"));
+		return scriptValueStack[++scriptValueStackTop];
+	}
+
+	// Gets a value on the stack by depth from the top, for reading or setting in place.
+	ScriptValue getStackReference(int depthFromTop)
+	{
+		int d = scriptValueStackTop - depthFromTop;
+		if (d < 0)
+			throw new ScriptStackException("value stack underflow");
+		return scriptValueStack[d];
+	}
+
+	// Pops a value off the stack as a boolean.
+	boolean popStackBoolean()
+	{
+		if (scriptValueStackTop < 0)
+			throw new ScriptStackException("value stack underflow");
+		ScriptValue sv = scriptValueStack[scriptValueStackTop--];
+		boolean out = sv.asBoolean();
+		sv.setNull();
+		return out;
+	}
+
+	// Pops two values off the stack and compares them (the top value is the second operand).
+	int popStackCompare()
+	{
+		if (scriptValueStackTop < 1)
+			throw new ScriptStackException("value stack underflow");
+		ScriptValue value2 = scriptValueStack[scriptValueStackTop--];
+		ScriptValue value1 = scriptValueStack[scriptValueStackTop--];
+		int out = value1.compareTo(value2);
+		value1.setNull();
+		value2.setNull();
+		return out;
+	}
+
 	/**
 	 * Pops a value off the stack, ignoring output.
 	 * @throws ScriptStackException if there's nothing on the stack when this is called. 
@@ -322,7 +800,7 @@ public class ScriptInstanceStack
 		int prevCount = this.scriptValueStackTop;
 		this.scriptValueStackTop = -1;
 		// nullify object refs (to reduce chance of memory leaks).
-		for (int i = 0; i < prevCount; i++)
+		for (int i = 0; i <= prevCount; i++)
 			scriptValueStack[i].setNull();
 	}
 
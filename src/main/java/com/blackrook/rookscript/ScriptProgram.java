@@ -0,0 +1,585 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.blackrook.rookscript.lang.ScriptCommand;
+
+/**
+ * The packed, executable form of a script's commands.
+ * Each command is packed into a fixed amount of ints (an opcode and two operands),
+ * and literal operands are kept in typed constant pools, so that the most common commands
+ * can be executed without any operand unboxing or virtual dispatch.
+ * Commands that have no packed form are executed through their {@link ScriptCommand} objects.
+ * <p>Programs are immutable, and are created from a script's current commands via {@link Script#getProgram()}.
+ * Command indices in a program are the same as the indices in its script.
+ * @author Matthew Tropiano
+ * @since [NOW]
+ */
+public final class ScriptProgram
+{
+	/** Amount of ints per packed command. */
+	private static final int STRIDE = 3;
+
+	private static final int OP_DELEGATE = 0;
+	private static final int OP_NOOP = 1;
+	private static final int OP_RETURN = 2;
+	private static final int OP_CALL = 3;
+	private static final int OP_JUMP = 4;
+	private static final int OP_JUMP_TRUE = 5;
+	private static final int OP_JUMP_FALSE = 6;
+	private static final int OP_PUSH_NULL = 7;
+	private static final int OP_PUSH_BOOLEAN = 8;
+	private static final int OP_PUSH_LONG = 9;
+	private static final int OP_PUSH_DOUBLE = 10;
+	private static final int OP_PUSH_STRING = 11;
+	private static final int OP_PUSH_LOCAL = 12;
+	private static final int OP_POP = 13;
+	private static final int OP_POP_LOCAL = 14;
+	private static final int OP_SET_LOCAL_BOOLEAN = 15;
+	private static final int OP_SET_LOCAL_LONG = 16;
+	private static final int OP_SET_LOCAL_DOUBLE = 17;
+	private static final int OP_SET_LOCAL_STRING = 18;
+	private static final int OP_SET_LOCAL_VARIABLE = 19;
+	private static final int OP_RETURN_NULL = 20;
+	private static final int OP_JUMP_NOT_LESS = 21;
+	private static final int OP_JUMP_NOT_LESS_OR_EQUAL = 22;
+	private static final int OP_JUMP_NOT_GREATER = 23;
+	private static final int OP_JUMP_NOT_GREATER_OR_EQUAL = 24;
+	private static final int OP_BRANCH_LESS = 25;
+	private static final int OP_BRANCH_LESS_OR_EQUAL = 26;
+	private static final int OP_BRANCH_GREATER = 27;
+	private static final int OP_BRANCH_GREATER_OR_EQUAL = 28;
+	private static final int OP_ADD = 29;
+	private static final int OP_SUBTRACT = 30;
+	private static final int OP_MULTIPLY = 31;
+	private static final int OP_ADD_LOCAL_LONG = 32;
+	private static final int OP_TAIL_CALL = 33;
+
+	/** Packed commands (opcode, operand, operand). */
+	private final int[] code;
+	/** Long constant pool. */
+	private final long[] longConstants;
+	/** Double constant pool. */
+	private final double[] doubleConstants;
+	/** String constant pool. */
+	private final String[] stringConstants;
+	/** The commands, for the commands that are not packed. */
+	private final ScriptCommand[] commands;
+	/** Amount of packed commands. */
+	private final int packedCount;
+
+	// Private constructor.
+	private ScriptProgram(int[] code, long[] longConstants, double[] doubleConstants, String[] stringConstants, ScriptCommand[] commands, int packedCount)
+	{
+		this.code = code;
+		this.longConstants = longConstants;
+		this.doubleConstants = doubleConstants;
+		this.stringConstants = stringConstants;
+		this.commands = commands;
+		this.packedCount = packedCount;
+	}
+
+	/**
+	 * Creates a new program from a script's current commands.
+	 * Label operands are resolved to command indices, whether or not the script is linked.
+	 * @param script the source script.
+	 * @return the new program.
+	 */
+	public static ScriptProgram create(Script script)
+	{
+		Builder builder = new Builder(script.getCommandCount());
+		for (int i = 0; i < script.getCommandCount(); i++)
+			builder.add(script, script.getCommand(i));
+		return builder.build();
+	}
+
+	/**
+	 * @return the amount of commands in this program.
+	 */
+	public int getCommandCount()
+	{
+		return commands.length;
+	}
+
+	/**
+	 * @return the amount of commands in this program that have a packed form.
+	 */
+	public int getPackedCommandCount()
+	{
+		return packedCount;
+	}
+
+	/**
+	 * @return the amount of constants in this program's constant pools.
+	 */
+	public int getConstantCount()
+	{
+		return longConstants.length + doubleConstants.length + stringConstants.length;
+	}
+
+	/**
+	 * Executes the command at the current command index of a script instance,
+	 * and advances the index (before execution).
+	 * If the index is out of bounds, the instance is terminated.
+	 * @param instance the script instance.
+	 * @param stack the script instance's stack.
+	 * @return false if the script should halt, true to continue.
+	 */
+	boolean step(ScriptInstance instance, ScriptInstanceStack stack)
+	{
+		return run(instance, stack, 1) == 1;
+	}
+
+	/**
+	 * Executes commands starting from the current command index of a script instance,
+	 * until a command halts the script, or until an amount of commands were executed.
+	 * The command index is advanced before each command's execution.
+	 * If the index is out of bounds, the instance is terminated.
+	 * <p>The commands are executed in one loop, so that the JIT can compile the dispatch,
+	 * the packed commands, and the fast paths for integer arithmetic as one unit.
+	 * Arithmetic on values that are not both integers is executed through its command.
+	 * <p>Every jump backward (and every script function call) counts toward the instance's next deadline check.
+	 * @param instance the script instance.
+	 * @param stack the script instance's stack.
+	 * @param maxCommands the maximum amount of commands to execute.
+	 * @return the amount of commands executed that did not halt the script.
+	 * 		If this is less than maxCommands, the script was halted.
+	 */
+	int run(ScriptInstance instance, ScriptInstanceStack stack, int maxCommands)
+	{
+		int executed = 0;
+		for (; executed < maxCommands; executed++)
+		{
+			int index = stack.getCommandIndex();
+			stack.setCommandIndex(index + 1);
+			if (index < 0 || index >= commands.length)
+			{
+				instance.terminate();
+				return executed;
+			}
+
+			int pc = index * STRIDE;
+			int operand1 = code[pc + 1];
+			int operand2 = code[pc + 2];
+			switch (code[pc])
+			{
+				default:
+				case OP_DELEGATE:
+					if (!commands[index].execute(instance))
+						return executed;
+					checkDelegatedJump(instance, stack, index);
+					break;
+				case OP_NOOP:
+					break;
+				case OP_RETURN:
+					if (stack.getCurrentActivationStackDepth() == 0)
+					{
+						stack.popFrame();
+						instance.terminate();
+						return executed;
+					}
+					stack.popFrame();
+					break;
+				case OP_CALL:
+					instance.checkBackEdge();
+					stack.pushFrame(operand1);
+					break;
+				case OP_TAIL_CALL:
+					instance.checkBackEdge();
+					stack.replaceFrame(operand1);
+					break;
+				case OP_JUMP:
+					jump(instance, stack, index, operand1);
+					break;
+				case OP_JUMP_TRUE:
+					if (stack.popStackBoolean())
+						jump(instance, stack, index, operand1);
+					break;
+				case OP_JUMP_FALSE:
+					if (!stack.popStackBoolean())
+						jump(instance, stack, index, operand1);
+					break;
+				case OP_PUSH_NULL:
+					stack.pushStackReference();
+					break;
+				case OP_PUSH_BOOLEAN:
+					stack.pushStackReference().set(operand1 != 0);
+					break;
+				case OP_PUSH_LONG:
+					stack.pushStackReference().set(longConstants[operand1]);
+					break;
+				case OP_PUSH_DOUBLE:
+					stack.pushStackReference().set(doubleConstants[operand1]);
+					break;
+				case OP_PUSH_STRING:
+					stack.pushStackReference().set(stringConstants[operand1]);
+					break;
+				case OP_PUSH_LOCAL:
+					stack.pushLocalValue(operand2);
+					break;
+				case OP_POP:
+					stack.popStackValue();
+					break;
+				case OP_POP_LOCAL:
+					stack.popLocalValue(operand2);
+					break;
+				case OP_SET_LOCAL_BOOLEAN:
+					stack.getLocalReference(operand2).set(operand1 != 0);
+					break;
+				case OP_SET_LOCAL_LONG:
+					stack.getLocalReference(operand2).set(longConstants[operand1]);
+					break;
+				case OP_SET_LOCAL_DOUBLE:
+					stack.getLocalReference(operand2).set(doubleConstants[operand1]);
+					break;
+				case OP_SET_LOCAL_STRING:
+					stack.getLocalReference(operand2).set(stringConstants[operand1]);
+					break;
+				case OP_SET_LOCAL_VARIABLE:
+					stack.copyLocalValue(operand1, operand2);
+					break;
+				case OP_RETURN_NULL:
+					stack.pushStackReference();
+					if (stack.getCurrentActivationStackDepth() == 0)
+					{
+						stack.popFrame();
+						instance.terminate();
+						return executed;
+					}
+					stack.popFrame();
+					break;
+				case OP_JUMP_NOT_LESS:
+					if (!(stack.popStackCompare() < 0))
+						jump(instance, stack, index, operand1);
+					break;
+				case OP_JUMP_NOT_LESS_OR_EQUAL:
+					if (!(stack.popStackCompare() <= 0))
+						jump(instance, stack, index, operand1);
+					break;
+				case OP_JUMP_NOT_GREATER:
+					if (!(stack.popStackCompare() > 0))
+						jump(instance, stack, index, operand1);
+					break;
+				case OP_JUMP_NOT_GREATER_OR_EQUAL:
+					if (!(stack.popStackCompare() >= 0))
+						jump(instance, stack, index, operand1);
+					break;
+				case OP_BRANCH_LESS:
+					jump(instance, stack, index, stack.popStackCompare() < 0 ? operand1 : operand2);
+					break;
+				case OP_BRANCH_LESS_OR_EQUAL:
+					jump(instance, stack, index, stack.popStackCompare() <= 0 ? operand1 : operand2);
+					break;
+				case OP_BRANCH_GREATER:
+					jump(instance, stack, index, stack.popStackCompare() > 0 ? operand1 : operand2);
+					break;
+				case OP_BRANCH_GREATER_OR_EQUAL:
+					jump(instance, stack, index, stack.popStackCompare() >= 0 ? operand1 : operand2);
+					break;
+				case OP_ADD:
+				{
+					ScriptValue value1 = stack.getStackReference(1);
+					ScriptValue value2 = stack.getStackReference(0);
+					if (value1.isInteger() && value2.isInteger())
+					{
+						value1.set(value1.asLong() + value2.asLong());
+						stack.popStackValue();
+					}
+					else if (!commands[index].execute(instance))
+						return executed;
+					break;
+				}
+				case OP_SUBTRACT:
+				{
+					ScriptValue value1 = stack.getStackReference(1);
+					ScriptValue value2 = stack.getStackReference(0);
+					if (value1.isInteger() && value2.isInteger())
+					{
+						value1.set(value1.asLong() - value2.asLong());
+						stack.popStackValue();
+					}
+					else if (!commands[index].execute(instance))
+						return executed;
+					break;
+				}
+				case OP_MULTIPLY:
+				{
+					ScriptValue value1 = stack.getStackReference(1);
+					ScriptValue value2 = stack.getStackReference(0);
+					if (value1.isInteger() && value2.isInteger())
+					{
+						value1.set(value1.asLong() * value2.asLong());
+						stack.popStackValue();
+					}
+					else if (!commands[index].execute(instance))
+						return executed;
+					break;
+				}
+				case OP_ADD_LOCAL_LONG:
+				{
+					ScriptValue local = stack.getLocalReference(operand2);
+					if (local.isInteger())
+						local.set(local.asLong() + longConstants[operand1]);
+					else if (!commands[index].execute(instance))
+						return executed;
+					break;
+				}
+			}
+		}
+		return executed;
+	}
+
+	// Jumps to a command index, counting toward the next deadline check if the jump goes backward.
+	private static void jump(ScriptInstance instance, ScriptInstanceStack stack, int index, int target)
+	{
+		if (target <= index)
+			instance.checkBackEdge();
+		stack.setCommandIndex(target);
+	}
+
+	// Counts toward the next deadline check if a command that was not packed moved the command index backward.
+	private static void checkDelegatedJump(ScriptInstance instance, ScriptInstanceStack stack, int index)
+	{
+		if (stack.getCurrentActivationStackDepth() >= 0 && stack.getCommandIndex() <= index)
+			instance.checkBackEdge();
+	}
+
+	/**
+	 * Program builder.
+	 */
+	private static class Builder
+	{
+		private int[] code;
+		private int commandCount;
+		private int packedCount;
+		private List<ScriptCommand> commands;
+		private Map<Long, Integer> longMap;
+		private Map<Double, Integer> doubleMap;
+		private Map<String, Integer> stringMap;
+
+		private Builder(int capacity)
+		{
+			this.code = new int[capacity * STRIDE];
+			this.commandCount = 0;
+			this.packedCount = 0;
+			this.commands = new ArrayList<>(capacity);
+			this.longMap = new HashMap<>();
+			this.doubleMap = new HashMap<>();
+			this.stringMap = new HashMap<>();
+		}
+
+		// Gets (or adds) a pooled constant index.
+		private static <T> int constant(Map<T, Integer> map, T value)
+		{
+			Integer out;
+			if ((out = map.get(value)) == null)
+				map.put(value, out = map.size());
+			return out;
+		}
+
+		// Adds a packed command, or a delegated command if opcode is OP_DELEGATE.
+		private void emit(ScriptCommand command, int opcode, int operand1, int operand2)
+		{
+			int pc = commandCount * STRIDE;
+			code[pc] = opcode;
+			code[pc + 1] = operand1;
+			code[pc + 2] = operand2;
+			commands.add(command);
+			commandCount++;
+			if (opcode != OP_DELEGATE)
+				packedCount++;
+		}
+
+		// Resolves a label operand's index (-1 if unresolvable).
+		private static int label(Script script, int index, Object label)
+		{
+			return index != ScriptCommand.UNRESOLVED_INDEX ? index : script.getIndex(String.valueOf(label));
+		}
+
+		// Gets the opcode for a jump command.
+		private static int jumpOpcode(ScriptCommand command)
+		{
+			switch (command.getType())
+			{
+				case CALL:
+					return OP_CALL;
+				case TAIL_CALL:
+					return OP_TAIL_CALL;
+				case JUMP:
+					return OP_JUMP;
+				case JUMP_TRUE:
+					return OP_JUMP_TRUE;
+				case JUMP_FALSE:
+					return OP_JUMP_FALSE;
+				case JUMP_NOT_LESS:
+					return OP_JUMP_NOT_LESS;
+				case JUMP_NOT_LESS_OR_EQUAL:
+					return OP_JUMP_NOT_LESS_OR_EQUAL;
+				case JUMP_NOT_GREATER:
+					return OP_JUMP_NOT_GREATER;
+				case JUMP_NOT_GREATER_OR_EQUAL:
+					return OP_JUMP_NOT_GREATER_OR_EQUAL;
+				case BRANCH_LESS:
+					return OP_BRANCH_LESS;
+				case BRANCH_LESS_OR_EQUAL:
+					return OP_BRANCH_LESS_OR_EQUAL;
+				case BRANCH_GREATER:
+					return OP_BRANCH_GREATER;
+				case BRANCH_GREATER_OR_EQUAL:
+					return OP_BRANCH_GREATER_OR_EQUAL;
+				default:
+					return OP_DELEGATE;
+			}
+		}
+
+		// Adds a literal-typed command (the opcodes for each type must be in boolean, long, double, string order).
+		private void emitLiteral(ScriptCommand command, int booleanOpcode, Object literal, int operand2)
+		{
+			if (literal instanceof Boolean)
+				emit(command, booleanOpcode, ((Boolean)literal) ? 1 : 0, operand2);
+			else if (literal instanceof Long)
+				emit(command, booleanOpcode + 1, constant(longMap, (Long)literal), operand2);
+			else if (literal instanceof Double)
+				emit(command, booleanOpcode + 2, constant(doubleMap, (Double)literal), operand2);
+			else if (literal instanceof String)
+				emit(command, booleanOpcode + 3, constant(stringMap, (String)literal), operand2);
+			else
+				emit(command, OP_DELEGATE, 0, 0);
+		}
+
+		private void add(Script script, ScriptCommand command)
+		{
+			Object operand1 = command.getOperand1();
+			Object operand2 = command.getOperand2();
+			switch (command.getType())
+			{
+				case NOOP:
+					emit(command, OP_NOOP, 0, 0);
+					break;
+				case RETURN:
+					emit(command, OP_RETURN, 0, 0);
+					break;
+				case RETURN_NULL:
+					emit(command, OP_RETURN_NULL, 0, 0);
+					break;
+				case CALL:
+				case TAIL_CALL:
+				case JUMP:
+				case JUMP_TRUE:
+				case JUMP_FALSE:
+				case JUMP_NOT_LESS:
+				case JUMP_NOT_LESS_OR_EQUAL:
+				case JUMP_NOT_GREATER:
+				case JUMP_NOT_GREATER_OR_EQUAL:
+				{
+					int index;
+					if ((index = label(script, command.getOperandIndex1(), operand1)) < 0)
+						emit(command, OP_DELEGATE, 0, 0);
+					else
+						emit(command, jumpOpcode(command), index, 0);
+					break;
+				}
+				case BRANCH_LESS:
+				case BRANCH_LESS_OR_EQUAL:
+				case BRANCH_GREATER:
+				case BRANCH_GREATER_OR_EQUAL:
+				{
+					int trueIndex, falseIndex;
+					if ((trueIndex = label(script, command.getOperandIndex1(), operand1)) < 0)
+						emit(command, OP_DELEGATE, 0, 0);
+					else if ((falseIndex = label(script, command.getOperandIndex2(), operand2)) < 0)
+						emit(command, OP_DELEGATE, 0, 0);
+					else
+						emit(command, jumpOpcode(command), trueIndex, falseIndex);
+					break;
+				}
+				case PUSH_NULL:
+					emit(command, OP_PUSH_NULL, 0, 0);
+					break;
+				case PUSH:
+					emitLiteral(command, OP_PUSH_BOOLEAN, operand1, 0);
+					break;
+				case POP:
+					emit(command, OP_POP, 0, 0);
+					break;
+				case PUSH_LOCAL:
+					if (operand2 instanceof Number)
+						emit(command, OP_PUSH_LOCAL, 0, ((Number)operand2).intValue());
+					else
+						emit(command, OP_DELEGATE, 0, 0);
+					break;
+				case POP_LOCAL:
+					if (operand2 instanceof Number)
+						emit(command, OP_POP_LOCAL, 0, ((Number)operand2).intValue());
+					else
+						emit(command, OP_DELEGATE, 0, 0);
+					break;
+				case SET_LOCAL:
+					if (operand2 instanceof Number)
+						emitLiteral(command, OP_SET_LOCAL_BOOLEAN, operand1, ((Number)operand2).intValue());
+					else
+						emit(command, OP_DELEGATE, 0, 0);
+					break;
+				case SET_LOCAL_VARIABLE:
+					if (operand1 instanceof Number && operand2 instanceof Number)
+						emit(command, OP_SET_LOCAL_VARIABLE, ((Number)operand1).intValue(), ((Number)operand2).intValue());
+					else
+						emit(command, OP_DELEGATE, 0, 0);
+					break;
+				case ADD:
+					emit(command, OP_ADD, 0, 0);
+					break;
+				case SUBTRACT:
+					emit(command, OP_SUBTRACT, 0, 0);
+					break;
+				case MULTIPLY:
+					emit(command, OP_MULTIPLY, 0, 0);
+					break;
+				case ADD_LOCAL:
+					if (operand1 instanceof Long && operand2 instanceof Number)
+						emit(command, OP_ADD_LOCAL_LONG, constant(longMap, (Long)operand1), ((Number)operand2).intValue());
+					else
+						emit(command, OP_DELEGATE, 0, 0);
+					break;
+				default:
+					emit(command, OP_DELEGATE, 0, 0);
+					break;
+			}
+		}
+
+		// Fills a pool array from a constant map.
+		private static <T> void fill(Map<T, Integer> map, PoolSetter<T> setter)
+		{
+			for (Map.Entry<T, Integer> entry : map.entrySet())
+				setter.set(entry.getValue(), entry.getKey());
+		}
+
+		private ScriptProgram build()
+		{
+			long[] longs = new long[longMap.size()];
+			double[] doubles = new double[doubleMap.size()];
+			String[] strings = new String[stringMap.size()];
+			fill(longMap, (i, v) -> longs[i] = v);
+			fill(doubleMap, (i, v) -> doubles[i] = v);
+			fill(stringMap, (i, v) -> strings[i] = v);
+			return new ScriptProgram(code, longs, doubles, strings, commands.toArray(new ScriptCommand[commandCount]), packedCount);
+		}
+	}
+
+	@FunctionalInterface
+	private interface PoolSetter<T>
+	{
+		void set(int index, T value);
+	}
+
+}
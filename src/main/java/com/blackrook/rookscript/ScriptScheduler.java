@@ -0,0 +1,666 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.blackrook.rookscript.ScriptInstance.State;
+
+/**
+ * A cooperative scheduler for running many script instances.
+ * <p>Instances are kept in a ready queue or a waiting set. Each call to {@link #tick()} updates every 
+ * instance in the ready queue once, with a command budget (see {@link ScriptInstance#update(int)}), 
+ * spread over a pool of worker threads that steal work from each other.
+ * After its update, an instance that is still running goes back into the ready queue,
+ * an instance that is waiting or suspended goes into the waiting set, and an ended instance is removed.
+ * <p>Waiting instances are NOT polled through their {@link ScriptWaitHandler} - they are
+ * woken up by events, via {@link #wake(ScriptInstance)}, {@link #wakeAll(Object)}, or {@link #signal(Object, Object)}, 
+ * which {@link ScriptInstance#resume()} them and move them back into the ready queue.
+ * Waiting instances are indexed by wait type, so waking them up only costs as much as the amount of instances woken.
+ * Instances waiting on a future (see {@link ScriptInstance#waitFor(java.util.concurrent.CompletableFuture)}) 
+ * are woken up on the first tick after the future completes (completing a future does not lock the scheduler).
+ * Wake-ups may be called from any thread, including from host functions during a tick.
+ * <p>Each instance is only ever updated by one thread at a time, but different instances
+ * are updated in parallel, so anything that they share (like scopes or host objects) must be thread-safe.
+ * @author Matthew Tropiano
+ * @since [NOW]
+ */
+public class ScriptScheduler implements AutoCloseable
+{
+	/** Default command budget per instance per tick. */
+	public static final int DEFAULT_COMMAND_BUDGET = 4096;
+	
+	/** Amount of instances per task before a task is split for other workers. */
+	private static final int TASK_GRANULARITY = 16;
+
+	/** The worker pool (null if updating on the calling thread). */
+	private final ForkJoinPool pool;
+	/** Command budget per instance per tick. */
+	private int commandBudget;
+	/** The listener for instance events (can be null). */
+	private Listener listener;
+
+	/** Instance entries. */
+	private final Map<ScriptInstance, Entry> entries;
+	/** Ready queue. */
+	private final Queue<Entry> ready;
+	/** Waiting set. */
+	private final Set<Entry> waiting;
+	/** Waiting entries, by wait type. */
+	private final Map<Object, Set<Entry>> waitingByType;
+	/** Entries whose futures completed, to be woken up on the next tick. */
+	private final Queue<Entry> completedFutures;
+
+	/** Total instance updates. */
+	private final LongAdder instanceUpdates;
+	/** Total commands executed. */
+	private final LongAdder commandsExecuted;
+	/** Total amount of ticks. */
+	private long ticks;
+	/** Total time spent in ticks, in nanoseconds. */
+	private long tickNanos;
+	
+	/**
+	 * Creates a new scheduler that updates instances on the thread that calls {@link #tick()}.
+	 */
+	public ScriptScheduler()
+	{
+		this(0, DEFAULT_COMMAND_BUDGET);
+	}
+	
+	/**
+	 * Creates a new scheduler.
+	 * @param workerCount the amount of worker threads. 0 or less updates instances on the thread that calls {@link #tick()}.
+	 * @param commandBudget the maximum amount of commands that each instance can execute per tick.
+	 * @throws IllegalArgumentException if commandBudget is 0 or less.
+	 */
+	public ScriptScheduler(int workerCount, int commandBudget)
+	{
+		this.pool = workerCount > 0 ? new ForkJoinPool(workerCount) : null;
+		setCommandBudget(commandBudget);
+		this.listener = null;
+		this.entries = new IdentityHashMap<>();
+		this.ready = new LinkedList<>();
+		this.waiting = new LinkedHashSet<>();
+		this.waitingByType = new HashMap<>();
+		this.completedFutures = new ConcurrentLinkedQueue<>();
+		this.instanceUpdates = new LongAdder();
+		this.commandsExecuted = new LongAdder();
+		this.ticks = 0L;
+		this.tickNanos = 0L;
+	}
+	
+	/**
+	 * Sets the maximum amount of commands that each instance can execute per tick.
+	 * @param commandBudget the command budget.
+	 * @throws IllegalArgumentException if commandBudget is 0 or less.
+	 */
+	public void setCommandBudget(int commandBudget)
+	{
+		if (commandBudget <= 0)
+			throw new IllegalArgumentException("command budget must be greater than 0");
+		this.commandBudget = commandBudget;
+	}
+	
+	/**
+	 * @return the maximum amount of commands that each instance can execute per tick.
+	 */
+	public int getCommandBudget()
+	{
+		return commandBudget;
+	}
+	
+	/**
+	 * Sets the listener for instance events.
+	 * Listener methods are called from worker threads.
+	 * @param listener the listener (can be null).
+	 */
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	}
+	
+	/**
+	 * Adds an instance to this scheduler.
+	 * Running instances are put in the ready queue, and waiting or suspended instances are put in the waiting set.
+	 * @param instance the instance to add.
+	 * @return true if added, false if it was already added or it has ended.
+	 * @throws IllegalArgumentException if the instance is not initialized.
+	 */
+	public boolean add(ScriptInstance instance)
+	{
+		if (instance.getState() == State.CREATED)
+			throw new IllegalArgumentException("Script instance is not initialized.");
+		synchronized (entries)
+		{
+			if (instance.getState() == State.ENDED || entries.containsKey(instance))
+				return false;
+			Entry entry = new Entry(instance);
+			entries.put(instance, entry);
+			enqueue(entry);
+			return true;
+		}
+	}
+	
+	/**
+	 * Removes an instance from this scheduler.
+	 * If the instance is being updated, it is removed after its update.
+	 * @param instance the instance to remove.
+	 * @return true if removed, false if it was not in this scheduler.
+	 */
+	public boolean remove(ScriptInstance instance)
+	{
+		synchronized (entries)
+		{
+			Entry entry;
+			if ((entry = entries.remove(instance)) == null)
+				return false;
+			entry.removed = true;
+			if (!removeWaiting(entry))
+				ready.remove(entry);
+			return true;
+		}
+	}
+	
+	/**
+	 * Wakes up a waiting or suspended instance: it is resumed and moved to the ready queue.
+	 * If the instance is being updated, it is woken up after its update, if it halted.
+	 * @param instance the instance to wake.
+	 * @return true if the instance was woken up (or will be), false if it is not in this scheduler or not waiting.
+	 */
+	public boolean wake(ScriptInstance instance)
+	{
+		synchronized (entries)
+		{
+			Entry entry;
+			if ((entry = entries.get(instance)) == null)
+				return false;
+			return wake(entry);
+		}
+	}
+	
+	/**
+	 * Wakes up all waiting instances that are waiting on a wait type.
+	 * @param waitType the wait type (compared with {@link Object#equals(Object)} and {@link Object#hashCode()}).
+	 * @return the amount of instances woken up.
+	 * @see ScriptInstance#getWaitType()
+	 */
+	public int wakeAll(Object waitType)
+	{
+		return wakeAll(waitType, false, null);
+	}
+	
+	/**
+	 * Wakes up all waiting instances that are waiting on a signal key (their wait type),
+	 * and sets the return value of the host function that started each wait.
+	 * @param signalKey the signal key (compared with {@link Object#equals(Object)} and {@link Object#hashCode()}).
+	 * @param value the value to set on each instance (see {@link ScriptInstance#resume(Object)}).
+	 * @return the amount of instances woken up.
+	 * @see ScriptInstance#wait(Object, Object)
+	 * @since [NOW]
+	 */
+	public int signal(Object signalKey, Object value)
+	{
+		return wakeAll(signalKey, true, value);
+	}
+	
+	/**
+	 * Updates every instance in the ready queue once, and waits for all of them to finish.
+	 * Instances added or woken up during the tick are updated in the next tick.
+	 * Instances whose futures completed since the last tick are woken up first.
+	 * @return the amount of instances updated.
+	 */
+	public int tick()
+	{
+		long start = System.nanoTime();
+		List<Entry> tickEntries;
+		synchronized (entries)
+		{
+			wakeCompletedFutures();
+			tickEntries = new ArrayList<>(ready);
+			ready.clear();
+			for (int i = 0; i < tickEntries.size(); i++)
+				tickEntries.get(i).running = true;
+		}
+		
+		if (!tickEntries.isEmpty())
+		{
+			UpdateTask task = new UpdateTask(tickEntries, 0, tickEntries.size());
+			if (pool != null)
+				pool.invoke(task);
+			else
+				task.compute();
+		}
+		
+		synchronized (entries)
+		{
+			ticks++;
+			tickNanos += System.nanoTime() - start;
+		}
+		return tickEntries.size();
+	}
+
+	/**
+	 * @return the amount of instances in this scheduler.
+	 */
+	public int getInstanceCount()
+	{
+		synchronized (entries)
+		{
+			return entries.size();
+		}
+	}
+	
+	/**
+	 * @return the amount of instances in the ready queue.
+	 */
+	public int getReadyCount()
+	{
+		synchronized (entries)
+		{
+			wakeCompletedFutures();
+			return ready.size();
+		}
+	}
+	
+	/**
+	 * @return the amount of instances in the waiting set.
+	 */
+	public int getWaitingCount()
+	{
+		synchronized (entries)
+		{
+			wakeCompletedFutures();
+			return waiting.size();
+		}
+	}
+	
+	/**
+	 * @return the total amount of ticks.
+	 */
+	public long getTickCount()
+	{
+		synchronized (entries)
+		{
+			return ticks;
+		}
+	}
+	
+	/**
+	 * @return the total amount of instance updates over all ticks.
+	 */
+	public long getInstanceUpdateCount()
+	{
+		return instanceUpdates.sum();
+	}
+	
+	/**
+	 * @return the total amount of commands executed over all ticks.
+	 */
+	public long getCommandCount()
+	{
+		return commandsExecuted.sum();
+	}
+	
+	/**
+	 * @return the average amount of instance updates per second spent in ticks.
+	 */
+	public double getInstancesPerSecond()
+	{
+		return perSecond(instanceUpdates.sum());
+	}
+	
+	/**
+	 * @return the average amount of commands executed per second spent in ticks.
+	 */
+	public double getCommandsPerSecond()
+	{
+		return perSecond(commandsExecuted.sum());
+	}
+	
+	/**
+	 * Resets the throughput counters.
+	 */
+	public void resetCounters()
+	{
+		synchronized (entries)
+		{
+			ticks = 0L;
+			tickNanos = 0L;
+		}
+		instanceUpdates.reset();
+		commandsExecuted.reset();
+	}
+	
+	/**
+	 * Shuts down the worker threads, if any.
+	 */
+	@Override
+	public void close()
+	{
+		if (pool != null)
+			pool.shutdown();
+	}
+	
+	// Gets an amount per second of tick time.
+	private double perSecond(long amount)
+	{
+		long nanos;
+		synchronized (entries)
+		{
+			nanos = tickNanos;
+		}
+		return nanos > 0L ? amount * 1e9 / nanos : 0.0;
+	}
+	
+	// Puts an entry in the ready queue or waiting set, based on its instance state (must be called in a synchronized block).
+	private void enqueue(Entry entry)
+	{
+		switch (entry.instance.getState())
+		{
+			default:
+				ready.add(entry);
+				break;
+			case WAITING:
+			{
+				Object waitType = entry.instance.getWaitType();
+				waiting.add(entry);
+				if (waitType instanceof CompletableFuture)
+				{
+					CompletableFuture<?> future = (CompletableFuture<?>)waitType;
+					if (future.isDone())
+						wake(entry);
+					else if (future != entry.future)
+					{
+						entry.future = future;
+						future.whenComplete((result, exception) -> completedFutures.add(entry));
+					}
+				}
+				else
+				{
+					indexWaiting(entry);
+				}
+				break;
+			}
+			case SUSPENDED:
+				waiting.add(entry);
+				break;
+		}
+	}
+
+	// Adds a waiting entry to the wait type index, if it is waiting on a wait type (must be called in a synchronized block).
+	private void indexWaiting(Entry entry)
+	{
+		Object waitType;
+		if (entry.instance.getState() == State.WAITING && (waitType = entry.instance.getWaitType()) != null)
+		{
+			entry.waitKey = waitType;
+			waitingByType.computeIfAbsent(waitType, (k) -> new LinkedHashSet<>()).add(entry);
+		}
+	}
+
+	// Removes an entry from the waiting set and its wait type index (must be called in a synchronized block).
+	private boolean removeWaiting(Entry entry)
+	{
+		if (!waiting.remove(entry))
+			return false;
+		Object waitKey;
+		if ((waitKey = entry.waitKey) != null)
+		{
+			Set<Entry> typeEntries = waitingByType.get(waitKey);
+			if (typeEntries != null && typeEntries.remove(entry) && typeEntries.isEmpty())
+				waitingByType.remove(waitKey);
+			entry.waitKey = null;
+		}
+		return true;
+	}
+
+	// Wakes up all waiting entries on a wait type.
+	private int wakeAll(Object waitType, boolean setValue, Object value)
+	{
+		int out = 0;
+		synchronized (entries)
+		{
+			Set<Entry> typeEntries;
+			if ((typeEntries = waitingByType.remove(waitType)) == null)
+				return 0;
+			for (Entry entry : typeEntries)
+			{
+				ScriptInstance instance = entry.instance;
+				entry.waitKey = null;
+				// the instance may have been resumed or changed by something else while it was in the waiting set.
+				if (instance.getState() == State.WAITING && waitType.equals(instance.getWaitType()))
+				{
+					waiting.remove(entry);
+					if (setValue)
+						instance.resume(value);
+					else
+						instance.resume();
+					ready.add(entry);
+					out++;
+				}
+				else
+				{
+					indexWaiting(entry);
+				}
+			}
+		}
+		return out;
+	}
+	
+	// Wakes an entry up (must be called in a synchronized block).
+	private boolean wake(Entry entry)
+	{
+		if (entry.running)
+		{
+			entry.wakePending = true;
+			return true;
+		}
+		if (!removeWaiting(entry))
+			return false;
+		if (!entry.instance.resumeFuture())
+			entry.instance.resume();
+		ready.add(entry);
+		return true;
+	}
+	
+	// Wakes up entries whose futures completed, if they are still waiting on them (must be called in a synchronized block).
+	// Entries that are being updated are checked for completed futures after their update.
+	private void wakeCompletedFutures()
+	{
+		Entry entry;
+		while ((entry = completedFutures.poll()) != null)
+		{
+			Object waitType = entry.instance.getWaitType();
+			if (!entry.removed && !entry.running && waitType == entry.future && entry.future.isDone())
+				wake(entry);
+		}
+	}
+	
+	// Updates a single entry on a worker.
+	// If the update throws an Error, the entry is still released (and requeued, if it did not end) before it is rethrown.
+	private void update(Entry entry)
+	{
+		ScriptInstance instance = entry.instance;
+		RuntimeException error = null;
+		boolean ended = false;
+		try
+		{
+			int executed = instance.update(commandBudget);
+			instanceUpdates.increment();
+			commandsExecuted.add(executed);
+		}
+		catch (RuntimeException e)
+		{
+			error = e;
+			instance.terminate();
+		}
+		finally
+		{
+			synchronized (entries)
+			{
+				entry.running = false;
+				if (!entry.removed)
+				{
+					if (error != null || (ended = instance.getState() == State.ENDED))
+					{
+						entries.remove(instance);
+					}
+					else
+					{
+						enqueue(entry);
+						if (entry.wakePending)
+						{
+							entry.wakePending = false;
+							wake(entry);
+						}
+					}
+				}
+			}
+		}
+		
+		Listener l;
+		if ((l = listener) == null)
+			return;
+		if (error != null)
+			l.onError(instance, error);
+		else if (ended)
+			l.onEnd(instance);
+	}
+	
+	/**
+	 * A listener for scheduled instance events.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called when an instance has ended and was removed from the scheduler.
+		 * @param instance the instance.
+		 */
+		default void onEnd(ScriptInstance instance)
+		{
+			// Do nothing.
+		}
+		
+		/**
+		 * Called when an instance threw an exception during its update.
+		 * The instance is terminated and removed from the scheduler.
+		 * @param instance the instance.
+		 * @param exception the exception thrown.
+		 */
+		default void onError(ScriptInstance instance, RuntimeException exception)
+		{
+			// Do nothing.
+		}
+	}
+	
+	/**
+	 * A scheduled instance entry.
+	 */
+	private static class Entry
+	{
+		private final ScriptInstance instance;
+		private boolean running;
+		private boolean wakePending;
+		private boolean removed;
+		private CompletableFuture<?> future;
+		private Object waitKey;
+		
+		private Entry(ScriptInstance instance)
+		{
+			this.instance = instance;
+			this.running = false;
+			this.wakePending = false;
+			this.removed = false;
+			this.future = null;
+			this.waitKey = null;
+		}
+	}
+
+	/**
+	 * A task that updates a range of entries, and splits it for idle workers to steal.
+	 */
+	private class UpdateTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = -8245071207934163284L;
+		
+		private final List<Entry> tickEntries;
+		private final int start;
+		private final int end;
+		
+		private UpdateTask(List<Entry> tickEntries, int start, int end)
+		{
+			this.tickEntries = tickEntries;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (pool != null && end - start > TASK_GRANULARITY)
+			{
+				int mid = (start + end) >>> 1;
+				UpdateTask right = new UpdateTask(tickEntries, mid, end);
+				right.fork();
+				// always wait for the other half, so that every entry is updated before the tick ends.
+				Error error = null;
+				try {
+					new UpdateTask(tickEntries, start, mid).compute();
+				} catch (Error e) {
+					error = e;
+				}
+				try {
+					right.join();
+				} catch (Error e) {
+					error = addError(error, e);
+				}
+				if (error != null)
+					throw error;
+			}
+			else
+			{
+				// keep updating the other entries if one throws an Error, then rethrow it.
+				Error error = null;
+				for (int i = start; i < end; i++)
+				{
+					try {
+						update(tickEntries.get(i));
+					} catch (Error e) {
+						error = addError(error, e);
+					}
+				}
+				if (error != null)
+					throw error;
+			}
+		}
+		
+		// Adds an error to the first error thrown, if any, and returns the first error.
+		private Error addError(Error first, Error error)
+		{
+			if (first == null)
+				return error;
+			first.addSuppressed(error);
+			return first;
+		}
+	}
+	
+}
@@ -12,15 +12,20 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.NotSerializableException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.StreamCorruptedException;
 import java.lang.reflect.Array;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +51,22 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<Object[]> OBJECTARRAY1 = ThreadLocal.withInitial(()->new Object[1]);
 	private static final byte[] NO_BYTES = new byte[0];
+	
+	/** Approximate size of a list slot in bytes (reference and value), for memory quotas. */
+	private static final int LIST_SLOT_BYTES = 40;
+	/** Approximate size of a map entry in bytes (reference, entry, and value), for memory quotas. */
+	private static final int MAP_ENTRY_BYTES = 56;
+	
+	private static final byte STATE_NULL = 0;
+	private static final byte STATE_BOOLEAN = 1;
+	private static final byte STATE_INTEGER = 2;
+	private static final byte STATE_FLOAT = 3;
+	private static final byte STATE_STRING = 4;
+	private static final byte STATE_ERROR = 5;
+	private static final byte STATE_BUFFER = 6;
+	private static final byte STATE_LIST = 7;
+	private static final byte STATE_MAP = 8;
+	private static final byte STATE_REFERENCE = 9;
 
 	public static enum Type
 	{
@@ -2174,12 +2195,21 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			return;
 		}
 		
-		ScriptValue cache1 = CACHEVALUE1.get();
-		ScriptValue cache2 = CACHEVALUE2.get();
+		boolean convert = operand.getType() != operand2.getType();
+		ScriptValue cache1 = convert ? CACHEVALUE1.get() : operand;
+		ScriptValue cache2 = convert ? CACHEVALUE2.get() : operand2;
 
 		try
 		{
-			if (operand.isString() || operand2.isString())
+			if (!convert)
+			{
+				if (operand.isNull())
+				{
+					out.set(Double.NaN);
+					return;
+				}
+			}
+			else if (operand.isString() || operand2.isString())
 			{
 				cache1.set(operand.asString());
 				cache2.set(operand2.asString());
@@ -2216,8 +2246,11 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		}
 		finally
 		{
-			cache1.setNull();
-			cache2.setNull();
+			if (convert)
+			{
+				cache1.setNull();
+				cache2.setNull();
+			}
 		}
 	}
 	
@@ -2235,13 +2268,17 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			return;
 		}
 
-		ScriptValue cache1 = CACHEVALUE1.get();
-		ScriptValue cache2 = CACHEVALUE2.get();
+		boolean convert = operand.getType() != operand2.getType();
+		ScriptValue cache1 = convert ? CACHEVALUE1.get() : operand;
+		ScriptValue cache2 = convert ? CACHEVALUE2.get() : operand2;
 		try
 		{
-			cache1.set(operand);
-			cache2.set(operand2);
-			convertUp(cache1, cache2, operand, operand2);
+			if (convert)
+			{
+				cache1.set(operand);
+				cache2.set(operand2);
+				convertUp(cache1, cache2, operand, operand2);
+			}
 			switch (cache2.getType())
 			{
 				default:
@@ -2261,8 +2298,11 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		}
 		finally
 		{
-			cache1.setNull();
-			cache2.setNull();
+			if (convert)
+			{
+				cache1.setNull();
+				cache2.setNull();
+			}
 		}
 	}
 
@@ -2280,13 +2320,17 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			return;
 		}
 
-		ScriptValue cache1 = CACHEVALUE1.get();
-		ScriptValue cache2 = CACHEVALUE2.get();
+		boolean convert = operand.getType() != operand2.getType();
+		ScriptValue cache1 = convert ? CACHEVALUE1.get() : operand;
+		ScriptValue cache2 = convert ? CACHEVALUE2.get() : operand2;
 		try
 		{
-			cache1.set(operand);
-			cache2.set(operand2);
-			convertUp(cache1, cache2, operand, operand2);
+			if (convert)
+			{
+				cache1.set(operand);
+				cache2.set(operand2);
+				convertUp(cache1, cache2, operand, operand2);
+			}
 			switch (cache2.getType())
 			{
 				default:
@@ -2305,8 +2349,11 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		}
 		finally
 		{
-			cache1.setNull();
-			cache2.setNull();
+			if (convert)
+			{
+				cache1.setNull();
+				cache2.setNull();
+			}
 		}
 	}
 
@@ -2324,13 +2371,17 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			return;
 		}
 
-		ScriptValue cache1 = CACHEVALUE1.get();
-		ScriptValue cache2 = CACHEVALUE2.get();
+		boolean convert = operand.getType() != operand2.getType();
+		ScriptValue cache1 = convert ? CACHEVALUE1.get() : operand;
+		ScriptValue cache2 = convert ? CACHEVALUE2.get() : operand2;
 		try
 		{
-			cache1.set(operand);
-			cache2.set(operand2);
-			convertUp(cache1, cache2, operand, operand2);
+			if (convert)
+			{
+				cache1.set(operand);
+				cache2.set(operand2);
+				convertUp(cache1, cache2, operand, operand2);
+			}
 			switch (cache2.getType())
 			{
 				default:
@@ -2353,8 +2404,11 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		}
 		finally
 		{
-			cache1.setNull();
-			cache2.setNull();
+			if (convert)
+			{
+				cache1.setNull();
+				cache2.setNull();
+			}
 		}
 	}
 
@@ -2372,13 +2426,17 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			return;
 		}
 
-		ScriptValue cache1 = CACHEVALUE1.get();
-		ScriptValue cache2 = CACHEVALUE2.get();
+		boolean convert = operand.getType() != operand2.getType();
+		ScriptValue cache1 = convert ? CACHEVALUE1.get() : operand;
+		ScriptValue cache2 = convert ? CACHEVALUE2.get() : operand2;
 		try
 		{
-			cache1.set(operand);
-			cache2.set(operand2);
-			convertUp(cache1, cache2, operand, operand2);
+			if (convert)
+			{
+				cache1.set(operand);
+				cache2.set(operand2);
+				convertUp(cache1, cache2, operand, operand2);
+			}
 			switch (cache2.getType())
 			{
 				default:
@@ -2401,8 +2459,11 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		}
 		finally
 		{
-			cache1.setNull();
-			cache2.setNull();
+			if (convert)
+			{
+				cache1.setNull();
+				cache2.setNull();
+			}
 		}
 	}
 
@@ -2420,13 +2481,17 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			return;
 		}
 
-		ScriptValue cache1 = CACHEVALUE1.get();
-		ScriptValue cache2 = CACHEVALUE2.get();
+		boolean convert = operand.getType() != operand2.getType();
+		ScriptValue cache1 = convert ? CACHEVALUE1.get() : operand;
+		ScriptValue cache2 = convert ? CACHEVALUE2.get() : operand2;
 		try
 		{
-			cache1.set(operand);
-			cache2.set(operand2);
-			convertUp(cache1, cache2, operand, operand2);
+			if (convert)
+			{
+				cache1.set(operand);
+				cache2.set(operand2);
+				convertUp(cache1, cache2, operand, operand2);
+			}
 			switch (cache2.getType())
 			{
 				default:
@@ -2443,8 +2508,11 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		}
 		finally
 		{
-			cache1.setNull();
-			cache2.setNull();
+			if (convert)
+			{
+				cache1.setNull();
+				cache2.setNull();
+			}
 		}
 	}
 
@@ -2462,13 +2530,17 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			return;
 		}
 
-		ScriptValue cache1 = CACHEVALUE1.get();
-		ScriptValue cache2 = CACHEVALUE2.get();
+		boolean convert = operand.getType() != operand2.getType();
+		ScriptValue cache1 = convert ? CACHEVALUE1.get() : operand;
+		ScriptValue cache2 = convert ? CACHEVALUE2.get() : operand2;
 		try
 		{
-			cache1.set(operand);
-			cache2.set(operand2);
-			convertUp(cache1, cache2, operand, operand2);
+			if (convert)
+			{
+				cache1.set(operand);
+				cache2.set(operand2);
+				convertUp(cache1, cache2, operand, operand2);
+			}
 			switch (cache2.getType())
 			{
 				default:
@@ -2485,8 +2557,11 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		}
 		finally
 		{
-			cache1.setNull();
-			cache2.setNull();
+			if (convert)
+			{
+				cache1.setNull();
+				cache2.setNull();
+			}
 		}
 	}
 
@@ -2504,13 +2579,17 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			return;
 		}
 
-		ScriptValue cache1 = CACHEVALUE1.get();
-		ScriptValue cache2 = CACHEVALUE2.get();
+		boolean convert = operand.getType() != operand2.getType();
+		ScriptValue cache1 = convert ? CACHEVALUE1.get() : operand;
+		ScriptValue cache2 = convert ? CACHEVALUE2.get() : operand2;
 		try
 		{
-			cache1.set(operand);
-			cache2.set(operand2);
-			convertUp(cache1, cache2, operand, operand2);
+			if (convert)
+			{
+				cache1.set(operand);
+				cache2.set(operand2);
+				convertUp(cache1, cache2, operand, operand2);
+			}
 			switch (cache2.getType())
 			{
 				default:
@@ -2527,8 +2606,11 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		}
 		finally
 		{
-			cache1.setNull();
-			cache2.setNull();
+			if (convert)
+			{
+				cache1.setNull();
+				cache2.setNull();
+			}
 		}
 	}
 
@@ -2717,6 +2799,332 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		out.set(!operand.equals(operand2));
 	}
 
+	/**
+	 * Writes script values to a state output (see {@link ScriptInstance#saveState(java.io.OutputStream)}).
+	 * Buffers, lists, and maps are written once, and written as back-references after that, 
+	 * so values that share a reference still share it when read back.
+	 * Object references cannot be written.
+	 */
+	static class StateWriter
+	{
+		private final DataOutput out;
+		private final Map<Object, Integer> references;
+		
+		StateWriter(DataOutput out)
+		{
+			this.out = out;
+			this.references = new IdentityHashMap<>();
+		}
+		
+		/**
+		 * Writes a string (or null).
+		 * @param value the string to write.
+		 * @throws IOException if a write error occurs.
+		 */
+		void writeString(String value) throws IOException
+		{
+			if (value == null)
+			{
+				out.writeInt(-1);
+				return;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		
+		/**
+		 * Writes a script value.
+		 * @param value the value to write.
+		 * @throws NotSerializableException if the value is, or contains, an object reference.
+		 * @throws IOException if a write error occurs.
+		 */
+		void write(ScriptValue value) throws IOException
+		{
+			switch (value.type)
+			{
+				case NULL:
+					out.writeByte(STATE_NULL);
+					break;
+				case BOOLEAN:
+					out.writeByte(STATE_BOOLEAN);
+					out.writeBoolean(value.rawbits != 0L);
+					break;
+				case INTEGER:
+					out.writeByte(STATE_INTEGER);
+					out.writeLong(value.rawbits);
+					break;
+				case FLOAT:
+					out.writeByte(STATE_FLOAT);
+					out.writeLong(value.rawbits);
+					break;
+				case STRING:
+					out.writeByte(STATE_STRING);
+					writeString(value.ref.toString());
+					break;
+				case ERROR:
+				{
+					ErrorType error = (ErrorType)value.ref;
+					out.writeByte(STATE_ERROR);
+					writeString(error.type);
+					writeString(error.message);
+					writeString(error.localizedMessage);
+					break;
+				}
+				case BUFFER:
+				case LIST:
+				case MAP:
+				{
+					Integer id;
+					if ((id = references.get(value.ref)) != null)
+					{
+						out.writeByte(STATE_REFERENCE);
+						out.writeInt(id);
+						break;
+					}
+					references.put(value.ref, references.size());
+					writeReference(value);
+					break;
+				}
+				default:
+					throw new NotSerializableException("Object references cannot be written: " + value.ref.getClass().getName());
+			}
+		}
+		
+		// Writes the contents of a buffer, list, or map.
+		private void writeReference(ScriptValue value) throws IOException
+		{
+			if (value.type == Type.BUFFER)
+			{
+				BufferType buffer = (BufferType)value.ref;
+				out.writeByte(STATE_BUFFER);
+				out.writeBoolean(buffer.order == ByteOrder.BIG_ENDIAN);
+				out.writeInt(buffer.position);
+				out.writeInt(buffer.data.length);
+				out.write(buffer.data);
+			}
+			else if (value.type == Type.LIST)
+			{
+				ListType list = (ListType)value.ref;
+				out.writeByte(STATE_LIST);
+				out.writeInt(list.size);
+				for (int i = 0; i < list.size; i++)
+					write(list.data[i]);
+			}
+			else
+			{
+				MapType map = (MapType)value.ref;
+				out.writeByte(STATE_MAP);
+				out.writeInt(map.size());
+				for (int i = 0; i < map.size(); i++)
+				{
+					AbstractVariableResolver.Entry entry = map.entryAt(i);
+					writeString(entry.getName());
+					write(entry.getValue());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads script values written by a {@link StateWriter}.
+	 */
+	static class StateReader
+	{
+		private final DataInput in;
+		private final List<ScriptValue> references;
+		
+		StateReader(DataInput in)
+		{
+			this.in = in;
+			this.references = new ArrayList<>();
+		}
+		
+		/**
+		 * Reads a string (or null).
+		 * @return the string read.
+		 * @throws IOException if a read error occurs.
+		 */
+		String readString() throws IOException
+		{
+			int length = in.readInt();
+			if (length < 0)
+				return null;
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+		/**
+		 * Reads a script value.
+		 * @param out the output value.
+		 * @throws StreamCorruptedException if the state data is malformed.
+		 * @throws IOException if a read error occurs.
+		 */
+		void read(ScriptValue out) throws IOException
+		{
+			byte tag = in.readByte();
+			switch (tag)
+			{
+				case STATE_NULL:
+					out.setNull();
+					break;
+				case STATE_BOOLEAN:
+					out.set(in.readBoolean());
+					break;
+				case STATE_INTEGER:
+					out.set(in.readLong());
+					break;
+				case STATE_FLOAT:
+					out.set(Double.longBitsToDouble(in.readLong()));
+					break;
+				case STATE_STRING:
+					out.set(readString());
+					break;
+				case STATE_ERROR:
+				{
+					String type = readString();
+					String message = readString();
+					out.setError(type, message, readString());
+					break;
+				}
+				case STATE_REFERENCE:
+				{
+					int id = in.readInt();
+					if (id < 0 || id >= references.size())
+						throw new StreamCorruptedException("Bad value reference: " + id);
+					out.set(references.get(id));
+					break;
+				}
+				case STATE_BUFFER:
+				{
+					ByteOrder order = in.readBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+					int position = in.readInt();
+					int length = in.readInt();
+					if (length < 0 || position < 0 || position > length)
+						throw new StreamCorruptedException("Bad buffer.");
+					out.setEmptyBuffer(length, order);
+					BufferType buffer = (BufferType)out.ref;
+					buffer.setPosition(position);
+					in.readFully(buffer.data);
+					references.add(ScriptValue.create(out));
+					break;
+				}
+				case STATE_LIST:
+				{
+					int size = in.readInt();
+					if (size < 0)
+						throw new StreamCorruptedException("Bad list size: " + size);
+					out.setEmptyList(size, Math.max(size, 1));
+					// register before reading the elements, in case the list contains itself.
+					references.add(ScriptValue.create(out));
+					ListType list = (ListType)out.ref;
+					for (int i = 0; i < size; i++)
+						read(list.data[i]);
+					break;
+				}
+				case STATE_MAP:
+				{
+					int size = in.readInt();
+					if (size < 0)
+						throw new StreamCorruptedException("Bad map size: " + size);
+					out.setEmptyMap(Math.max(size, 1));
+					references.add(ScriptValue.create(out));
+					MapType map = (MapType)out.ref;
+					ScriptValue value = ScriptValue.create(null);
+					for (int i = 0; i < size; i++)
+					{
+						String key = readString();
+						read(value);
+						map.setValue(key, value);
+					}
+					break;
+				}
+				default:
+					throw new StreamCorruptedException("Bad value type: " + tag);
+			}
+		}
+	}
+
+	/**
+	 * Copies script values for a forked instance (see {@link ScriptInstance#fork()}).
+	 * Buffers, lists, and maps are copied once, so values that share a reference share the copy.
+	 * Object references are not copied.
+	 */
+	static class StateCopier
+	{
+		private final Map<Object, ScriptValue> copies;
+		
+		StateCopier()
+		{
+			this.copies = new IdentityHashMap<>();
+		}
+		
+		/**
+		 * Copies a script value.
+		 * @param source the source value.
+		 * @param out the output value.
+		 */
+		void copy(ScriptValue source, ScriptValue out)
+		{
+			switch (source.type)
+			{
+				case BUFFER:
+				case LIST:
+				case MAP:
+				{
+					ScriptValue copy;
+					if ((copy = copies.get(source.ref)) != null)
+						out.set(copy);
+					else
+						copyReference(source, out);
+					break;
+				}
+				default:
+					out.set(source);
+					break;
+			}
+		}
+		
+		// Copies the contents of a buffer, list, or map.
+		private void copyReference(ScriptValue source, ScriptValue out)
+		{
+			if (source.type == Type.BUFFER)
+			{
+				BufferType buffer = (BufferType)source.ref;
+				out.setEmptyBuffer(buffer.data.length, buffer.order);
+				BufferType outBuffer = (BufferType)out.ref;
+				outBuffer.setPosition(buffer.position);
+				System.arraycopy(buffer.data, 0, outBuffer.data, 0, buffer.data.length);
+				copies.put(source.ref, ScriptValue.create(out));
+			}
+			else if (source.type == Type.LIST)
+			{
+				ListType list = (ListType)source.ref;
+				out.setEmptyList(list.size, Math.max(list.size, 1));
+				// register before copying the elements, in case the list contains itself.
+				copies.put(source.ref, ScriptValue.create(out));
+				ListType outList = (ListType)out.ref;
+				for (int i = 0; i < list.size; i++)
+					copy(list.data[i], outList.data[i]);
+			}
+			else
+			{
+				MapType map = (MapType)source.ref;
+				out.setEmptyMap(Math.max(map.size(), 1));
+				copies.put(source.ref, ScriptValue.create(out));
+				MapType outMap = (MapType)out.ref;
+				ScriptValue value = ScriptValue.create(null);
+				for (int i = 0; i < map.size(); i++)
+				{
+					AbstractVariableResolver.Entry entry = map.entryAt(i);
+					copy(entry.getValue(), value);
+					outMap.setValue(entry.getName(), value);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Iterator Type for single values (returns just one element - the value itself with no key).
 	 */
@@ -2886,6 +3294,7 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		 */
 		public void setSize(int size)
 		{
+			ScriptInstance.allocate(size - (data != null ? data.length : 0));
 			byte[] newdata = new byte[size];
 			if (data != null)
 				System.arraycopy(data, 0, newdata, 0, Math.min(data.length, newdata.length));
@@ -3478,6 +3887,7 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			{
 				if (capacity > data.length)
 				{
+					ScriptInstance.allocate((long)(capacity - data.length) * LIST_SLOT_BYTES);
 					ScriptValue[] newList = new ScriptValue[capacity];
 					System.arraycopy(data, 0, newList, 0, data.length);
 					for (int i = data.length; i < newList.length; i++)
@@ -3495,6 +3905,7 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			}
 			else 
 			{
+				ScriptInstance.allocate((long)capacity * LIST_SLOT_BYTES);
 				ScriptValue[] newList = new ScriptValue[capacity];
 				for (int i = 0; i < newList.length; i++)
 					newList[i] = ScriptValue.create(null);
@@ -3731,6 +4142,12 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 			super(capacity);
 		}
 		
+		@Override
+		protected void expanding(int oldCapacity, int newCapacity)
+		{
+			ScriptInstance.allocate((long)(newCapacity - oldCapacity) * MAP_ENTRY_BYTES);
+		}
+		
 		/**
 		 * Removes a value by variable name.
 		 * This should fail if the provided name corresponds to a read-only variable. 
@@ -3738,14 +4155,15 @@ public class ScriptValue implements Comparable<ScriptValue>, Iterable<IteratorPa
 		 * @return true if the value existed and was removed, false otherwise.
 		 * @throws IllegalArgumentException if the provided name refers to a value that is read-only.
 		 */
-		private synchronized boolean clearValue(String name)
+		private boolean clearValue(String name)
 		{
-			int i;
-			if ((i = getIndex(name)) < 0)
-				return false;
-
-			removeIndex(i);
-			return true;
+			return removeValue(name);
+		}
+		
+		// Gets an entry by index, for copying and writing state.
+		private Entry entryAt(int index)
+		{
+			return getEntry(index);
 		}
 		
 		@Override
@@ -7,9 +7,13 @@
  ******************************************************************************/
 package com.blackrook.rookscript.compiler;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import com.blackrook.rookscript.Script;
 import com.blackrook.rookscript.Script.Entry;
@@ -102,6 +106,10 @@ public class ScriptParser extends Lexer.Parser
 	
 	/** List of errors. */
 	private LinkedList<ErrorMessage> errors;
+	/** Local variable slot map (name to slot) for the function, entry, or scriptlet being parsed. Null if not parsing one. */
+	private Map<String, Integer> localSlotMap;
+	/** Local variable names, by slot, for the function, entry, or scriptlet being parsed. */
+	private List<String> localNames;
 	
 	/**
 	 * Creates a new script parser.
@@ -111,6 +119,8 @@ public class ScriptParser extends Lexer.Parser
 	{
 		super(lexer);
 		this.errors = new LinkedList<>();
+		this.localSlotMap = null;
+		this.localNames = null;
 	}
 
 	/**
@@ -206,10 +216,12 @@ public class ScriptParser extends Lexer.Parser
 			String endLabel = script.getNextGeneratedLabel(LABEL_SCRIPTLET_END);
 			
 			int index = mark(script, startLabel);
+			startLocals();
 			
 			if (!parseStatementList(script, null, null, null, 0, 0))
 				return null;
 			
+			endLocals(script, index);
 			mark(script, endLabel);
 	
 			if (!matchType(ScriptKernel.TYPE_RBRACE))
@@ -250,10 +262,12 @@ public class ScriptParser extends Lexer.Parser
 			}
 	
 			int index = mark(script, startLabel);
+			startLocals();
 
 			if (!parseFunctionCall(script, null, namespace, functionName, false))
 				return null;
 			
+			endLocals(script, index);
 			script.addCommand(ScriptCommand.create(ScriptCommandType.POP));
 
 			mark(script, endLabel);
@@ -300,6 +314,7 @@ public class ScriptParser extends Lexer.Parser
 		
 		int index = script.getCommandCount();
 		mark(script, getFunctionLabel(name));
+		startLocals();
 		
 		if (!matchType(ScriptKernel.TYPE_LPAREN))
 		{
@@ -329,7 +344,7 @@ public class ScriptParser extends Lexer.Parser
 			paramAmount = paramNameStack.size();
 			
 			while (!paramNameStack.isEmpty())
-				script.addCommand(ScriptCommand.create(ScriptCommandType.POP_VARIABLE, paramNameStack.pollFirst()));
+				emitPopVariable(script, paramNameStack.pollFirst());
 		}
 		
 		script.createFunctionEntry(name, paramAmount, index);
@@ -354,6 +369,7 @@ public class ScriptParser extends Lexer.Parser
 		}
 		
 		script.addCommand(ScriptCommand.create(ScriptCommandType.RETURN));
+		endLocals(script, index);
 		return true;
 	}
 
@@ -390,6 +406,7 @@ public class ScriptParser extends Lexer.Parser
 		}
 		
 		int index = mark(script, label);
+		startLocals();
 		
 		if (!matchType(ScriptKernel.TYPE_LPAREN))
 		{
@@ -419,7 +436,7 @@ public class ScriptParser extends Lexer.Parser
 			paramAmount = paramNameStack.size();
 			
 			while (!paramNameStack.isEmpty())
-				script.addCommand(ScriptCommand.create(ScriptCommandType.POP_VARIABLE, paramNameStack.pop()));
+				emitPopVariable(script, paramNameStack.pop());
 			
 		}
 		
@@ -445,6 +462,7 @@ public class ScriptParser extends Lexer.Parser
 		}
 	
 		script.addCommand(ScriptCommand.create(ScriptCommandType.RETURN));
+		endLocals(script, index);
 		return true;
 	}
 
@@ -482,6 +500,60 @@ public class ScriptParser extends Lexer.Parser
 		return out;
 	}
 
+	// Starts a new local variable slot table.
+	private void startLocals()
+	{
+		localSlotMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		localNames = new ArrayList<>();
+	}
+	
+	// Ends the current local variable slot table and sets its names on the script at a starting index.
+	private void endLocals(Script currentScript, int index)
+	{
+		currentScript.setLocalNames(index, localNames.toArray(new String[localNames.size()]));
+		localSlotMap = null;
+		localNames = null;
+	}
+	
+	// Gets (or allocates) the local variable slot for a variable name.
+	private int getLocalSlot(String name)
+	{
+		Integer out;
+		if ((out = localSlotMap.get(name)) == null)
+		{
+			localSlotMap.put(name, out = localNames.size());
+			localNames.add(name);
+		}
+		return out;
+	}
+	
+	// Emits a variable push (by local slot, if possible).
+	private void emitPushVariable(Script currentScript, String name)
+	{
+		if (localSlotMap != null)
+			currentScript.addCommand(ScriptCommand.create(ScriptCommandType.PUSH_LOCAL, name, getLocalSlot(name)));
+		else
+			currentScript.addCommand(ScriptCommand.create(ScriptCommandType.PUSH_VARIABLE, name));
+	}
+	
+	// Emits a variable pop (by local slot, if possible).
+	private void emitPopVariable(Script currentScript, String name)
+	{
+		if (localSlotMap != null)
+			currentScript.addCommand(ScriptCommand.create(ScriptCommandType.POP_LOCAL, name, getLocalSlot(name)));
+		else
+			currentScript.addCommand(ScriptCommand.create(ScriptCommandType.POP_VARIABLE, name));
+	}
+	
+	// Emits an iterator variable set (by local slot, if possible).
+	private void emitSetIteratorVariable(Script currentScript, String name)
+	{
+		if (localSlotMap != null)
+			currentScript.addCommand(ScriptCommand.create(ScriptCommandType.SET_ITERATOR_LOCAL, name, getLocalSlot(name)));
+		else
+			currentScript.addCommand(ScriptCommand.create(ScriptCommandType.SET_ITERATOR_VARIABLE, name));
+	}
+	
 	// Creates a single script value.
 	private ScriptValue parseValue()
 	{
@@ -1155,7 +1227,7 @@ public class ScriptParser extends Lexer.Parser
 		// list index assignment or map assignment.
 		else if (currentType(ScriptKernel.TYPE_LBRACK, ScriptKernel.TYPE_PERIOD))
 		{
-			currentScript.addCommand(ScriptCommand.create(ScriptCommandType.PUSH_VARIABLE, identifierName));
+			emitPushVariable(currentScript, identifierName);
 			
 			Boolean lastWasList;
 			if ((lastWasList = parseListMapDerefStatementChain(currentScript, checkEndLabel)) == null)
@@ -1174,7 +1246,7 @@ public class ScriptParser extends Lexer.Parser
 			nextToken();
 			
 			if (isAccumulatingAssignmentOperator(assignmentType))
-				currentScript.addCommand(ScriptCommand.create(ScriptCommandType.PUSH_VARIABLE, identifierName));
+				emitPushVariable(currentScript, identifierName);
 			
 			if (!parseExpression(currentScript, checkEndLabel))
 				return false;
@@ -1182,12 +1254,12 @@ public class ScriptParser extends Lexer.Parser
 			if (isAccumulatingAssignmentOperator(assignmentType))
 				emitArithmeticCommand(currentScript, assignmentType);
 			
-			currentScript.addCommand(ScriptCommand.create(ScriptCommandType.POP_VARIABLE, identifierName));
+			emitPopVariable(currentScript, identifierName);
 			return true;
 		}
 		else if (matchType(ScriptKernel.TYPE_RIGHTARROW))
 		{
-			currentScript.addCommand(ScriptCommand.create(ScriptCommandType.PUSH_VARIABLE, identifierName));
+			emitPushVariable(currentScript, identifierName);
 			
 			if (!parsePartialChain(currentScript, checkEndLabel))
 				return false;
@@ -1473,7 +1545,7 @@ public class ScriptParser extends Lexer.Parser
 		currentScript.addCommand(ScriptCommand.create(ScriptCommandType.JUMP, bodyLabel));
 
 		mark(currentScript, stepLabel);
-		currentScript.addCommand(ScriptCommand.create(ScriptCommandType.PUSH_VARIABLE, iteratorVariable));
+		emitPushVariable(currentScript, iteratorVariable);
 		currentScript.addCommand(ScriptCommand.create(ScriptCommandType.ITERATE, endLabel, keyval));
 		currentScript.addCommand(ScriptCommand.create(ScriptCommandType.JUMP, nextLabel));
 		
@@ -1494,7 +1566,7 @@ public class ScriptParser extends Lexer.Parser
 			return false;
 		}
 
-		currentScript.addCommand(ScriptCommand.create(ScriptCommandType.SET_ITERATOR_VARIABLE, iteratorVariable));
+		emitSetIteratorVariable(currentScript, iteratorVariable);
 		currentScript.addCommand(ScriptCommand.create(ScriptCommandType.JUMP, stepLabel));
 
 		mark(currentScript, bodyLabel);
@@ -1513,7 +1585,7 @@ public class ScriptParser extends Lexer.Parser
 	{
 		String lexeme = currentToken().getLexeme();
 		nextToken();
-		currentScript.addCommand(ScriptCommand.create(ScriptCommandType.POP_VARIABLE, lexeme));
+		emitPopVariable(currentScript, lexeme);
 		return true;
 	}
 	
@@ -1544,7 +1616,7 @@ public class ScriptParser extends Lexer.Parser
 		if (!parseCheckBody(currentScript, breakLabel, continueLabel, currentCheckDepth, fullCheckDepth))
 			return false;
 		
-		currentScript.addCommand(ScriptCommand.create(ScriptCommandType.POP_VARIABLE, errorVariable));
+		emitPopVariable(currentScript, errorVariable);
 		return true;
 	}
 
@@ -1860,7 +1932,7 @@ public class ScriptParser extends Lexer.Parser
 					// array resolution or map deref?
 					else if (currentType(ScriptKernel.TYPE_LBRACK, ScriptKernel.TYPE_PERIOD))
 					{
-						currentScript.addCommand(ScriptCommand.create(ScriptCommandType.PUSH_VARIABLE, lexeme));
+						emitPushVariable(currentScript, lexeme);
 						if (!parseListMapDerefChain(currentScript, checkEndLabel))
 							return false;
 					}
@@ -1920,7 +1992,7 @@ public class ScriptParser extends Lexer.Parser
 					// must be local variable?
 					else
 					{
-						currentScript.addCommand(ScriptCommand.create(ScriptCommandType.PUSH_VARIABLE, lexeme));
+						emitPushVariable(currentScript, lexeme);
 					}
 					
 					expressionValueCounter[0] += 1;
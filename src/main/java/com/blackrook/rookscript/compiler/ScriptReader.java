@@ -58,6 +58,8 @@ public final class ScriptReader
 	 * 		</ul>
 	 * </li>
 	 * </ul> 
+	 * <p>File paths use the file's last modified time as their stamp.
+	 * @since [NOW], file includes have modification stamps.
 	 */
 	public static class DefaultIncluder implements ScriptReaderIncluder
 	{
@@ -105,6 +107,15 @@ public final class ScriptReader
 			else
 				return new FileInputStream(new File(path));
 		}
+		
+		@Override
+		public long getIncludeResourceStamp(String path)
+		{
+			if (path.startsWith(CLASSPATH_PREFIX))
+				return -1L;
+			File f = new File(path);
+			return f.exists() ? f.lastModified() : -1L;
+		}
 	};
 	
 	private ScriptReader() {}
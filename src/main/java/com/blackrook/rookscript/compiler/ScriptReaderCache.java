@@ -0,0 +1,798 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.blackrook.rookscript.Script;
+import com.blackrook.rookscript.ScriptBinary;
+import com.blackrook.rookscript.exception.ScriptParseException;
+import com.blackrook.rookscript.lang.ScriptFunctionType;
+import com.blackrook.rookscript.resolvers.ScriptHostFunctionResolver;
+import com.blackrook.rookscript.resolvers.ScriptScopeResolver;
+import com.blackrook.rookscript.resolvers.ScriptVariableResolver;
+import com.blackrook.rookscript.struct.Utils;
+
+/**
+ * A cache of compiled scripts, keyed by their content, for reading the same script source
+ * more than once (for example, once per tenant, or again on reload) without compiling it each time.
+ * <p>Each script is keyed by a hash of its stream name, its source text, and the reader option defines.
+ * Each cached script also records what its compile depended on: the include graph that it resolved (each included resource, 
+ * what included it, its {@link ScriptReaderIncluder#getIncludeResourceStamp(String) modification stamp}, and a hash of its contents), 
+ * and the host function and scope lookups that the compiler made. A cached script is only used if resolving those 
+ * includes and repeating those lookups with the new includer and resolvers gives the same results, so a change 
+ * to an include or to the available host functions causes a recompile.
+ * <p>Includes with an unchanged stamp are not read again, so checking a large include tree for changes (for example, 
+ * on a hot reload) only costs a stamp lookup per include. Includes without a stamp, or with a changed stamp, are read and hashed.
+ * Stamps are treated like {@link File#lastModified()} times here: an include whose stamp is not at least two seconds older than 
+ * when it was last read is read and hashed anyway, since a file system may not change a file's stamp when it is edited again 
+ * within the same second (or two, on some file systems).
+ * <p>There are two tiers: an in-memory, least-recently-used tier that holds {@link Script#freeze() frozen} scripts, 
+ * and an optional on-disk tier that holds scripts in {@link ScriptBinary} form. 
+ * If a script in memory was compiled with the same resolver objects, that shared frozen script is returned.
+ * If not, a frozen {@link Script#copy(ScriptHostFunctionResolver, ScriptScopeResolver) copy} with the new resolvers is returned,
+ * since a script refers to its resolvers.
+ * <p>Scripts that fail to compile are not cached. Files in the disk tier are only written by this class, 
+ * and the tier is best-effort: unreadable or stale files are ignored and replaced.
+ * <p>This class is thread-safe.
+ * @author Matthew Tropiano
+ * @since [NOW]
+ */
+public class ScriptReaderCache
+{
+	/** Cache file magic number ("RSCC"). */
+	private static final int CACHE_MAGIC = 0x52534343;
+	/** Cache key/file version. Change this when the compiler's output changes. */
+	private static final int CACHE_VERSION = 3;
+	/** Cache file extension. */
+	private static final String CACHE_EXTENSION = ".rsc";
+	/** Digest algorithm for keys and includes. */
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+	/** Coarsest file modification time resolution expected, in milliseconds. */
+	private static final long STAMP_RESOLUTION = 2000L;
+
+	/** Memory tier (key to entry, in access order). */
+	private LinkedHashMap<String, CacheEntry> memoryCache;
+	/** Disk tier directory (can be null). */
+	private File directory;
+	
+	/** Memory tier hits. */
+	private long memoryHits;
+	/** Disk tier hits. */
+	private long diskHits;
+	/** Misses. */
+	private long misses;
+
+	/**
+	 * Creates a new cache with only a memory tier.
+	 * @param capacity the maximum amount of scripts to keep in memory.
+	 * @throws IllegalArgumentException if capacity is less than 1.
+	 */
+	public ScriptReaderCache(int capacity)
+	{
+		this(capacity, null);
+	}
+	
+	/**
+	 * Creates a new cache with a memory tier and a disk tier.
+	 * @param capacity the maximum amount of scripts to keep in memory.
+	 * @param directory the directory for the disk tier (created if it does not exist). If null, there is no disk tier.
+	 * @throws IllegalArgumentException if capacity is less than 1.
+	 */
+	public ScriptReaderCache(final int capacity, File directory)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be 1 or greater.");
+		this.memoryCache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 6209576208493049215L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+		this.directory = directory;
+		this.memoryHits = 0L;
+		this.diskHits = 0L;
+		this.misses = 0L;
+	}
+	
+	/**
+	 * Reads a script from a string of text, or gets it from this cache.
+	 * @param streamName the name of the stream.
+	 * @param text the string to read from.
+	 * @param functionResolver the host function resolver to use.
+	 * @param scopeResolver the scope resolver to use.
+	 * @param includer the includer to use to resolve "included" paths.
+	 * @param options the reader options to use.
+	 * @return a frozen Script that contains all the read object hierarchy.
+	 * @throws ScriptParseException if one or more parse errors happen.
+	 * @throws IOException if an include can't be read.
+	 * @throws NullPointerException if text is null or a resolver is null.
+	 * @see ScriptReader#read(String, String, ScriptHostFunctionResolver, ScriptScopeResolver, ScriptReaderIncluder, ScriptReaderOptions)
+	 */
+	public Script read(String streamName, String text, ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver, ScriptReaderIncluder includer, ScriptReaderOptions options) throws IOException
+	{
+		String key = createKey(streamName, text, options);
+		Script out;
+		
+		CacheEntry entry;
+		synchronized (memoryCache)
+		{
+			entry = memoryCache.get(key);
+		}
+		if (entry != null && entry.dependencies.matches(functionResolver, scopeResolver, includer))
+		{
+			countHit(true);
+			return entry.getScript(functionResolver, scopeResolver);
+		}
+		
+		if ((entry = readCacheFile(key, functionResolver, scopeResolver, includer)) != null)
+		{
+			countHit(false);
+			putEntry(key, entry);
+			return entry.script;
+		}
+
+		countMiss();
+		RecordingHostFunctionResolver recordingFunctionResolver = new RecordingHostFunctionResolver(functionResolver);
+		RecordingScopeResolver recordingScopeResolver = new RecordingScopeResolver(scopeResolver);
+		RecordingIncluder recordingIncluder = new RecordingIncluder(includer);
+		out = ScriptReader.read(streamName, new StringReader(text), recordingFunctionResolver, recordingScopeResolver, recordingIncluder, options);
+		out.setHostFunctionResolver(functionResolver);
+		out.setScopeResolver(scopeResolver);
+		out.freeze();
+		
+		Dependencies dependencies = new Dependencies(
+			recordingIncluder.getIncludes(), 
+			new ArrayList<>(recordingFunctionResolver.lookups.values()), 
+			new ArrayList<>(recordingScopeResolver.lookups.values())
+		);
+		putEntry(key, new CacheEntry(out, dependencies));
+		writeCacheFile(key, out, dependencies);
+		return out;
+	}
+	
+	/**
+	 * Reads a script from a reader stream, or gets it from this cache.
+	 * The reader is read fully to create the cache key.
+	 * @param streamName the name of the stream.
+	 * @param reader the reader to read from.
+	 * @param functionResolver the host function resolver to use.
+	 * @param scopeResolver the scope resolver to use.
+	 * @param includer the includer to use to resolve "included" paths.
+	 * @param options the reader options to use.
+	 * @return a frozen Script that contains all the read object hierarchy.
+	 * @throws ScriptParseException if one or more parse errors happen.
+	 * @throws IOException if the stream or an include can't be read.
+	 * @throws NullPointerException if reader is null or a resolver is null.
+	 * @see ScriptReader#read(String, Reader, ScriptHostFunctionResolver, ScriptScopeResolver, ScriptReaderIncluder, ScriptReaderOptions)
+	 */
+	public Script read(String streamName, Reader reader, ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver, ScriptReaderIncluder includer, ScriptReaderOptions options) throws IOException
+	{
+		StringBuilder sb = new StringBuilder(4096);
+		char[] cbuf = new char[4096];
+		int buf;
+		while ((buf = reader.read(cbuf)) > 0)
+			sb.append(cbuf, 0, buf);
+		return read(streamName, sb.toString(), functionResolver, scopeResolver, includer, options);
+	}
+	
+	/**
+	 * Reads a script from an input stream, or gets it from this cache.
+	 * The stream is read fully to create the cache key.
+	 * @param streamName the name of the stream.
+	 * @param in the stream to read from.
+	 * @param functionResolver the host function resolver to use.
+	 * @param scopeResolver the scope resolver to use.
+	 * @param includer the includer to use to resolve "included" paths.
+	 * @param options the reader options to use.
+	 * @return a frozen Script that contains all the read object hierarchy.
+	 * @throws ScriptParseException if one or more parse errors happen.
+	 * @throws IOException if the stream or an include can't be read.
+	 * @throws NullPointerException if in is null or a resolver is null.
+	 * @see ScriptReader#read(String, InputStream, ScriptHostFunctionResolver, ScriptScopeResolver, ScriptReaderIncluder, ScriptReaderOptions)
+	 */
+	public Script read(String streamName, InputStream in, ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver, ScriptReaderIncluder includer, ScriptReaderOptions options) throws IOException
+	{
+		return read(streamName, new InputStreamReader(in), functionResolver, scopeResolver, includer, options);
+	}
+	
+	/**
+	 * Reads a script from a text file, or gets it from this cache.
+	 * @param file the file to read from.
+	 * @param functionResolver the host function resolver to use.
+	 * @param scopeResolver the scope resolver to use.
+	 * @param includer the includer to use to resolve "included" paths.
+	 * @param options the reader options to use.
+	 * @return a frozen Script that contains all the read object hierarchy.
+	 * @throws ScriptParseException if one or more parse errors happen.
+	 * @throws IOException if the file or an include can't be read.
+	 * @throws SecurityException if a read error happens due to OS permissioning.
+	 * @throws NullPointerException if file is null or a resolver is null.
+	 * @see ScriptReader#read(File, ScriptHostFunctionResolver, ScriptScopeResolver, ScriptReaderIncluder, ScriptReaderOptions)
+	 */
+	public Script read(File file, ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver, ScriptReaderIncluder includer, ScriptReaderOptions options) throws IOException
+	{
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			return read(file.getPath(), fis, functionResolver, scopeResolver, includer, options);
+		} finally {
+			Utils.close(fis);
+		}
+	}
+	
+	/**
+	 * Removes all scripts from the memory tier.
+	 * The disk tier is left alone.
+	 */
+	public void clear()
+	{
+		synchronized (memoryCache)
+		{
+			memoryCache.clear();
+		}
+	}
+	
+	/**
+	 * @return the amount of scripts in the memory tier.
+	 */
+	public int size()
+	{
+		synchronized (memoryCache)
+		{
+			return memoryCache.size();
+		}
+	}
+	
+	/**
+	 * @return the amount of reads that were served from the memory tier.
+	 */
+	public synchronized long getMemoryHitCount()
+	{
+		return memoryHits;
+	}
+	
+	/**
+	 * @return the amount of reads that were served from the disk tier.
+	 */
+	public synchronized long getDiskHitCount()
+	{
+		return diskHits;
+	}
+	
+	/**
+	 * @return the amount of reads that were compiled.
+	 */
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+	
+	private synchronized void countHit(boolean memory)
+	{
+		if (memory)
+			memoryHits++;
+		else
+			diskHits++;
+	}
+
+	private synchronized void countMiss()
+	{
+		misses++;
+	}
+	
+	private void putEntry(String key, CacheEntry entry)
+	{
+		synchronized (memoryCache)
+		{
+			memoryCache.put(key, entry);
+		}
+	}
+	
+	// Creates the content key.
+	private static String createKey(String streamName, String text, ScriptReaderOptions options)
+	{
+		MessageDigest digest = createDigest();
+		digestInt(digest, CACHE_VERSION);
+		digestInt(digest, ScriptBinary.VERSION);
+		digestString(digest, streamName);
+		digestString(digest, text);
+		String[] defines = options.getDefines();
+		digestInt(digest, defines.length);
+		for (String define : defines)
+			digestString(digest, define);
+		return toHex(digest.digest());
+	}
+	
+	private static MessageDigest createDigest()
+	{
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support it.
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static void digestInt(MessageDigest digest, int value)
+	{
+		digest.update((byte)(value >>> 24));
+		digest.update((byte)(value >>> 16));
+		digest.update((byte)(value >>> 8));
+		digest.update((byte)value);
+	}
+	
+	private static void digestString(MessageDigest digest, String value)
+	{
+		if (value == null)
+		{
+			digestInt(digest, -1);
+			return;
+		}
+		byte[] b = value.getBytes(StandardCharsets.UTF_8);
+		digestInt(digest, b.length);
+		digest.update(b);
+	}
+
+	// Digests an include's contents.
+	private static byte[] digestInclude(ScriptReaderIncluder includer, String resolvedPath) throws IOException
+	{
+		MessageDigest digest = createDigest();
+		try (InputStream in = includer.getIncludeResource(resolvedPath)) {
+			byte[] buffer = new byte[8192];
+			int buf;
+			while ((buf = in.read(buffer)) > 0)
+				digest.update(buffer, 0, buf);
+		}
+		return digest.digest();
+	}
+	
+	private static String toHex(byte[] data)
+	{
+		StringBuilder sb = new StringBuilder(data.length * 2);
+		for (byte b : data)
+			sb.append(Character.forDigit((b >> 4) & 0x0f, 16)).append(Character.forDigit(b & 0x0f, 16));
+		return sb.toString();
+	}
+	
+	private File getCacheFile(String key)
+	{
+		return new File(directory, key + CACHE_EXTENSION);
+	}
+	
+	// Reads a script from the disk tier, if there, and if its dependencies match.
+	// A file that cannot be read back is deleted, so that the script is compiled and written again.
+	private CacheEntry readCacheFile(String key, ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver, ScriptReaderIncluder includer)
+	{
+		File file;
+		if (directory == null || !(file = getCacheFile(key)).exists())
+			return null;
+		
+		try {
+			byte[] data = Files.readAllBytes(file.toPath());
+			ByteArrayInputStream bis = new ByteArrayInputStream(data);
+			DataInputStream in = new DataInputStream(bis);
+			if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION || !key.equals(in.readUTF()))
+				return null;
+			Dependencies dependencies = Dependencies.read(in);
+			if (!dependencies.matches(functionResolver, scopeResolver, includer))
+				return null;
+			int offset = data.length - bis.available();
+			Script script = ScriptBinary.read(ByteBuffer.wrap(data, offset, data.length - offset), functionResolver, scopeResolver);
+			return new CacheEntry(script.freeze(), dependencies);
+		} catch (IOException | RuntimeException e) {
+			file.delete();
+			return null;
+		}
+	}
+
+	// Writes a script to the disk tier (a temporary file is moved into place).
+	private void writeCacheFile(String key, Script script, Dependencies dependencies)
+	{
+		if (directory == null)
+			return;
+		
+		File temp = null;
+		try {
+			if (!directory.exists() && !directory.mkdirs())
+				return;
+			temp = File.createTempFile(key, ".tmp", directory);
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+				out.writeInt(CACHE_MAGIC);
+				out.writeInt(CACHE_VERSION);
+				out.writeUTF(key);
+				dependencies.write(out);
+				ScriptBinary.write(script, out);
+			}
+			Files.move(temp.toPath(), getCacheFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			temp = null;
+		} catch (IOException e) {
+			// Do nothing - the disk tier is best-effort.
+		} finally {
+			if (temp != null)
+				temp.delete();
+		}
+	}
+
+	/**
+	 * A cached script and what its compile depended on.
+	 */
+	private static class CacheEntry
+	{
+		private Script script;
+		private Dependencies dependencies;
+		
+		private CacheEntry(Script script, Dependencies dependencies)
+		{
+			this.script = script;
+			this.dependencies = dependencies;
+		}
+		
+		// Returns the shared script, or a copy if the resolvers are different.
+		private Script getScript(ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver)
+		{
+			if (script.getHostFunctionResolver() == functionResolver && script.getScopeResolver() == scopeResolver)
+				return script;
+			return script.copy(functionResolver, scopeResolver).freeze();
+		}
+	}
+	
+	/**
+	 * The includes and lookups that a compile depended on.
+	 */
+	private static class Dependencies
+	{
+		private List<IncludeRecord> includes;
+		private List<FunctionLookup> functionLookups;
+		private List<ScopeLookup> scopeLookups;
+		
+		private Dependencies(List<IncludeRecord> includes, List<FunctionLookup> functionLookups, List<ScopeLookup> scopeLookups)
+		{
+			this.includes = includes;
+			this.functionLookups = functionLookups;
+			this.scopeLookups = scopeLookups;
+		}
+		
+		// Checks if a compile with these would have had the same results.
+		private boolean matches(ScriptHostFunctionResolver functionResolver, ScriptScopeResolver scopeResolver, ScriptReaderIncluder includer)
+		{
+			for (FunctionLookup lookup : functionLookups)
+			{
+				ScriptFunctionType function = functionResolver.getNamespacedFunction(lookup.namespace, lookup.name);
+				if ((function != null ? function.getParameterCount() : -1) != lookup.parameterCount)
+					return false;
+			}
+			for (ScopeLookup lookup : scopeLookups)
+			{
+				if ((scopeResolver.getScope(lookup.name) != null) != lookup.found)
+					return false;
+			}
+			for (IncludeRecord include : includes)
+			{
+				try {
+					if (!include.resolvedPath.equals(includer.getIncludeResourcePath(include.streamName, include.path)))
+						return false;
+					// an edit within the stamp's resolution of the last read may not have changed the stamp.
+					long stamp = includer.getIncludeResourceStamp(include.resolvedPath);
+					if (stamp != -1L && stamp == include.stamp && stamp + STAMP_RESOLUTION <= include.readTime)
+						continue;
+					long readTime = System.currentTimeMillis();
+					if (!Arrays.equals(include.digest, digestInclude(includer, include.resolvedPath)))
+						return false;
+					// unchanged, so the current stamp can be trusted from here on.
+					include.readTime = readTime;
+					include.stamp = stamp;
+				} catch (IOException e) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		private void write(DataOutputStream out) throws IOException
+		{
+			out.writeInt(includes.size());
+			for (IncludeRecord include : includes)
+			{
+				writeNullableUTF(out, include.streamName);
+				out.writeUTF(include.path);
+				out.writeUTF(include.resolvedPath);
+				out.writeLong(include.stamp);
+				out.writeLong(include.readTime);
+				out.writeInt(include.digest.length);
+				out.write(include.digest);
+			}
+			out.writeInt(functionLookups.size());
+			for (FunctionLookup lookup : functionLookups)
+			{
+				writeNullableUTF(out, lookup.namespace);
+				out.writeUTF(lookup.name);
+				out.writeInt(lookup.parameterCount);
+			}
+			out.writeInt(scopeLookups.size());
+			for (ScopeLookup lookup : scopeLookups)
+			{
+				out.writeUTF(lookup.name);
+				out.writeBoolean(lookup.found);
+			}
+		}
+
+		private static Dependencies read(DataInputStream in) throws IOException
+		{
+			int includeCount = in.readInt();
+			List<IncludeRecord> includes = new ArrayList<>(Math.min(includeCount, 64));
+			for (int i = 0; i < includeCount; i++)
+			{
+				String streamName = readNullableUTF(in);
+				String path = in.readUTF();
+				String resolvedPath = in.readUTF();
+				long stamp = in.readLong();
+				long readTime = in.readLong();
+				byte[] digest = new byte[in.readInt()];
+				in.readFully(digest);
+				includes.add(new IncludeRecord(streamName, path, resolvedPath, stamp, readTime, digest));
+			}
+			int functionCount = in.readInt();
+			List<FunctionLookup> functionLookups = new ArrayList<>(Math.min(functionCount, 256));
+			for (int i = 0; i < functionCount; i++)
+			{
+				String namespace = readNullableUTF(in);
+				String name = in.readUTF();
+				functionLookups.add(new FunctionLookup(namespace, name, in.readInt()));
+			}
+			int scopeCount = in.readInt();
+			List<ScopeLookup> scopeLookups = new ArrayList<>(Math.min(scopeCount, 64));
+			for (int i = 0; i < scopeCount; i++)
+			{
+				String name = in.readUTF();
+				scopeLookups.add(new ScopeLookup(name, in.readBoolean()));
+			}
+			return new Dependencies(includes, functionLookups, scopeLookups);
+		}
+		
+		private static void writeNullableUTF(DataOutputStream out, String s) throws IOException
+		{
+			out.writeBoolean(s != null);
+			if (s != null)
+				out.writeUTF(s);
+		}
+		
+		private static String readNullableUTF(DataInputStream in) throws IOException
+		{
+			return in.readBoolean() ? in.readUTF() : null;
+		}
+	}
+	
+	/**
+	 * An include that was resolved and read (an edge in the include graph, from the including stream to the resource).
+	 */
+	private static class IncludeRecord
+	{
+		private String streamName;
+		private String path;
+		private String resolvedPath;
+		/** Modification stamp when last read (or -1 if not stamped). */
+		private volatile long stamp;
+		/** System time when last read (the stamp is only trusted once it is older than this). */
+		private volatile long readTime;
+		private byte[] digest;
+		
+		private IncludeRecord(String streamName, String path, String resolvedPath, long stamp, long readTime, byte[] digest)
+		{
+			this.streamName = streamName;
+			this.path = path;
+			this.resolvedPath = resolvedPath;
+			this.stamp = stamp;
+			this.readTime = readTime;
+			this.digest = digest;
+		}
+	}
+	
+	/**
+	 * A host function lookup and its result (parameter count, or -1 if not found).
+	 */
+	private static class FunctionLookup
+	{
+		private String namespace;
+		private String name;
+		private int parameterCount;
+		
+		private FunctionLookup(String namespace, String name, int parameterCount)
+		{
+			this.namespace = namespace;
+			this.name = name;
+			this.parameterCount = parameterCount;
+		}
+	}
+	
+	/**
+	 * A scope lookup and its result.
+	 */
+	private static class ScopeLookup
+	{
+		private String name;
+		private boolean found;
+		
+		private ScopeLookup(String name, boolean found)
+		{
+			this.name = name;
+			this.found = found;
+		}
+	}
+	
+	/**
+	 * A host function resolver that records the lookups made on it.
+	 */
+	private static class RecordingHostFunctionResolver implements ScriptHostFunctionResolver
+	{
+		private ScriptHostFunctionResolver resolver;
+		private Map<String, FunctionLookup> lookups;
+		
+		private RecordingHostFunctionResolver(ScriptHostFunctionResolver resolver)
+		{
+			this.resolver = resolver;
+			this.lookups = new LinkedHashMap<>();
+		}
+		
+		@Override
+		public boolean containsNamespacedFunction(String namespace, String name)
+		{
+			return getNamespacedFunction(namespace, name) != null;
+		}
+
+		@Override
+		public ScriptFunctionType getNamespacedFunction(String namespace, String name)
+		{
+			ScriptFunctionType out = resolver.getNamespacedFunction(namespace, name);
+			String key = (namespace != null ? namespace.toLowerCase() : "") + "::" + name.toLowerCase();
+			if (!lookups.containsKey(key))
+				lookups.put(key, new FunctionLookup(namespace, name, out != null ? out.getParameterCount() : -1));
+			return out;
+		}
+	}
+	
+	/**
+	 * A scope resolver that records the lookups made on it.
+	 */
+	private static class RecordingScopeResolver implements ScriptScopeResolver
+	{
+		private ScriptScopeResolver resolver;
+		private Map<String, ScopeLookup> lookups;
+		
+		private RecordingScopeResolver(ScriptScopeResolver resolver)
+		{
+			this.resolver = resolver;
+			this.lookups = new LinkedHashMap<>();
+		}
+		
+		@Override
+		public ScriptVariableResolver getScope(String name)
+		{
+			ScriptVariableResolver out = resolver.getScope(name);
+			String key = name.toLowerCase();
+			if (!lookups.containsKey(key))
+				lookups.put(key, new ScopeLookup(name, out != null));
+			return out;
+		}
+		
+		@Override
+		public boolean containsScope(String name)
+		{
+			return getScope(name) != null;
+		}
+	}
+	
+	/**
+	 * An includer that records the includes that were resolved, and hashes what was read from them.
+	 */
+	private static class RecordingIncluder implements ScriptReaderIncluder
+	{
+		private ScriptReaderIncluder includer;
+		private Map<String, String[]> resolved;
+		private Map<String, DigestInputStream> streams;
+		private Map<String, Long> stamps;
+		private Map<String, Long> readTimes;
+		
+		private RecordingIncluder(ScriptReaderIncluder includer)
+		{
+			this.includer = includer;
+			this.resolved = new LinkedHashMap<>();
+			this.streams = new HashMap<>();
+			this.stamps = new HashMap<>();
+			this.readTimes = new HashMap<>();
+		}
+		
+		@Override
+		public String getIncludeResourcePath(String streamName, String path) throws IOException
+		{
+			String out = includer.getIncludeResourcePath(streamName, path);
+			resolved.putIfAbsent(streamName + "\0" + path, new String[]{streamName, path, out});
+			return out;
+		}
+
+		@Override
+		public InputStream getIncludeResource(String path) throws IOException
+		{
+			// stamp before reading, so that a change during the read is not missed later.
+			readTimes.putIfAbsent(path, System.currentTimeMillis());
+			stamps.putIfAbsent(path, includer.getIncludeResourceStamp(path));
+			DigestInputStream out = new DigestInputStream(includer.getIncludeResource(path), createDigest());
+			streams.putIfAbsent(path, out);
+			return out;
+		}
+		
+		@Override
+		public Charset getEncodingForIncludedResource(String path)
+		{
+			return includer.getEncodingForIncludedResource(path);
+		}
+		
+		@Override
+		public long getIncludeResourceStamp(String path)
+		{
+			return includer.getIncludeResourceStamp(path);
+		}
+		
+		// Gets the include records (an include that was resolved but never opened is read here).
+		private List<IncludeRecord> getIncludes() throws IOException
+		{
+			List<IncludeRecord> out = new ArrayList<>(resolved.size());
+			Map<String, byte[]> digests = new HashMap<>();
+			for (String[] include : resolved.values())
+			{
+				String resolvedPath = include[2];
+				byte[] digest;
+				// a resource included from more than one place is only digested once (digest() resets the stream's digest).
+				if ((digest = digests.get(resolvedPath)) == null)
+				{
+					DigestInputStream stream = streams.get(resolvedPath);
+					if (stream != null)
+						digest = stream.getMessageDigest().digest();
+					else
+					{
+						readTimes.putIfAbsent(resolvedPath, System.currentTimeMillis());
+						stamps.putIfAbsent(resolvedPath, includer.getIncludeResourceStamp(resolvedPath));
+						digest = digestInclude(includer, resolvedPath);
+					}
+					digests.put(resolvedPath, digest);
+				}
+				out.add(new IncludeRecord(include[0], include[1], resolvedPath, stamps.get(resolvedPath), readTimes.get(resolvedPath), digest));
+			}
+			return out;
+		}
+	}
+	
+}
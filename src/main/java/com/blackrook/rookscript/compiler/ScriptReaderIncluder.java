@@ -16,4 +16,17 @@ import com.blackrook.rookscript.struct.PreprocessorLexer;
  */
 public interface ScriptReaderIncluder extends PreprocessorLexer.Includer
 {
+	/**
+	 * Gets a modification stamp for a resolved include path, so that a change to it 
+	 * can be detected without reading it (see {@link ScriptReaderCache}).
+	 * The stamp must change whenever the resource's contents change.
+	 * <p>By default, this returns -1 (no stamp), and the resource is read to check for changes.
+	 * @param path the resolved resource path (from {@link #getIncludeResourcePath(String, String)}).
+	 * @return the stamp, or -1 if the resource has no stamp.
+	 * @since [NOW]
+	 */
+	default long getIncludeResourceStamp(String path)
+	{
+		return -1L;
+	}
 }
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript.exception;
+
+/**
+ * Exception that is thrown when a script instance exceeds one of its limits,
+ * like its deadline or its memory quota.
+ * @author Matthew Tropiano
+ * @since [NOW]
+ */
+public class ScriptQuotaException extends ScriptExecutionException
+{
+	private static final long serialVersionUID = 6310498265178405672L;
+
+	public ScriptQuotaException()
+	{
+		super();
+	}
+
+	public ScriptQuotaException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+
+	public ScriptQuotaException(String message) 
+	{
+		super(message);
+	}
+
+	public ScriptQuotaException(String message, Object ... args) 
+	{
+		super(String.format(message, args));
+	}
+
+	public ScriptQuotaException(Throwable cause)
+	{
+		super(cause);
+	}
+
+}
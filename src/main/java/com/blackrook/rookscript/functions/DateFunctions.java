@@ -76,7 +76,7 @@ public enum DateFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -142,7 +142,6 @@ public enum DateFunctions implements ScriptFunctionType
 	protected abstract Usage usage();
 
 	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<Map<String, SimpleDateFormat>> SIMPLEDATEFORMATCACHE = ThreadLocal.withInitial(()->new HashMap<>());
 
 }
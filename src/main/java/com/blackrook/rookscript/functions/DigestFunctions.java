@@ -61,7 +61,7 @@ public enum DigestFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -125,8 +125,8 @@ public enum DigestFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue msg = CACHEVALUE2.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
+			ScriptValue msg = scriptInstance.getRegister(1);
 			byte[] bytes = BYTEARRAY.get();
 			try
 			{
@@ -219,7 +219,7 @@ public enum DigestFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -261,7 +261,7 @@ public enum DigestFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				returnValue.setEmptyList(256);
@@ -337,7 +337,7 @@ public enum DigestFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			byte[] bytes = BYTEARRAY.get();
 			try
 			{
@@ -434,7 +434,7 @@ public enum DigestFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE2.get(); // V1 is used by DIGEST
+			ScriptValue temp = scriptInstance.getRegister(1); // V1 is used by DIGEST
 			try
 			{
 				// The data source to use is already on the stack - just push "md5".
@@ -479,7 +479,7 @@ public enum DigestFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE2.get(); // V1 is used by DIGEST
+			ScriptValue temp = scriptInstance.getRegister(1); // V1 is used by DIGEST
 			try
 			{
 				// The data source to use is already on the stack - just push "sha-1".
@@ -524,7 +524,7 @@ public enum DigestFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE2.get(); // V1 is used by DIGEST
+			ScriptValue temp = scriptInstance.getRegister(1); // V1 is used by DIGEST
 			try
 			{
 				// The data source to use is already on the stack - just push "sha-256".
@@ -578,8 +578,6 @@ public enum DigestFunctions implements ScriptFunctionType
 	protected abstract Usage usage();
 
 	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<byte[]> BYTEARRAY = ThreadLocal.withInitial(()->new byte[2048]);
 
 }
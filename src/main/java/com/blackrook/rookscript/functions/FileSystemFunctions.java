@@ -54,7 +54,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -94,7 +94,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -138,7 +138,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -182,7 +182,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -226,7 +226,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -266,7 +266,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -311,7 +311,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -353,7 +353,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -395,7 +395,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -443,7 +443,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -491,7 +491,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -539,7 +539,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -588,7 +588,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -647,7 +647,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -715,7 +715,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File file = popFile(scriptInstance, temp);
@@ -766,7 +766,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File dest = popFile(scriptInstance, temp);
@@ -813,7 +813,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File dir = popFile(scriptInstance, temp);
@@ -858,7 +858,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File dir = popFile(scriptInstance, temp);
@@ -907,7 +907,7 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				File dir = popFile(scriptInstance, temp);
@@ -1007,7 +1007,4 @@ public enum FileSystemFunctions implements ScriptFunctionType
 		}
 	}
 	
-	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-
 }
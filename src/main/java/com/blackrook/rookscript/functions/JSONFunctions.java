@@ -76,7 +76,7 @@ public enum JSONFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -164,8 +164,8 @@ public enum JSONFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue output = CACHEVALUE2.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
+			ScriptValue output = scriptInstance.getRegister(1);
 			try 
 			{
 				scriptInstance.popStackValue(temp);
@@ -250,7 +250,7 @@ public enum JSONFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try 
 			{
 				scriptInstance.popStackValue(temp);
@@ -698,8 +698,4 @@ public enum JSONFunctions implements ScriptFunctionType
 	private static final String HEXALPHABET = "0123456789ABCDEF";
 	private static final JSONLexerKernel LEXERKERNEL = new JSONLexerKernel();
 	
-	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-
 }
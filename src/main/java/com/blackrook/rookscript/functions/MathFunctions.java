@@ -48,8 +48,8 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue arg1 = CACHEVALUE1.get();
-			ScriptValue arg2 = CACHEVALUE2.get();
+			ScriptValue arg1 = scriptInstance.getRegister(0);
+			ScriptValue arg2 = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(arg2);
@@ -92,8 +92,8 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue arg1 = CACHEVALUE1.get();
-			ScriptValue arg2 = CACHEVALUE2.get();
+			ScriptValue arg1 = scriptInstance.getRegister(0);
+			ScriptValue arg2 = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(arg2);
@@ -136,7 +136,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -174,7 +174,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -209,7 +209,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -244,7 +244,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -282,7 +282,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -344,7 +344,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -379,7 +379,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -414,7 +414,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -472,7 +472,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -507,7 +507,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -542,7 +542,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -577,7 +577,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -612,7 +612,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -647,7 +647,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -682,7 +682,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -717,7 +717,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -758,7 +758,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -804,7 +804,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -855,7 +855,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -900,7 +900,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -952,7 +952,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -1008,7 +1008,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -1058,7 +1058,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -1094,7 +1094,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -1130,7 +1130,7 @@ public enum MathFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -1181,8 +1181,4 @@ public enum MathFunctions implements ScriptFunctionType
 
 	protected abstract Usage usage();
 
-	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-
 }
@@ -64,7 +64,7 @@ public enum SystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -127,7 +127,7 @@ public enum SystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -222,11 +222,11 @@ public enum SystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue stdin = CACHEVALUE1.get();
-			ScriptValue stderr = CACHEVALUE2.get();
-			ScriptValue stdout = CACHEVALUE3.get();
-			ScriptValue work = CACHEVALUE4.get();
-			ScriptValue temp = CACHEVALUE5.get();
+			ScriptValue stdin = scriptInstance.getRegister(0);
+			ScriptValue stderr = scriptInstance.getRegister(1);
+			ScriptValue stdout = scriptInstance.getRegister(2);
+			ScriptValue work = scriptInstance.getRegister(3);
+			ScriptValue temp = scriptInstance.getRegister(4);
 			try
 			{
 				scriptInstance.popStackValue(stdin);
@@ -432,7 +432,7 @@ public enum SystemFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -608,11 +608,4 @@ public enum SystemFunctions implements ScriptFunctionType
 		}
 	}
 
-	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE3 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE4 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE5 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-
 }
@@ -62,7 +62,7 @@ public enum ZipFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try 
 			{
 				File file = popFile(scriptInstance, temp);
@@ -116,7 +116,7 @@ public enum ZipFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try 
 			{
 				scriptInstance.popStackValue(temp);
@@ -179,7 +179,7 @@ public enum ZipFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try 
 			{
 				scriptInstance.popStackValue(temp);
@@ -242,7 +242,7 @@ public enum ZipFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try 
 			{
 				scriptInstance.popStackValue(temp);
@@ -298,8 +298,8 @@ public enum ZipFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue temp2 = CACHEVALUE2.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
+			ScriptValue temp2 = scriptInstance.getRegister(1);
 			try 
 			{
 				scriptInstance.popStackValue(temp);
@@ -381,7 +381,7 @@ public enum ZipFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try 
 			{
 				scriptInstance.popStackValue(temp);
@@ -450,7 +450,7 @@ public enum ZipFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try 
 			{
 				scriptInstance.popStackValue(temp);
@@ -607,8 +607,4 @@ public enum ZipFunctions implements ScriptFunctionType
 		}
 	}
 	
-	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-
 }
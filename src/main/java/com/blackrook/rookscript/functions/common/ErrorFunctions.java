@@ -45,7 +45,7 @@ public enum ErrorFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue arg1 = CACHEVALUE1.get();
+			ScriptValue arg1 = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(arg1);
@@ -87,7 +87,7 @@ public enum ErrorFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -132,7 +132,7 @@ public enum ErrorFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue arg1 = CACHEVALUE1.get();
+			ScriptValue arg1 = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(arg1);
@@ -176,7 +176,7 @@ public enum ErrorFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue arg1 = CACHEVALUE1.get();
+			ScriptValue arg1 = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(arg1);
@@ -220,7 +220,7 @@ public enum ErrorFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue arg1 = CACHEVALUE1.get();
+			ScriptValue arg1 = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(arg1);
@@ -264,8 +264,8 @@ public enum ErrorFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue arg1 = CACHEVALUE1.get();
-			ScriptValue temp = CACHEVALUE2.get();
+			ScriptValue arg1 = scriptInstance.getRegister(0);
+			ScriptValue temp = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(arg1);
@@ -330,8 +330,4 @@ public enum ErrorFunctions implements ScriptFunctionType
 
 	protected abstract Usage usage();
 
-	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-
 }
@@ -45,7 +45,7 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue) 
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -86,8 +86,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue temp = CACHEVALUE2.get();
+			ScriptValue value = scriptInstance.getRegister(0);
+			ScriptValue temp = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -139,8 +139,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue value = CACHEVALUE2.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
+			ScriptValue value = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -189,9 +189,9 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue item = CACHEVALUE1.get();
-			ScriptValue list = CACHEVALUE2.get();
-			ScriptValue index = CACHEVALUE3.get();
+			ScriptValue item = scriptInstance.getRegister(0);
+			ScriptValue list = scriptInstance.getRegister(1);
+			ScriptValue index = scriptInstance.getRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(index);
@@ -237,8 +237,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue item = CACHEVALUE1.get();
-			ScriptValue list = CACHEVALUE2.get();
+			ScriptValue item = scriptInstance.getRegister(0);
+			ScriptValue list = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(item);
@@ -278,8 +278,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue list = CACHEVALUE2.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
+			ScriptValue list = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -318,7 +318,7 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -358,8 +358,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue item = CACHEVALUE1.get();
-			ScriptValue list = CACHEVALUE2.get();
+			ScriptValue item = scriptInstance.getRegister(0);
+			ScriptValue list = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(item);
@@ -401,8 +401,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue item = CACHEVALUE1.get();
-			ScriptValue list = CACHEVALUE2.get();
+			ScriptValue item = scriptInstance.getRegister(0);
+			ScriptValue list = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(item);
@@ -449,8 +449,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue item = CACHEVALUE1.get();
-			ScriptValue list = CACHEVALUE2.get();
+			ScriptValue item = scriptInstance.getRegister(0);
+			ScriptValue list = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(item);
@@ -503,8 +503,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue list = CACHEVALUE2.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
+			ScriptValue list = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -572,9 +572,9 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue newset = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value = scriptInstance.getRegister(0);
+			ScriptValue newset = scriptInstance.getRegister(1);
+			ScriptValue temp = scriptInstance.getRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -627,8 +627,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue set = CACHEVALUE2.get();
+			ScriptValue value = scriptInstance.getRegister(0);
+			ScriptValue set = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -669,8 +669,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue set = CACHEVALUE2.get();
+			ScriptValue value = scriptInstance.getRegister(0);
+			ScriptValue set = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -711,8 +711,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue set = CACHEVALUE2.get();
+			ScriptValue value = scriptInstance.getRegister(0);
+			ScriptValue set = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -754,8 +754,8 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue set = CACHEVALUE2.get();
+			ScriptValue value = scriptInstance.getRegister(0);
+			ScriptValue set = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -797,10 +797,10 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue set2 = CACHEVALUE1.get();
-			ScriptValue set1 = CACHEVALUE2.get();
-			ScriptValue out = CACHEVALUE3.get();
-			ScriptValue temp = CACHEVALUE4.get();
+			ScriptValue set2 = scriptInstance.getRegister(0);
+			ScriptValue set1 = scriptInstance.getRegister(1);
+			ScriptValue out = scriptInstance.getRegister(2);
+			ScriptValue temp = scriptInstance.getRegister(3);
 			try
 			{
 				scriptInstance.popStackValue(set2);
@@ -871,10 +871,10 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue set2 = CACHEVALUE1.get();
-			ScriptValue set1 = CACHEVALUE2.get();
-			ScriptValue out = CACHEVALUE3.get();
-			ScriptValue temp = CACHEVALUE4.get();
+			ScriptValue set2 = scriptInstance.getRegister(0);
+			ScriptValue set1 = scriptInstance.getRegister(1);
+			ScriptValue out = scriptInstance.getRegister(2);
+			ScriptValue temp = scriptInstance.getRegister(3);
 			try
 			{
 				scriptInstance.popStackValue(set2);
@@ -944,10 +944,10 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue set2 = CACHEVALUE1.get();
-			ScriptValue set1 = CACHEVALUE2.get();
-			ScriptValue out = CACHEVALUE3.get();
-			ScriptValue temp = CACHEVALUE4.get();
+			ScriptValue set2 = scriptInstance.getRegister(0);
+			ScriptValue set1 = scriptInstance.getRegister(1);
+			ScriptValue out = scriptInstance.getRegister(2);
+			ScriptValue temp = scriptInstance.getRegister(3);
 			try
 			{
 				scriptInstance.popStackValue(set2);
@@ -1022,10 +1022,10 @@ public enum ListFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue set2 = CACHEVALUE1.get();
-			ScriptValue set1 = CACHEVALUE2.get();
-			ScriptValue out = CACHEVALUE3.get();
-			ScriptValue temp = CACHEVALUE4.get();
+			ScriptValue set2 = scriptInstance.getRegister(0);
+			ScriptValue set1 = scriptInstance.getRegister(1);
+			ScriptValue out = scriptInstance.getRegister(2);
+			ScriptValue temp = scriptInstance.getRegister(3);
 			try
 			{
 				scriptInstance.popStackValue(set2);
@@ -1108,10 +1108,4 @@ public enum ListFunctions implements ScriptFunctionType
 
 	protected abstract Usage usage();
 
-	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE3 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE4 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-
 }
@@ -47,7 +47,7 @@ public enum MapFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue) 
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -84,8 +84,8 @@ public enum MapFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue) 
 		{
-			ScriptValue map = CACHEVALUE1.get();
-			ScriptValue out = CACHEVALUE2.get();
+			ScriptValue map = scriptInstance.getRegister(0);
+			ScriptValue out = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(map);
@@ -173,9 +173,9 @@ public enum MapFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue) 
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue key = CACHEVALUE2.get();
-			ScriptValue map = CACHEVALUE3.get();
+			ScriptValue value = scriptInstance.getRegister(0);
+			ScriptValue key = scriptInstance.getRegister(1);
+			ScriptValue map = scriptInstance.getRegister(2);
 			try 
 			{
 				scriptInstance.popStackValue(value);
@@ -226,9 +226,9 @@ public enum MapFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue) 
 		{
-			ScriptValue keyValue = CACHEVALUE1.get();
-			ScriptValue map = CACHEVALUE2.get();
-			ScriptValue out = CACHEVALUE3.get();
+			ScriptValue keyValue = scriptInstance.getRegister(0);
+			ScriptValue map = scriptInstance.getRegister(1);
+			ScriptValue out = scriptInstance.getRegister(2);
 			try 
 			{
 				scriptInstance.popStackValue(out);
@@ -281,9 +281,9 @@ public enum MapFunctions implements ScriptFunctionType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue) 
 		{
-			ScriptValue map2 = CACHEVALUE1.get();
-			ScriptValue map1 = CACHEVALUE2.get();
-			ScriptValue out = CACHEVALUE3.get();
+			ScriptValue map2 = scriptInstance.getRegister(0);
+			ScriptValue map1 = scriptInstance.getRegister(1);
+			ScriptValue out = scriptInstance.getRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(map2);
@@ -357,9 +357,4 @@ public enum MapFunctions implements ScriptFunctionType
 
 	protected abstract Usage usage();
 
-	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE3 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-
 }
@@ -15,19 +15,37 @@ import com.blackrook.rookscript.ScriptInstance;
  */
 public final class ScriptCommand
 {
+	/** Index value for an unresolved label operand. */
+	public static final int UNRESOLVED_INDEX = -1;
+	
 	/** Directive type. */
-	private ScriptCommandType type;
+	private final ScriptCommandType type;
 	/** First Operand. */
-	private Object operand1;
+	private final Object operand1;
 	/** Second Operand. */
-	private Object operand2;
+	private final Object operand2;
+	/** First Operand's resolved command index, if it is a label. */
+	private final int operandIndex1;
+	/** Second Operand's resolved command index, if it is a label. */
+	private final int operandIndex2;
+	/** The bound host function, if this is a host function call. */
+	private final ScriptFunctionType hostFunction;
 	
 	// Private constructor.
 	private ScriptCommand(ScriptCommandType type, Object operand1, Object operand2)
+	{
+		this(type, operand1, operand2, UNRESOLVED_INDEX, UNRESOLVED_INDEX, null);
+	}
+	
+	// Private constructor.
+	private ScriptCommand(ScriptCommandType type, Object operand1, Object operand2, int operandIndex1, int operandIndex2, ScriptFunctionType hostFunction)
 	{
 		this.type = type;
 		this.operand1 = operand1;
 		this.operand2 = operand2;
+		this.operandIndex1 = operandIndex1;
+		this.operandIndex2 = operandIndex2;
+		this.hostFunction = hostFunction;
 	}
 	
 	/**
@@ -152,6 +170,28 @@ public final class ScriptCommand
 		return new ScriptCommand(type, operand1, operand2);
 	}
 	
+	/**
+	 * Creates a new script directive.
+	 * @param type the directive type.
+	 * @param operand1 the first operand.
+	 * @param operand2 the second operand.
+	 * @return a new script directive.
+	 * @since [NOW]
+	 */
+	public static ScriptCommand create(ScriptCommandType type, Object operand1, long operand2)
+	{
+		if (operand1 instanceof Boolean)
+			return new ScriptCommand(type, (Boolean)operand1, operand2);
+		else if (operand1 instanceof Long)
+			return new ScriptCommand(type, (Long)operand1, operand2);
+		else if (operand1 instanceof Double)
+			return new ScriptCommand(type, (Double)operand1, operand2);
+		else if (operand1 instanceof String)
+			return new ScriptCommand(type, (String)operand1, operand2);
+		else
+			throw new IllegalArgumentException("Bad object type."); 
+	}
+	
 	/**
 	 * Creates a new script directive.
 	 * @param type the directive type.
@@ -213,6 +253,88 @@ public final class ScriptCommand
 		return operand2;
 	}
 	
+	/**
+	 * Gets the resolved command index of the first operand, if it is a label.
+	 * @return the command index, or {@link #UNRESOLVED_INDEX} if not resolved.
+	 * @since [NOW]
+	 */
+	public int getOperandIndex1()
+	{
+		return operandIndex1;
+	}
+	
+	/**
+	 * Gets the resolved command index of the second operand, if it is a label.
+	 * @return the command index, or {@link #UNRESOLVED_INDEX} if not resolved.
+	 * @since [NOW]
+	 */
+	public int getOperandIndex2()
+	{
+		return operandIndex2;
+	}
+	
+	/**
+	 * Checks if this command's label operands were all resolved to command indices.
+	 * Commands without label operands are never linked.
+	 * @return true if so, false if not.
+	 * @since [NOW]
+	 * @see #link(int, int)
+	 */
+	public boolean isLinked()
+	{
+		return (type.hasLabelOperand(1) && operandIndex1 != UNRESOLVED_INDEX)
+			&& (!type.hasLabelOperand(2) || operandIndex2 != UNRESOLVED_INDEX);
+	}
+	
+	/**
+	 * Creates a copy of this command with resolved command indices for its label operands.
+	 * The original operands are retained (for debugging and disassembly).
+	 * @param operandIndex1 the resolved index for the first operand (or {@link #UNRESOLVED_INDEX}).
+	 * @param operandIndex2 the resolved index for the second operand (or {@link #UNRESOLVED_INDEX}).
+	 * @return a new script directive.
+	 * @since [NOW]
+	 */
+	public ScriptCommand link(int operandIndex1, int operandIndex2)
+	{
+		return new ScriptCommand(type, operand1, operand2, operandIndex1, operandIndex2, hostFunction);
+	}
+	
+	/**
+	 * Creates a copy of this command without resolved command indices for its label operands.
+	 * @return a new script directive, or this one if it was not linked.
+	 * @since [NOW]
+	 */
+	public ScriptCommand unlink()
+	{
+		if (operandIndex1 == UNRESOLVED_INDEX && operandIndex2 == UNRESOLVED_INDEX)
+			return this;
+		return new ScriptCommand(type, operand1, operand2, UNRESOLVED_INDEX, UNRESOLVED_INDEX, hostFunction);
+	}
+	
+	/**
+	 * Gets the host function bound to this command, if this is a host function call.
+	 * @return the bound function, or null if not bound.
+	 * @since [NOW]
+	 * @see #bind(ScriptFunctionType)
+	 */
+	public ScriptFunctionType getHostFunction()
+	{
+		return hostFunction;
+	}
+	
+	/**
+	 * Creates a copy of this command with a bound host function.
+	 * Host function calls with a bound function do not need to resolve the function on execution.
+	 * The original operands are retained (for debugging and disassembly).
+	 * @param hostFunction the host function to bind (null to unbind).
+	 * @return a new script directive.
+	 * @since [NOW]
+	 */
+	public ScriptCommand bind(ScriptFunctionType hostFunction)
+	{
+		return new ScriptCommand(type, operand1, operand2, operandIndex1, operandIndex2, hostFunction);
+	}
+	
 	/**
 	 * Executes this command.
 	 * @param scriptInstance the originating script instance.
@@ -220,7 +342,7 @@ public final class ScriptCommand
 	 */	
 	public boolean execute(ScriptInstance scriptInstance)
 	{
-		return type.execute(scriptInstance, operand1, operand2);
+		return type.execute(scriptInstance, this);
 	}
 
 	@Override
@@ -58,6 +58,23 @@ public enum ScriptCommandType
 		}
 	},
 	
+	/**
+	 * Return null.
+	 * No operand.
+	 * Pushes one value (null), then restores previous command index / frame.
+	 * Fused form of PUSH_NULL, RETURN.
+	 * @since [NOW]
+	 */
+	RETURN_NULL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			scriptInstance.pushStackValue(null);
+			return RETURN.execute(scriptInstance, operand1, operand2);
+		}
+	},
+	
 	/**
 	 * Call function.
 	 * Operand is label.
@@ -68,12 +85,38 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			String labelName = String.valueOf(operand1);
-			int index = scriptInstance.getCommandIndex(labelName);
-			if (index < 0)
-				throw new ScriptExecutionException("label "+labelName+" does not correspond to an index");
-			
-			scriptInstance.pushFrame(index);
+			scriptInstance.pushFrame(resolveIndex(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1));
+			return true;
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			scriptInstance.pushFrame(resolveIndex(scriptInstance, command.getOperandIndex1(), command.getOperand1()));
+			return true;
+		}
+	},
+	
+	/**
+	 * Call function in tail position.
+	 * Operand is label.
+	 * Replaces the current frame and sets a new command index.
+	 * Fused form of CALL, RETURN.
+	 * @since [NOW]
+	 */
+	TAIL_CALL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			scriptInstance.replaceFrame(resolveIndex(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1));
+			return true;
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			scriptInstance.replaceFrame(resolveIndex(scriptInstance, command.getOperandIndex1(), command.getOperand1()));
 			return true;
 		}
 	},
@@ -92,20 +135,16 @@ public enum ScriptCommandType
 			ScriptFunctionType functionType = resolver.getNamespacedFunction(null, name);
 			if (functionType == null)
 				throw new ScriptExecutionException("host function \""+name+"\" could not be resolved");
-			
-			ScriptValue ret = RETURNVALUE.get();
-			ret.setNull();
-			try {
-				boolean c = functionType.execute(scriptInstance, ret);
-				scriptInstance.pushStackValue(ret);
-				return c;
-			} catch (ScriptExecutionException e) {
-				throw e;
-			} catch (Throwable t) {
-				throw new ScriptExecutionException("host function \""+name+"\" threw an exception.", t);
-			} finally {
-				ret.setNull();
-			}
+			return callHost(scriptInstance, functionType, null, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			ScriptFunctionType functionType;
+			if ((functionType = command.getHostFunction()) == null)
+				return execute(scriptInstance, command.getOperand1(), command.getOperand2());
+			return callHost(scriptInstance, functionType, null, command.getOperand1());
 		}
 	},
 	
@@ -125,20 +164,16 @@ public enum ScriptCommandType
 			ScriptFunctionType functionType = resolver.getNamespacedFunction(namespace, name);
 			if (functionType == null)
 				throw new ScriptExecutionException("host function \""+namespace+"::"+name+"\" could not be resolved");
+			return callHost(scriptInstance, functionType, operand1, operand2);
+		}
 
-			ScriptValue ret = RETURNVALUE.get();
-			ret.setNull();
-			try {
-				boolean c = functionType.execute(scriptInstance, ret);
-				scriptInstance.pushStackValue(ret);
-				return c;
-			} catch (ScriptExecutionException e) {
-				throw e;
-			} catch (Throwable t) {
-				throw new ScriptExecutionException("host function \""+namespace+"::"+name+"\" threw an exception.", t);
-			} finally {
-				ret.setNull();
-			}
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			ScriptFunctionType functionType;
+			if ((functionType = command.getHostFunction()) == null)
+				return execute(scriptInstance, command.getOperand1(), command.getOperand2());
+			return callHost(scriptInstance, functionType, command.getOperand1(), command.getOperand2());
 		}
 	},
 	
@@ -152,13 +187,13 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			String labelName = String.valueOf(operand1);
-			int index = scriptInstance.getCommandIndex(labelName);
-			if (index < 0)
-				throw new ScriptExecutionException("label "+labelName+" does not correspond to an index");
-			
-			scriptInstance.setCurrentCommandIndex(index);
-			return true;
+			return jump(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return jump(scriptInstance, command.getOperandIndex1(), command.getOperand1());
 		}
 	},
 	
@@ -173,13 +208,25 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			String labelName;
-			ScriptValue sv = CACHEVALUE1.get();
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1, ScriptCommand.UNRESOLVED_INDEX, operand2);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1(), command.getOperandIndex2(), command.getOperand2());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int trueIndex, Object trueLabel, int falseIndex, Object falseLabel)
+		{
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(sv);
-				labelName = sv.asBoolean() ? String.valueOf(operand1) : String.valueOf(operand2);
-				return JUMP.execute(scriptInstance, labelName, null);
+				if (sv.asBoolean())
+					return jump(scriptInstance, trueIndex, trueLabel);
+				else
+					return jump(scriptInstance, falseIndex, falseLabel);
 			} 
 			finally 
 			{
@@ -198,12 +245,23 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue sv = CACHEVALUE1.get();
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int index, Object operand1)
+		{
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try 
 			{
 				scriptInstance.popStackValue(sv);
 				if (sv.asBoolean())
-					return JUMP.execute(scriptInstance, operand1, null);
+					return jump(scriptInstance, index, operand1);
 				else
 					return true;
 			} 
@@ -224,12 +282,23 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue sv = CACHEVALUE1.get();
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int index, Object operand1)
+		{
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try 
 			{
 				scriptInstance.popStackValue(sv);
 				if (!sv.asBoolean())
-					return JUMP.execute(scriptInstance, operand1, null);
+					return jump(scriptInstance, index, operand1);
 				else
 					return true;
 			} 
@@ -250,13 +319,24 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue sv = CACHEVALUE1.get();
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int index, Object operand1)
+		{
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try 
 			{
 				scriptInstance.getStackValue(0, sv);
 				if (sv.asBoolean())
 				{
-					return JUMP.execute(scriptInstance, operand1, null);
+					return jump(scriptInstance, index, operand1);
 				}
 				else
 				{
@@ -281,13 +361,24 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue sv = CACHEVALUE1.get();
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int index, Object operand1)
+		{
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try 
 			{
 				scriptInstance.getStackValue(0, sv);
 				if (!sv.isNull())
 				{
-					return JUMP.execute(scriptInstance, operand1, null);
+					return jump(scriptInstance, index, operand1);
 				}
 				else
 				{
@@ -302,6 +393,266 @@ public enum ScriptCommandType
 		}
 	},
 	
+	/**
+	 * Jump to index if the first of two POPs is not less than the second.
+	 * Operand is label if false.
+	 * Pops two values.
+	 * Sets a new command index.
+	 * Fused form of LESS, JUMP_FALSE.
+	 * @since [NOW]
+	 */
+	JUMP_NOT_LESS
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int index, Object operand1)
+		{
+			int c = compareStack(scriptInstance);
+			if (!(c < 0))
+				return jump(scriptInstance, index, operand1);
+			else
+				return true;
+		}
+	},
+	
+	/**
+	 * Jump to index if the first of two POPs is not less than or equal to the second.
+	 * Operand is label if false.
+	 * Pops two values.
+	 * Sets a new command index.
+	 * Fused form of LESS_OR_EQUAL, JUMP_FALSE.
+	 * @since [NOW]
+	 */
+	JUMP_NOT_LESS_OR_EQUAL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int index, Object operand1)
+		{
+			int c = compareStack(scriptInstance);
+			if (!(c <= 0))
+				return jump(scriptInstance, index, operand1);
+			else
+				return true;
+		}
+	},
+	
+	/**
+	 * Jump to index if the first of two POPs is not greater than the second.
+	 * Operand is label if false.
+	 * Pops two values.
+	 * Sets a new command index.
+	 * Fused form of GREATER, JUMP_FALSE.
+	 * @since [NOW]
+	 */
+	JUMP_NOT_GREATER
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int index, Object operand1)
+		{
+			int c = compareStack(scriptInstance);
+			if (!(c > 0))
+				return jump(scriptInstance, index, operand1);
+			else
+				return true;
+		}
+	},
+	
+	/**
+	 * Jump to index if the first of two POPs is not greater than or equal to the second.
+	 * Operand is label if false.
+	 * Pops two values.
+	 * Sets a new command index.
+	 * Fused form of GREATER_OR_EQUAL, JUMP_FALSE.
+	 * @since [NOW]
+	 */
+	JUMP_NOT_GREATER_OR_EQUAL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int index, Object operand1)
+		{
+			int c = compareStack(scriptInstance);
+			if (!(c >= 0))
+				return jump(scriptInstance, index, operand1);
+			else
+				return true;
+		}
+	},
+	
+	/**
+	 * Jump to index based on whether the first of two POPs is less than the second.
+	 * Operand1 is label if true.
+	 * Operand2 is label if false.
+	 * Pops two values.
+	 * Sets a new command index.
+	 * Fused form of LESS, JUMP_BRANCH.
+	 * @since [NOW]
+	 */
+	BRANCH_LESS
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1, ScriptCommand.UNRESOLVED_INDEX, operand2);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1(), command.getOperandIndex2(), command.getOperand2());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int trueIndex, Object trueLabel, int falseIndex, Object falseLabel)
+		{
+			int c = compareStack(scriptInstance);
+			if (c < 0)
+				return jump(scriptInstance, trueIndex, trueLabel);
+			else
+				return jump(scriptInstance, falseIndex, falseLabel);
+		}
+	},
+	
+	/**
+	 * Jump to index based on whether the first of two POPs is less than or equal to the second.
+	 * Operand1 is label if true.
+	 * Operand2 is label if false.
+	 * Pops two values.
+	 * Sets a new command index.
+	 * Fused form of LESS_OR_EQUAL, JUMP_BRANCH.
+	 * @since [NOW]
+	 */
+	BRANCH_LESS_OR_EQUAL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1, ScriptCommand.UNRESOLVED_INDEX, operand2);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1(), command.getOperandIndex2(), command.getOperand2());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int trueIndex, Object trueLabel, int falseIndex, Object falseLabel)
+		{
+			int c = compareStack(scriptInstance);
+			if (c <= 0)
+				return jump(scriptInstance, trueIndex, trueLabel);
+			else
+				return jump(scriptInstance, falseIndex, falseLabel);
+		}
+	},
+	
+	/**
+	 * Jump to index based on whether the first of two POPs is greater than the second.
+	 * Operand1 is label if true.
+	 * Operand2 is label if false.
+	 * Pops two values.
+	 * Sets a new command index.
+	 * Fused form of GREATER, JUMP_BRANCH.
+	 * @since [NOW]
+	 */
+	BRANCH_GREATER
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1, ScriptCommand.UNRESOLVED_INDEX, operand2);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1(), command.getOperandIndex2(), command.getOperand2());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int trueIndex, Object trueLabel, int falseIndex, Object falseLabel)
+		{
+			int c = compareStack(scriptInstance);
+			if (c > 0)
+				return jump(scriptInstance, trueIndex, trueLabel);
+			else
+				return jump(scriptInstance, falseIndex, falseLabel);
+		}
+	},
+	
+	/**
+	 * Jump to index based on whether the first of two POPs is greater than or equal to the second.
+	 * Operand1 is label if true.
+	 * Operand2 is label if false.
+	 * Pops two values.
+	 * Sets a new command index.
+	 * Fused form of GREATER_OR_EQUAL, JUMP_BRANCH.
+	 * @since [NOW]
+	 */
+	BRANCH_GREATER_OR_EQUAL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			return branch(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1, ScriptCommand.UNRESOLVED_INDEX, operand2);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return branch(scriptInstance, command.getOperandIndex1(), command.getOperand1(), command.getOperandIndex2(), command.getOperand2());
+		}
+		
+		private boolean branch(ScriptInstance scriptInstance, int trueIndex, Object trueLabel, int falseIndex, Object falseLabel)
+		{
+			int c = compareStack(scriptInstance);
+			if (c >= 0)
+				return jump(scriptInstance, trueIndex, trueLabel);
+			else
+				return jump(scriptInstance, falseIndex, falseLabel);
+		}
+	},
+	
 	/**
 	 * Performs a single iteration, expecting an OBJECTREF:ScriptIteratorType 
 	 * on the stack top when this is executed.
@@ -319,7 +670,18 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue sv = CACHEVALUE1.get();
+			return iterate(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1, operand2);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return iterate(scriptInstance, command.getOperandIndex1(), command.getOperand1(), command.getOperand2());
+		}
+		
+		private boolean iterate(ScriptInstance scriptInstance, int index, Object operand1, Object operand2)
+		{
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try 
 			{
 				scriptInstance.getStackValue(0, sv);
@@ -339,7 +701,7 @@ public enum ScriptCommandType
 				else
 				{
 					scriptInstance.popStackValue();
-					return JUMP.execute(scriptInstance, operand1, null);
+					return jump(scriptInstance, index, operand1);
 				}
 			} 
 			finally 
@@ -359,12 +721,23 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue sv = CACHEVALUE1.get();
+			return check(scriptInstance, ScriptCommand.UNRESOLVED_INDEX, operand1);
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+		{
+			return check(scriptInstance, command.getOperandIndex1(), command.getOperand1());
+		}
+		
+		private boolean check(ScriptInstance scriptInstance, int index, Object operand1)
+		{
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try 
 			{
 				scriptInstance.getStackValue(0, sv);
 				if (sv.isError())
-					return JUMP.execute(scriptInstance, operand1, null);
+					return jump(scriptInstance, index, operand1);
 				else
 					return true;
 			} 
@@ -385,7 +758,7 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue sv = CACHEVALUE1.get();
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try 
 			{
 				if (operand1 instanceof Long)
@@ -420,7 +793,7 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue sv = CACHEVALUE1.get();
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try
 			{
 				scriptInstance.pushStackValue(sv);
@@ -444,7 +817,7 @@ public enum ScriptCommandType
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
 			String name = String.valueOf(operand1);
-			ScriptValue sv = CACHEVALUE1.get();
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try
 			{
 				scriptInstance.getValue(name, sv);
@@ -458,6 +831,23 @@ public enum ScriptCommandType
 		}
 	},
 	
+	/**
+	 * PUSH local variable.
+	 * Operand1 is String - variable name (informational).
+	 * Operand2 is Integer - local variable slot.
+	 * Pushes one value.
+	 * @since [NOW]
+	 */
+	PUSH_LOCAL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			scriptInstance.pushLocalValue(slot(operand2));
+			return true;
+		}
+	},
+	
 	/**
 	 * PUSH scoped variable.
 	 * Operand1 is String - scope name.
@@ -471,7 +861,7 @@ public enum ScriptCommandType
 		{
 			String scopeName = String.valueOf(operand1);
 			String variableName = String.valueOf(operand2);
-			ScriptValue sv = CACHEVALUE1.get();
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try
 			{
 				ScriptVariableResolver scope;
@@ -505,7 +895,7 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue sv = CACHEVALUE1.get();
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
 			try
 			{
 				sv.setEmptyList();
@@ -531,8 +921,8 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue sv = CACHEVALUE1.get();
-			ScriptValue temp = CACHEVALUE2.get();
+			ScriptValue sv = scriptInstance.getCommandRegister(0);
+			ScriptValue temp = scriptInstance.getCommandRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(sv);
@@ -565,9 +955,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue indexValue = CACHEVALUE1.get();
-			ScriptValue listValue = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue indexValue = scriptInstance.getCommandRegister(0);
+			ScriptValue listValue = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try 
 			{
 				scriptInstance.popStackValue(indexValue);
@@ -604,9 +994,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue indexValue = CACHEVALUE1.get();
-			ScriptValue listValue = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue indexValue = scriptInstance.getCommandRegister(0);
+			ScriptValue listValue = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.getStackValue(0, indexValue);
@@ -641,7 +1031,7 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
 			try
 			{
 				temp.setEmptyMap();
@@ -667,9 +1057,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue popped = CACHEVALUE2.get();
-			ScriptValue keyValue = CACHEVALUE3.get();
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
+			ScriptValue popped = scriptInstance.getCommandRegister(1);
+			ScriptValue keyValue = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -704,9 +1094,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue keyValue = CACHEVALUE2.get();
-			ScriptValue mapValue = CACHEVALUE3.get();
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
+			ScriptValue keyValue = scriptInstance.getCommandRegister(1);
+			ScriptValue mapValue = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(keyValue);
@@ -743,9 +1133,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue keyValue = CACHEVALUE2.get();
-			ScriptValue mapValue = CACHEVALUE3.get();
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
+			ScriptValue keyValue = scriptInstance.getCommandRegister(1);
+			ScriptValue mapValue = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.getStackValue(0, keyValue);
@@ -782,8 +1172,8 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue temp2 = CACHEVALUE2.get();
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
+			ScriptValue temp2 = scriptInstance.getCommandRegister(1);
 			try
 			{
 				String name = String.valueOf(operand1);
@@ -800,6 +1190,33 @@ public enum ScriptCommandType
 		}
 	},
 	
+	/**
+	 * Pops a variable, creates an iterator for it, and sets a local variable for it.
+	 * Pops one value.
+	 * Sets a local variable.
+	 * Operand1 is String - variable name (informational).
+	 * Operand2 is Integer - local variable slot.
+	 * @since [NOW]
+	 */
+	SET_ITERATOR_LOCAL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
+			try
+			{
+				scriptInstance.popStackValue(temp);
+				scriptInstance.setLocalValue(slot(operand2), temp.iterator());
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
 	/**
 	 * Pushes a Check Sentinel Object onto the stack.
 	 * Pushes one value onto stack.
@@ -810,7 +1227,7 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
 			try
 			{
 				scriptInstance.pushStackValue(new CheckSentinelObject());
@@ -847,7 +1264,7 @@ public enum ScriptCommandType
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
 			String name = String.valueOf(operand1);
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -861,6 +1278,22 @@ public enum ScriptCommandType
 		}
 	},
 	
+	/**
+	 * POP into local variable.
+	 * Operand1 is String - variable name (informational).
+	 * Operand2 is Integer - local variable slot.
+	 * @since [NOW]
+	 */
+	POP_LOCAL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			scriptInstance.popLocalValue(slot(operand2));
+			return true;
+		}
+	},
+	
 	/**
 	 * POP into variable variable.
 	 * Operand is String - variable name.
@@ -872,7 +1305,7 @@ public enum ScriptCommandType
 		{
 			String scopeName = String.valueOf(operand1);
 			String variableName = String.valueOf(operand2);
-			ScriptValue value = CACHEVALUE1.get();
+			ScriptValue value = scriptInstance.getCommandRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -902,9 +1335,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue indexValue = CACHEVALUE2.get();
-			ScriptValue listValue = CACHEVALUE3.get();
+			ScriptValue value = scriptInstance.getCommandRegister(0);
+			ScriptValue indexValue = scriptInstance.getCommandRegister(1);
+			ScriptValue listValue = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -937,9 +1370,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue keyValue = CACHEVALUE2.get();
-			ScriptValue mapValue = CACHEVALUE3.get();
+			ScriptValue value = scriptInstance.getCommandRegister(0);
+			ScriptValue keyValue = scriptInstance.getCommandRegister(1);
+			ScriptValue mapValue = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -973,8 +1406,8 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
-			ScriptValue top = CACHEVALUE2.get();
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
+			ScriptValue top = scriptInstance.getCommandRegister(1);
 			try 
 			{
 				boolean preserve = (Boolean)operand2;
@@ -1013,7 +1446,7 @@ public enum ScriptCommandType
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
 			String name = String.valueOf(operand1);
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
 			try
 			{
 				temp.set(operand2);
@@ -1039,7 +1472,7 @@ public enum ScriptCommandType
 		{
 			String name = String.valueOf(operand1);
 			String valname = String.valueOf(operand2);
-			ScriptValue value = CACHEVALUE1.get();
+			ScriptValue value = scriptInstance.getCommandRegister(0);
 			try
 			{
 				scriptInstance.getValue(valname, value);
@@ -1053,6 +1486,80 @@ public enum ScriptCommandType
 		}
 	},
 
+	/**
+	 * Set's a local variable to a value.
+	 * Operand1 is Object value.
+	 * Operand2 is Integer - local variable slot.
+	 * @since [NOW]
+	 */
+	SET_LOCAL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			scriptInstance.setLocalValue(slot(operand2), operand1);
+			return true;
+		}
+	},
+
+	/**
+	 * Set's a local variable to another local variable's value.
+	 * Operand1 is Integer - source local variable slot.
+	 * Operand2 is Integer - local variable slot.
+	 * @since [NOW]
+	 */
+	SET_LOCAL_VARIABLE
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			ScriptValue value = scriptInstance.getCommandRegister(0);
+			try
+			{
+				scriptInstance.getLocalValue(slot(operand1), value);
+				scriptInstance.setLocalValue(slot(operand2), value);
+				return true;
+			}
+			finally
+			{
+				value.setNull();
+			}
+		}
+	},
+
+	/**
+	 * Adds a value to a local variable.
+	 * Operand1 is Object value.
+	 * Operand2 is Integer - local variable slot.
+	 * Fused form of PUSH_LOCAL, PUSH, ADD, POP_LOCAL (same local variable).
+	 * @since [NOW]
+	 */
+	ADD_LOCAL
+	{
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
+		{
+			ScriptValue value1 = scriptInstance.getCommandRegister(0);
+			ScriptValue value2 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
+			try
+			{
+				int slot = slot(operand2);
+				scriptInstance.getLocalValue(slot, value1);
+				value2.set(operand1);
+				ScriptValue.add(value1, value2, temp);
+				scriptInstance.setLocalValue(slot, temp);
+				return true;
+			}
+			finally
+			{
+				value1.setNull();
+				value2.setNull();
+				temp.setNull();
+			}
+		}
+	},
+
 	/**
 	 * Bitwise NOT.
 	 * Pushes one value.
@@ -1062,8 +1569,8 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue temp = CACHEVALUE2.get();
+			ScriptValue value = scriptInstance.getCommandRegister(0);
+			ScriptValue temp = scriptInstance.getCommandRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -1089,8 +1596,8 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue temp = CACHEVALUE2.get();
+			ScriptValue value = scriptInstance.getCommandRegister(0);
+			ScriptValue temp = scriptInstance.getCommandRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -1116,8 +1623,8 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue temp = CACHEVALUE2.get();
+			ScriptValue value = scriptInstance.getCommandRegister(0);
+			ScriptValue temp = scriptInstance.getCommandRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -1143,7 +1650,7 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getCommandRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -1168,8 +1675,8 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue temp = CACHEVALUE2.get();
+			ScriptValue value = scriptInstance.getCommandRegister(0);
+			ScriptValue temp = scriptInstance.getCommandRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -1195,9 +1702,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1225,9 +1732,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1255,9 +1762,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1285,9 +1792,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1315,9 +1822,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1345,9 +1852,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1375,9 +1882,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1405,9 +1912,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1435,9 +1942,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1465,9 +1972,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1495,9 +2002,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1525,9 +2032,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1555,9 +2062,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1585,9 +2092,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1615,9 +2122,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1645,9 +2152,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1675,9 +2182,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1705,9 +2212,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1735,9 +2242,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1765,9 +2272,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1795,9 +2302,9 @@ public enum ScriptCommandType
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2)
 		{
-			ScriptValue value2 = CACHEVALUE1.get();
-			ScriptValue value1 = CACHEVALUE2.get();
-			ScriptValue temp = CACHEVALUE3.get();
+			ScriptValue value2 = scriptInstance.getCommandRegister(0);
+			ScriptValue value1 = scriptInstance.getCommandRegister(1);
+			ScriptValue temp = scriptInstance.getCommandRegister(2);
 			try
 			{
 				scriptInstance.popStackValue(value2);
@@ -1826,6 +2333,132 @@ public enum ScriptCommandType
 	 */
 	public abstract boolean execute(ScriptInstance scriptInstance, Object operand1, Object operand2);
 
+	/**
+	 * Executes this directive using a command's operands.
+	 * Directives that take labels as operands use the command's resolved command indices, 
+	 * if the command was linked, and fall back to label lookup if not.
+	 * @param scriptInstance the originating script instance.
+	 * @param command the command that holds the operands.
+	 * @return if false, this halts script execution, else if true, continue.
+	 * @since [NOW]
+	 * @see ScriptCommand#link(int, int)
+	 */
+	public boolean execute(ScriptInstance scriptInstance, ScriptCommand command)
+	{
+		return execute(scriptInstance, command.getOperand1(), command.getOperand2());
+	}
+	
+	/**
+	 * Checks if one of this directive's operands is a label.
+	 * Label operands can be resolved to command indices when a script is linked.
+	 * @param operand the operand number (1 or 2).
+	 * @return true if so, false if not.
+	 * @since [NOW]
+	 */
+	public boolean hasLabelOperand(int operand)
+	{
+		switch (this)
+		{
+			case CALL:
+			case TAIL_CALL:
+			case JUMP:
+			case JUMP_TRUE:
+			case JUMP_FALSE:
+			case JUMP_FALSECOALESCE:
+			case JUMP_NULLCOALESCE:
+			case ITERATE:
+			case CHECK_ERROR:
+			case JUMP_NOT_LESS:
+			case JUMP_NOT_LESS_OR_EQUAL:
+			case JUMP_NOT_GREATER:
+			case JUMP_NOT_GREATER_OR_EQUAL:
+				return operand == 1;
+			case JUMP_BRANCH:
+			case BRANCH_LESS:
+			case BRANCH_LESS_OR_EQUAL:
+			case BRANCH_GREATER:
+			case BRANCH_GREATER_OR_EQUAL:
+				return operand == 1 || operand == 2;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Checks if this directive is a host function call.
+	 * Host function calls can have their functions bound to the command ahead of execution.
+	 * @return true if so, false if not.
+	 * @since [NOW]
+	 * @see ScriptCommand#bind(ScriptFunctionType)
+	 */
+	public boolean isHostFunctionCall()
+	{
+		return this == CALL_HOST || this == CALL_HOST_NAMESPACE;
+	}
+
+	// Calls a resolved host function and pushes its return value.
+	// The namespace and name are only used for error messages.
+	private static boolean callHost(ScriptInstance scriptInstance, ScriptFunctionType functionType, Object namespace, Object name)
+	{
+		ScriptValue ret = scriptInstance.getCommandRegister(3);
+		ret.setNull();
+		try {
+			boolean c = functionType.execute(scriptInstance, ret);
+			scriptInstance.pushStackValue(ret);
+			scriptInstance.checkDeadline();
+			return c;
+		} catch (ScriptExecutionException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new ScriptExecutionException("host function \""+(namespace != null ? namespace+"::" : "")+name+"\" threw an exception.", t);
+		} finally {
+			ret.setNull();
+		}
+	}
+
+	// Pops two values and compares them (the first popped value is the second operand).
+	private static int compareStack(ScriptInstance scriptInstance)
+	{
+		ScriptValue value2 = scriptInstance.getCommandRegister(0);
+		ScriptValue value1 = scriptInstance.getCommandRegister(1);
+		try
+		{
+			scriptInstance.popStackValue(value2);
+			scriptInstance.popStackValue(value1);
+			return value1.compareTo(value2);
+		}
+		finally
+		{
+			value2.setNull();
+			value1.setNull();
+		}
+	}
+
+	// Gets a local variable slot from an operand.
+	private static int slot(Object operand)
+	{
+		return ((Number)operand).intValue();
+	}
+
+	// Resolves a label's command index if not already resolved.
+	private static int resolveIndex(ScriptInstance scriptInstance, int index, Object label)
+	{
+		if (index != ScriptCommand.UNRESOLVED_INDEX)
+			return index;
+		
+		String labelName = String.valueOf(label);
+		if ((index = scriptInstance.getCommandIndex(labelName)) < 0)
+			throw new ScriptExecutionException("label "+labelName+" does not correspond to an index");
+		return index;
+	}
+	
+	// Sets the current command index to a label's index (resolved or not).
+	private static boolean jump(ScriptInstance scriptInstance, int index, Object label)
+	{
+		scriptInstance.setCurrentCommandIndex(resolveIndex(scriptInstance, index, label));
+		return true;
+	}
+
 	// Sentinel object for PUSH/POP Check
 	private static class CheckSentinelObject
 	{
@@ -1838,10 +2471,4 @@ public enum ScriptCommandType
 		}
 	}
 	
-	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE3 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> RETURNVALUE = ThreadLocal.withInitial(()->ScriptValue.create(null));
-
 }
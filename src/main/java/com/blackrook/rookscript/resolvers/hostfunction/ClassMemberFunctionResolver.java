@@ -43,8 +43,6 @@ import com.blackrook.rookscript.struct.Utils;
 public class ClassMemberFunctionResolver<C> implements ScriptFunctionResolver
 {
 	// Threadlocal "stack" values.
-	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
-	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<InvokerCache> OBJECTARRAYS = ThreadLocal.withInitial(()->new InvokerCache());
 
 	/** The map of name to function type. */
@@ -478,7 +476,7 @@ public class ClassMemberFunctionResolver<C> implements ScriptFunctionResolver
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue value = CACHEVALUE1.get();
+			ScriptValue value = scriptInstance.getRegister(0);
 			Object[] vbuf = OBJECTARRAYS.get().getParamArray(paramTypes.length);
 			try 
 			{
@@ -560,8 +558,8 @@ public class ClassMemberFunctionResolver<C> implements ScriptFunctionResolver
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue value = CACHEVALUE1.get();
-			ScriptValue instance = CACHEVALUE2.get();
+			ScriptValue value = scriptInstance.getRegister(0);
+			ScriptValue instance = scriptInstance.getRegister(1);
 			try
 			{
 				scriptInstance.popStackValue(value);
@@ -641,7 +639,7 @@ public class ClassMemberFunctionResolver<C> implements ScriptFunctionResolver
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			try
 			{
 				scriptInstance.popStackValue(temp);
@@ -726,7 +724,7 @@ public class ClassMemberFunctionResolver<C> implements ScriptFunctionResolver
 		@Override
 		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp = scriptInstance.getRegister(0);
 			Object[] vbuf = OBJECTARRAYS.get().getParamArray(paramTypes.length);
 			try
 			{
@@ -17,8 +17,11 @@ import com.blackrook.rookscript.struct.Utils;
  * A single, scoped open variable set in which values can be set.
  * All variable names are CASE-INSENSITIVE.
  * The internals are written so that the storage uses few memory allocations/deletions.
- * None of the variables are read-only. This implementation is thread-safe.
+ * None of the variables are read-only. 
+ * <p>This implementation is NOT thread-safe - it is meant to be confined to one owner at a time. 
+ * See {@link DefaultVariableResolver} for a thread-safe implementation.
  * @author Matthew Tropiano
+ * @since [NOW], this is no longer synchronized.
  */
 public class AbstractVariableResolver implements ScriptVariableResolver
 {
@@ -54,6 +57,7 @@ public class AbstractVariableResolver implements ScriptVariableResolver
 	// Expands this.
 	private void expand(int capacity)
 	{
+		expanding(entries != null ? entries.length : 0, capacity);
 		Entry[] newEntries = new Entry[capacity];
 		if (entries != null)
 			System.arraycopy(entries, 0, newEntries, 0, entries.length);
@@ -62,6 +66,18 @@ public class AbstractVariableResolver implements ScriptVariableResolver
 		entries = newEntries;
 	}
 	
+	/**
+	 * Called before this resolver's entry storage is expanded (including its first allocation).
+	 * Does nothing by default.
+	 * @param oldCapacity the previous capacity (0 on the first allocation).
+	 * @param newCapacity the new capacity.
+	 * @since [NOW]
+	 */
+	protected void expanding(int oldCapacity, int newCapacity)
+	{
+		// Do nothing by default.
+	}
+
 	// Get or return null;
 	protected ScriptValue get(String name)
 	{
@@ -116,14 +132,58 @@ public class AbstractVariableResolver implements ScriptVariableResolver
 		entries[i] = e;
 	}
 
+	/**
+	 * Removes a value by variable name.
+	 * @param name the variable name.
+	 * @return true if the value existed and was removed, false otherwise.
+	 * @since [NOW]
+	 */
+	protected boolean removeValue(String name)
+	{
+		int i;
+		if ((i = getIndex(name)) < 0)
+			return false;
+
+		removeIndex(i);
+		return true;
+	}
+	
+	/**
+	 * Removes all values.
+	 * @since [NOW]
+	 */
+	protected void removeAll()
+	{
+		int prevCount = this.entryCount;
+		this.entryCount = 0;
+		// nullify object refs (to reduce chance of memory leaks).
+		for (int i = 0; i < prevCount; i++)
+			entries[i].clear();
+	}
+
+	/**
+	 * Gets an entry by index. Entries are sorted by name.
+	 * The entry is this resolver's own storage, so this is only for subclasses that are confined to one owner.
+	 * @param index the entry index, from 0 to <code>size() - 1</code>.
+	 * @return the entry at the index.
+	 * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+	 * @since [NOW]
+	 */
+	protected Entry getEntry(int index)
+	{
+		if (index < 0 || index >= entryCount)
+			throw new ArrayIndexOutOfBoundsException(index);
+		return entries[index];
+	}
+
 	@Override
-	public synchronized boolean containsValue(String name)
+	public boolean containsValue(String name)
 	{
 		return get(name) != null;
 	}
 
 	@Override
-	public synchronized boolean getValue(String name, ScriptValue out)
+	public boolean getValue(String name, ScriptValue out)
 	{
 		ScriptValue sv = get(name);
 		if (sv != null)
@@ -139,7 +199,7 @@ public class AbstractVariableResolver implements ScriptVariableResolver
 	}
 
 	@Override
-	public synchronized void setValue(String name, ScriptValue value)
+	public void setValue(String name, ScriptValue value)
 	{
 		ScriptValue ev = get(name); 
 		if (ev != null)
@@ -162,19 +222,19 @@ public class AbstractVariableResolver implements ScriptVariableResolver
 	}
 
 	@Override
-	public synchronized int size()
+	public int size()
 	{
 		return entryCount;
 	}
 
 	@Override
-	public synchronized boolean isEmpty()
+	public boolean isEmpty()
 	{
 		return size() == 0;
 	}
 
 	@Override
-	public synchronized String toString()
+	public String toString()
 	{
 		StringBuilder sb = new StringBuilder();
 		sb.append('{');
@@ -7,12 +7,15 @@
  ******************************************************************************/
 package com.blackrook.rookscript.resolvers.variable;
 
+import com.blackrook.rookscript.ScriptValue;
+
 /**
  * A single, scoped open variable set in which values can be set.
  * All variable names are CASE-INSENSITIVE.
  * The internals are written so that the storage uses few memory allocations/deletions.
  * None of the variables are read-only. This implementation is thread-safe.
  * @author Matthew Tropiano
+ * @see LocalVariableResolver
  */
 public class DefaultVariableResolver extends AbstractVariableResolver
 {
@@ -37,6 +40,42 @@ public class DefaultVariableResolver extends AbstractVariableResolver
 		super(capacity);
 	}
 	
+	@Override
+	public synchronized boolean containsValue(String name)
+	{
+		return super.containsValue(name);
+	}
+
+	@Override
+	public synchronized boolean getValue(String name, ScriptValue out)
+	{
+		return super.getValue(name, out);
+	}
+
+	@Override
+	public synchronized void setValue(String name, ScriptValue value)
+	{
+		super.setValue(name, value);
+	}
+
+	@Override
+	public synchronized int size()
+	{
+		return super.size();
+	}
+
+	@Override
+	public synchronized boolean isEmpty()
+	{
+		return super.isEmpty();
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return super.toString();
+	}
+
 	/**
 	 * Removes a value by variable name.
 	 * This should fail if the provided name corresponds to a read-only variable. 
@@ -46,12 +85,7 @@ public class DefaultVariableResolver extends AbstractVariableResolver
 	 */
 	public synchronized boolean clearValue(String name)
 	{
-		int i;
-		if ((i = getIndex(name)) < 0)
-			return false;
-
-		removeIndex(i);
-		return true;
+		return removeValue(name);
 	}
 	
 	/**
@@ -59,11 +93,7 @@ public class DefaultVariableResolver extends AbstractVariableResolver
 	 */
 	public synchronized void clear()
 	{
-		int prevCount = this.entryCount;
-		this.entryCount = 0;
-		// nullify object refs (to reduce chance of memory leaks).
-		for (int i = 0; i < prevCount; i++)
-			entries[i].clear();
+		removeAll();
 	}
 	
 }
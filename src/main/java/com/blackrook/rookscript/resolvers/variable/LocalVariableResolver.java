@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript.resolvers.variable;
+
+/**
+ * A single, scoped open variable set in which values can be set, owned by a single thread at a time.
+ * All variable names are CASE-INSENSITIVE.
+ * The internals are written so that the storage uses few memory allocations/deletions.
+ * None of the variables are read-only.
+ * <p>This implementation is NOT thread-safe, and is meant for scopes that are only ever
+ * accessed by their owner, like the local scopes of a script instance.
+ * Use {@link DefaultVariableResolver} for scopes that are shared between threads.
+ * @author Matthew Tropiano
+ * @since [NOW]
+ */
+public class LocalVariableResolver extends AbstractVariableResolver
+{
+	/** Default capacity. */
+	public static final int DEFAULT_CAPACITY = 4;
+
+	/**
+	 * Creates a variable with a default size.
+	 * @see #DEFAULT_CAPACITY
+	 */
+	public LocalVariableResolver()
+	{
+		super(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a variable resolver with a default size.
+	 * @param capacity the initial capacity.
+	 */
+	public LocalVariableResolver(int capacity)
+	{
+		super(capacity);
+	}
+
+	/**
+	 * Removes a value by variable name.
+	 * This should fail if the provided name corresponds to a read-only variable.
+	 * @param name the variable name.
+	 * @return true if the value existed and was removed, false otherwise.
+	 * @throws IllegalArgumentException if the provided name refers to a value that is read-only.
+	 */
+	public boolean clearValue(String name)
+	{
+		return removeValue(name);
+	}
+
+	/**
+	 * Clears the scope.
+	 */
+	public void clear()
+	{
+		removeAll();
+	}
+
+	@Override
+	public Entry getEntry(int index)
+	{
+		return super.getEntry(index);
+	}
+
+}
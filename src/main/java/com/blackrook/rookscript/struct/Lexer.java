@@ -5,14 +5,15 @@
  ******************************************************************************/
 package com.blackrook.rookscript.struct;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -30,6 +31,10 @@ import java.util.TreeSet;
  * <p>
  * Other implementations of this class may manipulate the stack as well (such as ones that do in-language stream inclusion).
  * <p>
+ * Streams are read through a character window, and lexemes are built in a character buffer. Identifier and
+ * delimiter lexemes are interned in a per-lexer symbol table, so repeated names share one String, and only literals 
+ * and other one-off lexemes create new Strings.
+ * <p>
  * If the system property <code>com.blackrook.base.Lexer.debug</code> is set to <code>true</code>, this does debugging output to {@link System#out}.
  * <p>
  * Lexer functions are NOT thread-safe.
@@ -55,8 +60,12 @@ public class Lexer
 	
 	/** Current token state. */
 	private int state;
-	/** Current token builder. */
-	private StringBuilder tokenBuffer;
+	/** Current token lexeme buffer. */
+	private char[] tokenBuffer;
+	/** Current token lexeme length. */
+	private int tokenLength;
+	/** Interned identifiers and delimiters. */
+	private SymbolTable symbolTable;
 
 	/**
 	 * Creates a new lexer with no streams.
@@ -111,7 +120,9 @@ public class Lexer
 	{
 		this.kernel = kernel;
 		readerStack = new ReaderStack();
-		tokenBuffer = new StringBuilder();
+		tokenBuffer = new char[64];
+		tokenLength = 0;
+		symbolTable = new SymbolTable();
 		if (in != null)
 			pushStream(name, in);
 	}
@@ -408,7 +419,8 @@ public class Lexer
 					else
 					{
 						state = Kernel.TYPE_DELIMITER;
-						if (kernel.getDelimTable().containsKey(getCurrentLexeme() + c))
+						Kernel.TrieNode node = kernel.getTables().find(tokenBuffer, tokenLength, c);
+						if (node != null && node.delimiterType >= 0)
 							saveChar(c);
 						else
 						{
@@ -1083,25 +1095,25 @@ public class Lexer
 				
 				case Kernel.TYPE_DELIMITER:
 				{
-					String lookAheadDelimiter = getCurrentLexeme() + c;
+					Kernel.TrieNode lookAheadDelimiter = kernel.getTables().find(tokenBuffer, tokenLength, c);
 					
 					if (isStreamEnd(c))
 					{
 						setDelimBreak(c);
 						breakloop = true;
 					}
-					else if (kernel.getCommentTable().containsKey(lookAheadDelimiter))
+					else if (lookAheadDelimiter != null && lookAheadDelimiter.commentEnd != null)
 					{
-						commentEnd = kernel.getCommentTable().get(lookAheadDelimiter);
+						commentEnd = lookAheadDelimiter.commentEnd;
 						clearCurrentLexeme();
 						state = Kernel.TYPE_COMMENT;
 					}
-					else if (kernel.getCommentLineSet().contains(lookAheadDelimiter))
+					else if (lookAheadDelimiter != null && lookAheadDelimiter.lineComment)
 					{
 						clearCurrentLexeme();
 						state = Kernel.TYPE_LINE_COMMENT;
 					}
-					else if (kernel.getDelimTable().containsKey(lookAheadDelimiter))
+					else if (lookAheadDelimiter != null && lookAheadDelimiter.delimiterType >= 0)
 					{
 						saveChar(c);
 					}
@@ -1194,7 +1206,7 @@ public class Lexer
 						}
 						else if (kernel.willEmitComments())
 						{
-							tokenBuffer.delete(tokenBuffer.length() - commentEnd.length(), tokenBuffer.length());
+							tokenLength -= commentEnd.length();
 							state = Kernel.TYPE_COMMENT;
 							breakloop = true;
 						}
@@ -1254,7 +1266,13 @@ public class Lexer
 
 		// send token.
 		int type = state;
-		String lexeme = getCurrentLexeme();
+		String lexeme;
+		if (tokenLength == 0)
+			lexeme = "";
+		else if (type == Kernel.TYPE_IDENTIFIER || type == Kernel.TYPE_DELIMITER)
+			lexeme = symbolTable.intern(tokenBuffer, tokenLength);
+		else
+			lexeme = getCurrentLexeme();
 		clearCurrentLexeme();
 		
 		Token out = null;
@@ -1310,10 +1328,10 @@ public class Lexer
 			
 			case Kernel.TYPE_DELIMITER:
 			{
-				String lexeme = token.getLexeme();
-				if (kernel.getDelimTable().containsKey(lexeme))
+				int type = kernel.getTables().getDelimiterType(token.getLexeme());
+				if (type >= 0)
 				{
-					token.setType(kernel.getDelimTable().get(lexeme));
+					token.setType(type);
 					return true;
 				}
 				break;
@@ -1321,21 +1339,12 @@ public class Lexer
 			
 			case Kernel.TYPE_IDENTIFIER:
 			{
-				String lexeme = token.getLexeme();
-				if (kernel.getKeywordTable().containsKey(lexeme))
+				int type = kernel.getTables().getKeywordType(token.getLexeme());
+				if (type >= 0)
 				{
-					token.setType(kernel.getKeywordTable().get(lexeme));
+					token.setType(type);
 					return true;
 				}
-				else
-				{
-					String lk = lexeme.toLowerCase();
-					if (kernel.getCaseInsensitiveKeywordTable().containsKey(lk))
-					{
-						token.setType(kernel.getCaseInsensitiveKeywordTable().get(lk));
-						return true;
-					}
-				}
 				break;
 			}
 			
@@ -1377,7 +1386,9 @@ public class Lexer
 	 */
 	protected void saveChar(char c)
 	{
-		tokenBuffer.append(c);
+		if (tokenLength == tokenBuffer.length)
+			tokenBuffer = Arrays.copyOf(tokenBuffer, tokenBuffer.length * 2);
+		tokenBuffer[tokenLength++] = c;
 	}
 	
 	/**
@@ -1415,7 +1426,7 @@ public class Lexer
 	 */
 	protected String getCurrentLexeme()
 	{
-		return tokenBuffer.toString();
+		return new String(tokenBuffer, 0, tokenLength);
 	}
 
 	/**
@@ -1423,7 +1434,7 @@ public class Lexer
 	 */
 	protected void clearCurrentLexeme()
 	{
-		tokenBuffer.delete(0, tokenBuffer.length());
+		tokenLength = 0;
 	}
 
 	/**
@@ -1545,7 +1556,8 @@ public class Lexer
 	 */
 	protected boolean isStringStart(char c)
 	{
-		return kernel.getStringDelimTable().containsKey(c);
+		Kernel.Tables tables = kernel.getTables();
+		return Kernel.Tables.findPair(tables.stringStarts, tables.stringEnds, c) != '\0';
 	}
 	
 	/**
@@ -1555,7 +1567,8 @@ public class Lexer
 	 */
 	protected boolean isRawStringStart(char c)
 	{
-		return kernel.getRawStringDelimTable().containsKey(c);
+		Kernel.Tables tables = kernel.getTables();
+		return Kernel.Tables.findPair(tables.rawStringStarts, tables.rawStringEnds, c) != '\0';
 	}
 	
 	/**
@@ -1565,7 +1578,8 @@ public class Lexer
 	 */
 	protected char getStringEnd(char c)
 	{
-		return kernel.getStringDelimTable().get(c);
+		Kernel.Tables tables = kernel.getTables();
+		return Kernel.Tables.findPair(tables.stringStarts, tables.stringEnds, c);
 	}
 	
 	/**
@@ -1575,7 +1589,8 @@ public class Lexer
 	 */
 	protected char getRawStringEnd(char c)
 	{
-		return kernel.getRawStringDelimTable().get(c);
+		Kernel.Tables tables = kernel.getTables();
+		return Kernel.Tables.findPair(tables.rawStringStarts, tables.rawStringEnds, c);
 	}
 	
 	/**
@@ -1585,7 +1600,7 @@ public class Lexer
 	 */
 	protected boolean isDelimiterStart(char c)
 	{
-		return kernel.getDelimStartTable().contains(c);
+		return kernel.getTables().delimiterRoot.get(c) != null;
 	}
 	
 	/**
@@ -1653,8 +1668,13 @@ public class Lexer
 	 */
 	public static class ReaderStack
 	{
+		/** Size of each stream's character window. */
+		private static final int WINDOW_SIZE = 8192;
+		
 		/** Stream stack. */
 		private LinkedList<Stream> innerStack;
+		/** Character windows from closed streams, for reuse. */
+		private LinkedList<char[]> windowPool;
 	
 		/**
 		 * Creates a new empty ReaderStack. 
@@ -1662,6 +1682,7 @@ public class Lexer
 		public ReaderStack()
 		{
 			innerStack = new LinkedList<>();
+			windowPool = new LinkedList<>();
 		}
 		
 		/**
@@ -1775,8 +1796,14 @@ public class Lexer
 		{
 			/** Name of the stream. */
 			private String streamName;
-			/** The buffered reader. */
-			private BufferedReader reader;
+			/** The reader. */
+			private Reader reader;
+			/** The character window. */
+			private char[] window;
+			/** The current position in the window. */
+			private int windowPosition;
+			/** The amount of characters in the window. */
+			private int windowLength;
 			/** Current line number. */
 			private int line;
 			/** Current character index. */
@@ -1793,7 +1820,10 @@ public class Lexer
 			private Stream(String name, Reader in)
 			{
 				this.streamName = name;
-				this.reader = new BufferedReader(in);
+				this.reader = in;
+				this.window = windowPool.isEmpty() ? new char[WINDOW_SIZE] : windowPool.pollLast();
+				this.windowPosition = 0;
+				this.windowLength = 0;
 				this.line = 1;
 				this.charIndex = 0;
 				this.charStackPosition = -1;
@@ -1825,6 +1855,20 @@ public class Lexer
 				return c == '\r' || c == '\n';
 			}
 			
+			// Reads the next char from the window, refilling it if needed.
+			private int read() throws IOException
+			{
+				if (windowPosition == windowLength)
+				{
+					int buf;
+					if ((buf = reader.read(window, 0, window.length)) <= 0)
+						return -1;
+					windowPosition = 0;
+					windowLength = buf;
+				}
+				return window[windowPosition++];
+			}
+			
 			/**
 			 * Reads the next char from the stream.
 			 * Eats all manner of newline combos into '\n'.
@@ -1841,7 +1885,7 @@ public class Lexer
 				}
 				else
 				{
-					c = reader.read();
+					c = read();
 					boolean newline = false;
 					while (isNewlineChar(c))
 					{
@@ -1849,7 +1893,7 @@ public class Lexer
 							line++;
 
 						newline = true;
-						c = reader.read();
+						c = read();
 						if (!isNewlineChar(c))
 							pushChar(c);
 					}
@@ -1868,12 +1912,96 @@ public class Lexer
 			public void close() throws IOException
 			{
 				reader.close();
+				if (window != null)
+				{
+					windowPool.add(window);
+					window = null;
+				}
 			}
 		}
 	}
 
+	/**
+	 * A table of interned lexeme Strings, looked up by character contents,
+	 * so that a String is only created for the first occurrence of each lexeme.
+	 */
+	private static class SymbolTable
+	{
+		private String[] symbols;
+		private int[] hashes;
+		private int size;
+		
+		private SymbolTable()
+		{
+			this.symbols = new String[256];
+			this.hashes = new int[256];
+			this.size = 0;
+		}
+		
+		// Interns a lexeme from a character buffer.
+		private String intern(char[] buffer, int length)
+		{
+			int hash = 0;
+			for (int i = 0; i < length; i++)
+				hash = 31 * hash + buffer[i];
+			
+			int mask = symbols.length - 1;
+			int slot = hash & mask;
+			String symbol;
+			while ((symbol = symbols[slot]) != null)
+			{
+				if (hashes[slot] == hash && matches(symbol, buffer, length))
+					return symbol;
+				slot = (slot + 1) & mask;
+			}
+			return add(slot, hash, new String(buffer, 0, length));
+		}
+
+		private String add(int slot, int hash, String symbol)
+		{
+			symbols[slot] = symbol;
+			hashes[slot] = hash;
+			// keep the table at most half full.
+			if (++size * 2 > symbols.length)
+				rehash();
+			return symbol;
+		}
+		
+		private void rehash()
+		{
+			String[] oldSymbols = symbols;
+			int[] oldHashes = hashes;
+			symbols = new String[oldSymbols.length * 2];
+			hashes = new int[oldHashes.length * 2];
+			int mask = symbols.length - 1;
+			for (int i = 0; i < oldSymbols.length; i++)
+			{
+				if (oldSymbols[i] == null)
+					continue;
+				int slot = oldHashes[i] & mask;
+				while (symbols[slot] != null)
+					slot = (slot + 1) & mask;
+				symbols[slot] = oldSymbols[i];
+				hashes[slot] = oldHashes[i];
+			}
+		}
+		
+		private static boolean matches(String symbol, char[] buffer, int length)
+		{
+			if (symbol.length() != length)
+				return false;
+			for (int i = 0; i < length; i++)
+				if (symbol.charAt(i) != buffer[i])
+					return false;
+			return true;
+		}
+	}
+
 	/**
 	 * This is a info kernel that tells a {@link Lexer} how to interpret certain characters and identifiers.
+	 * <p>
+	 * On first use, the delimiters are compiled into a trie and the keywords into perfect hash tables, 
+	 * which are rebuilt if the kernel is changed afterward. 
 	 * @author Matthew Tropiano
 	 */
 	public static class Kernel
@@ -1924,11 +2052,6 @@ public class Lexer
 		/** Reserved token type: Exponent power state (never returned). */
 		private static final int TYPE_EXPONENT_POWER = 			-25;
 	
-		/**
-		 * Table of single-character (or beginning character of) significant
-		 * delimiters. Delimiters immediately break the current token if encountered.
-		 */
-		private Set<Character> delimStartTable;
 		/** 
 		 * Table of significant delimiters.
 		 */
@@ -1976,13 +2099,15 @@ public class Lexer
 		/** Decimal separator. */
 		private char decimalSeparator;
 		
+		/** Lookup tables compiled from the tables above (null if not compiled or out of date). */
+		private volatile Tables tables;
+		
 		/**
 		 * Creates a new, blank LexerKernel with default settings.
 		 */
 		public Kernel()
 		{
 			decimalSeparator = DecimalFormatSymbols.getInstance().getDecimalSeparator();
-			delimStartTable = new HashSet<Character>();
 			delimTable = new HashMap<String, Integer>();
 			commentTable = new HashMap<String, String>(2);
 			commentLineTable = new TreeSet<String>();
@@ -2008,9 +2133,8 @@ public class Lexer
 		{
 			typeCheck(type);
 			keyCheck(delimiter);
-			if (!delimStartTable.contains(delimiter.charAt(0)))
-				delimStartTable.add(delimiter.charAt(0));
 			delimTable.put(delimiter, type);
+			tables = null;
 		}
 	
 		private void typeCheck(int type)
@@ -2033,6 +2157,7 @@ public class Lexer
 		public void addStringDelimiter(char delimiterStart, char delimiterEnd)
 		{
 			stringDelimTable.put(delimiterStart, delimiterEnd);
+			tables = null;
 		}
 	
 		/**
@@ -2043,6 +2168,7 @@ public class Lexer
 		public void addRawStringDelimiter(char delimiterStart, char delimiterEnd)
 		{
 			rawStringDelimTable.put(delimiterStart, delimiterEnd);
+			tables = null;
 		}
 
 		/**
@@ -2055,8 +2181,7 @@ public class Lexer
 			keyCheck(delimiterStart);
 			keyCheck(delimiterEnd);
 			commentTable.put(delimiterStart, delimiterEnd);
-			if (!delimStartTable.contains(delimiterStart.charAt(0)))
-				delimStartTable.add(delimiterStart.charAt(0));
+			tables = null;
 		}
 	
 		/**
@@ -2068,8 +2193,7 @@ public class Lexer
 		{
 			keyCheck(delimiter);
 			commentLineTable.add(delimiter);
-			if (!delimStartTable.contains(delimiter.charAt(0)))
-				delimStartTable.add(delimiter.charAt(0));
+			tables = null;
 		}
 	
 		/**
@@ -2083,6 +2207,7 @@ public class Lexer
 			typeCheck(type);
 			keyCheck(keyword);
 			keywordTable.put(keyword, type);
+			tables = null;
 		}
 	
 		/**
@@ -2096,6 +2221,7 @@ public class Lexer
 			typeCheck(type);
 			keyCheck(keyword);
 			caseInsensitiveKeywordTable.put(keyword.toLowerCase(), type);
+			tables = null;
 		}
 	
 		/** 
@@ -2208,44 +2334,343 @@ public class Lexer
 			return decimalSeparator;
 		}
 	
-		private Map<String, String> getCommentTable()
-		{
-			return commentTable;
-		}
-
-		private Set<String> getCommentLineSet()
-		{
-			return commentLineTable;
-		}
-
-		private Set<Character> getDelimStartTable()
-		{
-			return delimStartTable;
-		}
-	
-		private Map<String, Integer> getDelimTable()
-		{
-			return delimTable;
-		}
-	
-		private Map<String, Integer> getKeywordTable()
+		// Gets the compiled lookup tables, compiling them if this kernel changed.
+		private Tables getTables()
 		{
-			return keywordTable;
+			Tables out;
+			if ((out = tables) == null)
+				tables = out = new Tables(this);
+			return out;
 		}
 	
-		private Map<String, Integer> getCaseInsensitiveKeywordTable()
-		{
-			return caseInsensitiveKeywordTable;
+		/**
+		 * Lookup tables compiled from a kernel's delimiters and keywords.
+		 * Delimiters and comment delimiters are held in a trie, and keywords in perfect hash tables,
+		 * so that the lexer can classify lexemes without building candidate Strings.
+		 */
+		private static class Tables
+		{
+			/** Delimiter trie root. */
+			private final TrieNode delimiterRoot;
+			/** String delimiter start characters. */
+			private final char[] stringStarts;
+			/** String delimiter end characters. */
+			private final char[] stringEnds;
+			/** Raw string delimiter start characters. */
+			private final char[] rawStringStarts;
+			/** Raw string delimiter end characters. */
+			private final char[] rawStringEnds;
+			/** Case-sensitive keywords. */
+			private final KeywordTable keywords;
+			/** Case-insensitive keywords. */
+			private final KeywordTable caseInsensitiveKeywords;
+			
+			private Tables(Kernel kernel)
+			{
+				this.delimiterRoot = new TrieNode();
+				for (Map.Entry<String, Integer> entry : kernel.delimTable.entrySet())
+					delimiterRoot.add(entry.getKey()).delimiterType = entry.getValue();
+				for (Map.Entry<String, String> entry : kernel.commentTable.entrySet())
+					delimiterRoot.add(entry.getKey()).commentEnd = entry.getValue();
+				for (String delimiter : kernel.commentLineTable)
+					delimiterRoot.add(delimiter).lineComment = true;
+				delimiterRoot.compact();
+				
+				this.stringStarts = new char[kernel.stringDelimTable.size()];
+				this.stringEnds = new char[kernel.stringDelimTable.size()];
+				fillPairs(kernel.stringDelimTable, stringStarts, stringEnds);
+				this.rawStringStarts = new char[kernel.rawStringDelimTable.size()];
+				this.rawStringEnds = new char[kernel.rawStringDelimTable.size()];
+				fillPairs(kernel.rawStringDelimTable, rawStringStarts, rawStringEnds);
+				
+				this.keywords = new KeywordTable(kernel.keywordTable, false);
+				this.caseInsensitiveKeywords = new KeywordTable(kernel.caseInsensitiveKeywordTable, true);
+			}
+			
+			private static void fillPairs(Map<Character, Character> map, char[] starts, char[] ends)
+			{
+				int i = 0;
+				for (Map.Entry<Character, Character> entry : map.entrySet())
+				{
+					starts[i] = entry.getKey();
+					ends[i] = entry.getValue();
+					i++;
+				}
+			}
+			
+			private static char findPair(char[] starts, char[] ends, char c)
+			{
+				for (int i = 0; i < starts.length; i++)
+					if (starts[i] == c)
+						return ends[i];
+				return '\0';
+			}
+			
+			// Finds the trie node for a lexeme plus one more character, or null if no delimiter starts with it.
+			private TrieNode find(char[] buffer, int length, char c)
+			{
+				TrieNode node = delimiterRoot;
+				for (int i = 0; node != null && i < length; i++)
+					node = node.get(buffer[i]);
+				return node != null ? node.get(c) : null;
+			}
+			
+			// Finds the trie node for a lexeme, or null if no delimiter starts with it.
+			private TrieNode find(String lexeme)
+			{
+				TrieNode node = delimiterRoot;
+				for (int i = 0; node != null && i < lexeme.length(); i++)
+					node = node.get(lexeme.charAt(i));
+				return node;
+			}
+			
+			private int getDelimiterType(String lexeme)
+			{
+				TrieNode node = find(lexeme);
+				return node != null ? node.delimiterType : -1;
+			}
+			
+			private int getKeywordType(String lexeme)
+			{
+				int out;
+				if ((out = keywords.get(lexeme)) >= 0)
+					return out;
+				return caseInsensitiveKeywords.get(lexeme);
+			}
 		}
-	
-		private Map<Character, Character> getStringDelimTable()
-		{
-			return stringDelimTable;
+		
+		/**
+		 * A single delimiter trie node.
+		 * Each node is the delimiter, comment start, or line comment start spelled by the path to it (or just a prefix of one).
+		 */
+		private static class TrieNode
+		{
+			/** Children of this node, by character below 128. */
+			private TrieNode[] asciiChildren;
+			/** Other child characters. */
+			private char[] otherKeys;
+			/** Other children. */
+			private TrieNode[] otherChildren;
+			/** Delimiter type, or -1 if not a delimiter. */
+			private int delimiterType;
+			/** Comment end delimiter, or null if not a comment start. */
+			private String commentEnd;
+			/** Is this a line comment start? */
+			private boolean lineComment;
+			
+			private TrieNode()
+			{
+				this.asciiChildren = new TrieNode[128];
+				this.otherKeys = new char[0];
+				this.otherChildren = new TrieNode[0];
+				this.delimiterType = -1;
+				this.commentEnd = null;
+				this.lineComment = false;
+			}
+			
+			private TrieNode get(char c)
+			{
+				if (c < 128)
+					return asciiChildren != null ? asciiChildren[c] : null;
+				for (int i = 0; i < otherKeys.length; i++)
+					if (otherKeys[i] == c)
+						return otherChildren[i];
+				return null;
+			}
+			
+			// Adds a path to this node, returning the node at its end.
+			private TrieNode add(String path)
+			{
+				TrieNode node = this;
+				for (int i = 0; i < path.length(); i++)
+				{
+					char c = path.charAt(i);
+					TrieNode next = node.get(c);
+					if (next == null)
+					{
+						next = new TrieNode();
+						if (c < 128)
+						{
+							node.asciiChildren[c] = next;
+						}
+						else
+						{
+							int n = node.otherKeys.length;
+							node.otherKeys = Arrays.copyOf(node.otherKeys, n + 1);
+							node.otherChildren = Arrays.copyOf(node.otherChildren, n + 1);
+							node.otherKeys[n] = c;
+							node.otherChildren[n] = next;
+						}
+					}
+					node = next;
+				}
+				return node;
+			}
+			
+			// Drops empty child tables.
+			private void compact()
+			{
+				boolean empty = true;
+				for (int i = 0; i < asciiChildren.length; i++)
+				{
+					if (asciiChildren[i] != null)
+					{
+						asciiChildren[i].compact();
+						empty = false;
+					}
+				}
+				if (empty)
+					asciiChildren = null;
+				for (int i = 0; i < otherChildren.length; i++)
+					otherChildren[i].compact();
+			}
 		}
-	
-		private Map<Character, Character> getRawStringDelimTable()
+		
+		/**
+		 * A perfect hash table of keywords to token types.
+		 * A seed is searched for on creation such that each keyword gets its own slot, so a lookup
+		 * is one hash and at most one comparison. Case-insensitive tables hash and compare lowercased characters.
+		 */
+		private static class KeywordTable
 		{
-			return rawStringDelimTable;
+			/** Maximum table size before giving up on a perfect hash. */
+			private static final int MAX_BITS = 16;
+			/** Seeds to try per table size. */
+			private static final int SEED_ATTEMPTS = 4096;
+			
+			/** Keys by slot. */
+			private String[] keys;
+			/** Types by slot. */
+			private int[] types;
+			/** Hash multiplier. */
+			private int seed;
+			/** Shift for slot from hash. */
+			private int shift;
+			/** Shortest key length. */
+			private int minLength;
+			/** Longest key length. */
+			private int maxLength;
+			/** Is this case-insensitive? */
+			private boolean caseInsensitive;
+			/** Fallback map, if no perfect hash was found or keys have the same hash code. */
+			private Map<String, Integer> fallback;
+			
+			private KeywordTable(Map<String, Integer> map, boolean caseInsensitive)
+			{
+				this.caseInsensitive = caseInsensitive;
+				this.minLength = Integer.MAX_VALUE;
+				this.maxLength = 0;
+				this.fallback = null;
+				
+				String[] names = map.keySet().toArray(new String[map.size()]);
+				int[] hashes = new int[names.length];
+				Set<Integer> distinctHashes = new HashSet<>();
+				for (int i = 0; i < names.length; i++)
+				{
+					hashes[i] = names[i].hashCode();
+					distinctHashes.add(hashes[i]);
+					minLength = Math.min(minLength, names[i].length());
+					maxLength = Math.max(maxLength, names[i].length());
+				}
+				
+				// keys with the same hash code can never be placed apart, so don't search.
+				if (distinctHashes.size() == names.length)
+				{
+					int bits = 1;
+					while ((1 << bits) < names.length * 2)
+						bits++;
+					
+					for (; bits <= MAX_BITS; bits++)
+					{
+						int s = 0x9E3779B9;
+						for (int attempt = 0; attempt < SEED_ATTEMPTS; attempt++, s += 0x61C88646)
+						{
+							if (place(names, hashes, map, bits, s))
+								return;
+						}
+					}
+				}
+				
+				this.keys = new String[0];
+				this.types = new int[0];
+				this.fallback = new HashMap<>(map);
+			}
+			
+			// Attempts to place every key in its own slot.
+			private boolean place(String[] names, int[] hashes, Map<String, Integer> map, int bits, int s)
+			{
+				String[] k = new String[1 << bits];
+				int[] t = new int[1 << bits];
+				for (int i = 0; i < names.length; i++)
+				{
+					int slot = (hashes[i] * s) >>> (32 - bits);
+					if (k[slot] != null)
+						return false;
+					k[slot] = names[i];
+					t[slot] = map.get(names[i]);
+				}
+				this.keys = k;
+				this.types = t;
+				this.seed = s;
+				this.shift = 32 - bits;
+				return true;
+			}
+			
+			private static char lowerAscii(char c)
+			{
+				return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+			}
+			
+			// Gets the type for a keyword, or -1 if not a keyword.
+			// Case-insensitive keys are already lowercased with String.toLowerCase().
+			// ASCII lexemes are lowercased in place while hashing; others are lowercased the same way as the keys.
+			private int get(String lexeme)
+			{
+				int len = lexeme.length();
+				// lowercasing never shortens a String.
+				if (len > maxLength)
+					return -1;
+				if (!caseInsensitive)
+					return find(lexeme, lexeme.hashCode(), false);
+				
+				int hash = 0;
+				for (int i = 0; i < len; i++)
+				{
+					char c = lexeme.charAt(i);
+					if (c >= 0x80)
+					{
+						String lower = lexeme.toLowerCase();
+						return lower.length() > maxLength ? -1 : find(lower, lower.hashCode(), false);
+					}
+					hash = 31 * hash + lowerAscii(c);
+				}
+				return find(lexeme, hash, true);
+			}
+			
+			// Finds a lexeme with a precomputed hash, lowering its ASCII letters on compare if lowerAscii is true.
+			private int find(String lexeme, int hash, boolean lowerAscii)
+			{
+				int len = lexeme.length();
+				if (len < minLength)
+					return -1;
+				
+				if (fallback != null)
+				{
+					Integer out = fallback.get(lowerAscii ? lexeme.toLowerCase(Locale.ROOT) : lexeme);
+					return out != null ? out : -1;
+				}
+				
+				int slot = (hash * seed) >>> shift;
+				String key = keys[slot];
+				if (key == null || key.length() != len)
+					return -1;
+				if (!lowerAscii)
+					return key.equals(lexeme) ? types[slot] : -1;
+				for (int i = 0; i < len; i++)
+					if (lowerAscii(lexeme.charAt(i)) != key.charAt(i))
+						return -1;
+				return types[slot];
+			}
 		}
 	
 	}
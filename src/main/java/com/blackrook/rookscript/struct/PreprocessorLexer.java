@@ -279,6 +279,8 @@ public class PreprocessorLexer extends Lexer
 		Token token = super.nextToken();
 		if (token == null)
 			return null;
+		if (macroMap.isEmpty())
+			return token;
 		
 		String macro = token.getLexeme().toLowerCase();
 		if (macroMap.containsKey(macro))
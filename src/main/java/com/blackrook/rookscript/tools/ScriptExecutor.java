@@ -8,7 +8,9 @@
 package com.blackrook.rookscript.tools;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -17,6 +19,7 @@ import java.util.List;
 
 import com.blackrook.rookscript.Script;
 import com.blackrook.rookscript.ScriptAssembler;
+import com.blackrook.rookscript.ScriptBinary;
 import com.blackrook.rookscript.ScriptEnvironment;
 import com.blackrook.rookscript.ScriptInstance;
 import com.blackrook.rookscript.ScriptInstanceBuilder;
@@ -60,6 +63,7 @@ public final class ScriptExecutor
 	private static final String SWITCH_FUNCHELP1 = "--function-help";
 	private static final String SWITCH_FUNCHELP2 = "--function-help-markdown";
 	private static final String SWITCH_DISASSEMBLE1 = "--disassemble";
+	private static final String SWITCH_COMPILE1 = "--compile";
 	private static final String SWITCH_ENTRY1 = "--entry";
 	private static final String SWITCH_ENTRYLIST = "--entry-list";
 	private static final String SWITCH_RUNAWAYLIMIT1 = "--runaway-limit";
@@ -318,12 +322,14 @@ public final class ScriptExecutor
 		FUNCTIONHELP,
 		FUNCTIONHELP_MARKDOWN,
 		DISASSEMBLE,
+		COMPILE,
 		ENTRYPOINTS,
 		EXECUTE;
 	}
 
 	private Mode mode;
 	private File scriptFile;
+	private File compileFile;
 	private String entryPointName;
 	private Integer runawayLimit;
 	private Integer activationDepth;
@@ -334,6 +340,7 @@ public final class ScriptExecutor
 	{
 		this.mode = Mode.EXECUTE;
 		this.scriptFile = null;
+		this.compileFile = null;
 		this.entryPointName = "main";
 		this.runawayLimit = 0;
 		this.activationDepth = 256;
@@ -372,8 +379,12 @@ public final class ScriptExecutor
 			return 4;
 		}
 		
-		ScriptInstanceBuilder builder = ScriptInstance.createBuilder()
-			.withSource(scriptFile)
+		ScriptInstanceBuilder builder = ScriptInstance.createBuilder();
+		if (ScriptBinary.isBinary(scriptFile))
+			builder.withBinarySource(scriptFile);
+		else
+			builder.withSource(scriptFile);
+		builder
 			.withEnvironment(ScriptEnvironment.createStandardEnvironment())
 			.withScriptStack(activationDepth, stackDepth)
 			.withRunawayLimit(runawayLimit);
@@ -405,6 +416,17 @@ public final class ScriptExecutor
 			doDisassemble(System.out, instance);
 			return 0;
 		}
+
+		if (mode == Mode.COMPILE)
+		{
+			try (OutputStream out = new FileOutputStream(compileFile)) {
+				ScriptBinary.write(instance.getScript(), out);
+			} catch (IOException e) {
+				System.err.println("ERROR: Could not write compiled script: " + e.getLocalizedMessage());
+				return 8;
+			}
+			return 0;
+		}
 	
 		if (mode == Mode.EXECUTE)
 		{
@@ -479,6 +501,7 @@ public final class ScriptExecutor
 		final int STATE_SWITCHES_ACTIVATION = SWITCHES + 1;
 		final int STATE_SWITCHES_STACK = SWITCHES + 2;
 		final int STATE_SWITCHES_RUNAWAY = SWITCHES + 3;
+		final int STATE_SWITCHES_COMPILE = SWITCHES + 4;
 		int state = STATE_START;
 		
 		for (int i = 0; i < args.length; i++)
@@ -495,6 +518,11 @@ public final class ScriptExecutor
 					}
 					else if (SWITCH_DISASSEMBLE1.equalsIgnoreCase(arg))
 						mode = Mode.DISASSEMBLE;
+					else if (SWITCH_COMPILE1.equalsIgnoreCase(arg))
+					{
+						mode = Mode.COMPILE;
+						state = STATE_SWITCHES_COMPILE;
+					}
 					else if (SWITCH_FUNCHELP1.equalsIgnoreCase(arg))
 						mode = Mode.FUNCTIONHELP;
 					else if (SWITCH_FUNCHELP2.equalsIgnoreCase(arg))
@@ -526,6 +554,13 @@ public final class ScriptExecutor
 				}
 				break;
 				
+				case STATE_SWITCHES_COMPILE:
+				{
+					compileFile = new File(arg);
+					state = STATE_START;
+				}
+				break;
+				
 				case STATE_SWITCHES_ACTIVATION:
 				{
 					int n;
@@ -588,6 +623,11 @@ public final class ScriptExecutor
 			System.err.println("ERROR: Expected entry point name after switches.");
 			return 3;
 		}
+		if (state == STATE_SWITCHES_COMPILE)
+		{
+			System.err.println("ERROR: Expected output file after compile switch.");
+			return 3;
+		}
 		if (state == STATE_SWITCHES_ACTIVATION)
 		{
 			System.err.println("ERROR: Expected number after activation depth switch.");
@@ -624,9 +664,10 @@ public final class ScriptExecutor
 		out.println("           [--help | -h]");
 		out.println("           [--function-help | --function-help-markdown]");
 		out.println("           [--disassemble] [filename]");
+		out.println("           [--compile outfile] [filename]");
 		out.println();
 		out.println("[filename]:");
-		out.println("    The script filename.");
+		out.println("    The script filename. This can be a script compiled with `--compile`.");
 		out.println();
 		out.println("[switches]:");
 		out.println("    --help, -h                   Prints this help.");
@@ -635,6 +676,8 @@ public final class ScriptExecutor
 		out.println("                                     Markdown format.");
 		out.println("    --disassemble                Prints the disassembly for this script");
 		out.println("                                     and exits.");
+		out.println("    --compile outfile            Writes the compiled script to outfile");
+		out.println("                                     as a precompiled binary, and exits.");
 		out.println("    --entry-list                 Prints the names of the entry points for this");
 		out.println("                                     script and exits.");
 		out.println("    --entry [name]               Use a different entry point named [name].");
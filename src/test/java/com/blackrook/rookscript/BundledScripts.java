@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import com.blackrook.rookscript.compiler.ScriptKernel;
+import com.blackrook.rookscript.compiler.ScriptLexer;
+import com.blackrook.rookscript.compiler.ScriptParser;
+import com.blackrook.rookscript.compiler.ScriptReader;
+import com.blackrook.rookscript.functions.CommonFunctions;
+import com.blackrook.rookscript.functions.DateFunctions;
+import com.blackrook.rookscript.functions.DigestFunctions;
+import com.blackrook.rookscript.functions.IOFunctions;
+import com.blackrook.rookscript.functions.JSONFunctions;
+import com.blackrook.rookscript.functions.MathFunctions;
+import com.blackrook.rookscript.functions.PrintFunctions;
+import com.blackrook.rookscript.functions.RandomFunctions;
+import com.blackrook.rookscript.functions.RegexFunctions;
+import com.blackrook.rookscript.resolvers.ScriptScopeResolver;
+import com.blackrook.rookscript.resolvers.hostfunction.CompoundHostFunctionResolver;
+import com.blackrook.rookscript.struct.Utils;
+
+/**
+ * The bundled test scripts that can be run by test harnesses, and helpers for running them.
+ * Every script here runs the same way every time, without touching files or reading input.
+ */
+public final class BundledScripts
+{
+	/** Resource path prefix for the scripts. */
+	public static final String PATH = "scripts/";
+
+	/** Names of the self-contained scripts. */
+	public static final String[] NAMES = {
+		"checktest.txt",
+		"checktest2.txt",
+		"eachtest.txt",
+		"entrytest.txt",
+		"maintest.txt",
+		"partialtest.txt",
+		"regex.txt",
+		"scripttest.txt",
+		"scripttest2.txt",
+		"scripttest3.txt",
+		"scripttest4.txt",
+		"scripttest5.txt",
+		"streamtest3.txt",
+		"streamtest7.txt",
+		"streamtest8.txt",
+		"test.txt",
+		"test2.txt",
+		"test3.txt",
+		"test4.txt",
+		"test6.txt",
+		"test7.txt",
+		"test8.txt",
+		"test9.txt",
+	};
+
+	private BundledScripts() {}
+
+	/**
+	 * Checks a condition, and fails if it is false.
+	 * @param condition the condition.
+	 * @param message the message to fail with.
+	 * @throws AssertionError if the condition is false.
+	 */
+	public static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	/**
+	 * @return a new host function resolver with the functions that the bundled scripts use.
+	 */
+	public static CompoundHostFunctionResolver createResolver()
+	{
+		return (new CompoundHostFunctionResolver())
+			.addResolver(CommonFunctions.createResolver())
+			.addResolver(PrintFunctions.createResolver())
+			.addResolver(MathFunctions.createResolver())
+			.addResolver(RandomFunctions.createResolver())
+			.addResolver(RegexFunctions.createResolver())
+			.addResolver(DateFunctions.createResolver())
+			.addResolver(IOFunctions.createResolver())
+			.addResolver(DigestFunctions.createResolver())
+			.addResolver(JSONFunctions.createResolver());
+	}
+
+	/**
+	 * Opens a bundled script.
+	 * @param name the script name.
+	 * @return a reader for the script's source.
+	 * @throws IOException if the script could not be opened.
+	 */
+	public static Reader open(String name) throws IOException
+	{
+		return new InputStreamReader(Utils.openResource(PATH + name), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compiles a bundled script the same way {@link ScriptReader} does.
+	 * @param name the script name.
+	 * @param fuse if true, command sequences are fused.
+	 * @return the compiled script.
+	 * @throws IOException if the script could not be read.
+	 */
+	public static Script compile(String name, boolean fuse) throws IOException
+	{
+		try (Reader reader = open(name))
+		{
+			return compile(PATH + name, reader, fuse);
+		}
+	}
+
+	/**
+	 * Compiles a script the same way {@link ScriptReader} does.
+	 * @param streamName the name of the source stream.
+	 * @param reader the reader for the source.
+	 * @param fuse if true, command sequences are fused.
+	 * @return the compiled script.
+	 * @throws IOException if the script could not be read.
+	 */
+	public static Script compile(String streamName, Reader reader, boolean fuse) throws IOException
+	{
+		Script script = new Script();
+		script.setHostFunctionResolver(createResolver());
+		script.setScopeResolver(ScriptScopeResolver.EMPTY);
+		(new ScriptParser(new ScriptLexer(new ScriptKernel(), streamName, reader, ScriptReader.DEFAULT_INCLUDER, ScriptReader.DEFAULT_OPTIONS))).readScript(script);
+		return ScriptAssembler.optimize(script, fuse);
+	}
+
+	/**
+	 * Runs the "main" entry of a script until it ends.
+	 * @param script the script to run.
+	 * @return the result of the run.
+	 */
+	public static Run run(Script script)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bos, true);
+		ScriptInstance instance = ScriptInstance.createBuilder()
+			.withScript(script)
+			.withEnvironment(ScriptEnvironment.create(out, out, new ByteArrayInputStream(new byte[0])))
+			.withScriptStack(256, 2048)
+			.createInstance();
+
+		Run run = new Run();
+		try {
+			if (script.getScriptEntry("main").getParameterCount() > 0)
+				instance.initialize("main", new Object[]{new Object[0]});
+			else
+				instance.initialize("main");
+			do {
+				run.commands += instance.update(Integer.MAX_VALUE);
+			} while (instance.getState() == ScriptInstance.State.RUNNING);
+			ScriptValue value = ScriptValue.create(null);
+			instance.popStackValue(value);
+			run.result = String.valueOf(value);
+		} catch (RuntimeException e) {
+			run.result = e.getClass().getSimpleName() + ": " + e.getMessage();
+		}
+		run.output = new String(bos.toByteArray());
+		return run;
+	}
+
+	/**
+	 * The result of a script run.
+	 */
+	public static class Run
+	{
+		/** Everything the script printed. */
+		public String output;
+		/** The returned value, or the exception thrown. */
+		public String result;
+		/** Commands dispatched. */
+		public long commands;
+
+		/**
+		 * Checks if another run had the same output and result.
+		 * @param run the other run.
+		 * @return true if so, false if not.
+		 */
+		public boolean sameAs(Run run)
+		{
+			return output.equals(run.output) && result.equals(run.result);
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import java.io.StringReader;
+
+/**
+ * Compiles the bundled scripts with and without fused commands, checks that both give the same results,
+ * and reports how many commands each dispatched.
+ */
+public class FusionTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		long totalUnfused = 0L;
+		long totalFused = 0L;
+		System.out.printf("%-20s %10s %10s %10s %8s\n", "Script", "Commands", "Unfused", "Fused", "Saved");
+		for (String name : BundledScripts.NAMES)
+		{
+			Script unfusedScript = BundledScripts.compile(name, false);
+			Script fusedScript = BundledScripts.compile(name, true);
+			BundledScripts.Run unfused = BundledScripts.run(unfusedScript);
+			BundledScripts.Run fused = BundledScripts.run(fusedScript);
+			check(unfused.sameAs(fused), name + ": fused result differs.\nUnfused: " + unfused.result + "\n" + unfused.output + "\nFused: " + fused.result + "\n" + fused.output);
+			check(fused.commands <= unfused.commands, name + ": fused script dispatched more commands.");
+			check(fusedScript.getCommandCount() <= unfusedScript.getCommandCount(), name + ": fused script has more commands.");
+
+			totalUnfused += unfused.commands;
+			totalFused += fused.commands;
+			System.out.printf("%-20s %4d->%4d %10d %10d %7.1f%%\n",
+				name, unfusedScript.getCommandCount(), fusedScript.getCommandCount(), unfused.commands, fused.commands, saved(unfused.commands, fused.commands)
+			);
+		}
+		System.out.printf("%-20s %10s %10d %10d %7.1f%%\n", "Total", "", totalUnfused, totalFused, saved(totalUnfused, totalFused));
+
+		// a loop that the fused commands are made for.
+		String loop = "entry main() { x = 0; for (i = 0; i < 100000; i += 1) x = x + i; return x; }";
+		BundledScripts.Run unfused = BundledScripts.run(BundledScripts.compile("loop", new StringReader(loop), false));
+		BundledScripts.Run fused = BundledScripts.run(BundledScripts.compile("loop", new StringReader(loop), true));
+		check(unfused.sameAs(fused), "loop: fused result differs: " + unfused.result + " / " + fused.result);
+		check("4999950000".equals(fused.result), "loop: bad result " + fused.result);
+		check(fused.commands < unfused.commands, "loop: fusion saved no dispatches.");
+		System.out.printf("%-20s %10s %10d %10d %7.1f%%\n", "counting loop", "", unfused.commands, fused.commands, saved(unfused.commands, fused.commands));
+	}
+
+	private static double saved(long unfused, long fused)
+	{
+		return unfused > 0 ? (unfused - fused) * 100.0 / unfused : 0.0;
+	}
+
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.blackrook.rookscript.compiler.ScriptKernel;
+import com.blackrook.rookscript.compiler.ScriptLexer;
+import com.blackrook.rookscript.compiler.ScriptReader;
+
+/**
+ * Times lexing (with preprocessing) of the bundled scripts, or of script files named on the command line.
+ * Each round lexes every script once, and the best round is reported.
+ * <p>Usage: LexerBenchmark [-rounds N] [file ...]
+ */
+public class LexerBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		int rounds = 60;
+		List<String> names = new ArrayList<>();
+		List<String> texts = new ArrayList<>();
+		for (int i = 0; i < args.length; i++)
+		{
+			if ("-rounds".equals(args[i]) && i + 1 < args.length)
+				rounds = Integer.parseInt(args[++i]);
+			else
+			{
+				names.add(args[i]);
+				texts.add(new String(Files.readAllBytes(new File(args[i]).toPath()), StandardCharsets.UTF_8));
+			}
+		}
+		if (names.isEmpty())
+		{
+			for (String name : BundledScripts.NAMES)
+			{
+				names.add(BundledScripts.PATH + name);
+				texts.add(read(name));
+			}
+		}
+
+		ScriptKernel kernel = new ScriptKernel();
+		long tokens = 0L;
+		long chars = 0L;
+		long best = Long.MAX_VALUE;
+		long total = 0L;
+		for (String text : texts)
+			chars += text.length();
+		for (int r = 0; r < rounds; r++)
+		{
+			long time = System.nanoTime();
+			tokens = 0L;
+			for (int i = 0; i < texts.size(); i++)
+			{
+				ScriptLexer lexer = new ScriptLexer(kernel, names.get(i), new StringReader(texts.get(i)), ScriptReader.DEFAULT_INCLUDER, ScriptReader.DEFAULT_OPTIONS);
+				while (lexer.nextToken() != null)
+					tokens++;
+			}
+			time = System.nanoTime() - time;
+			best = Math.min(best, time);
+			total += time;
+		}
+
+		System.out.printf("%d scripts, %d chars, %d tokens, %d rounds\n", texts.size(), chars, tokens, rounds);
+		System.out.printf("best %.3f ms, mean %.3f ms, %.1f ns/token\n", best / 1e6, total / 1e6 / rounds, (double)best / Math.max(tokens, 1L));
+	}
+
+	private static String read(String name) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		try (Reader reader = BundledScripts.open(name))
+		{
+			char[] buffer = new char[8192];
+			int buf;
+			while ((buf = reader.read(buffer)) > 0)
+				sb.append(buffer, 0, buf);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.blackrook.rookscript.compiler.ScriptKernel;
+import com.blackrook.rookscript.struct.Lexer;
+
+/**
+ * Checks that the lexer's compiled kernel tables (the delimiter trie and the keyword perfect hashes)
+ * classify lexemes the same way as looking them up in the kernel's maps does.
+ */
+public class LexerKernelTest
+{
+	/** Case-sensitive keywords: "Aa" and "BB" have the same hash code. */
+	private static final String[] KEYWORDS = {"Aa", "BB", "Return", "x1"};
+	/** Case-insensitive keywords: "a\u0131" and "c\u00F3" have the same hash code. */
+	private static final String[] CASE_INSENSITIVE_KEYWORDS = {"a\u0131", "C\u00D3", "\u0130f", "if", "stra\u00DFe", "\u00E9t\u00E9", "while", "kelvin", "_under"};
+	/** Other identifiers to classify (dotted and dotless I, decomposed dots, the Kelvin sign, titlecase digraphs). */
+	private static final String[] OTHER_WORDS = {
+		"\u0130F", "i\u0307f", "I\u0307F", "\u0131f", "IF", "iF", "STRASSE", "STRA\u00DFE", "\u00C9T\u00C9", "Kelvin", "KELVIN", "\u212Aelvin",
+		"ab", "AI", "A\u0131", "c\u00F3", "C\u00F3", "aa", "AA", "bb", "Bb", "x", "x12", "whilee", "whil", "a", "_", "__under", "identifier",
+		"\u00C0\u00C9\u00CE\u00D5\u00DC", "\u01C5", "\u01C8\u01C9",
+	};
+
+	public static void main(String[] args) throws Exception
+	{
+		ScriptKernel scriptKernel = new ScriptKernel();
+		List<String> scriptWords = new ArrayList<>();
+		scriptWords.addAll(table(scriptKernel, "keywordTable").keySet());
+		scriptWords.addAll(table(scriptKernel, "caseInsensitiveKeywordTable").keySet());
+		for (String word : new ArrayList<>(scriptWords))
+			scriptWords.add(word.toUpperCase(Locale.ROOT));
+		scriptWords.add("identifier");
+		scriptWords.add("\u0130F");
+		checkKernel("ScriptKernel", scriptKernel, scriptWords);
+
+		// with keys that share hash codes (no perfect hash is possible).
+		check("Aa".hashCode() == "BB".hashCode(), "Keywords do not share a hash code.");
+		check("a\u0131".hashCode() == "C\u00D3".toLowerCase().hashCode(), "Case-insensitive keywords do not share a hash code.");
+		checkKernel("duplicate hashes", createKernel(KEYWORDS, CASE_INSENSITIVE_KEYWORDS), words(KEYWORDS, CASE_INSENSITIVE_KEYWORDS));
+
+		// the same, without them.
+		String[] keywords = {"Return", "x1"};
+		String[] caseInsensitiveKeywords = {"\u0130f", "stra\u00DFe", "\u00E9t\u00E9", "while", "kelvin", "_under"};
+		checkKernel("distinct hashes", createKernel(keywords, caseInsensitiveKeywords), words(KEYWORDS, CASE_INSENSITIVE_KEYWORDS));
+
+		System.out.println("All kernel tests passed.");
+	}
+
+	private static Lexer.Kernel createKernel(String[] keywords, String[] caseInsensitiveKeywords)
+	{
+		Lexer.Kernel out = new Lexer.Kernel();
+		out.addDelimiter("(", 1);
+		out.addDelimiter(")", 2);
+		out.addDelimiter("-", 3);
+		out.addDelimiter("->", 4);
+		out.addDelimiter("-->", 5);
+		out.addDelimiter("=", 6);
+		out.addDelimiter("==", 7);
+		out.addDelimiter("===", 8);
+		out.addDelimiter("\u00AB", 9);
+		out.addDelimiter("\u00AB\u00BB", 10);
+		out.addCommentDelimiter("/*", "*/");
+		out.addCommentLineDelimiter("//");
+		for (int i = 0; i < keywords.length; i++)
+			out.addKeyword(keywords[i], 100 + i);
+		for (int i = 0; i < caseInsensitiveKeywords.length; i++)
+			out.addCaseInsensitiveKeyword(caseInsensitiveKeywords[i], 200 + i);
+		return out;
+	}
+
+	// Gets each keyword in different cases, plus the other words.
+	private static List<String> words(String[] keywords, String[] caseInsensitiveKeywords)
+	{
+		Set<String> out = new LinkedHashSet<>();
+		for (String[] list : new String[][]{keywords, caseInsensitiveKeywords})
+		{
+			for (String word : list)
+			{
+				out.add(word);
+				out.add(word.toLowerCase(Locale.ROOT));
+				out.add(word.toUpperCase(Locale.ROOT));
+				out.add(word.substring(0, 1).toUpperCase(Locale.ROOT) + word.substring(1));
+				out.add(word + "s");
+				if (word.length() > 1)
+					out.add(word.substring(0, word.length() - 1));
+			}
+		}
+		for (String word : OTHER_WORDS)
+			out.add(word);
+		return new ArrayList<>(out);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> Map<String, V> table(Lexer.Kernel kernel, String name) throws Exception
+	{
+		Field field = Lexer.Kernel.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return (Map<String, V>)field.get(kernel);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Set<String> lineCommentTable(Lexer.Kernel kernel) throws Exception
+	{
+		Field field = Lexer.Kernel.class.getDeclaredField("commentLineTable");
+		field.setAccessible(true);
+		return (Set<String>)field.get(kernel);
+	}
+
+	// Classifies an identifier the way a lookup in the kernel's keyword maps does.
+	private static int classifyWord(Map<String, Integer> keywords, Map<String, Integer> caseInsensitiveKeywords, String word)
+	{
+		Integer out;
+		if ((out = keywords.get(word)) != null)
+			return out;
+		if ((out = caseInsensitiveKeywords.get(word.toLowerCase())) != null)
+			return out;
+		return Lexer.Kernel.TYPE_IDENTIFIER;
+	}
+
+	// Splits delimiters the way a lookup in the kernel's delimiter map does (a delimiter grows while it is still a delimiter).
+	private static List<String> splitDelimiters(Map<String, Integer> delimiters, String text)
+	{
+		List<String> out = new ArrayList<>();
+		String current = "";
+		for (int i = 0; i < text.length(); i++)
+		{
+			String next = current + text.charAt(i);
+			if (current.isEmpty() || delimiters.containsKey(next))
+				current = next;
+			else
+			{
+				out.add(current);
+				current = String.valueOf(text.charAt(i));
+			}
+		}
+		if (!current.isEmpty())
+			out.add(current);
+		return out;
+	}
+
+	private static List<Lexer.Token> lex(Lexer.Kernel kernel, String text) throws Exception
+	{
+		Lexer lexer = new Lexer(kernel, text);
+		List<Lexer.Token> out = new ArrayList<>();
+		Lexer.Token token;
+		while ((token = lexer.nextToken()) != null)
+			out.add(token);
+		return out;
+	}
+
+	private static void checkKernel(String name, Lexer.Kernel kernel, List<String> words) throws Exception
+	{
+		Map<String, Integer> delimiters = table(kernel, "delimTable");
+		Map<String, Integer> keywords = table(kernel, "keywordTable");
+		Map<String, Integer> caseInsensitiveKeywords = table(kernel, "caseInsensitiveKeywordTable");
+		Map<String, String> comments = table(kernel, "commentTable");
+		Set<String> lineComments = lineCommentTable(kernel);
+
+		int checked = 0;
+		for (String word : words)
+		{
+			List<Lexer.Token> tokens = lex(kernel, word);
+			check(tokens.size() == 1 && tokens.get(0).getLexeme().equals(word), name + ": \"" + word + "\" did not lex as one token.");
+			int expected = classifyWord(keywords, caseInsensitiveKeywords, word);
+			check(tokens.get(0).getType() == expected, name + ": \"" + word + "\" is type " + tokens.get(0).getType() + ", expected " + expected);
+			checked++;
+		}
+
+		// each delimiter, and each pair of them, apart and together (unless together they start a comment).
+		List<String> delimiterList = new ArrayList<>(delimiters.keySet());
+		for (String first : delimiterList)
+		{
+			checked += checkDelimiters(name, kernel, delimiters, first);
+			for (String second : delimiterList)
+			{
+				String text = first + second;
+				boolean comment = false;
+				for (String start : comments.keySet())
+					comment |= text.contains(start);
+				for (String start : lineComments)
+					comment |= text.contains(start);
+				if (!comment)
+					checked += checkDelimiters(name, kernel, delimiters, text);
+				checked += checkDelimiters(name, kernel, delimiters, first + " " + second);
+			}
+		}
+		System.out.println(name + ": " + checked + " lexemes checked.");
+	}
+
+	private static int checkDelimiters(String name, Lexer.Kernel kernel, Map<String, Integer> delimiters, String text) throws Exception
+	{
+		List<String> expected = new ArrayList<>();
+		for (String part : text.split(" "))
+			expected.addAll(splitDelimiters(delimiters, part));
+		List<Lexer.Token> tokens = lex(kernel, text);
+		check(tokens.size() == expected.size(), name + ": \"" + text + "\" lexed as " + tokens.size() + " tokens, expected " + expected);
+		for (int i = 0; i < tokens.size(); i++)
+		{
+			String lexeme = expected.get(i);
+			Integer type = delimiters.get(lexeme);
+			check(tokens.get(i).getLexeme().equals(lexeme), name + ": \"" + text + "\" token " + i + " is \"" + tokens.get(i).getLexeme() + "\", expected \"" + lexeme + "\"");
+			check(type == null || tokens.get(i).getType() == type, name + ": \"" + text + "\" token " + i + " is type " + tokens.get(i).getType() + ", expected " + type);
+		}
+		return tokens.size();
+	}
+
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.blackrook.rookscript.lang.ScriptCommand;
+import com.blackrook.rookscript.lang.ScriptCommandType;
+import com.blackrook.rookscript.resolvers.ScriptHostFunctionResolver;
+import com.blackrook.rookscript.resolvers.ScriptScopeResolver;
+
+/**
+ * Writes the bundled scripts as binary scripts, reads them back, and checks that they run the same,
+ * and that malformed binary scripts are rejected.
+ */
+public class ScriptBinaryTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		testRoundTrip();
+		testBadIndices();
+		testCorruption();
+		System.out.println("All binary script tests passed.");
+	}
+
+	private static byte[] write(Script script) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ScriptBinary.write(script, bos);
+		return bos.toByteArray();
+	}
+
+	private static Script read(byte[] data) throws IOException
+	{
+		return ScriptBinary.read(ByteBuffer.wrap(data), BundledScripts.createResolver(), ScriptScopeResolver.EMPTY);
+	}
+
+	// Every bundled script, fused or not, reads back to the same commands and runs the same.
+	private static void testRoundTrip() throws Exception
+	{
+		for (String name : BundledScripts.NAMES) for (boolean fuse : new boolean[]{false, true})
+		{
+			String what = name + (fuse ? " (fused)" : "");
+			Script source = BundledScripts.compile(name, fuse);
+			byte[] data = write(source);
+			Script binary = read(data);
+
+			check(binary.getCommandCount() == source.getCommandCount(), what + ": command count differs.");
+			for (int i = 0; i < source.getCommandCount(); i++)
+				check(String.valueOf(source.getCommand(i)).equals(String.valueOf(binary.getCommand(i))), what + ": command " + i + " differs: " + source.getCommand(i) + " / " + binary.getCommand(i));
+			for (String entryName : source.getScriptEntryNames())
+				check(binary.getScriptEntry(entryName) != null && binary.getScriptEntry(entryName).getIndex() == source.getScriptEntry(entryName).getIndex(), what + ": entry " + entryName + " differs.");
+			for (String functionName : source.getFunctionEntryNames())
+				check(binary.getFunctionEntry(functionName) != null && binary.getFunctionEntry(functionName).getIndex() == source.getFunctionEntry(functionName).getIndex(), what + ": function " + functionName + " differs.");
+
+			BundledScripts.Run sourceRun = BundledScripts.run(source);
+			BundledScripts.Run binaryRun = BundledScripts.run(binary);
+			check(sourceRun.sameAs(binaryRun), what + ": binary script runs differently.\nSource: " + sourceRun.result + "\n" + sourceRun.output + "\nBinary: " + binaryRun.result + "\n" + binaryRun.output);
+
+			// writing what was read gives the same bytes.
+			check(ByteBuffer.wrap(data).equals(ByteBuffer.wrap(write(binary))), what + ": rewritten binary script differs.");
+		}
+	}
+
+	// A script with a label, function, or entry outside of its commands.
+	private static Script badScript(String what)
+	{
+		Script script = new Script();
+		script.setHostFunctionResolver(ScriptHostFunctionResolver.EMPTY);
+		script.addCommand(ScriptCommand.create(ScriptCommandType.PUSH_NULL));
+		script.addCommand(ScriptCommand.create(ScriptCommandType.RETURN));
+		script.setScriptEntry("main", 0, "entry".equals(what) ? 3 : 0);
+		script.createFunctionEntry("f", 0, "function".equals(what) ? -1 : 0);
+		script.setIndex("label", "label".equals(what) ? 100 : 2);
+		return script;
+	}
+
+	private static void testBadIndices() throws Exception
+	{
+		// an index just past the last command is fine.
+		read(write(badScript("none")));
+		for (String what : new String[]{"entry", "function", "label"})
+		{
+			byte[] data = write(badScript(what));
+			try {
+				read(data);
+				throw new AssertionError("Bad " + what + " index was read.");
+			} catch (StreamCorruptedException e) {
+				// expected.
+			}
+		}
+	}
+
+	// Random damage to a binary script is either harmless or reported as an IOException.
+	private static void testCorruption() throws Exception
+	{
+		byte[] data = write(BundledScripts.compile("test.txt", true));
+		Random random = new Random(1234L);
+		int rejected = 0;
+		for (int n = 0; n < 5000; n++)
+		{
+			byte[] damaged = data.clone();
+			for (int d = 1 + random.nextInt(4); d > 0; d--)
+				damaged[random.nextInt(damaged.length)] ^= (byte)(1 << random.nextInt(8));
+			try {
+				read(damaged);
+			} catch (IOException e) {
+				rejected++;
+			} catch (RuntimeException e) {
+				throw new AssertionError("Damaged binary script threw " + e, e);
+			}
+		}
+		check(rejected > 0, "No damaged binary script was rejected.");
+	}
+
+}
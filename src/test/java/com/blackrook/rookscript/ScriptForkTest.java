@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import com.blackrook.rookscript.exception.ScriptStackException;
+import com.blackrook.rookscript.functions.CommonFunctions;
+import com.blackrook.rookscript.lang.ScriptFunctionType;
+import com.blackrook.rookscript.resolvers.hostfunction.EnumFunctionResolver;
+
+/**
+ * Forks paused script instances and checks that the forks run independently.
+ */
+public class ScriptForkTest
+{
+	private static final String SOURCE = (new StringBuilder())
+		// builds shared and cyclic lists and maps, pauses, then mutates them only if told to.
+		.append("entry main() {\n")
+		.append("	shared = [1, 2];\n")
+		.append("	pair = [shared, shared];\n")
+		.append("	l = [0, 1];\n")
+		.append("	l[0] = l;\n")
+		.append("	m = {val: 0};\n")
+		.append("	m.self = m;\n")
+		.append("	b = bufnew(2);\n")
+		.append("	if (pause()) {\n")
+		.append("		pair[0][0] = 10;\n")
+		.append("		l[0][1] = 7;\n")
+		.append("		m.self.val = 3;\n")
+		.append("		bufputbyte(b, 9, 0);\n")
+		.append("	}\n")
+		.append("	return [pair[1][0], shared[0], l[1], m.val, bufgetbyte(b, 0)];\n")
+		.append("}\n")
+	.toString();
+
+	private static enum TestFunctions implements ScriptFunctionType
+	{
+		PAUSE
+		{
+			@Override
+			public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+			{
+				scriptInstance.suspend();
+				returnValue.setNull();
+				return false;
+			}
+		};
+
+		@Override
+		public int getParameterCount()
+		{
+			return 0;
+		}
+
+		@Override
+		public Usage getUsage()
+		{
+			return null;
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		ScriptInstance parent = ScriptInstance.createBuilder()
+			.withSource(SOURCE)
+			.withFunctionResolver(CommonFunctions.createResolver())
+			.andFunctionResolver(new EnumFunctionResolver(TestFunctions.values()))
+			.withScriptStack(16, 256)
+			.createInstance();
+
+		parent.initialize("main");
+		run(parent);
+		check(parent.getState() == ScriptInstance.State.SUSPENDED, "Not paused: " + parent.getState());
+
+		ScriptInstance child = parent.fork();
+		check(child != parent && child.getScript() == parent.getScript(), "Fork is not a new instance of the same script.");
+		check(child.getState() == ScriptInstance.State.SUSPENDED, "Fork state not copied: " + child.getState());
+		check(child.getCurrentCommandIndex() == parent.getCurrentCommandIndex(), "Fork command index not copied.");
+
+		// the child mutates through one reference and reads through another, so shared references and cycles survived.
+		child.resume(true);
+		run(child);
+		String childResult = result(child);
+		check("[10, 10, 7, 3, 9]".equals(childResult), "Bad fork result: " + childResult);
+
+		// the parent's lists, maps, and buffers are not the child's.
+		parent.resume(false);
+		run(parent);
+		String parentResult = result(parent);
+		check("[1, 1, 1, 0, 0]".equals(parentResult), "Fork changed the parent: " + parentResult);
+
+		testStacks();
+		System.out.println("All fork tests passed.");
+	}
+
+	// A fork needs its own stack, big enough for the state.
+	private static void testStacks()
+	{
+		ScriptInstance instance = ScriptInstance.createBuilder()
+			.withSource(SOURCE)
+			.withFunctionResolver(CommonFunctions.createResolver())
+			.andFunctionResolver(new EnumFunctionResolver(TestFunctions.values()))
+			.withScriptStack(16, 256)
+			.createInstance();
+		instance.initialize("main");
+		run(instance);
+
+		try {
+			instance.fork(new ScriptInstanceStack(16, 2));
+			throw new AssertionError("Fork fit in a stack that is too small.");
+		} catch (ScriptStackException e) {
+			// expected.
+		}
+		
+		ScriptInstanceStack stack = new ScriptInstanceStack(16, 256, 4, true);
+		ScriptInstance fork = instance.fork(stack);
+		check(fork.getCurrentActivationStackDepth() == instance.getCurrentActivationStackDepth(), "Fork into a segmented stack lost frames.");
+	}
+
+	// Runs an instance until it ends or stops.
+	private static void run(ScriptInstance instance)
+	{
+		do {
+			instance.update();
+		} while (instance.getState() == ScriptInstance.State.RUNNING);
+	}
+
+	private static String result(ScriptInstance instance)
+	{
+		ScriptValue value = ScriptValue.create(null);
+		instance.popStackValue(value);
+		return String.valueOf(value);
+	}
+
+}
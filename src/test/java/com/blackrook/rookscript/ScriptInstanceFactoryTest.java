@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import com.blackrook.rookscript.lang.ScriptCommand;
+import com.blackrook.rookscript.lang.ScriptCommandType;
+
+/**
+ * Checks that factories share a frozen script without freezing the caller's.
+ */
+public class ScriptInstanceFactoryTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		Script script = BundledScripts.compile("test.txt", true);
+		int commandCount = script.getCommandCount();
+		String expected = BundledScripts.run(script).result;
+
+		ScriptInstanceFactory factory = new ScriptInstanceFactory(script, ScriptEnvironment.create());
+		check(!script.isFrozen(), "The caller's script was frozen.");
+		ScriptInstance instance = factory.create();
+		Script shared = instance.getScript();
+		check(shared != script && shared.isFrozen(), "The factory's script is not a frozen copy.");
+
+		// the caller can still change its script, and the factory's copy does not see it.
+		script.addCommand(ScriptCommand.create(ScriptCommandType.NOOP));
+		check(script.getCommandCount() == commandCount + 1, "The caller's script did not change.");
+		check(shared.getCommandCount() == commandCount, "The factory's script changed.");
+		check(factory.create().getScript() == shared, "The factory's instances do not share its script.");
+		check(expected.equals(BundledScripts.run(shared).result), "The copy runs differently.");
+
+		// frozen scripts are shared as-is.
+		Script frozen = BundledScripts.compile("test.txt", true).freeze();
+		check((new ScriptInstanceFactory(frozen, ScriptEnvironment.create())).create().getScript() == frozen, "A frozen script was copied.");
+
+		// the builder does the same with a script that it was given.
+		Script built = BundledScripts.compile("test.txt", true);
+		ScriptInstanceFactory builderFactory = ScriptInstance.createBuilder()
+			.withScript(built)
+			.withScriptStack(16, 256)
+			.createFactory();
+		check(!built.isFrozen() && builderFactory.create().getScript().isFrozen(), "The builder froze the caller's script.");
+
+		System.out.println("All factory tests passed.");
+	}
+}
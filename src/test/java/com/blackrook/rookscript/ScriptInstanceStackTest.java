@@ -7,28 +7,158 @@
  ******************************************************************************/
 package com.blackrook.rookscript;
 
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import com.blackrook.rookscript.exception.ScriptStackException;
+
 public class ScriptInstanceStackTest
 {
 	public static void main(String[] args)
+	{
+		testValues();
+		testGrowth();
+		testOverflow();
+		testShrinkOnReset();
+		System.out.println("All stack tests passed.");
+	}
+
+	private static void testValues()
 	{
 		ScriptInstanceStack stack = new ScriptInstanceStack(16, 128);
 		ScriptValue value = ScriptValue.create(null);
 		stack.pushFrame(0);
 		stack.setValue("x", ScriptValue.create(5));
-		stack.getValue("x", value);
-		System.out.println(value);
-		stack.setValue("x", ScriptValue.create(5));
-		stack.getValue("x", value);
-		System.out.println(value);
+		check(stack.getValue("x", value) && value.asLong() == 5, "Named value not set: " + value);
 		
 		stack.pushStackValue(10);
 		stack.pushStackValue(20.0);
 		stack.pushStackValue("Butt");
 		stack.pushStackValue(true);
+		check(stack.getCurrentValueStackDepth() == 3, "Bad value stack depth: " + stack.getCurrentValueStackDepth());
 
 		stack.setCommandIndex(20);
+		stack.setLocalValue(2, 30);
+		stack.pushFrame(40);
+		stack.setLocalValue(0, "Local");
+		check(!stack.getLocalValue(2, value) && value.isNull(), "Slot from another frame is visible: " + value);
+		stack.pushLocalValue(0);
+		stack.popFrame();
+		check(stack.getCommandIndex() == 20, "Command index not restored: " + stack.getCommandIndex());
+		stack.popLocalValue(0);
+		check(stack.getLocalValue(0, value) && "Local".equals(value.asString()), "Slot 0 not popped into: " + value);
+		check(stack.getLocalValue(2, value) && value.asLong() == 30, "Slot 2 was changed: " + value);
+		stack.getLocalValue(1, value);
+		check(value.isNull(), "Unset slot is not null: " + value);
 
 		stack.reset();
+		check(stack.getCurrentActivationStackDepth() == -1, "Frames left after reset.");
+		check(stack.getCurrentValueStackDepth() == -1, "Values left after reset.");
 	}
-}
 
+	private static void testGrowth()
+	{
+		ScriptValue value = ScriptValue.create(null);
+		ScriptInstanceStack stack = new ScriptInstanceStack(16, 128, 4, false);
+		check(stack.getValueStackCapacity() == 4, "Value stack does not start at one segment: " + stack.getValueStackCapacity());
+		check(stack.getLocalStackCapacity() == 4, "Local stack does not start at one segment: " + stack.getLocalStackCapacity());
+
+		stack.pushFrame(0);
+		for (int i = 0; i < 20; i++)
+			stack.setLocalValue(i, i);
+		check(stack.getLocalStackCapacity() >= 20 && stack.getLocalStackCapacity() <= 24, "Local stack did not grow by segments: " + stack.getLocalStackCapacity());
+		for (int i = 0; i < 20; i++)
+			stack.pushLocalValue(i);
+		check(stack.getValueStackCapacity() == 20, "Value stack did not grow by segments: " + stack.getValueStackCapacity());
+		for (int i = 0; i < 20; i++)
+		{
+			stack.getStackValue(19 - i, value);
+			check(value.asLong() == i, "Bad value at " + i + ": " + value);
+		}
+
+		for (int i = 0; i < 10; i++)
+			stack.pushFrame(i + 1);
+		check(stack.getCurrentActivationStackDepth() == 10, "Bad activation depth: " + stack.getCurrentActivationStackDepth());
+		for (int i = 0; i < 10; i++)
+			stack.popFrame();
+		for (int i = 0; i < 20; i++)
+		{
+			stack.getLocalValue(i, value);
+			check(value.asLong() == i, "Local slot " + i + " changed after frames: " + value);
+		}
+	}
+
+	private static void testOverflow()
+	{
+		// segmented and unsegmented stacks stop at the same depths.
+		for (int segmentSize : new int[]{0, 4})
+		{
+			String type = segmentSize > 0 ? "segmented " : "unsegmented ";
+			ScriptInstanceStack stack = new ScriptInstanceStack(4, 32, segmentSize, false);
+
+			stack.pushFrame(0);
+			stack.setLocalValue(31, "last");
+			check(stack.getLocalStackCapacity() == 32, type + "local stack not at its maximum: " + stack.getLocalStackCapacity());
+			checkOverflow(() -> stack.setLocalValue(32, "over"), type + "local slot past the value depth");
+			stack.popFrame();
+
+			// slots are counted from the frame's base.
+			stack.pushFrame(0);
+			stack.setLocalValue(20, "base");
+			stack.pushFrame(0);
+			stack.setLocalValue(10, "last");
+			checkOverflow(() -> stack.setLocalValue(11, "over"), type + "local slot past the value depth in a later frame");
+			checkOverflow(() -> stack.popLocalValue(11), type + "popped local slot past the value depth");
+			stack.reset();
+
+			for (int i = 0; i < 32; i++)
+				stack.pushStackValue(i);
+			checkOverflow(() -> stack.pushStackValue(32), type + "value past the value depth");
+			stack.reset();
+
+			for (int i = 0; i < 4; i++)
+				stack.pushFrame(0);
+			checkOverflow(() -> stack.pushFrame(0), type + "frame past the activation depth");
+			stack.reset();
+		}
+	}
+
+	private static void testShrinkOnReset()
+	{
+		ScriptInstanceStack shrinking = new ScriptInstanceStack(16, 128, 4, true);
+		ScriptInstanceStack keeping = new ScriptInstanceStack(16, 128, 4, false);
+		check(shrinking.isShrinkOnReset() && !keeping.isShrinkOnReset(), "Bad shrink flags.");
+		check(!(new ScriptInstanceStack(16, 128, 0, true)).isShrinkOnReset(), "Unsegmented stack shrinks.");
+		for (ScriptInstanceStack stack : new ScriptInstanceStack[]{shrinking, keeping})
+		{
+			stack.pushFrame(0);
+			for (int i = 0; i < 10; i++)
+				stack.pushFrame(i);
+			for (int i = 0; i < 50; i++)
+				stack.setLocalValue(i, i);
+			for (int i = 0; i < 50; i++)
+				stack.pushStackValue(i);
+			stack.reset();
+		}
+		check(shrinking.getValueStackCapacity() == 4, "Value stack not shrunk: " + shrinking.getValueStackCapacity());
+		check(shrinking.getLocalStackCapacity() == 4, "Local stack not shrunk: " + shrinking.getLocalStackCapacity());
+		check(keeping.getValueStackCapacity() == 52, "Value stack shrunk: " + keeping.getValueStackCapacity());
+		check(keeping.getLocalStackCapacity() >= 50, "Local stack shrunk: " + keeping.getLocalStackCapacity());
+
+		// a shrunk stack can grow again, and starts clean.
+		ScriptValue value = ScriptValue.create(null);
+		shrinking.pushFrame(0);
+		check(!shrinking.getLocalValue(10, value) && value.isNull(), "Shrunk stack kept a local: " + value);
+		shrinking.setLocalValue(40, "again");
+		check(shrinking.getLocalValue(40, value) && "again".equals(value.asString()), "Shrunk stack did not grow: " + value);
+	}
+
+	private static void checkOverflow(Runnable runnable, String what)
+	{
+		try {
+			runnable.run();
+		} catch (ScriptStackException e) {
+			return;
+		}
+		throw new AssertionError("No overflow: " + what);
+	}
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import java.util.concurrent.TimeUnit;
+
+import com.blackrook.rookscript.exception.ScriptQuotaException;
+import com.blackrook.rookscript.functions.CommonFunctions;
+import com.blackrook.rookscript.lang.ScriptCommand;
+import com.blackrook.rookscript.lang.ScriptCommandType;
+import com.blackrook.rookscript.lang.ScriptFunctionType;
+import com.blackrook.rookscript.resolvers.hostfunction.CompoundFunctionResolver;
+import com.blackrook.rookscript.resolvers.hostfunction.EnumFunctionResolver;
+
+/**
+ * Checks that deadlines stop endless loops, and that memory quotas stop large allocations.
+ */
+public class ScriptQuotaTest
+{
+	private static final long TIME_LIMIT_MILLIS = 50L;
+	private static final long MEMORY_QUOTA = 1L << 20;
+
+	/** The instance that {@link TestFunctions#RUNINNER} runs. */
+	private static ScriptInstance inner;
+
+	private static enum TestFunctions implements ScriptFunctionType
+	{
+		RUNINNER
+		{
+			@Override
+			public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+			{
+				inner.initialize("main");
+				inner.update();
+				inner.popStackValue(returnValue);
+				return true;
+			}
+		};
+
+		@Override
+		public int getParameterCount()
+		{
+			return 0;
+		}
+
+		@Override
+		public Usage getUsage()
+		{
+			return null;
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		testScriptLoops();
+		testJumpCommands();
+		testMemory();
+		testNestedInstances();
+		System.out.println("All quota tests passed.");
+	}
+
+	private static ScriptInstance create(String source)
+	{
+		return ScriptInstance.createBuilder()
+			.withSource(source)
+			.withFunctionResolver((new CompoundFunctionResolver())
+				.addResolver(CommonFunctions.createResolver())
+				.addResolver(new EnumFunctionResolver(TestFunctions.values()))
+			)
+			.withScriptStack(16, 256)
+			.withRunawayLimit(0)
+			.createInstance();
+	}
+
+	private static ScriptInstance create(Script script)
+	{
+		return ScriptInstance.createBuilder()
+			.withScript(script)
+			.withScriptStack(16, 256)
+			.withRunawayLimit(0)
+			.createInstance();
+	}
+
+	// Updates a timed instance, and checks that the deadline stops it soon after it passes.
+	private static void checkDeadline(ScriptInstance instance, String what)
+	{
+		instance.initialize("main");
+		instance.setTimeLimit(TIME_LIMIT_MILLIS, TimeUnit.MILLISECONDS);
+		long start = System.nanoTime();
+		try {
+			instance.update();
+			throw new AssertionError(what + ": loop ended.");
+		} catch (ScriptQuotaException e) {
+			long millis = (System.nanoTime() - start) / 1000000L;
+			check(millis < TIME_LIMIT_MILLIS + 1000L, what + ": deadline took " + millis + " ms to stop the loop.");
+		}
+	}
+
+	// Endless loops and recursion, as the parser writes them.
+	private static void testScriptLoops()
+	{
+		checkDeadline(create("entry main() { i = 0; while (true) i += 1; }"), "while loop");
+		checkDeadline(create("entry main() { for (i = 0; i >= 0; i = i + 1) {} }"), "for loop");
+		checkDeadline(create("entry main() { x = [1, 2, 3]; while (true) each (v : x) {} }"), "each loop");
+		checkDeadline(create("function f(n) { return f(n + 1); } entry main() { return f(0); }"), "tail recursion");
+	}
+
+	// Endless loops whose backward jump is each kind of jump command, packed or not.
+	private static void testJumpCommands()
+	{
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, true), ScriptCommand.create(ScriptCommandType.JUMP_TRUE, "loop"))), "JUMP_TRUE");
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, false), ScriptCommand.create(ScriptCommandType.JUMP_FALSE, "loop"))), "JUMP_FALSE");
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, true), ScriptCommand.create(ScriptCommandType.JUMP_BRANCH, "loop", "loop"))), "JUMP_BRANCH");
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, 1L), ScriptCommand.create(ScriptCommandType.PUSH, 0L), ScriptCommand.create(ScriptCommandType.JUMP_NOT_LESS, "loop"))), "JUMP_NOT_LESS");
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, 1L), ScriptCommand.create(ScriptCommandType.PUSH, 0L), ScriptCommand.create(ScriptCommandType.JUMP_NOT_LESS_OR_EQUAL, "loop"))), "JUMP_NOT_LESS_OR_EQUAL");
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, 0L), ScriptCommand.create(ScriptCommandType.PUSH, 1L), ScriptCommand.create(ScriptCommandType.JUMP_NOT_GREATER, "loop"))), "JUMP_NOT_GREATER");
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, 0L), ScriptCommand.create(ScriptCommandType.PUSH, 1L), ScriptCommand.create(ScriptCommandType.JUMP_NOT_GREATER_OR_EQUAL, "loop"))), "JUMP_NOT_GREATER_OR_EQUAL");
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, 0L), ScriptCommand.create(ScriptCommandType.PUSH, 1L), ScriptCommand.create(ScriptCommandType.BRANCH_LESS, "loop", "loop"))), "BRANCH_LESS");
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, 0L), ScriptCommand.create(ScriptCommandType.PUSH, 1L), ScriptCommand.create(ScriptCommandType.BRANCH_LESS_OR_EQUAL, "loop", "loop"))), "BRANCH_LESS_OR_EQUAL");
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, 1L), ScriptCommand.create(ScriptCommandType.PUSH, 0L), ScriptCommand.create(ScriptCommandType.BRANCH_GREATER, "loop", "loop"))), "BRANCH_GREATER");
+		checkDeadline(create(loop(ScriptCommand.create(ScriptCommandType.PUSH, 1L), ScriptCommand.create(ScriptCommandType.PUSH, 0L), ScriptCommand.create(ScriptCommandType.BRANCH_GREATER_OR_EQUAL, "loop", "loop"))), "BRANCH_GREATER_OR_EQUAL");
+	}
+
+	// Creates a script whose "main" entry runs a set of commands forever, the last of which jumps back to the start.
+	private static Script loop(ScriptCommand ... commands)
+	{
+		Script script = new Script();
+		script.setScriptEntry("main", 0, 0);
+		script.setIndex("loop", 0);
+		for (ScriptCommand command : commands)
+			script.addCommand(command);
+		return script;
+	}
+
+	// Checks that an allocation passes the quota.
+	private static void checkQuota(String source, String what)
+	{
+		ScriptInstance instance = create(source);
+		instance.setMemoryQuota(MEMORY_QUOTA);
+		instance.initialize("main");
+		try {
+			instance.update();
+			throw new AssertionError(what + ": quota not exceeded.");
+		} catch (ScriptQuotaException e) {
+			check(instance.getAllocatedBytes() <= MEMORY_QUOTA, what + ": more than the quota was counted.");
+		}
+	}
+
+	private static void testMemory()
+	{
+		checkQuota("entry main() { x = listnew(100000000); return length(x); }", "LISTNEW");
+		checkQuota("entry main() { x = bufnew(100000000); return length(x); }", "buffer");
+		checkQuota("entry main() { x = []; for (i = 0; i < 1000000; i += 1) listadd(x, i); return length(x); }", "growing list");
+		checkQuota("entry main() { x = []; for (i = 0; i < 1000000; i += 1) listadd(x, {a: i}); return length(x); }", "list of maps");
+
+		// the same script passes with room to spare, and counts what it allocated.
+		ScriptInstance instance = create("entry main() { x = []; for (i = 0; i < 1000; i += 1) listadd(x, {a: i}); b = bufnew(1000); return length(x); }");
+		instance.setMemoryQuota(MEMORY_QUOTA);
+		instance.initialize("main");
+		instance.update();
+		ScriptValue value = ScriptValue.create(null);
+		instance.popStackValue(value);
+		check(value.asLong() == 1000L, "Bad result: " + value);
+		check(instance.getAllocatedBytes() > 1000L, "Allocations not counted: " + instance.getAllocatedBytes());
+
+		// the count starts over on initialize.
+		instance.setMemoryQuota(10000L);
+		instance.initialize("main");
+		try {
+			instance.update();
+			throw new AssertionError("Smaller quota not exceeded.");
+		} catch (ScriptQuotaException e) {
+			// expected.
+		}
+
+		// no quota, no count.
+		instance.setMemoryQuota(0L);
+		instance.initialize("main");
+		instance.update();
+		check(instance.getAllocatedBytes() == 0L, "Allocations counted with no quota: " + instance.getAllocatedBytes());
+	}
+
+	// An instance without a quota run from a host function is not counted against the instance that called it.
+	private static void testNestedInstances()
+	{
+		inner = create("entry main() { x = listnew(100000); return length(x); }");
+		ScriptInstance outer = create("entry main() { return runinner(); }");
+		outer.setMemoryQuota(1L << 16);
+		outer.initialize("main");
+		outer.update();
+		ScriptValue value = ScriptValue.create(null);
+		outer.popStackValue(value);
+		check(value.asLong() == 100000L, "Bad inner result: " + value);
+		check(outer.getAllocatedBytes() < (1L << 16), "Inner allocations were counted against the outer instance.");
+
+		// and once the outer instance is done, nothing on this thread is counted against it.
+		ScriptInstance after = create("entry main() { x = listnew(100000); return length(x); }");
+		after.initialize("main");
+		after.update();
+		check(after.getAllocatedBytes() == 0L && outer.getAllocatedBytes() < (1L << 16), "Allocations counted after the metered update ended.");
+	}
+
+}
@@ -0,0 +1,396 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.blackrook.rookscript.compiler.ScriptReader;
+import com.blackrook.rookscript.compiler.ScriptReaderCache;
+import com.blackrook.rookscript.compiler.ScriptReaderIncluder;
+import com.blackrook.rookscript.exception.ScriptParseException;
+import com.blackrook.rookscript.lang.ScriptFunctionType;
+import com.blackrook.rookscript.resolvers.ScriptHostFunctionResolver;
+import com.blackrook.rookscript.resolvers.ScriptScopeResolver;
+import com.blackrook.rookscript.resolvers.hostfunction.CompoundHostFunctionResolver;
+import com.blackrook.rookscript.resolvers.hostfunction.EnumFunctionResolver;
+import com.blackrook.rookscript.resolvers.scope.DefaultScopeResolver;
+import com.blackrook.rookscript.resolvers.variable.DefaultVariableResolver;
+
+/**
+ * Checks that the script cache serves unchanged scripts, and recompiles scripts whose includes, 
+ * host functions, or scopes changed.
+ */
+public class ScriptReaderCacheTest
+{
+	private static final String MAIN_NAME = "main.txt";
+	private static final String MAIN = (new StringBuilder())
+		.append("#include \"inc.txt\"\n")
+		.append("entry main() { store::x = hostfn(2); return incvalue() + store::x; }\n")
+	.toString();
+
+	private static enum OneParameterFunctions implements ScriptFunctionType
+	{
+		HOSTFN;
+
+		@Override
+		public int getParameterCount()
+		{
+			return 1;
+		}
+
+		@Override
+		public Usage getUsage()
+		{
+			return null;
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			scriptInstance.popStackValue(returnValue);
+			returnValue.set(returnValue.asLong() * 100L);
+			return true;
+		}
+	}
+
+	private static enum TwoParameterFunctions implements ScriptFunctionType
+	{
+		HOSTFN;
+
+		@Override
+		public int getParameterCount()
+		{
+			return 2;
+		}
+
+		@Override
+		public Usage getUsage()
+		{
+			return null;
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue second = ScriptValue.create(null);
+			scriptInstance.popStackValue(second);
+			scriptInstance.popStackValue(returnValue);
+			returnValue.set(returnValue.asLong() * 1000L + (second.isNull() ? 0L : 1L));
+			return true;
+		}
+	}
+
+	/**
+	 * An includer for in-memory resources, with settable stamps.
+	 */
+	private static class MemoryIncluder implements ScriptReaderIncluder
+	{
+		private Map<String, String> resources = new HashMap<>();
+		private Map<String, Long> stamps = new HashMap<>();
+		private int reads = 0;
+
+		private void set(String path, String text, long stamp)
+		{
+			resources.put(path, text);
+			stamps.put(path, stamp);
+		}
+
+		@Override
+		public String getIncludeResourcePath(String streamName, String path) throws IOException
+		{
+			return path;
+		}
+
+		@Override
+		public InputStream getIncludeResource(String path) throws IOException
+		{
+			String text = resources.get(path);
+			if (text == null)
+				throw new IOException("No such resource: " + path);
+			reads++;
+			return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public Charset getEncodingForIncludedResource(String path)
+		{
+			return StandardCharsets.UTF_8;
+		}
+
+		@Override
+		public long getIncludeResourceStamp(String path)
+		{
+			Long stamp = stamps.get(path);
+			return stamp != null ? stamp : -1L;
+		}
+	}
+
+	private static ScriptHostFunctionResolver functions(Enum<? extends ScriptFunctionType>[] values)
+	{
+		return (new CompoundHostFunctionResolver()).addResolver(new EnumFunctionResolver(values));
+	}
+
+	private static ScriptScopeResolver scopes(boolean withStore)
+	{
+		DefaultScopeResolver out = new DefaultScopeResolver();
+		if (withStore)
+			out.addScope("store", new DefaultVariableResolver());
+		return out;
+	}
+
+	private static Script read(ScriptReaderCache cache, ScriptHostFunctionResolver functions, ScriptScopeResolver scopes, MemoryIncluder includer) throws IOException
+	{
+		return cache.read(MAIN_NAME, MAIN, functions, scopes, includer, ScriptReader.DEFAULT_OPTIONS);
+	}
+
+	private static long run(Script script)
+	{
+		ScriptInstance instance = ScriptInstance.createBuilder()
+			.withScript(script)
+			.withScriptStack(16, 256)
+			.createInstance();
+		instance.initialize("main");
+		instance.update();
+		ScriptValue value = ScriptValue.create(null);
+		instance.popStackValue(value);
+		return value.asLong();
+	}
+
+	// Reads the script, expecting it to fail to compile.
+	private static void checkParseError(ScriptReaderCache cache, ScriptHostFunctionResolver functions, ScriptScopeResolver scopes, MemoryIncluder includer, String what) throws IOException
+	{
+		try {
+			read(cache, functions, scopes, includer);
+			throw new AssertionError(what + ": stale script was served.");
+		} catch (ScriptParseException e) {
+			// expected.
+		}
+	}
+
+	private static void checkCounts(ScriptReaderCache cache, long memoryHits, long diskHits, long misses, String what)
+	{
+		check(
+			cache.getMemoryHitCount() == memoryHits && cache.getDiskHitCount() == diskHits && cache.getMissCount() == misses,
+			what + ": expected " + memoryHits + "/" + diskHits + "/" + misses + " memory hits/disk hits/misses, got " 
+				+ cache.getMemoryHitCount() + "/" + cache.getDiskHitCount() + "/" + cache.getMissCount()
+		);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		File directory = Files.createTempDirectory("rookscript-cache").toFile();
+		try {
+			testMemoryTier();
+			testDiskTier(directory);
+			testDamagedFiles(directory);
+			testQuickEdits(directory);
+		} finally {
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+		System.out.println("All cache tests passed.");
+	}
+
+	private static void testMemoryTier() throws Exception
+	{
+		ScriptReaderCache cache = new ScriptReaderCache(4);
+		ScriptHostFunctionResolver functions = functions(OneParameterFunctions.values());
+		ScriptScopeResolver scopes = scopes(true);
+		MemoryIncluder includer = new MemoryIncluder();
+		includer.set("inc.txt", "function incvalue() { return 1; }", 1L);
+
+		// miss, then hit.
+		Script first = read(cache, functions, scopes, includer);
+		checkCounts(cache, 0, 0, 1, "first read");
+		check(first.isFrozen(), "Cached script is not frozen.");
+		check(run(first) == 201L, "Bad result: " + run(first));
+		int reads = includer.reads;
+		check(read(cache, functions, scopes, includer) == first, "Same resolvers did not share the cached script.");
+		checkCounts(cache, 1, 0, 1, "second read");
+		check(includer.reads == reads, "An include with an unchanged stamp was read again.");
+
+		// other resolvers with the same contents get a copy.
+		Script copy = read(cache, functions(OneParameterFunctions.values()), scopes(true), includer);
+		checkCounts(cache, 2, 0, 1, "read with new resolvers");
+		check(copy != first && copy.isFrozen() && run(copy) == 201L, "Bad copy for new resolvers.");
+
+		// a changed include is recompiled.
+		includer.set("inc.txt", "function incvalue() { return 5; }", 2L);
+		Script changed = read(cache, functions, scopes, includer);
+		checkCounts(cache, 2, 0, 2, "changed include");
+		check(run(changed) == 205L, "Changed include was not recompiled: " + run(changed));
+
+		// an include with no stamp is checked by its contents.
+		includer.stamps.clear();
+		check(run(read(cache, functions, scopes, includer)) == 205L, "Unstamped include read failed.");
+		checkCounts(cache, 3, 0, 2, "stamp went away");
+		includer.set("inc.txt", "function incvalue() { return 7; }", -1L);
+		check(run(read(cache, functions, scopes, includer)) == 207L, "Changed unstamped include was not recompiled.");
+		checkCounts(cache, 3, 0, 3, "changed unstamped include");
+
+		// a host function with a different parameter count is recompiled (missing parameters are filled with null).
+		check(run(read(cache, functions(TwoParameterFunctions.values()), scopes, includer)) == 2007L, "Changed host function arity was not recompiled.");
+		checkCounts(cache, 3, 0, 4, "changed host function arity");
+
+		// a scope that went away is recompiled (and fails, here).
+		checkParseError(cache, functions, scopes(false), includer, "missing scope");
+		checkCounts(cache, 3, 0, 5, "missing scope");
+
+		// the failure was not cached, and the entry compiled for the other resolvers is replaced.
+		check(run(read(cache, functions, scopes, includer)) == 207L, "Bad result after failure.");
+		checkCounts(cache, 3, 0, 6, "back to the first resolvers");
+	}
+
+	private static void testDiskTier(File directory) throws Exception
+	{
+		ScriptHostFunctionResolver functions = functions(OneParameterFunctions.values());
+		ScriptScopeResolver scopes = scopes(true);
+		MemoryIncluder includer = new MemoryIncluder();
+		includer.set("inc.txt", "function incvalue() { return 3; }", 10L);
+
+		ScriptReaderCache cache = new ScriptReaderCache(4, directory);
+		read(cache, functions, scopes, includer);
+		checkCounts(cache, 0, 0, 1, "disk first read");
+		check(directory.listFiles().length == 1, "Cache file not written.");
+
+		// a new cache (as after a restart) reads the file.
+		cache = new ScriptReaderCache(4, directory);
+		check(run(read(cache, functions, scopes, includer)) == 203L, "Bad result from the disk tier.");
+		checkCounts(cache, 0, 1, 0, "disk hit");
+
+		// and checks its dependencies.
+		cache = new ScriptReaderCache(4, directory);
+		includer.set("inc.txt", "function incvalue() { return 4; }", 11L);
+		check(run(read(cache, functions, scopes, includer)) == 204L, "Changed include was served from the disk tier.");
+		checkCounts(cache, 0, 0, 1, "disk changed include");
+
+		cache = new ScriptReaderCache(4, directory);
+		check(run(read(cache, functions(TwoParameterFunctions.values()), scopes, includer)) == 2004L, "Changed host function arity was served from the disk tier.");
+		checkCounts(cache, 0, 0, 1, "disk changed host function arity");
+		cache = new ScriptReaderCache(4, directory);
+		checkParseError(cache, functions, scopes(false), includer, "disk missing scope");
+		checkCounts(cache, 0, 0, 1, "disk missing scope");
+	}
+
+	// Damaged cache files are deleted and recompiled, whatever they throw.
+	private static void testDamagedFiles(File directory) throws Exception
+	{
+		ScriptHostFunctionResolver functions = functions(OneParameterFunctions.values());
+		ScriptScopeResolver scopes = scopes(true);
+		MemoryIncluder includer = new MemoryIncluder();
+		includer.set("inc.txt", "function incvalue() { return 4; }", 11L);
+
+		read(new ScriptReaderCache(4, directory), functions, scopes, includer);
+		File[] files = directory.listFiles();
+		check(files.length == 1, "Expected one cache file, found " + files.length);
+		File file = files[0];
+		byte[] good = Files.readAllBytes(file.toPath());
+
+		// a valid header, then an include record with a negative digest length.
+		String key = file.getName().substring(0, file.getName().lastIndexOf('.'));
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bos))
+		{
+			out.write(good, 0, 8);
+			out.writeUTF(key);
+			out.writeInt(1);
+			out.writeBoolean(false);
+			out.writeUTF("inc.txt");
+			out.writeUTF("inc.txt");
+			out.writeLong(11L);
+			out.writeLong(0L);
+			out.writeInt(-5);
+		}
+		
+		byte[][] damaged = {
+			bos.toByteArray(),
+			new byte[]{1, 2, 3},
+			truncate(good, good.length - 10),
+			flipTail(good),
+		};
+		for (int i = 0; i < damaged.length; i++)
+		{
+			Files.write(file.toPath(), damaged[i]);
+			ScriptReaderCache cache = new ScriptReaderCache(4, directory);
+			check(run(read(cache, functions, scopes, includer)) == 204L, "Damaged file " + i + " gave a bad script.");
+			checkCounts(cache, 0, 0, 1, "damaged file " + i);
+			check(file.exists() && Files.readAllBytes(file.toPath()).length == good.length, "Damaged file " + i + " was not replaced.");
+		}
+	}
+
+	// Includes edited again before their stamps change are still recompiled.
+	private static void testQuickEdits(File directory) throws Exception
+	{
+		ScriptHostFunctionResolver functions = functions(OneParameterFunctions.values());
+		ScriptScopeResolver scopes = scopes(true);
+
+		// a stamp as new as the read is not trusted.
+		ScriptReaderCache cache = new ScriptReaderCache(4);
+		MemoryIncluder includer = new MemoryIncluder();
+		long now = System.currentTimeMillis();
+		includer.set("inc.txt", "function incvalue() { return 1; }", now);
+		check(run(read(cache, functions, scopes, includer)) == 201L, "Bad first result.");
+		includer.set("inc.txt", "function incvalue() { return 2; }", now);
+		check(run(read(cache, functions, scopes, includer)) == 202L, "Include edited under the same stamp was served stale.");
+		checkCounts(cache, 0, 0, 2, "edit under the same stamp");
+
+		// an old stamp is trusted.
+		includer.set("inc.txt", "function incvalue() { return 3; }", now - 60000L);
+		read(cache, functions, scopes, includer);
+		int reads = includer.reads;
+		read(cache, functions, scopes, includer);
+		checkCounts(cache, 1, 0, 3, "old stamp");
+		check(includer.reads == reads, "An include with an old, unchanged stamp was read again.");
+
+		// the same, with files and the default includer.
+		File include = new File(directory, "quick.txt");
+		String main = "#include \"" + include.getAbsolutePath().replace('\\', '/') + "\"\n" + MAIN.substring(MAIN.indexOf('\n') + 1);
+		cache = new ScriptReaderCache(4, directory);
+		Files.write(include.toPath(), "function incvalue() { return 4; }".getBytes(StandardCharsets.UTF_8));
+		long stamp = include.lastModified();
+		check(run(cache.read(MAIN_NAME, main, functions, scopes, ScriptReader.DEFAULT_INCLUDER, ScriptReader.DEFAULT_OPTIONS)) == 204L, "Bad first file result.");
+		Files.write(include.toPath(), "function incvalue() { return 5; }".getBytes(StandardCharsets.UTF_8));
+		include.setLastModified(stamp);
+		check(run(cache.read(MAIN_NAME, main, functions, scopes, ScriptReader.DEFAULT_INCLUDER, ScriptReader.DEFAULT_OPTIONS)) == 205L, "File edited under the same stamp was served stale.");
+		cache = new ScriptReaderCache(4, directory);
+		Files.write(include.toPath(), "function incvalue() { return 6; }".getBytes(StandardCharsets.UTF_8));
+		include.setLastModified(stamp);
+		check(run(cache.read(MAIN_NAME, main, functions, scopes, ScriptReader.DEFAULT_INCLUDER, ScriptReader.DEFAULT_OPTIONS)) == 206L, "File edited under the same stamp was served stale from the disk tier.");
+		checkCounts(cache, 0, 0, 1, "disk edit under the same stamp");
+	}
+
+	private static byte[] truncate(byte[] data, int length)
+	{
+		byte[] out = new byte[length];
+		System.arraycopy(data, 0, out, 0, length);
+		return out;
+	}
+
+	// Damages the binary script at the end of a cache file.
+	private static byte[] flipTail(byte[] data)
+	{
+		byte[] out = data.clone();
+		for (int i = out.length - 40; i < out.length; i += 3)
+			out[i] = (byte)0x7f;
+		return out;
+	}
+
+}
@@ -0,0 +1,551 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.blackrook.rookscript.ScriptInstance.State;
+import com.blackrook.rookscript.lang.ScriptFunctionType;
+import com.blackrook.rookscript.resolvers.hostfunction.EnumFunctionResolver;
+
+/**
+ * Drives ready, waiting, and suspended instances through a {@link ScriptScheduler},
+ * including instances that wait on futures and signals,
+ * with and without a worker pool.
+ */
+public class ScriptSchedulerTest
+{
+	/** Sum of the counting loop in the test script. */
+	private static final long SUM = 1999000L;
+
+	private static final String SOURCE =
+		"entry main(id) {\n" +
+		"	x = 0;\n" +
+		"	for (i = 0; i < 2000; i = i + 1) x = x + i;\n" +
+		"	if (id % 3 == 1) waitevent(\"evt\");\n" +
+		"	if (id % 3 == 2) suspendself();\n" +
+		"	return x + id;\n" +
+		"}\n" +
+		"entry removed() {\n" +
+		"	removeself();\n" +
+		"	waitevent(\"evt\");\n" +
+		"	return 1;\n" +
+		"}\n" +
+		"entry woken() {\n" +
+		"	waitandwake(\"other\");\n" +
+		"	return 2;\n" +
+		"}\n" +
+		"entry failed(id) {\n" +
+		"	fail();\n" +
+		"	return 3;\n" +
+		"}\n" +
+		"entry value(id) {\n" +
+		"	return id;\n" +
+		"}\n" +
+		"entry fetched(id) {\n" +
+		"	return [id, fetch(id)];\n" +
+		"}\n" +
+		"entry signalled(id, key) {\n" +
+		"	return [id, waitevent(key)];\n" +
+		"}\n"
+	;
+
+	/** The scheduler that the test functions use. */
+	private static volatile ScriptScheduler scheduler;
+	/** Futures started by fetch(), by id. */
+	private static final Map<Long, CompletableFuture<Object>> futures = new ConcurrentHashMap<>();
+
+	private enum TestFunctions implements ScriptFunctionType
+	{
+		WAITEVENT(1)
+		{
+			@Override
+			public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+			{
+				scriptInstance.popStackValue(returnValue);
+				scriptInstance.wait(returnValue.asString(), null);
+				returnValue.setNull();
+				return false;
+			}
+		},
+
+		SUSPENDSELF(0)
+		{
+			@Override
+			public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+			{
+				scriptInstance.suspend();
+				returnValue.setNull();
+				return false;
+			}
+		},
+
+		REMOVESELF(0)
+		{
+			@Override
+			public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+			{
+				returnValue.set(scheduler.remove(scriptInstance));
+				return true;
+			}
+		},
+
+		WAITANDWAKE(1)
+		{
+			@Override
+			public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+			{
+				scriptInstance.popStackValue(returnValue);
+				scriptInstance.wait(returnValue.asString(), null);
+				returnValue.set(scheduler.wake(scriptInstance));
+				return false;
+			}
+		},
+
+		FETCH(1)
+		{
+			@Override
+			public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+			{
+				scriptInstance.popStackValue(returnValue);
+				long id = returnValue.asLong();
+				CompletableFuture<Object> future = new CompletableFuture<>();
+				futures.put(id, future);
+				// some futures are already done when the wait starts.
+				if (id % 5 == 4)
+					future.complete(id * 10);
+				scriptInstance.waitFor(future);
+				returnValue.set("pending");
+				return false;
+			}
+		},
+
+		FAIL(0)
+		{
+			@Override
+			public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+			{
+				throw new IllegalStateException("failed on purpose");
+			}
+		},
+		;
+
+		private final int parameterCount;
+
+		private TestFunctions(int parameterCount)
+		{
+			this.parameterCount = parameterCount;
+		}
+
+		@Override
+		public int getParameterCount()
+		{
+			return parameterCount;
+		}
+
+		@Override
+		public Usage getUsage()
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * An instance that throws an Error from its first update.
+	 */
+	private static class ErrorInstance extends ScriptInstance
+	{
+		private boolean thrown;
+
+		private ErrorInstance(Script script)
+		{
+			super(script, new ScriptInstanceStack(16, 256), ScriptEnvironment.create());
+			this.thrown = false;
+		}
+
+		@Override
+		public int update(int maxCommands)
+		{
+			if (!thrown)
+			{
+				thrown = true;
+				throw new OutOfMemoryError("thrown on purpose");
+			}
+			return super.update(maxCommands);
+		}
+	}
+
+	private static ScriptInstanceFactory factory = ScriptInstance.createBuilder()
+		.withSource(SOURCE)
+		.withFunctionResolver(new EnumFunctionResolver(TestFunctions.values()))
+		.withScriptStack(16, 256)
+		.createFactory();
+
+	private static ScriptInstance create(String entryName, Object ... parameters)
+	{
+		ScriptInstance instance = factory.create();
+		instance.initialize(entryName, parameters);
+		return instance;
+	}
+
+	private static long result(ScriptInstance instance)
+	{
+		ScriptValue value = ScriptValue.create(null);
+		instance.popStackValue(value);
+		return value.asLong();
+	}
+
+	// Checks an [id, value] result, and returns the value.
+	private static ScriptValue pairResult(ScriptInstance instance, long id)
+	{
+		ScriptValue pair = ScriptValue.create(null);
+		ScriptValue value = ScriptValue.create(null);
+		instance.popStackValue(pair);
+		check(pair.isList() && pair.length() == 2, id + ": bad result " + pair);
+		pair.listGetByIndex(0, value);
+		check(value.asLong() == id, id + ": the host function's value was pushed instead of replaced: " + pair);
+		pair.listGetByIndex(1, value);
+		return value;
+	}
+
+	// Ticks until nothing is ready, and returns the amount of ticks.
+	private static int tickAll(ScriptScheduler scheduler)
+	{
+		int ticks = 0;
+		while (scheduler.getReadyCount() > 0)
+		{
+			scheduler.tick();
+			check(++ticks < 1000, "scheduler never settled");
+		}
+		return ticks;
+	}
+
+	// Ready instances run across ticks, waiting ones wait for their event, suspended ones wait to be woken.
+	private static void testStates(int workers)
+	{
+		final int count = 90;
+		final AtomicInteger ended = new AtomicInteger(0);
+		try (ScriptScheduler s = new ScriptScheduler(workers, 1000))
+		{
+			scheduler = s;
+			s.setListener(new ScriptScheduler.Listener()
+			{
+				@Override
+				public void onEnd(ScriptInstance instance)
+				{
+					ended.incrementAndGet();
+				}
+			});
+
+			List<ScriptInstance> instances = new ArrayList<>();
+			for (int i = 0; i < count; i++)
+			{
+				ScriptInstance instance = create("main", i);
+				instances.add(instance);
+				check(s.add(instance), "instance not added");
+			}
+			check(!s.add(instances.get(0)), "instance added twice");
+			check(s.getReadyCount() == count, "not everything is ready");
+
+			s.tick();
+			check(ended.get() == 0, "instances ended in one tick of a 1000 command budget");
+			check(s.getReadyCount() == count, "running instances did not go back in the ready queue");
+
+			int ticks = tickAll(s);
+			check(ticks > 5, "the loop should take several ticks, took " + ticks);
+			check(ended.get() == count / 3, "ended " + ended.get());
+			check(s.getInstanceCount() == count - count / 3, "instance count " + s.getInstanceCount());
+			check(s.getWaitingCount() == count - count / 3, "waiting count " + s.getWaitingCount());
+			for (int i = 0; i < count; i++)
+			{
+				ScriptInstance instance = instances.get(i);
+				switch (i % 3)
+				{
+					case 0:
+						check(instance.getState() == State.ENDED, i + " did not end");
+						check(result(instance) == SUM + i, i + " bad result");
+						break;
+					case 1:
+						check(instance.getState() == State.WAITING && "evt".equals(instance.getWaitType()), i + " not waiting");
+						break;
+					case 2:
+						check(instance.getState() == State.SUSPENDED, i + " not suspended");
+						break;
+				}
+			}
+
+			check(s.wakeAll("nothing") == 0, "woke instances on an unused wait type");
+			check(s.wakeAll("evt") == count / 3, "wakeAll woke the wrong amount");
+			check(s.wakeAll("evt") == 0, "wakeAll woke instances twice");
+			check(s.getReadyCount() == count / 3, "woken instances are not ready");
+			tickAll(s);
+			check(ended.get() == 2 * count / 3, "ended " + ended.get());
+			check(s.getWaitingCount() == count / 3, "suspended instances should still be waiting");
+
+			check(!s.wake(instances.get(0)), "woke an instance that is not in the scheduler");
+			for (int i = 2; i < count; i += 3)
+				check(s.wake(instances.get(i)), i + " not woken");
+			check(!s.wake(instances.get(2)), "woke a ready instance");
+			tickAll(s);
+
+			check(ended.get() == count, "ended " + ended.get());
+			check(s.getInstanceCount() == 0 && s.getWaitingCount() == 0, "instances left over");
+			for (int i = 1; i < count; i += 3)
+				check(result(instances.get(i)) == SUM + i, i + " bad result");
+			for (int i = 2; i < count; i += 3)
+				check(result(instances.get(i)) == SUM + i, i + " bad result");
+			check(s.getInstanceUpdateCount() >= count * ticks, "update count " + s.getInstanceUpdateCount());
+		}
+	}
+
+	// Instances removed or woken during their own update.
+	private static void testDuringUpdate(int workers)
+	{
+		try (ScriptScheduler s = new ScriptScheduler(workers, 1000))
+		{
+			scheduler = s;
+
+			List<ScriptInstance> removed = new ArrayList<>();
+			List<ScriptInstance> woken = new ArrayList<>();
+			for (int i = 0; i < 40; i++)
+			{
+				ScriptInstance instance = create("removed");
+				removed.add(instance);
+				s.add(instance);
+				instance = create("woken");
+				woken.add(instance);
+				s.add(instance);
+			}
+
+			s.tick();
+			check(s.getInstanceCount() == woken.size(), "instance count " + s.getInstanceCount());
+			check(s.getWaitingCount() == 0, "waiting count " + s.getWaitingCount());
+			check(s.getReadyCount() == woken.size(), "instances woken during their update are not ready");
+			for (ScriptInstance instance : removed)
+				check(instance.getState() == State.WAITING, "removed instance did not keep running");
+			check(s.wakeAll("evt") == 0, "woke removed instances");
+
+			tickAll(s);
+			check(s.getInstanceCount() == 0, "instance count " + s.getInstanceCount());
+			for (ScriptInstance instance : woken)
+				check(instance.getState() == State.ENDED && result(instance) == 2, "woken instance did not end");
+
+			// removing a waiting instance from outside.
+			ScriptInstance instance = create("main", 1);
+			s.add(instance);
+			tickAll(s);
+			check(s.getWaitingCount() == 1, "instance not waiting");
+			check(s.remove(instance), "instance not removed");
+			check(!s.remove(instance), "instance removed twice");
+			check(s.getWaitingCount() == 0 && s.getInstanceCount() == 0, "removed instance left over");
+			check(s.wakeAll("evt") == 0, "woke a removed instance");
+			check(instance.getState() == State.WAITING, "removed instance changed state");
+		}
+	}
+
+	// Exceptions end and remove instances, Errors leave them scheduled and are rethrown after the tick.
+	private static void testErrors(int workers)
+	{
+		final List<ScriptInstance> failed = new ArrayList<>();
+		final AtomicInteger ended = new AtomicInteger(0);
+		try (ScriptScheduler s = new ScriptScheduler(workers, 1000))
+		{
+			scheduler = s;
+			s.setListener(new ScriptScheduler.Listener()
+			{
+				@Override
+				public void onEnd(ScriptInstance instance)
+				{
+					ended.incrementAndGet();
+				}
+
+				@Override
+				public void onError(ScriptInstance instance, RuntimeException exception)
+				{
+					synchronized (failed)
+					{
+						failed.add(instance);
+					}
+				}
+			});
+
+			Script script = factory.create().getScript();
+			List<ScriptInstance> instances = new ArrayList<>();
+			for (int i = 0; i < 100; i++)
+			{
+				ScriptInstance instance = i % 10 == 0 ? new ErrorInstance(script) : factory.create();
+				instance.initialize(i % 25 == 1 ? "failed" : "value", i);
+				instances.add(instance);
+				s.add(instance);
+			}
+
+			boolean thrown = false;
+			try {
+				s.tick();
+			} catch (OutOfMemoryError e) {
+				thrown = true;
+			}
+			check(thrown, "the Error was not rethrown");
+			check(failed.size() == 4, "failed " + failed.size());
+			for (ScriptInstance instance : failed)
+				check(instance.getState() == State.ENDED, "failed instance not terminated");
+			check(ended.get() == 86, "ended " + ended.get());
+			check(s.getInstanceCount() == 10, "instances that threw an Error should stay scheduled, count " + s.getInstanceCount());
+			check(s.getReadyCount() == 10, "instances that threw an Error are not ready");
+
+			tickAll(s);
+			check(s.getInstanceCount() == 0, "instance count " + s.getInstanceCount());
+			for (int i = 0; i < 100; i += 10)
+				check(result(instances.get(i)) == i, i + " bad result");
+		}
+	}
+
+	// Futures replace the host function's return value with their result, or an error.
+	private static void testFutures(int workers) throws Exception
+	{
+		final int count = 60;
+		futures.clear();
+		try (ScriptScheduler s = new ScriptScheduler(workers, 1000))
+		{
+			scheduler = s;
+			List<ScriptInstance> instances = new ArrayList<>();
+			for (int i = 0; i < count; i++)
+			{
+				ScriptInstance instance = create("fetched", i);
+				instances.add(instance);
+				s.add(instance);
+			}
+
+			s.tick();
+			check(futures.size() == count, "futures started " + futures.size());
+			check(s.getReadyCount() == count / 5, "instances whose futures were already done are not ready");
+			check(s.getWaitingCount() == count - count / 5, "waiting count " + s.getWaitingCount());
+			tickAll(s);
+
+			List<CompletableFuture<Void>> async = new ArrayList<>();
+			for (long i = 0; i < count; i++)
+			{
+				final CompletableFuture<Object> future = futures.get(i);
+				final long id = i;
+				switch ((int)(i % 5))
+				{
+					case 0:
+						future.complete(id * 10);
+						break;
+					case 1:
+						future.completeExceptionally(new IllegalStateException("bad " + id));
+						break;
+					case 2:
+					case 3:
+						async.add(CompletableFuture.runAsync(() -> future.complete(id * 10)));
+						break;
+				}
+			}
+			for (CompletableFuture<Void> f : async)
+				f.join();
+
+			check(s.getReadyCount() == count - count / 5, "completed futures did not wake their instances");
+			tickAll(s);
+			check(s.getInstanceCount() == 0, "instance count " + s.getInstanceCount());
+
+			for (int i = 0; i < count; i++)
+			{
+				ScriptValue value = pairResult(instances.get(i), i);
+				if (i % 5 == 1)
+					check(value.isError() && value.asString().contains("bad " + i), i + ": expected an error, got " + value);
+				else
+					check(!value.isError() && value.asLong() == i * 10, i + ": bad value " + value);
+			}
+		}
+	}
+
+	// Signals wake only the instances waiting on their key, and set their host function's return value.
+	private static void testSignals(int workers)
+	{
+		final int count = 60;
+		try (ScriptScheduler s = new ScriptScheduler(workers, 1000))
+		{
+			scheduler = s;
+			List<ScriptInstance> instances = new ArrayList<>();
+			for (int i = 0; i < count; i++)
+			{
+				ScriptInstance instance = create("signalled", i, i % 2 == 0 ? "a" : "b");
+				instances.add(instance);
+				s.add(instance);
+			}
+			tickAll(s);
+			check(s.getWaitingCount() == count, "waiting count " + s.getWaitingCount());
+
+			check(s.signal("c", 0L) == 0, "signal woke instances on an unused key");
+			check(s.signal("a", 100L) == count / 2, "signal woke the wrong amount");
+			check(s.getReadyCount() == count / 2, "ready count " + s.getReadyCount());
+			tickAll(s);
+			for (int i = 0; i < count; i++)
+			{
+				ScriptInstance instance = instances.get(i);
+				if (i % 2 == 0)
+					check(instance.getState() == State.ENDED && pairResult(instance, i).asLong() == 100L, i + ": not signalled");
+				else
+					check(instance.getState() == State.WAITING && "b".equals(instance.getWaitType()), i + ": woken by another key");
+			}
+
+			check(s.signal("b", 200L) == count / 2, "signal woke the wrong amount");
+			tickAll(s);
+			check(s.getInstanceCount() == 0, "instance count " + s.getInstanceCount());
+			for (int i = 1; i < count; i += 2)
+				check(pairResult(instances.get(i), i).asLong() == 200L, i + ": bad signal value");
+		}
+	}
+
+	// Instances outside of a scheduler resume from completed futures on update().
+	private static void testUnscheduledFutures()
+	{
+		futures.clear();
+		ScriptInstance done = create("fetched", 1);
+		ScriptInstance failed = create("fetched", 2);
+		done.update();
+		failed.update();
+		check(done.getState() == State.WAITING && failed.getState() == State.WAITING, "not waiting on futures");
+		done.update();
+		check(done.getState() == State.WAITING, "resumed before the future completed");
+
+		futures.get(1L).complete("result");
+		futures.get(2L).completeExceptionally(new IllegalStateException("bad 2"));
+		// the first update resumes, the second runs.
+		done.update();
+		failed.update();
+		check(done.getState() == State.RUNNING && failed.getState() == State.RUNNING, "not resumed by completed futures");
+		done.update();
+		failed.update();
+		check(done.getState() == State.ENDED && "result".equals(pairResult(done, 1).asString()), "bad result");
+		ScriptValue value = pairResult(failed, 2);
+		check(value.isError() && value.asString().contains("bad 2"), "expected an error, got " + value);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		testUnscheduledFutures();
+		for (int workers : new int[]{0, 4})
+		{
+			testStates(workers);
+			testDuringUpdate(workers);
+			testErrors(workers);
+			testFutures(workers);
+			testSignals(workers);
+			System.out.println("Workers " + workers + ": OK");
+		}
+	}
+
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+import com.blackrook.rookscript.functions.CommonFunctions;
+import com.blackrook.rookscript.lang.ScriptFunctionType;
+import com.blackrook.rookscript.resolvers.hostfunction.EnumFunctionResolver;
+
+/**
+ * Saves script instances part of the way through and restores them into other instances.
+ */
+public class ScriptStateTest
+{
+	private static final String SOURCE = (new StringBuilder())
+		// builds shared and cyclic lists and maps, pauses inside a function, then mutates them through one path and reads them through another.
+		.append("function build() {\n")
+		.append("	shared = [1, 2];\n")
+		.append("	pair = [shared, shared];\n")
+		.append("	m = {name: \"m\", val: 0};\n")
+		.append("	m.self = m;\n")
+		.append("	l = [0, 1];\n")
+		.append("	l[0] = l;\n")
+		.append("	b = bufnew(4);\n")
+		.append("	pause();\n")
+		.append("	pair[0][0] = 10;\n")
+		.append("	m.self.val = 3;\n")
+		.append("	l[0][1] = 7;\n")
+		.append("	return [pair[1][0], m.val, m.self.self.name, l[1], length(b), shared[0]];\n")
+		.append("}\n")
+		.append("entry main() { x = 5; r = build(); return [x, r]; }\n")
+		.append("entry objects() { o = object(); pause(); return o; }\n")
+	.toString();
+
+	private static final String EXPECTED = "[5, [10, 3, \"m\", 7, 4, 10]]";
+
+	private static enum TestFunctions implements ScriptFunctionType
+	{
+		PAUSE
+		{
+			@Override
+			public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+			{
+				scriptInstance.suspend();
+				returnValue.setNull();
+				return false;
+			}
+		},
+
+		OBJECT
+		{
+			@Override
+			public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+			{
+				returnValue.set(new Object());
+				return true;
+			}
+		};
+
+		@Override
+		public int getParameterCount()
+		{
+			return 0;
+		}
+
+		@Override
+		public Usage getUsage()
+		{
+			return null;
+		}
+	}
+
+	private static final Script SCRIPT = ScriptInstance.createBuilder()
+		.withSource(SOURCE)
+		.withFunctionResolver(CommonFunctions.createResolver())
+		.andFunctionResolver(new EnumFunctionResolver(TestFunctions.values()))
+		.withScriptStack(16, 256)
+		.createInstance()
+		.getScript();
+
+	public static void main(String[] args) throws Exception
+	{
+		testRoundTrip();
+		testObjectReferences();
+		testBounds();
+		System.out.println("All state tests passed.");
+	}
+
+	private static ScriptInstance create(int activationDepth, int valueStackDepth)
+	{
+		return ScriptInstance.createBuilder()
+			.withScript(SCRIPT)
+			.withScriptStack(activationDepth, valueStackDepth)
+			.createInstance();
+	}
+
+	// Runs an instance until it ends or stops.
+	private static void run(ScriptInstance instance)
+	{
+		do {
+			instance.update();
+		} while (instance.getState() == ScriptInstance.State.RUNNING);
+	}
+
+	private static byte[] save(ScriptInstance instance) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		instance.saveState(bos);
+		return bos.toByteArray();
+	}
+
+	private static String result(ScriptInstance instance)
+	{
+		ScriptValue value = ScriptValue.create(null);
+		instance.popStackValue(value);
+		return String.valueOf(value);
+	}
+
+	// A paused instance restored into a new instance finishes the same way, with its references intact.
+	private static void testRoundTrip() throws Exception
+	{
+		ScriptInstance original = create(16, 256);
+		original.initialize("main");
+		run(original);
+		check(original.getState() == ScriptInstance.State.SUSPENDED, "Not paused: " + original.getState());
+		byte[] state = save(original);
+
+		ScriptInstance restored = create(16, 256);
+		restored.restoreState(new ByteArrayInputStream(state));
+		check(restored.getState() == ScriptInstance.State.SUSPENDED, "State not restored: " + restored.getState());
+		check(restored.getCurrentActivationStackDepth() == 1, "Frames not restored: " + restored.getCurrentActivationStackDepth());
+		check(restored.getCurrentCommandIndex() == original.getCurrentCommandIndex(), "Command index not restored.");
+
+		// a restored state can be saved again, the same way.
+		check(Arrays.equals(state, save(restored)), "Restored state saves differently.");
+
+		restored.resume();
+		run(restored);
+		check(restored.getState() == ScriptInstance.State.ENDED, "Restored instance did not end: " + restored.getState());
+		String restoredResult = result(restored);
+		check(EXPECTED.equals(restoredResult), "Bad restored result: " + restoredResult);
+
+		// the original is untouched by the restored instance, and ends the same way.
+		original.resume();
+		run(original);
+		String originalResult = result(original);
+		check(EXPECTED.equals(originalResult), "Bad original result: " + originalResult);
+	}
+
+	// Object references cannot be saved.
+	private static void testObjectReferences() throws Exception
+	{
+		ScriptInstance instance = create(16, 256);
+		instance.initialize("objects");
+		run(instance);
+		check(instance.getState() == ScriptInstance.State.SUSPENDED, "Not paused: " + instance.getState());
+		try {
+			save(instance);
+			throw new AssertionError("Object reference was saved.");
+		} catch (NotSerializableException e) {
+			// expected.
+		}
+	}
+
+	// States that do not fit in the restoring instance's stack are rejected as corrupt.
+	private static void testBounds() throws Exception
+	{
+		ScriptInstance instance = create(16, 256);
+		instance.initialize("main");
+		run(instance);
+		byte[] state = save(instance);
+
+		checkCorrupt(state, create(1, 256), "two frames into an activation depth of one");
+		checkCorrupt(state, create(16, 4), "locals past the value depth");
+
+		// truncated data is not a valid state either.
+		ScriptInstance target = create(16, 256);
+		try {
+			target.restoreState(new ByteArrayInputStream(state, 0, state.length / 2));
+			throw new AssertionError("Truncated state was restored.");
+		} catch (IOException e) {
+			// expected.
+		}
+	}
+
+	private static void checkCorrupt(byte[] state, ScriptInstance target, String what) throws IOException
+	{
+		try {
+			target.restoreState(new ByteArrayInputStream(state));
+		} catch (StreamCorruptedException e) {
+			return;
+		}
+		throw new AssertionError("Not rejected: " + what);
+	}
+
+}
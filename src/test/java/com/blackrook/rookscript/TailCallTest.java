@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2017-2022 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.rookscript;
+
+import static com.blackrook.rookscript.BundledScripts.check;
+
+import java.io.StringReader;
+
+import com.blackrook.rookscript.lang.ScriptCommandType;
+
+/**
+ * Checks that calls whose results are returned right away reuse the caller's activation frame,
+ * and that calls in a check block do not.
+ */
+public class TailCallTest
+{
+	private static final String SUM_SCRIPT = (new StringBuilder())
+		.append("function sum(n, acc) {\n")
+		.append("	if (n <= 0) return acc;\n")
+		.append("	return sum(n - 1, acc + n);\n")
+		.append("}\n")
+		.append("entry main(n) { return sum(n, 0); }\n")
+	.toString();
+
+	private static final String CHECK_SCRIPT = (new StringBuilder())
+		.append("function down(n) {\n")
+		.append("	check (err) {\n")
+		.append("		if (n <= 0) return 0;\n")
+		.append("		return down(n - 1);\n")
+		.append("	}\n")
+		.append("	return err;\n")
+		.append("}\n")
+		.append("entry main(n) { return down(n); }\n")
+	.toString();
+
+	public static void main(String[] args) throws Exception
+	{
+		testBundledScript();
+		testConstantDepth();
+		testCheckBlock();
+		System.out.println("All tail call tests passed.");
+	}
+
+	// The bundled script recurses far deeper than the activation stack.
+	private static void testBundledScript() throws Exception
+	{
+		BundledScripts.Run fused = BundledScripts.run(BundledScripts.compile("tailcalltest.txt", true));
+		String[] lines = fused.output.trim().split("\\r?\\n");
+		check(lines.length == 2 && "55".equals(lines[0].trim()) && "5000050000".equals(lines[1].trim()), "Bad output: " + fused.output + " " + fused.result);
+
+		BundledScripts.Run unfused = BundledScripts.run(BundledScripts.compile("tailcalltest.txt", false));
+		check(unfused.result.contains("stack overflow"), "Unfused recursion did not overflow: " + unfused.result);
+	}
+
+	// Steps through the recursion and watches the activation depth.
+	private static void testConstantDepth() throws Exception
+	{
+		Script script = BundledScripts.compile("sum", new StringReader(SUM_SCRIPT), true);
+		// both main's call and the recursive call are tail calls.
+		check(countCommands(script, ScriptCommandType.TAIL_CALL) == 2 && countCommands(script, ScriptCommandType.CALL) == 0, "Tail calls not fused.");
+
+		ScriptInstance instance = createInstance(script);
+		instance.initialize("main", 1000);
+		int maxDepth = stepToEnd(instance);
+		check(maxDepth == 0, "Activation depth grew past the entry frame to " + maxDepth);
+		check(popResult(instance).asLong() == 500500L, "Bad sum.");
+	}
+
+	// A return in a check block has to pop the check first, so the call is not in tail position.
+	private static void testCheckBlock() throws Exception
+	{
+		Script script = BundledScripts.compile("check", new StringReader(CHECK_SCRIPT), true);
+		int start = script.getFunctionEntry("down").getIndex();
+		int end = script.getScriptEntry("main").getIndex();
+		check(start < end, "Unexpected function order.");
+		check(countCommands(script, start, end, ScriptCommandType.TAIL_CALL) == 0, "Call in a check block was fused.");
+		check(countCommands(script, start, end, ScriptCommandType.CALL) == 1, "Call in a check block is missing.");
+
+		ScriptInstance instance = createInstance(script);
+		instance.initialize("main", 50);
+		// main tail-calls down(50), so down(0) is 50 frames deep.
+		int maxDepth = stepToEnd(instance);
+		check(maxDepth == 50, "Activation depth should grow with each call, but got " + maxDepth);
+		check(popResult(instance).asLong() == 0L, "Bad result.");
+	}
+
+	private static int countCommands(Script script, ScriptCommandType type)
+	{
+		return countCommands(script, 0, script.getCommandCount(), type);
+	}
+
+	private static int countCommands(Script script, int start, int end, ScriptCommandType type)
+	{
+		int out = 0;
+		for (int i = start; i < end; i++)
+			if (script.getCommand(i).getType() == type)
+				out++;
+		return out;
+	}
+
+	private static ScriptInstance createInstance(Script script)
+	{
+		return ScriptInstance.createBuilder()
+			.withScript(script)
+			.withEnvironment(ScriptEnvironment.createStandardEnvironment())
+			.withScriptStack(256, 2048)
+			.createInstance();
+	}
+
+	// Runs one command at a time and returns the deepest activation depth seen.
+	private static int stepToEnd(ScriptInstance instance)
+	{
+		int maxDepth = 0;
+		do {
+			instance.update(1);
+			maxDepth = Math.max(maxDepth, instance.getCurrentActivationStackDepth());
+		} while (instance.getState() == ScriptInstance.State.RUNNING);
+		return maxDepth;
+	}
+
+	private static ScriptValue popResult(ScriptInstance instance)
+	{
+		ScriptValue out = ScriptValue.create(null);
+		instance.popStackValue(out);
+		return out;
+	}
+
+}